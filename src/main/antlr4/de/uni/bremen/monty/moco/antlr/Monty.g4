@@ -121,7 +121,11 @@ elif
 
 tryStatement
   : 'try:' EndOfLine tryBlock=statementBlock
-    ('handle' variableDeclaration? ':' EndOfLine handleBlock=statementBlock)+
+    handleClause+
+  ;
+
+handleClause
+  : 'handle' variableDeclaration? ':' EndOfLine handleBlock=statementBlock
   ;
 
 assignment
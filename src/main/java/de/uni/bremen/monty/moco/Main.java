@@ -43,8 +43,11 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.antlr.v4.runtime.misc.TestRig;
+import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
 
 import de.uni.bremen.monty.moco.antlr.MontyParser;
@@ -55,6 +58,7 @@ import de.uni.bremen.monty.moco.util.Params;
 import de.uni.bremen.monty.moco.util.ParseTreePrinter;
 import de.uni.bremen.monty.moco.visitor.BaseVisitor;
 import de.uni.bremen.monty.moco.visitor.CodeGenerationVisitor;
+import de.uni.bremen.monty.moco.visitor.ConstantFoldingVisitor;
 import de.uni.bremen.monty.moco.visitor.ControlFlowVisitor;
 import de.uni.bremen.monty.moco.visitor.DeclarationVisitor;
 import de.uni.bremen.monty.moco.visitor.DotVisitor;
@@ -90,6 +94,7 @@ public class Main {
                 new SetParentVisitor(),
                 new DeclarationVisitor(),
                 new QuantumTypeResolver3000(),
+                new ConstantFoldingVisitor(),
                 new QuantumTypeErasor9k(),
                 new ControlFlowVisitor(),
                 new NameManglingVisitor(),
@@ -145,7 +150,9 @@ public class Main {
 		}
 	}
 
-	private void generateCode(Params params) throws IOException {
+	/** Run or compile the generated .ll file with the LLVM tools and delete the intermediate files, even if a tool
+	 * fails. */
+	void generateCode(Params params) throws IOException {
 		PrintStream resultStream;
 		if (params.getOutputFile() == null) {
 			resultStream = System.out;
@@ -155,20 +162,87 @@ public class Main {
 
 		if (!params.isGenerateOnlyLLVM()) {
 			final String llFile = params.getLlFile();
-			final ProcessBuilder processBuilder = new ProcessBuilder("lli", llFile);
-			final Process start = processBuilder.start();
-
-			final String in = IOUtils.toString(start.getInputStream());
-			final String err = IOUtils.toString(start.getErrorStream());
+			final String baseName = FilenameUtils.removeExtension(llFile);
+			final List<String> temporaryFiles = new ArrayList<>();
+			if (!params.isKeepLLVMCode()) {
+				temporaryFiles.add(llFile);
+			}
 
-			System.err.print(err);
-			resultStream.print(in);
+			try {
+				String program = llFile;
+				final int level = params.getOptimizationLevel();
+				if (level >= 0) {
+					final String optFile = baseName + ".opt.ll";
+					if (!params.isKeepLLVMCode()) {
+						temporaryFiles.add(optFile);
+					}
+					runTool("opt", "-O" + level, "-S", program, "-o", optFile);
+					program = optFile;
+				}
 
-			if (!params.isKeepLLVMCode()) {
-				if (!new File(llFile).delete()) {
-					System.err.println("Warning: failed to delete file " + llFile);
+				if (params.isCompileNative()) {
+					final String objectFile = baseName + ".o";
+					final String executable = new File(baseName).getAbsolutePath();
+					temporaryFiles.add(objectFile);
+					if (!params.isKeepLLVMCode()) {
+						temporaryFiles.add(executable);
+					}
+					if (level >= 0) {
+						runTool("llc", "-O" + level, "-filetype=obj", program, "-o", objectFile);
+					} else {
+						runTool("llc", "-filetype=obj", program, "-o", objectFile);
+					}
+					runTool("clang", objectFile, "-o", executable);
+					execute(resultStream, executable);
+				} else {
+					execute(resultStream, "lli", program);
+				}
+			} finally {
+				for (final String file : temporaryFiles) {
+					final File temporaryFile = new File(file);
+					if (temporaryFile.exists() && !temporaryFile.delete()) {
+						System.err.println("Warning: failed to delete file " + file);
+					}
 				}
 			}
 		}
 	}
+
+	/** Run the compiled program, forwarding its error output to stderr and its regular output to the result stream.
+	 * The runtime reports errors of the program itself and exits with a small status code, which is part of the
+	 * program's behavior. A status above 128 means that the program was killed by a signal, so it crashed. */
+	void execute(PrintStream resultStream, String... command) throws IOException {
+		final ProcessBuilder processBuilder = new ProcessBuilder(command);
+		final Process start = processBuilder.start();
+
+		final String in = IOUtils.toString(start.getInputStream());
+		final String err = IOUtils.toString(start.getErrorStream());
+
+		System.err.print(err);
+		resultStream.print(in);
+		try {
+			if (start.waitFor() > 128) {
+				throw new IOException(command[0] + " crashed with exit code " + start.exitValue());
+			}
+		} catch (final InterruptedException e) {
+			throw new IOException(command[0] + " was interrupted", e);
+		}
+	}
+
+	/** Run one step of the native toolchain. The output of the tool is only shown if it fails. */
+	void runTool(String... command) throws IOException {
+		final ProcessBuilder processBuilder = new ProcessBuilder(command);
+		processBuilder.redirectErrorStream(true);
+		final Process start = processBuilder.start();
+
+		final String out = IOUtils.toString(start.getInputStream());
+		try {
+			if (start.waitFor() != 0) {
+				System.err.print(out);
+				throw new IOException(command[0] + " failed with exit code " + start.exitValue());
+			}
+		} catch (final InterruptedException e) {
+			throw new IOException(command[0] + " was interrupted", e);
+		}
+	}
 }
@@ -59,6 +59,7 @@ import de.uni.bremen.monty.moco.antlr.MontyParser.ElifContext;
 import de.uni.bremen.monty.moco.antlr.MontyParser.ExpressionContext;
 import de.uni.bremen.monty.moco.antlr.MontyParser.FunctionCallContext;
 import de.uni.bremen.monty.moco.antlr.MontyParser.FunctionDeclarationContext;
+import de.uni.bremen.monty.moco.antlr.MontyParser.HandleClauseContext;
 import de.uni.bremen.monty.moco.antlr.MontyParser.IfStatementContext;
 import de.uni.bremen.monty.moco.antlr.MontyParser.IndependentDeclarationContext;
 import de.uni.bremen.monty.moco.antlr.MontyParser.LiteralContext;
@@ -518,12 +519,14 @@ public class ASTBuilder extends MontyBaseVisitor<ASTNode> {
 
 	@Override
 	public ASTNode visitTryStatement(TryStatementContext ctx) {
-		ASTNode decl = visit(ctx.variableDeclaration().get(0));
-		TryStatement tryStm =
-		        new TryStatement(position(ctx.getStart()), (VariableDeclaration) decl, new Block(
-		                position(ctx.getStart())), new Block(position(ctx.getStart())));
-		addStatementsToBlock(tryStm.getTryBlock(), ctx.tryBlock.statement());
-		addStatementsToBlock(tryStm.getHandleBlock(), ctx.handleBlock.statement());
+		TryStatement tryStm = new TryStatement(position(ctx.getStart()), (Block) visit(ctx.tryBlock));
+		for (HandleClauseContext handleCtx : ctx.handleClause()) {
+			VariableDeclaration variable = null;
+			if (handleCtx.variableDeclaration() != null) {
+				variable = (VariableDeclaration) visit(handleCtx.variableDeclaration());
+			}
+			tryStm.addHandler(variable, (Block) visit(handleCtx.handleBlock));
+		}
 		return tryStm;
 	}
 
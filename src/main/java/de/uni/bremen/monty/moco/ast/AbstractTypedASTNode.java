@@ -3,6 +3,7 @@ package de.uni.bremen.monty.moco.ast;
 import java.util.Objects;
 
 import de.uni.bremen.monty.moco.ast.declaration.TypeDeclaration;
+import de.uni.bremen.monty.moco.ast.declaration.TypeVariableDeclaration;
 import de.uni.bremen.monty.moco.ast.declaration.typeinf.Type;
 import de.uni.bremen.monty.moco.ast.declaration.typeinf.Typed;
 
@@ -11,6 +12,7 @@ public abstract class AbstractTypedASTNode extends BasicASTNode implements Typed
     /** The node's type */
     private Type type;
     private TypeDeclaration typeDecl;
+    private TypeVariableDeclaration erasedTypeVariable;
 
     public AbstractTypedASTNode(Position position) {
         super(position);
@@ -57,6 +59,16 @@ public abstract class AbstractTypedASTNode extends BasicASTNode implements Typed
         return this.typeDecl != null;
     }
 
+    @Override
+    public void setErasedTypeVariable(TypeVariableDeclaration typeVariable) {
+        this.erasedTypeVariable = typeVariable;
+    }
+
+    @Override
+    public TypeVariableDeclaration getErasedTypeVariable() {
+        return this.erasedTypeVariable;
+    }
+
     @Override
     public String toString() {
         final StringBuilder b = new StringBuilder(super.toString());
@@ -39,12 +39,15 @@
 
 package de.uni.bremen.monty.moco.ast;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import de.uni.bremen.monty.moco.ast.declaration.ClassDeclaration;
+import de.uni.bremen.monty.moco.ast.declaration.TypeDeclaration;
 import de.uni.bremen.monty.moco.ast.declaration.TypeInstantiation;
 import de.uni.bremen.monty.moco.ast.declaration.typeinf.Type;
 
@@ -56,7 +59,7 @@ public class CoreClasses {
 	static {
 		// TODO find name for void that is not a valid identifier
         String[] classNames = new String[] { "Object", "Char", "String", "Int", "Float",
-                "Bool", "Array", "$void" };
+                "Bool", "Array", "FloatArray", "BoolArray", "CharArray", "$void" };
 		for (String name : classNames) {
 		    final ClassDeclaration coreClass = new ClassDeclaration(new Position("Dummy_" + name, 0, 0), new Identifier(
                     name), Collections.<TypeInstantiation> emptyList(), new Block(
@@ -105,6 +108,50 @@ public class CoreClasses {
 		return coreClasses.get("Array");
 	}
 
+	public static ClassDeclaration floatArrayType() {
+		return coreClasses.get("FloatArray");
+	}
+
+	public static ClassDeclaration boolArrayType() {
+		return coreClasses.get("BoolArray");
+	}
+
+	public static ClassDeclaration charArrayType() {
+		return coreClasses.get("CharArray");
+	}
+
+	/** Get all array classes. Array holds Int elements, the others are named after their element type. Their elements
+	 * are stored unboxed, one after another. */
+	public static List<ClassDeclaration> arrayTypes() {
+		return Arrays.asList(arrayType(), floatArrayType(), boolArrayType(), charArrayType());
+	}
+
+	public static boolean isArrayType(TypeDeclaration type) {
+		return arrayTypes().contains(type);
+	}
+
+	/** @return the type of the elements of the given array class */
+	public static ClassDeclaration arrayElementType(TypeDeclaration arrayType) {
+		if (arrayType == floatArrayType()) {
+			return floatType();
+		} else if (arrayType == boolArrayType()) {
+			return boolType();
+		} else if (arrayType == charArrayType()) {
+			return charType();
+		}
+		return intType();
+	}
+
+	/** @return the array class holding elements of the given type or null if there is none */
+	public static ClassDeclaration arrayTypeOf(TypeDeclaration elementType) {
+		for (ClassDeclaration arrayType : arrayTypes()) {
+			if (arrayElementType(arrayType) == elementType) {
+				return arrayType;
+			}
+		}
+		return null;
+	}
+
 	public static ClassDeclaration voidType() {
         return coreClasses.get("$void");
 	}
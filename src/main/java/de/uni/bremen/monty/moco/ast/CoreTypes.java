@@ -25,7 +25,9 @@ public final class CoreTypes {
         final ClassType object = ClassType.classNamed("Object").createType();
         CORE_TYPES.put("Object", object);
         CORE_TYPES.put("String", ClassType.classNamed("String").createType());
-        CORE_TYPES.put("Array", ClassType.classNamed("Array").createType());
+        for (final String arrayName : new String[] { "Array", "FloatArray", "BoolArray", "CharArray" }) {
+            CORE_TYPES.put(arrayName, ClassType.classNamed(arrayName).createType());
+        }
         CORE_TYPES.put("$void", VOID);
         for (final String typeName : coreTypes) {
             CORE_TYPES.put(typeName, ClassType
@@ -40,9 +40,17 @@
 package de.uni.bremen.monty.moco.ast;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import de.uni.bremen.monty.moco.ast.declaration.ClassDeclaration;
 import de.uni.bremen.monty.moco.ast.declaration.Declaration;
@@ -53,16 +61,48 @@ import de.uni.bremen.monty.moco.util.MontyJar;
 import de.uni.bremen.monty.moco.util.MontyResource;
 import de.uni.bremen.monty.moco.util.Params;
 
+/** Builds the package tree of the main package and the core library.
+ * 
+ * The modules are parsed in parallel, the parsers share the DFA cache of ANTLR. The modules are added to their
+ * packages in the order of the files once all of them are parsed, so the tree is the same as if they were parsed one
+ * after another. */
 public class PackageBuilder {
+
+	private static class PendingModule {
+		private final Package aPackage;
+		private final Future<ModuleDeclaration> module;
+
+		private PendingModule(Package aPackage, Future<ModuleDeclaration> module) {
+			this.aPackage = aPackage;
+			this.module = module;
+		}
+	}
+
 	private final AntlrAdapter antlrAdapter;
 	private final Params params;
 
+	/** parses the modules while a package is built */
+	private ExecutorService parser;
+
+	/** the modules being parsed in the order they are added to their packages */
+	private final List<PendingModule> pendingModules = new ArrayList<>();
+
 	public PackageBuilder(Params params) {
 		this.params = params;
 		this.antlrAdapter = new AntlrAdapter();
 	}
 
 	public Package buildPackage() throws IOException {
+		this.parser = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		try {
+			return buildBasePackage();
+		} finally {
+			this.parser.shutdownNow();
+			this.pendingModules.clear();
+		}
+	}
+
+	private Package buildBasePackage() throws IOException {
 		Package basePackage = new Package(new Identifier(""));
 		String inputCode = this.params.getInputCode();
 		String inputFile = this.params.getInputFile();
@@ -81,6 +121,7 @@ public class PackageBuilder {
 	private void addCoreLib(Package basePackage) throws IOException {
 		Package corePackage = createPackage(getCoreLibFolder());
 		corePackage.setNativePackage(true);
+		addParsedModules();
 		basePackage.addSubPackage(corePackage);
 
 		Block block = new Block(new Position());
@@ -88,7 +129,9 @@ public class PackageBuilder {
 		        new ModuleDeclaration(new Position(), new Identifier("CoreClasses"), block,
 		                Collections.<Import> emptyList());
 		block.addDeclaration(CoreClasses.stringType());
-		block.addDeclaration(CoreClasses.arrayType());
+		for (ClassDeclaration arrayType : CoreClasses.arrayTypes()) {
+			block.addDeclaration(arrayType);
+		}
 		block.addDeclaration(CoreClasses.voidType());
 		corePackage.addModule(module);
 		setCoreClasses(corePackage);
@@ -155,11 +198,40 @@ public class PackageBuilder {
 		return mainPackage;
 	}
 
-	private void addModules(MontyResource[] montyFiles, Package aPackage) throws IOException {
+	/** Starts to parse the modules. Each file is opened by the task parsing it and closed when it is parsed, so only
+	 * the files being parsed are open. */
+	private void addModules(MontyResource[] montyFiles, Package aPackage) {
 		for (MontyResource file : montyFiles) {
-			ModuleDeclaration module = this.antlrAdapter.parse(file.toInputStream(), file.getName());
-			aPackage.addModule(module);
+			Future<ModuleDeclaration> module = this.parser.submit(() -> {
+				try (InputStream input = file.toInputStream()) {
+					return this.antlrAdapter.parse(input, file.getName());
+				}
+			});
+			this.pendingModules.add(new PendingModule(aPackage, module));
+		}
+	}
+
+	/** Waits for the modules being parsed and adds them to their packages. */
+	private void addParsedModules() throws IOException {
+		try {
+			for (PendingModule pendingModule : this.pendingModules) {
+				pendingModule.aPackage.addModule(pendingModule.module.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while parsing the modules");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
 		}
+		this.pendingModules.clear();
 	}
 
 	private void addSubPackages(MontyResource inputFolder, Package mainPackage) throws IOException {
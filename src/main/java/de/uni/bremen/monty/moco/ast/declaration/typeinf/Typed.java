@@ -1,6 +1,7 @@
 package de.uni.bremen.monty.moco.ast.declaration.typeinf;
 
 import de.uni.bremen.monty.moco.ast.declaration.TypeDeclaration;
+import de.uni.bremen.monty.moco.ast.declaration.TypeVariableDeclaration;
 
 /** Interface for AST nodes that have a type assigned to them.
  *
@@ -39,4 +40,15 @@ public interface Typed {
 	 *
 	 * @return Whether this node has a type declaration assigned. */
 	boolean isTypeDeclarationResolved();
+
+	/** Remembers the type variable this node was typed with before generics were erased.
+	 *
+	 * @param typeVariable
+	 *            The type variable. */
+	void setErasedTypeVariable(TypeVariableDeclaration typeVariable);
+
+	/** Gets the type variable this node was typed with before generics were erased.
+	 *
+	 * @return The type variable or null if the node was not typed with one. */
+	TypeVariableDeclaration getErasedTypeVariable();
 }
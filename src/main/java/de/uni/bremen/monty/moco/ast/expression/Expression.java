@@ -46,6 +46,10 @@ import de.uni.bremen.monty.moco.ast.Position;
  * An expression has a type which must be set by a visitor. */
 public abstract class Expression extends AbstractTypedASTNode {
 
+	/** The value of this expression if it is known at compile time, see
+	 * {@link de.uni.bremen.monty.moco.visitor.ConstantFoldingVisitor}. */
+	private Object constantValue;
+
 	/** Constructor.
 	 * 
 	 * @param position
@@ -53,4 +57,19 @@ public abstract class Expression extends AbstractTypedASTNode {
 	public Expression(Position position) {
 		super(position);
 	}
+
+	/** Get the value of this expression if it is known at compile time.
+	 * 
+	 * @return a Long for an Int, a Double for a Float, a Boolean for a Bool or null if the value is not constant */
+	public Object getConstantValue() {
+		return this.constantValue;
+	}
+
+	/** Set the value of this expression, which the code generation emits instead of evaluating the expression.
+	 * 
+	 * @param constantValue
+	 *            the value, see {@link #getConstantValue()} */
+	public void setConstantValue(Object constantValue) {
+		this.constantValue = constantValue;
+	}
 }
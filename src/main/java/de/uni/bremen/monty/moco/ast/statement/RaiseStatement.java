@@ -45,19 +45,38 @@ import de.uni.bremen.monty.moco.visitor.BaseVisitor;
 
 public class RaiseStatement extends BasicASTNode implements Statement {
 
-	private Expression expression;
+	private Expression parameter;
 
-	public RaiseStatement(Position position, Expression expression) {
+	/** Constructor.
+	 * 
+	 * @param position
+	 *            Position of this node
+	 * @param parameter
+	 *            the object to raise or null to raise the object handled by the enclosing handler again */
+	public RaiseStatement(Position position, Expression parameter) {
 		super(position);
-		this.expression = expression;
+		this.parameter = parameter;
 	}
 
+	/** get the paramter
+	 * 
+	 * @return the paramter */
+	public Expression getParameter() {
+		return parameter;
+	}
+
+	/** {@inheritDoc} */
 	@Override
 	public void visit(BaseVisitor visitor) {
+		visitor.visit(this);
 	}
 
+	/** {@inheritDoc} */
 	@Override
 	public void visitChildren(BaseVisitor visitor) {
+		if (parameter != null) {
+			visitor.visitDoubleDispatched(parameter);
+		}
 	}
 
 }
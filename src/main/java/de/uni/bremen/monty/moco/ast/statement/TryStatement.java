@@ -38,31 +38,53 @@
  */
 package de.uni.bremen.monty.moco.ast.statement;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import de.uni.bremen.monty.moco.ast.*;
 import de.uni.bremen.monty.moco.ast.declaration.VariableDeclaration;
 import de.uni.bremen.monty.moco.visitor.BaseVisitor;
 
+/** A try block with one or more handlers. The handlers are tried in order, the first one whose variable has a type the
+ * raised object is an instance of handles it. A handler without a variable handles every object. */
 public class TryStatement extends BasicASTNode implements Statement {
 
-	VariableDeclaration handle;
-	Block tryBlock;
-	Block handleBlock;
+	private Block tryBlock;
+	private List<VariableDeclaration> handleVariables = new ArrayList<>();
+	private List<Block> handleBlocks = new ArrayList<>();
 
-	public TryStatement(Position position, VariableDeclaration handle, Block tryBlock, Block handleBlock) {
+	public TryStatement(Position position, Block tryBlock) {
 		super(position);
-		this.handle = handle;
 		this.tryBlock = tryBlock;
-		this.handleBlock = handleBlock;
 	}
 
-	public Block getTryBlock() {
+	/** Add a handler. The variable is declared in the handler block and holds the raised object.
+	 *
+	 * @param variable
+	 *            the variable or null if the handler handles every object
+	 * @param block
+	 *            the handler block */
+	public void addHandler(VariableDeclaration variable, Block block) {
+		if (variable != null) {
+			block.addDeclaration(variable);
+		}
+		this.handleVariables.add(variable);
+		this.handleBlocks.add(block);
+	}
 
+	public Block getTryBlock() {
 		return tryBlock;
 	}
 
-	public Block getHandleBlock() {
+	/** get the handler variables in the order of the handlers
+	 *
+	 * @return the variables, null for a handler without a variable */
+	public List<VariableDeclaration> getHandleVariables() {
+		return handleVariables;
+	}
 
-		return handleBlock;
+	public List<Block> getHandleBlocks() {
+		return handleBlocks;
 	}
 
 	@Override
@@ -73,8 +95,9 @@ public class TryStatement extends BasicASTNode implements Statement {
 	@Override
 	public void visitChildren(BaseVisitor visitor) {
 		visitor.visitDoubleDispatched(tryBlock);
-		visitor.visitDoubleDispatched(handleBlock);
-
+		for (Block handleBlock : handleBlocks) {
+			visitor.visitDoubleDispatched(handleBlock);
+		}
 	}
 
 }
@@ -0,0 +1,593 @@
+/*
+ * moco, the Monty Compiler
+ * Copyright (c) 2013-2014, Monty's Coconut, All rights reserved.
+ *
+ * This file is part of moco, the Monty Compiler.
+ *
+ * moco is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ *
+ * moco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * Linking this program and/or its accompanying libraries statically or
+ * dynamically with other modules is making a combined work based on this
+ * program. Thus, the terms and conditions of the GNU General Public License
+ * cover the whole combination.
+ *
+ * As a special exception, the copyright holders of moco give
+ * you permission to link this programm and/or its accompanying libraries
+ * with independent modules to produce an executable, regardless of the
+ * license terms of these independent modules, and to copy and distribute the
+ * resulting executable under terms of your choice, provided that you also meet,
+ * for each linked independent module, the terms and conditions of the
+ * license of that module.
+ *
+ * An independent module is a module which is not
+ * derived from or based on this program and/or its accompanying libraries.
+ * If you modify this library, you may extend this exception to your version of
+ * the program or library, but you are not obliged to do so. If you do not wish
+ * to do so, delete this exception statement from your version.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library.
+ */
+package de.uni.bremen.monty.moco.codegeneration;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.uni.bremen.monty.moco.ast.ASTNode;
+import de.uni.bremen.monty.moco.ast.CoreClasses;
+import de.uni.bremen.monty.moco.ast.Package;
+import de.uni.bremen.monty.moco.ast.declaration.Declaration;
+import de.uni.bremen.monty.moco.ast.declaration.ProcedureDeclaration;
+import de.uni.bremen.monty.moco.ast.declaration.VariableDeclaration;
+import de.uni.bremen.monty.moco.ast.expression.Expression;
+import de.uni.bremen.monty.moco.ast.expression.FunctionCall;
+import de.uni.bremen.monty.moco.ast.expression.MemberAccess;
+import de.uni.bremen.monty.moco.ast.expression.VariableAccess;
+import de.uni.bremen.monty.moco.ast.expression.literal.ArrayLiteral;
+import de.uni.bremen.monty.moco.ast.expression.literal.IntegerLiteral;
+import de.uni.bremen.monty.moco.ast.statement.Assignment;
+import de.uni.bremen.monty.moco.ast.statement.BreakStatement;
+import de.uni.bremen.monty.moco.ast.statement.ContinueStatement;
+import de.uni.bremen.monty.moco.ast.statement.RaiseStatement;
+import de.uni.bremen.monty.moco.ast.statement.ReturnStatement;
+import de.uni.bremen.monty.moco.ast.statement.SkipStatement;
+import de.uni.bremen.monty.moco.ast.statement.Statement;
+import de.uni.bremen.monty.moco.ast.statement.TryStatement;
+import de.uni.bremen.monty.moco.ast.statement.WhileLoop;
+import de.uni.bremen.monty.moco.visitor.BaseVisitor;
+
+/** A range analysis of the induction variables of while loops, which finds array accesses that need no bounds check
+ * of their own.
+ *
+ * An access 'a[i]' is considered if it is inside the body of a loop with the condition 'i < n' or 'i <= n', where
+ * 'a' and 'n' are not changed by the loop and 'i' is only changed by statements 'i := i + k' of the loop body after
+ * the statement containing the access. All three must be literals or variables which are only used by a single
+ * procedure, so that no call can change them. Then 'i' lies between its value on entry of the loop and the last index
+ * allowed by the condition whenever the access runs.
+ * <ul>
+ * <li>If 'a' is only assigned an array literal, 'n' is a literal and 'i' is only assigned literals or incremented, the
+ * access is always within the bounds and the check is dropped.</li>
+ * <li>If the condition is 'i < len(a)' and 'i' is only assigned literals or incremented, the check is dropped as well.
+ * Arrays never shrink, so the length can only have grown since the condition was evaluated.</li>
+ * <li>Otherwise, the first and the last index are checked before the loop and the loop is generated twice: without
+ * the check of the access if the indices are within the bounds, and with it if they are not, so that the program
+ * stops at the same iteration as before. If 'i' is incremented by one exactly once per iteration, the access runs on
+ * every iteration, the loop can not be left early and 'a' does not grow while the loop runs, every index in the range
+ * is accessed and the length is the one known before the loop. Then the check before the loop fails if and only if
+ * one of the accesses would fail, so the version with the checks only runs for programs which stop with the error.
+ * Other loops are not versioned, and neither are loops whose body declares anything but local variables.</li>
+ * </ul>
+ * An iteration is left early by break, skip, continue and return, and by an exception. If the program raises any
+ * exception, every call of a procedure which is not native may raise one. */
+public class BoundsCheckElimination {
+
+	/** The check of a range of indices against the arrays accessed in a loop, which is done before the loop runs to
+	 * choose between the version of the loop without checks of the accesses and the version with them. */
+	public static class HoistedCheck {
+		private final VariableAccess index;
+		private final Expression bound;
+		private final boolean inclusive;
+		private final boolean indexNonNegative;
+		private final List<VariableAccess> arrays = new ArrayList<>();
+		private final List<FunctionCall> accesses = new ArrayList<>();
+
+		HoistedCheck(VariableAccess index, Expression bound, boolean inclusive, boolean indexNonNegative) {
+			this.index = index;
+			this.bound = bound;
+			this.inclusive = inclusive;
+			this.indexNonNegative = indexNonNegative;
+		}
+
+		/** @return the access of the induction variable in the loop condition, which yields the first index */
+		public VariableAccess getIndex() {
+			return this.index;
+		}
+
+		/** @return the right hand side of the loop condition */
+		public Expression getBound() {
+			return this.bound;
+		}
+
+		/** @return whether the bound itself is a valid index, i.e. the loop condition is 'i <= n' */
+		public boolean isInclusive() {
+			return this.inclusive;
+		}
+
+		/** @return whether the first index is known to be non-negative and does not need to be checked */
+		public boolean isIndexNonNegative() {
+			return this.indexNonNegative;
+		}
+
+		/** @return an access of each of the arrays to check */
+		public List<VariableAccess> getArrays() {
+			return this.arrays;
+		}
+
+		/** @return the accesses covered by the check, which are unchecked in the version of the loop that runs if the
+		 *         check passes */
+		public List<FunctionCall> getAccesses() {
+			return this.accesses;
+		}
+	}
+
+	/** Every read or write of a variable. */
+	private final Map<Declaration, List<VariableAccess>> accesses = new HashMap<>();
+
+	/** Every call of the native operator[] of an array class. */
+	private final List<FunctionCall> arrayAccesses = new ArrayList<>();
+
+	private final Set<FunctionCall> unchecked = new HashSet<>();
+
+	private final Map<WhileLoop, HoistedCheck> hoistedChecks = new HashMap<>();
+
+	/** Whether the program contains a raise statement. */
+	private boolean raises;
+
+	/** Find all array accesses of the program which need no bounds check. */
+	public void analyze(Package root) {
+		root.visit(new BaseVisitor() {
+			@Override
+			public void visit(VariableAccess node) {
+				List<VariableAccess> list = BoundsCheckElimination.this.accesses.get(node.getDeclaration());
+				if (list == null) {
+					list = new ArrayList<>();
+					BoundsCheckElimination.this.accesses.put(node.getDeclaration(), list);
+				}
+				list.add(node);
+				super.visit(node);
+			}
+
+			@Override
+			public void visit(FunctionCall node) {
+				if (isArrayAccess(node.getDeclaration())) {
+					BoundsCheckElimination.this.arrayAccesses.add(node);
+				}
+				super.visit(node);
+			}
+
+			@Override
+			public void visit(RaiseStatement node) {
+				BoundsCheckElimination.this.raises = true;
+				super.visit(node);
+			}
+		});
+		for (FunctionCall access : this.arrayAccesses) {
+			analyze(access);
+		}
+	}
+
+	/** @return whether the procedure is the native operator[] of an array class */
+	public static boolean isArrayAccess(ProcedureDeclaration declaration) {
+		return isArrayNative(declaration, "operator[]", 2);
+	}
+
+	/** @return whether the procedure is the native len() of an array class */
+	public static boolean isArrayLength(ProcedureDeclaration declaration) {
+		return isArrayNative(declaration, "len", 1);
+	}
+
+	/** @return whether the procedure is the native append() of an array class */
+	public static boolean isArrayAppend(ProcedureDeclaration declaration) {
+		return isArrayNative(declaration, "append", 2);
+	}
+
+	private static boolean isArrayNative(ProcedureDeclaration declaration, String name, int parameterCount) {
+		return declaration != null && !declaration.isMethod() && !declaration.isInitializer()
+		        && declaration.getIdentifier().getSymbol().equals(name)
+		        && declaration.getParameter().size() == parameterCount
+		        && CoreClasses.isArrayType(declaration.getParameter().get(0).getTypeDeclaration())
+		        && isNative(declaration);
+	}
+
+	private static boolean isArrayNative(ProcedureDeclaration declaration) {
+		return isArrayAccess(declaration) || isArrayLength(declaration) || isArrayAppend(declaration);
+	}
+
+	/** @return whether the access needs no bounds check of its own, apart from the accesses of a hoisted check */
+	public boolean isUnchecked(FunctionCall access) {
+		return this.unchecked.contains(access);
+	}
+
+	/** @return the check to do before the loop runs or null if there is none */
+	public HoistedCheck getHoistedCheck(WhileLoop loop) {
+		return this.hoistedChecks.get(loop);
+	}
+
+	public int getArrayAccessCount() {
+		return this.arrayAccesses.size();
+	}
+
+	public int getUncheckedCount() {
+		int count = this.unchecked.size();
+		for (HoistedCheck check : this.hoistedChecks.values()) {
+			count += check.getAccesses().size();
+		}
+		return count;
+	}
+
+	public int getHoistedCheckCount() {
+		return this.hoistedChecks.size();
+	}
+
+	private void analyze(FunctionCall access) {
+		Expression arrayArgument = access.getArguments().get(0);
+		Expression indexArgument = access.getArguments().get(1);
+		if (!(arrayArgument instanceof VariableAccess) || !(indexArgument instanceof VariableAccess)) {
+			return;
+		}
+		VariableAccess arrayAccess = (VariableAccess) arrayArgument;
+		VariableDeclaration array = getPrivateVariable(arrayAccess);
+		VariableDeclaration index = getPrivateVariable((VariableAccess) indexArgument);
+		if (array == null || index == null) {
+			return;
+		}
+
+		WhileLoop loop = getInductionLoop(access, index);
+		if (loop == null) {
+			return;
+		}
+		MemberAccess condition = (MemberAccess) loop.getCondition();
+		FunctionCall comparison = (FunctionCall) condition.getRight();
+		Expression bound = comparison.getArguments().get(0);
+		boolean inclusive = comparison.getIdentifier().getSymbol().equals("operator<=");
+
+		// the index must be below the bound whenever the access runs
+		Statement statement = getBodyStatement(loop, access);
+		boolean lengthBound = isLengthOf(bound, array);
+		if (statement == null || !(lengthBound || isLoopInvariant(bound, loop)) || !getWrites(array, loop).isEmpty()) {
+			return;
+		}
+		List<Statement> body = loop.getBody().getStatements();
+		List<Assignment> indexWrites = getWrites(index, loop);
+		for (Assignment write : indexWrites) {
+			if (getIncrement(write, index) < 0 || write.getParentNode() != loop.getBody()
+			        || body.indexOf(write) <= body.indexOf(statement)) {
+				return;
+			}
+		}
+
+		boolean indexNonNegative = isNonNegative(index);
+		if (lengthBound) {
+			if (indexNonNegative && !inclusive) {
+				this.unchecked.add(access);
+			}
+			return;
+		}
+		if (indexNonNegative && bound instanceof IntegerLiteral) {
+			long last = ((IntegerLiteral) bound).getValue() - (inclusive ? 0 : 1);
+			int size = getLiteralSize(array);
+			if (last < size) {
+				this.unchecked.add(access);
+				return;
+			}
+		}
+
+		if (indexWrites.size() == 1 && getIncrement(indexWrites.get(0), index) == 1 && !canLeaveEarly(loop)
+		        && isUnconditional(access, statement) && !mayGrow(array, loop) && !declaresMoreThanVariables(loop)) {
+			HoistedCheck check = this.hoistedChecks.get(loop);
+			if (check == null) {
+				check = new HoistedCheck((VariableAccess) condition.getLeft(), bound, inclusive, indexNonNegative);
+				this.hoistedChecks.put(loop, check);
+			}
+			boolean known = false;
+			for (VariableAccess other : check.getArrays()) {
+				known |= other.getDeclaration() == array;
+			}
+			if (!known) {
+				check.getArrays().add(arrayAccess);
+			}
+			check.getAccesses().add(access);
+		}
+	}
+
+	/** Get the declaration of the accessed variable, if it is only used by the procedure of this access, so that it
+	 * can not be changed by a call.
+	 *
+	 * @return the variable or null if it may be used elsewhere */
+	private VariableDeclaration getPrivateVariable(VariableAccess access) {
+		if (!(access.getDeclaration() instanceof VariableDeclaration)) {
+			return null;
+		}
+		VariableDeclaration variable = (VariableDeclaration) access.getDeclaration();
+		if (variable.isAttribute()) {
+			return null;
+		}
+		ProcedureDeclaration procedure = getEnclosingProcedure(access);
+		for (VariableAccess other : this.accesses.get(variable)) {
+			if (getEnclosingProcedure(other) != procedure) {
+				return null;
+			}
+		}
+		return variable;
+	}
+
+	/** Find the innermost loop around the node with the condition 'index < bound' or 'index <= bound'. */
+	private WhileLoop getInductionLoop(ASTNode node, VariableDeclaration index) {
+		ASTNode parent = node.getParentNode();
+		while (parent != null && !(parent instanceof ProcedureDeclaration)) {
+			if (parent instanceof WhileLoop && isInductionCondition(((WhileLoop) parent).getCondition(), index)) {
+				return (WhileLoop) parent;
+			}
+			parent = parent.getParentNode();
+		}
+		return null;
+	}
+
+	private boolean isInductionCondition(Expression condition, VariableDeclaration index) {
+		if (!(condition instanceof MemberAccess)) {
+			return false;
+		}
+		Expression left = ((MemberAccess) condition).getLeft();
+		Expression right = ((MemberAccess) condition).getRight();
+		if (!(left instanceof VariableAccess) || ((VariableAccess) left).getDeclaration() != index
+		        || !(right instanceof FunctionCall)) {
+			return false;
+		}
+		FunctionCall comparison = (FunctionCall) right;
+		String operator = comparison.getIdentifier().getSymbol();
+		return (operator.equals("operator<") || operator.equals("operator<="))
+		        && comparison.getDeclaration().getDefiningClass() == CoreClasses.intType()
+		        && left.getTypeDeclaration() == CoreClasses.intType();
+	}
+
+	/** Get the statement of the loop body which contains the node.
+	 *
+	 * @return the statement or null if the node is part of the loop condition */
+	private Statement getBodyStatement(WhileLoop loop, ASTNode node) {
+		while (node.getParentNode() != loop.getBody()) {
+			node = node.getParentNode();
+			if (node == loop) {
+				return null;
+			}
+		}
+		return node instanceof Statement ? (Statement) node : null;
+	}
+
+	private boolean isLoopInvariant(Expression expression, WhileLoop loop) {
+		if (expression instanceof IntegerLiteral) {
+			return true;
+		}
+		if (!(expression instanceof VariableAccess) || expression.getTypeDeclaration() != CoreClasses.intType()) {
+			return false;
+		}
+		VariableDeclaration variable = getPrivateVariable((VariableAccess) expression);
+		return variable != null && getWrites(variable, loop).isEmpty();
+	}
+
+	/** Check whether the expression is 'len(a)' for the given array variable. */
+	private boolean isLengthOf(Expression expression, VariableDeclaration array) {
+		if (!(expression instanceof FunctionCall) || !isArrayLength(((FunctionCall) expression).getDeclaration())) {
+			return false;
+		}
+		Expression argument = ((FunctionCall) expression).getArguments().get(0);
+		return argument instanceof VariableAccess && ((VariableAccess) argument).getDeclaration() == array;
+	}
+
+	/** Get all assignments to the variable inside the given node or in the whole program if it is null. */
+	private List<Assignment> getWrites(VariableDeclaration variable, ASTNode inside) {
+		List<Assignment> writes = new ArrayList<>();
+		for (VariableAccess access : this.accesses.get(variable)) {
+			ASTNode parent = access.getParentNode();
+			if (parent instanceof Assignment && ((Assignment) parent).getLeft() == access
+			        && (inside == null || isInside(parent, inside))) {
+				writes.add((Assignment) parent);
+			}
+		}
+		return writes;
+	}
+
+	/** Get the step of an assignment 'index := index + k'.
+	 *
+	 * @return k or -1 if the assignment has a different form */
+	private int getIncrement(Assignment assignment, VariableDeclaration index) {
+		if (!(assignment.getRight() instanceof MemberAccess)) {
+			return -1;
+		}
+		MemberAccess sum = (MemberAccess) assignment.getRight();
+		if (!(sum.getLeft() instanceof VariableAccess) || ((VariableAccess) sum.getLeft()).getDeclaration() != index
+		        || !(sum.getRight() instanceof FunctionCall)) {
+			return -1;
+		}
+		FunctionCall addition = (FunctionCall) sum.getRight();
+		if (!addition.getIdentifier().getSymbol().equals("operator+")
+		        || addition.getDeclaration().getDefiningClass() != CoreClasses.intType()
+		        || !(addition.getArguments().get(0) instanceof IntegerLiteral)) {
+			return -1;
+		}
+		return ((IntegerLiteral) addition.getArguments().get(0)).getValue();
+	}
+
+	/** Check whether the variable only ever holds non-negative values. Integer literals are never negative, since a
+	 * minus sign is parsed as an operator. */
+	private boolean isNonNegative(VariableDeclaration index) {
+		if (index.isParameter()) {
+			return false;
+		}
+		for (Assignment write : getWrites(index, null)) {
+			if (!(write.getRight() instanceof IntegerLiteral) && getIncrement(write, index) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** @return the size of the array literal, which is the only value ever assigned to the variable, or -1 */
+	private int getLiteralSize(VariableDeclaration array) {
+		List<Assignment> writes = getWrites(array, null);
+		if (array.isParameter() || writes.size() != 1 || !(writes.get(0).getRight() instanceof ArrayLiteral)) {
+			return -1;
+		}
+		return ((ArrayLiteral) writes.get(0).getRight()).getEntries().size();
+	}
+
+	/** Check whether an iteration may end before the end of the loop body is reached. */
+	private boolean canLeaveEarly(WhileLoop loop) {
+		final boolean[] result = new boolean[1];
+		loop.getBody().visit(new BaseVisitor() {
+			@Override
+			public void visit(BreakStatement node) {
+				result[0] = true;
+			}
+
+			@Override
+			public void visit(SkipStatement node) {
+				result[0] = true;
+			}
+
+			@Override
+			public void visit(ContinueStatement node) {
+				result[0] = true;
+			}
+
+			@Override
+			public void visit(ReturnStatement node) {
+				result[0] = true;
+			}
+
+			@Override
+			public void visit(TryStatement node) {
+				result[0] = true;
+			}
+
+			@Override
+			public void visit(RaiseStatement node) {
+				result[0] = true;
+			}
+
+			@Override
+			public void visit(FunctionCall node) {
+				ProcedureDeclaration declaration = node.getDeclaration();
+				if (BoundsCheckElimination.this.raises && (declaration == null || !isNative(declaration))) {
+					result[0] = true;
+				}
+				super.visit(node);
+			}
+		});
+		return result[0];
+	}
+
+	/** Check whether the loop body declares anything but local variables. A versioned loop is generated twice, but
+	 * nested procedures are generated only once, because each copy would be defined under the same name. */
+	private boolean declaresMoreThanVariables(WhileLoop loop) {
+		final boolean[] declares = new boolean[1];
+		loop.getBody().visit(new BaseVisitor() {
+			@Override
+			protected void onEnterEachNode(ASTNode node) {
+				declares[0] |= node instanceof Declaration && !(node instanceof VariableDeclaration);
+			}
+		});
+		return declares[0];
+	}
+
+	/** Check whether the array may grow while the loop runs. Any call of append in the loop may append to it, since
+	 * another variable may refer to the same array. A call of a procedure which is not native may append to it, unless
+	 * the array is only known to this variable. */
+	private boolean mayGrow(VariableDeclaration array, WhileLoop loop) {
+		final boolean[] appends = new boolean[1];
+		final boolean[] calls = new boolean[1];
+		loop.visit(new BaseVisitor() {
+			@Override
+			public void visit(FunctionCall node) {
+				ProcedureDeclaration declaration = node.getDeclaration();
+				if (isArrayAppend(declaration)) {
+					appends[0] = true;
+				} else if (declaration == null || !isNative(declaration)) {
+					calls[0] = true;
+				}
+				super.visit(node);
+			}
+		});
+		return appends[0] || calls[0] && isShared(array);
+	}
+
+	/** Check whether the array held by the variable may be referred to by anything else. This is not the case if the
+	 * variable is only assigned array literals and only passed to the native procedures of the array class. */
+	private boolean isShared(VariableDeclaration array) {
+		if (array.isParameter()) {
+			return true;
+		}
+		for (VariableAccess access : this.accesses.get(array)) {
+			ASTNode parent = access.getParentNode();
+			if (parent instanceof Assignment && ((Assignment) parent).getLeft() == access) {
+				if (!(((Assignment) parent).getRight() instanceof ArrayLiteral)) {
+					return true;
+				}
+			} else if (!(parent instanceof FunctionCall) || ((FunctionCall) parent).getArguments().get(0) != access
+			        || !isArrayNative(((FunctionCall) parent).getDeclaration())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** Check whether the node is evaluated whenever the statement runs. */
+	private boolean isUnconditional(ASTNode node, Statement statement) {
+		if (!(statement instanceof Assignment) && !(statement instanceof FunctionCall)) {
+			return false;
+		}
+		while (node != statement) {
+			node = node.getParentNode();
+			if (!(node instanceof Assignment) && !(node instanceof FunctionCall) && !(node instanceof MemberAccess)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean isInside(ASTNode node, ASTNode ancestor) {
+		while (node != null && node != ancestor) {
+			node = node.getParentNode();
+		}
+		return node != null;
+	}
+
+	private ProcedureDeclaration getEnclosingProcedure(ASTNode node) {
+		ASTNode parent = node.getParentNode();
+		while (parent != null && !(parent instanceof ProcedureDeclaration)) {
+			parent = parent.getParentNode();
+		}
+		return (ProcedureDeclaration) parent;
+	}
+
+	private static boolean isNative(ASTNode node) {
+		while (node.getParentNode() != null) {
+			node = node.getParentNode();
+			if (node instanceof Package && ((Package) node).isNativePackage()) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * moco, the Monty Compiler
+ * Copyright (c) 2013-2014, Monty's Coconut, All rights reserved.
+ *
+ * This file is part of moco, the Monty Compiler.
+ *
+ * moco is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ *
+ * moco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * Linking this program and/or its accompanying libraries statically or
+ * dynamically with other modules is making a combined work based on this
+ * program. Thus, the terms and conditions of the GNU General Public License
+ * cover the whole combination.
+ *
+ * As a special exception, the copyright holders of moco give
+ * you permission to link this programm and/or its accompanying libraries
+ * with independent modules to produce an executable, regardless of the
+ * license terms of these independent modules, and to copy and distribute the
+ * resulting executable under terms of your choice, provided that you also meet,
+ * for each linked independent module, the terms and conditions of the
+ * license of that module.
+ *
+ * An independent module is a module which is not
+ * derived from or based on this program and/or its accompanying libraries.
+ * If you modify this library, you may extend this exception to your version of
+ * the program or library, but you are not obliged to do so. If you do not wish
+ * to do so, delete this exception statement from your version.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library.
+ */
+package de.uni.bremen.monty.moco.codegeneration;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.uni.bremen.monty.moco.ast.declaration.ClassDeclaration;
+import de.uni.bremen.monty.moco.ast.declaration.ProcedureDeclaration;
+import de.uni.bremen.monty.moco.ast.expression.Expression;
+import de.uni.bremen.monty.moco.ast.expression.FunctionCall;
+import de.uni.bremen.monty.moco.ast.expression.MemberAccess;
+import de.uni.bremen.monty.moco.ast.expression.ParentExpression;
+
+/** The inheritance graph of the whole program. It is used to find method calls which can only ever reach one
+ * implementation, so they can be called directly instead of through the VMT.
+ *
+ * It also determines the layout of the class displays used for subtype tests: the CT of every class lists its
+ * superclasses indexed by their depth in the inheritance tree, padded with null to the size of the deepest class. An
+ * object is an instance of a class of depth d if and only if the entry d of its display is that class. */
+public class ClassHierarchy {
+
+	/** Maps each class to itself and all of its direct and indirect subclasses. */
+	private final Map<ClassDeclaration, List<ClassDeclaration>> subClasses = new HashMap<>();
+
+	/** The number of entries in each display, which is the depth of the deepest class plus one. */
+	private int displaySize = 1;
+
+	public void addClass(ClassDeclaration classDeclaration) {
+		this.displaySize = Math.max(this.displaySize, getDepth(classDeclaration) + 1);
+		for (ClassDeclaration superClass : classDeclaration.getSuperClassDeclarationsRecursive()) {
+			List<ClassDeclaration> classes = this.subClasses.get(superClass);
+			if (classes == null) {
+				classes = new ArrayList<>();
+				this.subClasses.put(superClass, classes);
+			}
+			classes.add(classDeclaration);
+		}
+	}
+
+	/** Get the depth of the class in the inheritance tree. Object has depth 0.
+	 *
+	 * @return the index of the class in its own display and in the displays of all its subclasses */
+	public int getDepth(ClassDeclaration classDeclaration) {
+		return classDeclaration.getSuperClassDeclarationsRecursive().size() - 1;
+	}
+
+	public int getDisplaySize() {
+		return this.displaySize;
+	}
+
+	/** Check whether every instance of the sub class is also an instance of the super class, so that a subtype test
+	 * can be decided without looking at the object. */
+	public boolean isSubClass(ClassDeclaration subClass, ClassDeclaration superClass) {
+		return subClass.getSuperClassDeclarationsRecursive().contains(superClass);
+	}
+
+	/** Get the implementation which is called for the given method on an object of exactly the given class.
+	 *
+	 * @return the VMT entry or null if the class has no entry for this method */
+	public ProcedureDeclaration getImplementation(ClassDeclaration classDeclaration, ProcedureDeclaration method) {
+		List<ProcedureDeclaration> vmt = classDeclaration.getVirtualMethodTable();
+		// VMT index 0 is the pointer to the ctable
+		int index = method.getVMTIndex() - 1;
+		if (index < 0 || index >= vmt.size()) {
+			return null;
+		}
+		return vmt.get(index);
+	}
+
+	/** Get the implementation which is called for the given method on an object of the given static type, if this
+	 * is the same for the type and all of its subclasses.
+	 *
+	 * @return the single implementation or null if the call has to be dispatched at runtime */
+	public ProcedureDeclaration getUniqueImplementation(ClassDeclaration staticType, ProcedureDeclaration method) {
+		List<ClassDeclaration> classes = this.subClasses.get(staticType);
+		if (classes == null) {
+			return null;
+		}
+		ProcedureDeclaration implementation = null;
+		for (ClassDeclaration classDeclaration : classes) {
+			ProcedureDeclaration candidate = getImplementation(classDeclaration, method);
+			if (candidate == null || (implementation != null && candidate != implementation)) {
+				return null;
+			}
+			implementation = candidate;
+		}
+		return implementation;
+	}
+
+	/** Get the implementation of the called method, if it can be determined at compile time. This is the case for calls
+	 * on parent(...) and if no subclass of the static type of the receiver overrides the method.
+	 *
+	 * @return the implementation or null if the call has to go through the VMT */
+	public ProcedureDeclaration getStaticImplementation(FunctionCall call) {
+		ProcedureDeclaration declaration = call.getDeclaration();
+		ClassDeclaration receiverType = declaration.getDefiningClass();
+		if (call.getParentNode() instanceof MemberAccess) {
+			Expression receiver = ((MemberAccess) call.getParentNode()).getLeft();
+			if (receiver.getTypeDeclaration() instanceof ClassDeclaration) {
+				receiverType = (ClassDeclaration) receiver.getTypeDeclaration();
+				if (receiver instanceof ParentExpression) {
+					return getImplementation(receiverType, declaration);
+				}
+			}
+		}
+		return getUniqueImplementation(receiverType, declaration);
+	}
+}
@@ -40,6 +40,7 @@ package de.uni.bremen.monty.moco.codegeneration;
 
 import static de.uni.bremen.monty.moco.codegeneration.types.LLVMTypeFactory.array;
 import static de.uni.bremen.monty.moco.codegeneration.types.LLVMTypeFactory.double64;
+import static de.uni.bremen.monty.moco.codegeneration.types.LLVMTypeFactory.function;
 import static de.uni.bremen.monty.moco.codegeneration.types.LLVMTypeFactory.int1;
 import static de.uni.bremen.monty.moco.codegeneration.types.LLVMTypeFactory.int32;
 import static de.uni.bremen.monty.moco.codegeneration.types.LLVMTypeFactory.int64;
@@ -60,13 +61,19 @@ import de.uni.bremen.monty.moco.ast.declaration.ClassDeclaration;
 import de.uni.bremen.monty.moco.ast.declaration.FunctionDeclaration;
 import de.uni.bremen.monty.moco.ast.declaration.ProcedureDeclaration;
 import de.uni.bremen.monty.moco.ast.declaration.TypeDeclaration;
+import de.uni.bremen.monty.moco.ast.declaration.VariableDeclaration;
 import de.uni.bremen.monty.moco.codegeneration.context.CodeContext;
+import de.uni.bremen.monty.moco.codegeneration.context.CodeContext.IcmpOperand;
 import de.uni.bremen.monty.moco.codegeneration.context.CodeContext.LLVMFunctionAttribute;
 import de.uni.bremen.monty.moco.codegeneration.context.CodeContext.Linkage;
+import de.uni.bremen.monty.moco.codegeneration.context.ConstantPool;
 import de.uni.bremen.monty.moco.codegeneration.context.Operations;
 import de.uni.bremen.monty.moco.codegeneration.identifier.FunctionSignature;
 import de.uni.bremen.monty.moco.codegeneration.identifier.LLVMIdentifier;
 import de.uni.bremen.monty.moco.codegeneration.identifier.LLVMIdentifierFactory;
+import de.uni.bremen.monty.moco.codegeneration.identifier.LocalVariable;
+import de.uni.bremen.monty.moco.codegeneration.identifier.ScalarConstant;
+import de.uni.bremen.monty.moco.codegeneration.identifier.StructConstant;
 import de.uni.bremen.monty.moco.codegeneration.types.LLVMArrayType;
 import de.uni.bremen.monty.moco.codegeneration.types.LLVMFunctionType;
 import de.uni.bremen.monty.moco.codegeneration.types.LLVMPointer;
@@ -80,6 +87,7 @@ import de.uni.bremen.monty.moco.codegeneration.types.LLVMTypeFactory.LLVMInt8;
 import de.uni.bremen.monty.moco.codegeneration.types.LLVMTypeFactory.LLVMVoidType;
 import de.uni.bremen.monty.moco.codegeneration.types.TypeConverter;
 import de.uni.bremen.monty.moco.codegeneration.voodoo.BlackMagic;
+import de.uni.bremen.monty.moco.util.Params;
 
 /** This class should contain most of the logic for the CodeGeneration. Mainly methods are called from the
  * CodeGenerationVisitor and have a Parameter 'CodeContext c'. On this argument LLVM instructions can be executed.
@@ -93,42 +101,47 @@ public class CodeGenerator {
 	private final Operations operations;
 	private final BlackMagic blackMagic;
 	private final TypeConverter typeConverter;
+	private final ClassHierarchy classHierarchy;
 
 	/*
 	 * Map an ASTNode to a label prefix.
 	 */
 	protected HashMap<ASTNode, String> node2label = new HashMap<>();
 
-	/*
-	 * Map each label to its number of occurrences. We use this information to create unique labels in the resulting
-	 * LLVM code.
-	 */
-	protected HashMap<String, Integer> label2occurrences = new HashMap<>();
-
 	private final LLVMIdentifierFactory llvmIdentifierFactory;
 
-	public CodeGenerator(TypeConverter typeConverter, LLVMIdentifierFactory llvmIdentifierFactory) {
+	/** The number of elements added to the doubled capacity when an array grows, so that empty arrays grow too. */
+	private static final int MIN_ARRAY_GROWTH = 4;
+
+	/** The size of the garbage collected heap in MiB. */
+	private final int heapSize;
+
+	/** Whether objects are allocated from an arena which is never freed instead of the garbage collected heap. */
+	private final boolean useArena;
+
+	/** All global variables which may hold an object and thus are roots for the garbage collector. */
+	private final List<LLVMIdentifier<LLVMType>> globalRoots = new ArrayList<>();
+
+	/** The constants of the module, see {@link ConstantPool}. */
+	private final ConstantPool constants;
+
+	/** The constant pool of string literals. Each distinct string is emitted only once. */
+	private final HashMap<String, LLVMIdentifier<LLVMArrayType<LLVMInt8>>> constantStrings = new HashMap<>();
+
+	/** The constant pool of boxed literals. Each distinct value of a core class is emitted only once as a constant
+	 * object, which is shared by all its uses instead of being allocated each time the literal is evaluated. */
+	private final HashMap<String, LLVMIdentifier<LLVMType>> constantBoxes = new HashMap<>();
+
+	public CodeGenerator(TypeConverter typeConverter, ConstantPool constants, ClassHierarchy classHierarchy,
+	        LLVMIdentifierFactory llvmIdentifierFactory, Params params) {
 		this.typeConverter = typeConverter;
+		this.constants = constants;
+		this.classHierarchy = classHierarchy;
+		this.heapSize = params.getHeapSize();
+		this.useArena = params.isUseArena();
 		this.llvmIdentifierFactory = llvmIdentifierFactory;
 		this.operations = new Operations(this, llvmIdentifierFactory);
 		this.blackMagic = new BlackMagic(this.operations);
-		initFormatStrings();
-	}
-
-	public void initFormatStrings() {
-		LLVMArrayType<LLVMInt8> stringType = array(int8(), 3);
-		LLVMIdentifier<LLVMArrayType<LLVMInt8>> stringFormatIdent =
-		        this.llvmIdentifierFactory.newGlobal(".stringFormat", stringType);
-		this.operations.setStringFormat(this.llvmIdentifierFactory.elementPointerTo(stringFormatIdent));
-		LLVMIdentifier<LLVMArrayType<LLVMInt8>> intFormatIdent =
-		        this.llvmIdentifierFactory.newGlobal(".intFormat", stringType);
-		this.operations.setIntFormat(this.llvmIdentifierFactory.elementPointerTo(intFormatIdent));
-		LLVMIdentifier<LLVMArrayType<LLVMInt8>> floatFormatIdent =
-		        this.llvmIdentifierFactory.newGlobal(".floatFormat", stringType);
-		this.operations.setFloatFormat(this.llvmIdentifierFactory.elementPointerTo(floatFormatIdent));
-		LLVMIdentifier<LLVMArrayType<LLVMInt8>> charFormatIdent =
-		        this.llvmIdentifierFactory.newGlobal(".charFormat", stringType);
-		this.operations.setCharFormat(this.llvmIdentifierFactory.elementPointerTo(charFormatIdent));
 	}
 
 	private <T extends LLVMType> LLVMIdentifier<LLVMPointer<T>> castIfNeeded(CodeContext c,
@@ -142,18 +155,46 @@ public class CodeGenerator {
 		return variable;
 	}
 
+	/** Converts the variable to the given type. Pointers are casted, unboxed values of a core class are boxed if a
+	 * pointer is expected and boxed values are unboxed if a plain value is expected. */
 	public <T extends LLVMType> LLVMIdentifier<T> castIfNeeded(CodeContext c, LLVMIdentifier<T> variable, T toType) {
+		if (variable.getType().equals(toType)) {
+			return variable;
+		}
 		if ((variable.getType() instanceof LLVMPointer) && (toType instanceof LLVMPointer)) {
 			return (LLVMIdentifier<T>) (LLVMIdentifier<?>) castIfNeeded(
 			        c,
-			        (LLVMIdentifier<LLVMPointer<LLVMType>>) (LLVMIdentifier<?>) variable,
+			        (LLVMIdentifier<LLVMPointer<LLVMType>>) (LLVMIdentifier<?>) resolveIfNeeded(c, variable),
 			        (LLVMPointer<LLVMType>) toType);
 		}
+		if (toType instanceof LLVMPointer) {
+			TypeDeclaration boxedType = this.typeConverter.mapToBoxedType(variable.getType());
+			if (boxedType != null) {
+				LLVMIdentifier<LLVMType> boxed =
+				        boxType(c, resolveIfNeeded(c, (LLVMIdentifier<LLVMType>) variable), boxedType);
+				return castIfNeeded(c, (LLVMIdentifier<T>) boxed, toType);
+			}
+		} else if (variable.getType() instanceof LLVMPointer) {
+			TypeDeclaration boxedType = this.typeConverter.mapToBoxedType(toType);
+			if (boxedType != null) {
+				LLVMIdentifier<LLVMType> boxed =
+				        castIfNeeded(c, (LLVMIdentifier<LLVMType>) variable, (LLVMType) mapToLLVMType(boxedType));
+				return unboxType(c, boxed, toType);
+			}
+		}
 		return variable;
 	}
 
+	/** Like {@link #castIfNeeded(CodeContext, LLVMIdentifier, LLVMType)} but always returns a resolved value. */
+	public <T extends LLVMType> LLVMIdentifier<T> resolveAndCastIfNeeded(CodeContext c, LLVMIdentifier<T> variable,
+	        T toType) {
+		return castIfNeeded(c, resolveIfNeeded(c, variable), toType);
+	}
+
 	private <T extends LLVMType> LLVMIdentifier<T> resolveIfNeeded(CodeContext c, LLVMIdentifier<T> addr) {
-		if (addr.needToBeResolved()) {
+		if (addr instanceof LocalVariable) {
+			return c.readVariable((LocalVariable<T>) addr);
+		} else if (addr.needToBeResolved()) {
 			LLVMIdentifier<LLVMPointer<T>> sourcePointer = this.llvmIdentifierFactory.pointerTo(addr);
 			LLVMIdentifier<T> targetPointer = this.llvmIdentifierFactory.newLocal(addr.getType(), false);
 			return c.load(sourcePointer, targetPointer);
@@ -163,11 +204,12 @@ public class CodeGenerator {
 	}
 
 	private List<LLVMIdentifier<? extends LLVMType>> resolveArgumentsIfNeeded(CodeContext c,
-	        List<LLVMIdentifier<?>> arguments, List<TypeDeclaration> parameters) {
+	        List<LLVMIdentifier<?>> arguments, List<TypeDeclaration> parameters, boolean boxed) {
 		List<LLVMIdentifier<? extends LLVMType>> resolvedArguments = new ArrayList<>(arguments.size());
 		for (int i = 0; i < arguments.size(); i++) {
 			LLVMIdentifier<LLVMType> resolvedArgument = resolveIfNeeded(c, (LLVMIdentifier<LLVMType>) arguments.get(i));
-			LLVMType expectedType = mapToLLVMType(parameters.get(i));
+			LLVMType expectedType =
+			        boxed ? mapToLLVMType(parameters.get(i)) : mapToValueType(parameters.get(i));
 			resolvedArguments.add(castIfNeeded(c, resolvedArgument, expectedType));
 		}
 		return resolvedArguments;
@@ -192,13 +234,22 @@ public class CodeGenerator {
 		return unboxedArguments;
 	}
 
-	private LLVMIdentifier<LLVMArrayType<LLVMInt8>> addStringToDataField(CodeContext c, String value) {
+	private LLVMIdentifier<LLVMArrayType<LLVMInt8>> addStringToDataField(ConstantPool constants, String value) {
+		LLVMIdentifier<LLVMArrayType<LLVMInt8>> identifier = this.constantStrings.get(value);
+		if (identifier != null) {
+			return identifier;
+		}
 		int length = value.length() + 1;
 
 		LLVMArrayType<LLVMInt8> type = array(int8(), length);
-		LLVMIdentifier<LLVMArrayType<LLVMInt8>> identifier = this.llvmIdentifierFactory.newGlobal(type);
 		String internValue = "c\"" + value + "\\00\";";
-		c.global(Linkage.priv, (LLVMIdentifier<LLVMType>) (LLVMIdentifier<?>) identifier, true, internValue);
+		identifier = this.llvmIdentifierFactory.newGlobal(type, internValue);
+		constants.define(identifier.getName()).global(
+		        Linkage.priv,
+		        (LLVMIdentifier<LLVMType>) (LLVMIdentifier<?>) identifier,
+		        true,
+		        internValue);
+		this.constantStrings.put(value, identifier);
 		return identifier;
 	}
 
@@ -233,12 +284,18 @@ public class CodeGenerator {
 	public void buildConstructor(CodeContext c, ClassDeclaration classDeclaration) {
 		List<LLVMIdentifier<? extends LLVMType>> llvmParameter = new ArrayList<>();
 		String constructorName = classDeclaration.getMangledIdentifier().getSymbol() + "_constructor";
-		addFunction(c, classDeclaration, llvmParameter, constructorName);
-
 		LLVMPointer<LLVMType> selfType = mapToLLVMType(classDeclaration);
+		addFunction(c, selfType, llvmParameter, constructorName);
+
 		LLVMIdentifier<LLVMPointer<LLVMType>> selfReference = this.llvmIdentifierFactory.newLocal(selfType, false);
 		malloc(c, selfReference);
+		initVMTPointer(c, selfReference, classDeclaration);
 
+		returnValue(c, (LLVMIdentifier) selfReference, (LLVMType) selfType);
+	}
+
+	private void initVMTPointer(CodeContext c, LLVMIdentifier<LLVMPointer<LLVMType>> selfReference,
+	        ClassDeclaration classDeclaration) {
 		LLVMIdentifier<LLVMType> vmtPointer =
 		        (LLVMIdentifier<LLVMType>) (LLVMIdentifier<?>) getVMTPointer(c, selfReference, classDeclaration);
 		LLVMIdentifier<LLVMType> vmtData =
@@ -246,8 +303,20 @@ public class CodeGenerator {
 		                classDeclaration.getMangledIdentifier().getSymbol() + "_vmt_data",
 		                vmtPointer.getType());
 		c.store(vmtData, this.llvmIdentifierFactory.pointerTo(vmtPointer));
+	}
 
-		returnValue(c, (LLVMIdentifier) selfReference, classDeclaration);
+	/** Creates an object in the stack frame of the current function instead of calling the constructor. This may only
+	 * be used if the object does not outlive the call, see {@link EscapeAnalysis}. The memory is reserved once in the
+	 * entry block and is cleared and initialized like a new object each time this code is reached. */
+	public LLVMIdentifier<LLVMType> allocateOnStack(CodeContext c, ClassDeclaration classDeclaration) {
+		LLVMPointer<LLVMType> selfType = mapToLLVMType(classDeclaration);
+		LLVMIdentifier<LLVMPointer<LLVMType>> selfReference = this.llvmIdentifierFactory.newLocal(selfType, false);
+		c.allocaInEntryBlock(selfReference, selfType.getInternalType());
+		c.store(
+		        this.llvmIdentifierFactory.constantZero(selfType.getInternalType()),
+		        (LLVMIdentifier<LLVMPointer<LLVMType>>) selfReference);
+		initVMTPointer(c, selfReference, classDeclaration);
+		return (LLVMIdentifier<LLVMType>) (LLVMIdentifier<?>) selfReference;
 	}
 
 	public LLVMIdentifier<LLVMType> callConstructor(CodeContext c, ClassDeclaration classDeclaration) {
@@ -260,18 +329,18 @@ public class CodeGenerator {
 		return result;
 	}
 
-	/** Create a unique label prefix and store it under an association with the given node. */
+	/** Create a label prefix, which is unique in the current function, and store it under an association with the
+	 * given node. */
 	public String createLabelPrefix(String name, ASTNode node) {
-		if (!this.label2occurrences.containsKey(name)) {
-			this.label2occurrences.put(name, 0);
-		}
-		int id = this.label2occurrences.get(name);
-		String label = name + id;
-		this.label2occurrences.put(name, id + 1);
+		String label = createLabelPrefix(name);
 		this.node2label.put(node, label);
 		return label;
 	}
 
+	private String createLabelPrefix(String name) {
+		return this.llvmIdentifierFactory.newLabelPrefix(name);
+	}
+
 	/** Get the unique label prefix associated with the given node.
 	 *
 	 * This is a Map lookup so the error will be thrown if node does not exist as key */
@@ -279,19 +348,19 @@ public class CodeGenerator {
 		return this.node2label.get(node);
 	}
 
-	public LLVMIdentifier<LLVMType> declareGlobalVariable(CodeContext c, String name, TypeDeclaration type) {
-		LLVMType llvmType = mapToLLVMType(type);
+	public LLVMIdentifier<LLVMType> declareGlobalVariable(ConstantPool constants, String name, TypeDeclaration type) {
+		LLVMType llvmType = mapToValueType(type);
 		LLVMIdentifier<LLVMType> variable = this.llvmIdentifierFactory.newGlobal(name, llvmType);
-		c.global(Linkage.priv, variable, false);
+		constants.define(variable.getName()).global(Linkage.priv, variable, false);
+		if (llvmType instanceof LLVMPointer) {
+			this.globalRoots.add(variable);
+		}
 		return variable;
 	}
 
 	public LLVMIdentifier<LLVMType> declareLocalVariable(CodeContext c, String name, TypeDeclaration type) {
-		LLVMType llvmType = mapToLLVMType(type);
-
-		LLVMIdentifier<LLVMType> variable = this.llvmIdentifierFactory.newLocal(name, llvmType, true);
-		c.alloca(variable, llvmType);
-		return variable;
+		LLVMType llvmType = mapToValueType(type);
+		return this.llvmIdentifierFactory.newLocalVariable(name, llvmType);
 	}
 
 	public <T extends LLVMType> LLVMIdentifier<T> resolveLocalVarName(String name, TypeDeclaration type,
@@ -300,8 +369,17 @@ public class CodeGenerator {
 		return this.llvmIdentifierFactory.newLocal(name, llvmType, resolvable);
 	}
 
-	public <T extends LLVMType> LLVMIdentifier<T> resolveGlobalVarName(String name, TypeDeclaration type) {
-		T llvmType = mapToLLVMType(type);
+	public <T extends LLVMType> LLVMIdentifier<T> resolveLocalVarName(String name, VariableDeclaration variable,
+	        boolean resolvable) {
+		T llvmType = mapToVariableType(variable);
+		if (resolvable) {
+			return this.llvmIdentifierFactory.newLocalVariable(name, llvmType);
+		}
+		return this.llvmIdentifierFactory.newLocal(name, llvmType, resolvable);
+	}
+
+	public <T extends LLVMType> LLVMIdentifier<T> resolveGlobalVarName(String name, VariableDeclaration variable) {
+		T llvmType = mapToVariableType(variable);
 		return this.llvmIdentifierFactory.newGlobal(name, llvmType);
 	}
 
@@ -315,31 +393,61 @@ public class CodeGenerator {
 
 		active.define(Arrays.asList(LLVMFunctionAttribute.ssp), mainFunction);
 		active.label("entry");
+		if (this.useArena) {
+			return;
+		}
+
+		// The garbage collector scans the stack up to the frame of main.
+		LLVMIdentifier<LLVMType> frameAddress =
+		        this.llvmIdentifierFactory.newGlobal("llvm.frameaddress", (LLVMType) pointer(int8()));
+		LLVMIdentifier<LLVMPointer<LLVMInt8>> stackBottom =
+		        active.call(frameAddress, this.llvmIdentifierFactory.newLocal(pointer(int8()), false),
+		                this.llvmIdentifierFactory.constant(int32(), 0));
+		active.callVoid(
+		        this.llvmIdentifierFactory.newGlobal("gc_init", (LLVMType) voidType()),
+		        stackBottom,
+		        this.llvmIdentifierFactory.constant(int64(), this.heapSize));
+	}
+
+	/** Defines gc_mark_globals, which is called by the garbage collector to mark the objects referenced by global
+	 * variables. */
+	public void addGlobalRoots(CodeContext c) {
+		c.define(
+		        new ArrayList<LLVMFunctionAttribute>(),
+		        this.llvmIdentifierFactory.newFunction(
+		                voidType(),
+		                "gc_mark_globals",
+		                Collections.<LLVMIdentifier<? extends LLVMType>> emptyList()));
+		c.label("entry");
+		LLVMIdentifier<LLVMType> markSignature =
+		        this.llvmIdentifierFactory.newGlobal("gc_mark", (LLVMType) voidType());
+		for (LLVMIdentifier<LLVMType> global : this.globalRoots) {
+			LLVMIdentifier<LLVMPointer<LLVMType>> object = (LLVMIdentifier<LLVMPointer<LLVMType>>) (LLVMIdentifier<?>) resolveIfNeeded(c, global);
+			LLVMIdentifier<LLVMPointer<LLVMType>> word = this.llvmIdentifierFactory.newLocal(pointer((LLVMType) int8()));
+			c.bitcast(word, object);
+			c.callVoid(markSignature, word);
+		}
+		c.ret(this.llvmIdentifierFactory.voidId());
 	}
 
-	public void addFunction(CodeContext c, TypeDeclaration returnType,
+	public void addFunction(CodeContext c, LLVMType llvmReturnType,
 	        List<LLVMIdentifier<? extends LLVMType>> llvmParameter, String name) {
-		LLVMType llvmReturnType = mapToLLVMType(returnType);
 		c.define(
 		        new ArrayList<LLVMFunctionAttribute>(),
 		        this.llvmIdentifierFactory.newFunction(llvmReturnType, name, llvmParameter));
 		c.label("entry");
 	}
 
-	public void addNativeFunction(CodeContext c, TypeDeclaration returnType,
+	public void addNativeFunction(CodeContext c, LLVMType llvmReturnType,
 	        List<LLVMIdentifier<? extends LLVMType>> llvmParameter, String name) {
-		addFunction(c, returnType, llvmParameter, name);
+		addFunction(c, llvmReturnType, llvmParameter, name);
 
 		List<LLVMIdentifier<?>> unboxedParameter = unboxArgumentsIfNeeded(c, llvmParameter);
 
 		LLVMIdentifier<LLVMType> result =
 		        (LLVMIdentifier<LLVMType>) this.blackMagic.generateNativeFunction(c, name, unboxedParameter);
 		if (result != null) {
-			if (result.getType() instanceof LLVMPointer) {
-				returnValue(c, result, returnType);
-			} else {
-				returnValue(c, boxType(c, result, returnType), returnType);
-			}
+			returnValue(c, result, llvmReturnType);
 		} else {
 			returnValue(
 			        c,
@@ -349,55 +457,169 @@ public class CodeGenerator {
 	}
 
 	public void returnMain(CodeContext c) {
+		flushOutput(c);
 		c.ret(this.llvmIdentifierFactory.constant(int32(), 0));
 	}
 
 	public void returnValue(CodeContext c, LLVMIdentifier<LLVMType> returnValue, TypeDeclaration expectedType) {
+		returnValue(c, returnValue, (LLVMType) mapToLLVMType(expectedType));
+	}
+
+	public void returnValue(CodeContext c, LLVMIdentifier<LLVMType> returnValue, LLVMType expectedType) {
 		LLVMIdentifier<LLVMType> resolved = resolveIfNeeded(c, returnValue);
-		LLVMIdentifier<LLVMType> casted = castIfNeeded(c, resolved, mapToLLVMType(expectedType));
+		LLVMIdentifier<LLVMType> casted = castIfNeeded(c, resolved, expectedType);
 		c.ret(casted);
 	}
 
-	public LLVMIdentifier<LLVMPointer<LLVMInt8>> addConstantString(CodeContext constant, String value) {
-		LLVMIdentifier<LLVMArrayType<LLVMInt8>> nameOfDataField = addStringToDataField(constant, value);
+	public LLVMIdentifier<LLVMPointer<LLVMInt8>> addConstantString(ConstantPool constants, String value) {
+		LLVMIdentifier<LLVMArrayType<LLVMInt8>> nameOfDataField = addStringToDataField(constants, value);
 		LLVMIdentifier<LLVMPointer<LLVMInt8>> stringAsCharPointer =
 		        this.llvmIdentifierFactory.elementPointerTo(nameOfDataField);
 		return stringAsCharPointer;
 	}
 
+	/** Writes the output buffered by print. Must be called before the program ends. */
+	private void flushOutput(CodeContext c) {
+		c.callVoid(this.llvmIdentifierFactory.newGlobal("out_flush", (LLVMType) voidType()));
+	}
+
 	public void exit(CodeContext c, int statusCode) {
+		flushOutput(c);
 		LLVMIdentifier<LLVMType> signature = this.llvmIdentifierFactory.newGlobal("exit", (LLVMType) voidType());
 		c.callVoid(signature, this.llvmIdentifierFactory.constant(int32(), statusCode));
 	}
 
+	/** Raises the given object with @monty_raise, which unwinds to the innermost try block of a calling function or
+	 * exits the program. Values of the core classes are boxed. */
+	public void raise(CodeContext c, LLVMIdentifier<LLVMType> object) {
+		LLVMIdentifier<LLVMType> raised = resolveAndCastIfNeeded(c, object, (LLVMType) pointer(int8()));
+		c.callVoid(this.llvmIdentifierFactory.newGlobal("monty_raise", (LLVMType) voidType()), raised);
+		c.unreachable();
+	}
+
+	/** Starts the landing pad of a try block.
+	 *
+	 * @return the raised object as an Object */
+	public LLVMIdentifier<LLVMType> catchException(CodeContext c) {
+		LLVMType personalityType =
+		        pointer(function(
+		                int32(),
+		                Arrays.<LLVMType> asList(int32(), int32(), int64(), pointer(int8()), pointer(int8()))));
+		LLVMIdentifier<LLVMType> personality =
+		        this.llvmIdentifierFactory.newGlobal("monty_personality", personalityType);
+		LLVMIdentifier<LLVMType> landingPad =
+		        this.llvmIdentifierFactory.newLocal(
+		                (LLVMType) struct(Arrays.<LLVMType> asList(pointer(int8()), int32())),
+		                false);
+		LLVMIdentifier<LLVMType> exception = this.llvmIdentifierFactory.newLocal((LLVMType) pointer(int8()), false);
+		c.landingpad(personality, landingPad, exception);
+		LLVMIdentifier<LLVMType> object =
+		        c.call(
+		                this.llvmIdentifierFactory.newGlobal("monty_caught", (LLVMType) pointer(int8())),
+		                this.llvmIdentifierFactory.newLocal((LLVMType) pointer(int8()), false),
+		                exception);
+		return castIfNeeded(c, object, (LLVMType) mapToLLVMType(CoreClasses.objectType()));
+	}
+
 	/** Allocates heap memory for the given type and return a typed pointer. */
 	public <T extends LLVMType> LLVMIdentifier<LLVMPointer<T>> malloc(CodeContext c,
 	        LLVMIdentifier<LLVMPointer<T>> result) {
 		return malloc(c, result, (LLVMPointer<LLVMType>) result.getType());
 	}
 
-	/** Allocates heap memory for the given type and return a typed pointer. */
+	/** Allocates heap memory for the given type and return a typed pointer. The memory is taken from the garbage
+	 * collected heap or, if enabled, from the arena. */
 	public <T extends LLVMType> LLVMIdentifier<LLVMPointer<T>> malloc(CodeContext c,
 	        LLVMIdentifier<LLVMPointer<T>> result, LLVMPointer<LLVMType> inputType) {
 
-		LLVMIdentifier<LLVMPointer<LLVMType>> sizePtr = this.llvmIdentifierFactory.newLocal(inputType);
+		LLVMIdentifier<LLVMPointer<LLVMInt8>> mallocPtr = allocate(c, sizeOf(c, inputType));
+		c.bitcast((LLVMIdentifier) result, (LLVMIdentifier) mallocPtr);
+		return result;
+	}
+
+	/** Allocates the given number of bytes from the garbage collected heap or, if enabled, from the arena. */
+	private LLVMIdentifier<LLVMPointer<LLVMInt8>> allocate(CodeContext c, LLVMIdentifier<LLVMType> size) {
+		if (this.useArena) {
+			return arenaAlloc(c, size);
+		}
+		LLVMIdentifier<LLVMPointer<LLVMInt8>> s = this.llvmIdentifierFactory.newGlobal("gc_alloc", pointer(int8()));
+		LLVMIdentifier<LLVMPointer<LLVMInt8>> mallocPtr = this.llvmIdentifierFactory.newLocal(s.getType());
+		c.call((LLVMIdentifier<LLVMType>) (LLVMIdentifier<?>) s, mallocPtr, size);
+		return mallocPtr;
+	}
+
+	/** @return the size in bytes of the type the given pointer type points to, as an i64 */
+	private LLVMIdentifier<LLVMType> sizeOf(CodeContext c, LLVMPointer<LLVMType> pointerType) {
+		LLVMIdentifier<LLVMPointer<LLVMType>> sizePtr = this.llvmIdentifierFactory.newLocal(pointerType);
 		c.getelementptr(
 		        sizePtr,
-		        this.llvmIdentifierFactory.constantNull(inputType),
+		        this.llvmIdentifierFactory.constantNull(pointerType),
 		        this.llvmIdentifierFactory.constant(int32(), 1));
-		LLVMIdentifier<LLVMType> sizeInt = this.llvmIdentifierFactory.newLocal((LLVMType) int32());
-		c.ptrtoint(sizeInt, sizePtr);
+		LLVMIdentifier<LLVMType> size = this.llvmIdentifierFactory.newLocal((LLVMType) int64());
+		c.ptrtoint(size, sizePtr);
+		return size;
+	}
 
-		LLVMIdentifier<LLVMPointer<LLVMInt8>> s = this.llvmIdentifierFactory.newGlobal("malloc", pointer(int8()));
-		LLVMIdentifier<LLVMPointer<LLVMInt8>> mallocPtr = this.llvmIdentifierFactory.newLocal(s.getType());
-		c.call((LLVMIdentifier<LLVMType>) (LLVMIdentifier<?>) s, mallocPtr, sizeInt);
-		c.bitcast((LLVMIdentifier) result, (LLVMIdentifier) mallocPtr);
-		return result;
+	/** Allocates memory from the arena by incrementing its top pointer. Only if the current chunk of the arena is full
+	 * arena_alloc_chunk is called to map a new one. All allocated types start with a pointer or an i64, so their size
+	 * is a multiple of 8, and the elements of arrays are allocated in multiples of 8 bytes as well, so the top pointer
+	 * stays aligned. */
+	private LLVMIdentifier<LLVMPointer<LLVMInt8>> arenaAlloc(CodeContext c, LLVMIdentifier<LLVMType> size) {
+		String labelPrefix = createLabelPrefix("arena");
+		String fastLabel = labelPrefix + ".fast";
+		String slowLabel = labelPrefix + ".slow";
+		String endLabel = labelPrefix + ".end";
+
+		LLVMIdentifier<LLVMType> topPointer =
+		        this.llvmIdentifierFactory.newGlobal("arena_top", (LLVMType) pointer(int8()));
+		LLVMIdentifier<LLVMType> endPointer =
+		        this.llvmIdentifierFactory.newGlobal("arena_end", (LLVMType) pointer(int8()));
+		LLVMIdentifier<LLVMPointer<LLVMType>> top =
+		        (LLVMIdentifier<LLVMPointer<LLVMType>>) (LLVMIdentifier<?>) resolveIfNeeded(c, topPointer);
+		LLVMIdentifier<LLVMPointer<LLVMType>> end =
+		        (LLVMIdentifier<LLVMPointer<LLVMType>>) (LLVMIdentifier<?>) resolveIfNeeded(c, endPointer);
+		LLVMIdentifier<LLVMType> topInt = this.llvmIdentifierFactory.newLocal((LLVMType) int64());
+		c.ptrtoint(topInt, top);
+		LLVMIdentifier<LLVMType> endInt = this.llvmIdentifierFactory.newLocal((LLVMType) int64());
+		c.ptrtoint(endInt, end);
+		LLVMIdentifier<LLVMType> free =
+		        c.binaryOperation("sub", endInt, topInt, this.llvmIdentifierFactory.newLocal((LLVMType) int64()));
+		LLVMIdentifier<LLVMBool> fits =
+		        c.icmp(IcmpOperand.ule, size, free, this.llvmIdentifierFactory.newLocal(int1(), false));
+		c.branch(fits, fastLabel, slowLabel);
+
+		c.label(fastLabel);
+		LLVMIdentifier<LLVMPointer<LLVMInt8>> newTop = this.llvmIdentifierFactory.newLocal(pointer(int8()), false);
+		c.getelementptr(newTop, top, size);
+		c.store(newTop, this.llvmIdentifierFactory.pointerTo((LLVMIdentifier<LLVMPointer<LLVMInt8>>) (LLVMIdentifier<?>) topPointer));
+		c.branch(endLabel);
+
+		c.label(slowLabel);
+		LLVMIdentifier<LLVMType> chunkSignature =
+		        this.llvmIdentifierFactory.newGlobal("arena_alloc_chunk", (LLVMType) pointer(int8()));
+		LLVMIdentifier<LLVMPointer<LLVMInt8>> chunk =
+		        c.call(chunkSignature, this.llvmIdentifierFactory.newLocal(pointer(int8()), false), size);
+		c.branch(endLabel);
+
+		c.label(endLabel);
+		List<LLVMIdentifier<LLVMPointer<LLVMInt8>>> identifiers = new ArrayList<>();
+		identifiers.add((LLVMIdentifier<LLVMPointer<LLVMInt8>>) (LLVMIdentifier<?>) top);
+		identifiers.add(chunk);
+		return c.phi(
+		        pointer(int8()),
+		        false,
+		        identifiers,
+		        this.llvmIdentifierFactory.newLocal(pointer(int8()), false),
+		        Arrays.asList(fastLabel, slowLabel));
 	}
 
 	public <T extends LLVMType> void assign(CodeContext c, LLVMIdentifier<T> target, LLVMIdentifier<T> source) {
 		source = resolveIfNeeded(c, source);
 		source = castIfNeeded(c, source, target.getType());
+		if (target instanceof LocalVariable) {
+			c.writeVariable((LocalVariable<T>) target, source);
+			return;
+		}
 		LLVMIdentifier<LLVMPointer<T>> targetPointer = this.llvmIdentifierFactory.pointerTo(target);
 		c.store(source, targetPointer);
 	}
@@ -405,7 +627,7 @@ public class CodeGenerator {
 	public LLVMIdentifier<LLVMType> accessMember(CodeContext c, LLVMIdentifier<LLVMPointer<LLVMType>> pointer,
 	        int attributeOffset, TypeDeclaration type, boolean load) {
 
-		LLVMIdentifier<LLVMType> result = this.llvmIdentifierFactory.newLocal(mapToLLVMType(type), load);
+		LLVMIdentifier<LLVMType> result = this.llvmIdentifierFactory.newLocal(mapToValueType(type), load);
 		c.getelementptr(
 		        result,
 		        resolveIfNeeded(c, pointer),
@@ -418,6 +640,28 @@ public class CodeGenerator {
 		return this.typeConverter.mapToLLVMType(type);
 	}
 
+	public <T extends LLVMType> T mapToValueType(TypeDeclaration type) {
+		return this.typeConverter.mapToValueType(type);
+	}
+
+	public <T extends LLVMType> T mapToSignatureType(ProcedureDeclaration procedure, TypeDeclaration type) {
+		return this.typeConverter.mapToSignatureType(procedure, type);
+	}
+
+	public <T extends LLVMType> T mapToVariableType(VariableDeclaration variable) {
+		return this.typeConverter.mapToVariableType(variable);
+	}
+
+	/** Resolves the given value and boxes it, if it is an unboxed value of a core class. */
+	private LLVMIdentifier<LLVMPointer<LLVMType>> boxIfNeeded(CodeContext c,
+	        LLVMIdentifier<LLVMPointer<LLVMType>> value, ClassDeclaration type) {
+		LLVMIdentifier<LLVMType> resolved = resolveIfNeeded(c, (LLVMIdentifier<LLVMType>) (LLVMIdentifier<?>) value);
+		return (LLVMIdentifier<LLVMPointer<LLVMType>>) (LLVMIdentifier<?>) castIfNeeded(
+		        c,
+		        resolved,
+		        (LLVMType) mapToLLVMType(type));
+	}
+
 	public LLVMIdentifier<LLVMPointer<LLVMType>> castClass(CodeContext c,
 	        LLVMIdentifier<LLVMPointer<LLVMType>> pointer, ClassDeclaration sourceType, ClassDeclaration resultType,
 	        String labelPrefix) {
@@ -425,7 +669,10 @@ public class CodeGenerator {
 		String successLabel = labelPrefix + ".success";
 		String failureLabel = labelPrefix + ".failure";
 
-		pointer = resolveIfNeeded(c, pointer);
+		pointer = boxIfNeeded(c, pointer, sourceType);
+		if (this.classHierarchy.isSubClass(sourceType, resultType)) {
+			return castIfNeeded(c, pointer, (LLVMPointer<LLVMType>) mapToLLVMType(resultType));
+		}
 		LLVMIdentifier<LLVMBool> isaCmpResult = isClass(c, pointer, sourceType, resultType);
 
 		c.branch(isaCmpResult, successLabel, failureLabel);
@@ -436,22 +683,36 @@ public class CodeGenerator {
 		return castIfNeeded(c, pointer, (LLVMPointer<LLVMType>) mapToLLVMType(resultType));
 	}
 
+	/** Checks whether the object is an instance of the result type. If this follows from the static type of the
+	 * object the check is omitted. Otherwise the entry of the object's display at the depth of the result type is
+	 * compared to the VMT of the result type, which takes a single load and compare. */
 	public LLVMIdentifier<LLVMBool> isClass(CodeContext c, LLVMIdentifier<LLVMPointer<LLVMType>> pointer,
 	        ClassDeclaration sourceType, ClassDeclaration resultType) {
 
-		pointer = resolveIfNeeded(c, pointer);
+		if (this.classHierarchy.isSubClass(sourceType, resultType)) {
+			return this.llvmIdentifierFactory.constant(int1(), true);
+		}
+
+		pointer = boxIfNeeded(c, pointer, sourceType);
 		LLVMIdentifier<LLVMPointer<LLVMType>> vmt = getVMTPointer(c, pointer, sourceType);
 		vmt = resolveIfNeeded(c, vmt);
 
-		LLVMType ctType = array(pointer(int8()), sourceType.getSuperClassDeclarationsRecursive().size() + 1);
+		LLVMType ctType = this.typeConverter.mapToDisplayType();
 		LLVMIdentifier<LLVMPointer<LLVMType>> ct = this.llvmIdentifierFactory.newLocal(pointer(ctType), true);
 		c.getelementptr(ct, vmt, this.llvmIdentifierFactory.constant(int32(), 0), this.llvmIdentifierFactory.constant(int32(), 0));
 		ct = resolveIfNeeded(c, ct);
 
-		LLVMType pointerArrayType = array(pointer(int8()), 0);
-		LLVMIdentifier<LLVMPointer<LLVMType>> pointerArray = this.llvmIdentifierFactory.newLocal(pointer(pointerArrayType));
-		c.bitcast(pointerArray, ct);
+		LLVMIdentifier<LLVMPointer<LLVMType>> displayEntry =
+		        this.llvmIdentifierFactory.newLocal(pointer((LLVMType) int8()), true);
+		c.getelementptr(
+		        displayEntry,
+		        ct,
+		        this.llvmIdentifierFactory.constant(int32(), 0),
+		        this.llvmIdentifierFactory.constant(int32(), this.classHierarchy.getDepth(resultType)));
+		LLVMIdentifier<LLVMType> displayVMT = resolveIfNeeded(c, (LLVMIdentifier<LLVMType>) (LLVMIdentifier<?>) displayEntry);
 
+		// The result type may never be instantiated, so make sure its VMT is emitted for the comparison.
+		mapToLLVMType(resultType);
 		LLVMType resultVMTType = struct(resultType.getMangledIdentifier().getSymbol() + "_vmt_type");
 		LLVMIdentifier<LLVMPointer<LLVMType>> resultVMT =
 		        this.llvmIdentifierFactory.newGlobal(
@@ -461,56 +722,359 @@ public class CodeGenerator {
 		        this.llvmIdentifierFactory.newLocal(pointer((LLVMType) int8()));
 		c.bitcast(resultPointer, resultVMT);
 
-		LLVMIdentifier<LLVMBool> isaCmpResult = this.llvmIdentifierFactory.newLocal(int1(), false);
-		LLVMIdentifier<LLVMBool> isaSignature = this.llvmIdentifierFactory.newGlobal("vmt_isa_class", int1());
-		c.call((LLVMIdentifier<LLVMType>) (LLVMIdentifier<?>) isaSignature, isaCmpResult, pointerArray, resultPointer);
-		return isaCmpResult;
+		return c.icmp(IcmpOperand.eq, displayVMT, resultPointer, this.llvmIdentifierFactory.newLocal(int1(), false));
 	}
 
+	/** Checks that the index lies within the bounds of the array and exits with status 3 otherwise. A single unsigned
+	 * compare covers negative indices as well as indices past the end. */
 	public void checkArrayBounds(CodeContext c, LLVMIdentifier<LLVMPointer<LLVMStructType>> array,
 	        LLVMIdentifier<LLVMInt> index) {
+		String labelPrefix = createLabelPrefix("bounds");
+		String successLabel = labelPrefix + ".success";
+		String failureLabel = labelPrefix + ".failure";
+
+		LLVMIdentifier<LLVMInt64> size = getArrayLength(c, array);
+		LLVMIdentifier<LLVMBool> inBounds =
+		        c.icmp(IcmpOperand.ult, index, size, this.llvmIdentifierFactory.newLocal(int1(), false));
+
+		c.branch(inBounds, successLabel, failureLabel);
+		c.label(failureLabel);
+		exit(c, 3);
+		c.branch(successLabel);
+		c.label(successLabel);
+	}
+
+	/** Branches before a loop to the first label if all indices from first up to the bound lie within the bounds of
+	 * each of the arrays or the loop does not run at all, and to the second label otherwise. Since the indices are
+	 * consecutive, only the first and the last one are compared.
+	 *
+	 * @param inclusive
+	 *            whether the bound itself is the last index
+	 * @param firstNonNegative
+	 *            whether the first index is known to be non-negative, so that only the last one needs a check */
+	public void branchOnArrayRange(CodeContext c, List<LLVMIdentifier<?>> arrays, LLVMIdentifier<?> first,
+	        LLVMIdentifier<?> bound, boolean inclusive, boolean firstNonNegative, String inBoundsLabel,
+	        String outOfBoundsLabel) {
+		LLVMIdentifier<LLVMInt> firstIndex =
+		        (LLVMIdentifier<LLVMInt>) (LLVMIdentifier<?>) resolveAndCastIfNeeded(
+		                c,
+		                (LLVMIdentifier<LLVMType>) first,
+		                (LLVMType) int64());
+		LLVMIdentifier<LLVMInt> boundIndex =
+		        (LLVMIdentifier<LLVMInt>) (LLVMIdentifier<?>) resolveAndCastIfNeeded(
+		                c,
+		                (LLVMIdentifier<LLVMType>) bound,
+		                (LLVMType) int64());
+
+		// If the loop does not run, the last index is not used. So it does not matter that bound - 1 wraps around for
+		// the smallest Int.
+		LLVMIdentifier<LLVMBool> empty =
+		        c.icmp(
+		                inclusive ? IcmpOperand.sgt : IcmpOperand.sge,
+		                firstIndex,
+		                boundIndex,
+		                this.llvmIdentifierFactory.newLocal(int1(), false));
+		LLVMIdentifier<LLVMInt> lastIndex = boundIndex;
+		if (!inclusive) {
+			lastIndex =
+			        c.binaryOperation(
+			                "sub",
+			                boundIndex,
+			                this.llvmIdentifierFactory.constant(int64(), 1),
+			                this.llvmIdentifierFactory.newLocal(int64(), false));
+		}
+		LLVMIdentifier<LLVMBool> inBounds = null;
+		for (LLVMIdentifier<?> array : arrays) {
+			LLVMIdentifier<LLVMInt64> size =
+			        getArrayLength(c, resolveIfNeeded(c, (LLVMIdentifier<LLVMPointer<LLVMStructType>>) array));
+			List<LLVMIdentifier<LLVMInt>> indices = new ArrayList<>();
+			if (!firstNonNegative) {
+				indices.add(firstIndex);
+			}
+			indices.add(lastIndex);
+			for (LLVMIdentifier<LLVMInt> index : indices) {
+				LLVMIdentifier<LLVMBool> valid =
+				        c.icmp(IcmpOperand.ult, index, size, this.llvmIdentifierFactory.newLocal(int1(), false));
+				if (inBounds == null) {
+					inBounds = valid;
+				} else {
+					inBounds =
+					        c.binaryOperation(
+					                "and",
+					                inBounds,
+					                valid,
+					                this.llvmIdentifierFactory.newLocal(int1(), false));
+				}
+			}
+		}
+		inBounds = c.binaryOperation("or", empty, inBounds, this.llvmIdentifierFactory.newLocal(int1(), false));
+		c.branch(inBounds, inBoundsLabel, outOfBoundsLabel);
+	}
 
-		List<LLVMType> arrayTypeList = Arrays.asList(int64(), array(pointer(int8()), 0));
-		array = castIfNeeded(c, array, pointer(struct(arrayTypeList)));
-		LLVMIdentifier<LLVMVoidType> boundsCheckSignature =
-		        this.llvmIdentifierFactory.newGlobal("array_bounds_check", voidType());
-		c.callVoid((LLVMIdentifier<LLVMType>) (LLVMIdentifier<?>) boundsCheckSignature, array, index);
+	/** @return the number of elements of the array */
+	public LLVMIdentifier<LLVMInt64> getArrayLength(CodeContext c, LLVMIdentifier<LLVMPointer<LLVMStructType>> array) {
+		return resolveIfNeeded(c, getArrayField(c, array, 0, (LLVMInt64) int64()));
 	}
 
+	/** Get a pointer to a field of the array header: 0 is the length, 1 the capacity and 2 the pointer to the
+	 * elements. */
+	private <T extends LLVMType> LLVMIdentifier<T> getArrayField(CodeContext c,
+	        LLVMIdentifier<LLVMPointer<LLVMStructType>> array, int field, T type) {
+		LLVMIdentifier<T> result = this.llvmIdentifierFactory.newLocal(type);
+		c.getelementptr(
+		        result,
+		        array,
+		        this.llvmIdentifierFactory.constant(int32(), 0),
+		        this.llvmIdentifierFactory.constant(int32(), field));
+		return result;
+	}
+
+	/** Get a pointer to the element of the array at the given index.
+	 *
+	 * @param checkBounds
+	 *            whether the index has to be checked against the bounds of the array */
+	public LLVMIdentifier<LLVMType> getArrayElement(CodeContext c, LLVMIdentifier<LLVMPointer<LLVMStructType>> array,
+	        ClassDeclaration arrayType, LLVMIdentifier<LLVMInt> index, boolean checkBounds) {
+		if (checkBounds) {
+			checkArrayBounds(c, array, index);
+		}
+		LLVMType elementType = this.typeConverter.mapToArrayElementType(arrayType);
+		LLVMIdentifier<LLVMPointer<LLVMType>> data = resolveIfNeeded(c, getArrayField(c, array, 2, pointer(elementType)));
+		LLVMIdentifier<LLVMType> result = this.llvmIdentifierFactory.newLocal(elementType);
+		c.getelementptr(result, data, index);
+		return result;
+	}
+
+	/** Accesses an array element right at the call of the native operator[], so that its bounds check can be left out
+	 * where it is redundant.
+	 *
+	 * @param target
+	 *            whether the element is assigned to, in which case a pointer to the element is returned
+	 * @return the value of the element or a pointer to it */
+	public LLVMIdentifier<LLVMType> arrayAccess(CodeContext c, List<LLVMIdentifier<?>> arguments,
+	        List<TypeDeclaration> parameters, boolean checkBounds, boolean target) {
+		List<LLVMIdentifier<? extends LLVMType>> resolvedArguments =
+		        resolveArgumentsIfNeeded(c, arguments, parameters, false);
+		ClassDeclaration arrayType = (ClassDeclaration) parameters.get(0);
+		LLVMIdentifier<LLVMType> element =
+		        getArrayElement(
+		                c,
+		                (LLVMIdentifier<LLVMPointer<LLVMStructType>>) resolvedArguments.get(0),
+		                arrayType,
+		                (LLVMIdentifier<LLVMInt>) resolvedArguments.get(1),
+		                checkBounds);
+		if (target) {
+			return element;
+		}
+		return resolveIfNeeded(c, element);
+	}
+
+	/** Gets the length of an array right at the call of the native len(). */
+	public LLVMIdentifier<LLVMInt64> arrayLength(CodeContext c, List<LLVMIdentifier<?>> arguments,
+	        List<TypeDeclaration> parameters) {
+		List<LLVMIdentifier<? extends LLVMType>> resolvedArguments =
+		        resolveArgumentsIfNeeded(c, arguments, parameters, false);
+		return getArrayLength(c, (LLVMIdentifier<LLVMPointer<LLVMStructType>>) resolvedArguments.get(0));
+	}
+
+	/** Appends the value to the end of the array. If the capacity of the array is used up its elements are moved to
+	 * a new block twice as large, so that appending takes amortized constant time. Arrays never shrink, an index which
+	 * was in bounds once stays in bounds. */
+	public void appendArrayElement(CodeContext c, LLVMIdentifier<LLVMPointer<LLVMStructType>> array,
+	        ClassDeclaration arrayType, LLVMIdentifier<LLVMType> value) {
+		String labelPrefix = createLabelPrefix("append");
+		String growLabel = labelPrefix + ".grow";
+		String storeLabel = labelPrefix + ".store";
+
+		LLVMType elementType = this.typeConverter.mapToArrayElementType(arrayType);
+		LLVMIdentifier<LLVMInt64> length = getArrayLength(c, array);
+		LLVMIdentifier<LLVMInt64> capacityField = getArrayField(c, array, 1, (LLVMInt64) int64());
+		LLVMIdentifier<LLVMInt64> capacity = resolveIfNeeded(c, capacityField);
+		LLVMIdentifier<LLVMBool> full =
+		        c.icmp(IcmpOperand.uge, length, capacity, this.llvmIdentifierFactory.newLocal(int1(), false));
+		c.branch(full, growLabel, storeLabel);
+
+		c.label(growLabel);
+		LLVMIdentifier<LLVMInt64> doubled =
+		        c.binaryOperation(
+		                "shl",
+		                capacity,
+		                this.llvmIdentifierFactory.constant(int64(), 1),
+		                this.llvmIdentifierFactory.newLocal(int64(), false));
+		LLVMIdentifier<LLVMInt64> newCapacity =
+		        c.binaryOperation(
+		                "add",
+		                doubled,
+		                this.llvmIdentifierFactory.constant(int64(), MIN_ARRAY_GROWTH),
+		                this.llvmIdentifierFactory.newLocal(int64(), false));
+		LLVMIdentifier<LLVMType> elementSize = sizeOf(c, pointer(elementType));
+		LLVMIdentifier<LLVMInt64> newSize =
+		        c.binaryOperation("mul", newCapacity, elementSize, this.llvmIdentifierFactory.newLocal(int64(), false));
+		// Round up to a multiple of 8 to keep the arena aligned
+		newSize =
+		        c.binaryOperation(
+		                "add",
+		                newSize,
+		                this.llvmIdentifierFactory.constant(int64(), 7),
+		                this.llvmIdentifierFactory.newLocal(int64(), false));
+		newSize =
+		        c.binaryOperation(
+		                "and",
+		                newSize,
+		                this.llvmIdentifierFactory.constant(int64(), -8),
+		                this.llvmIdentifierFactory.newLocal(int64(), false));
+		LLVMIdentifier<LLVMPointer<LLVMInt8>> newData = allocate(c, (LLVMIdentifier<LLVMType>) (LLVMIdentifier<?>) newSize);
+
+		LLVMIdentifier<LLVMPointer<LLVMType>> dataField = getArrayField(c, array, 2, pointer(elementType));
+		LLVMIdentifier<LLVMPointer<LLVMType>> oldData = resolveIfNeeded(c, dataField);
+		LLVMIdentifier<LLVMType> oldBytes =
+		        castIfNeeded(c, (LLVMIdentifier<LLVMType>) (LLVMIdentifier<?>) oldData, (LLVMType) pointer(int8()));
+		LLVMIdentifier<LLVMInt64> usedSize =
+		        c.binaryOperation("mul", length, elementSize, this.llvmIdentifierFactory.newLocal(int64(), false));
+		c.callVoid(
+		        this.llvmIdentifierFactory.newGlobal("llvm.memcpy.p0i8.p0i8.i64", (LLVMType) voidType()),
+		        newData,
+		        oldBytes,
+		        usedSize,
+		        this.llvmIdentifierFactory.constant(int32(), 1),
+		        this.llvmIdentifierFactory.constant(int1(), false));
+		LLVMIdentifier<LLVMPointer<LLVMType>> newElements =
+		        castIfNeeded(c, (LLVMIdentifier<LLVMPointer<LLVMType>>) (LLVMIdentifier<?>) newData, pointer(elementType));
+		c.store(newElements, this.llvmIdentifierFactory.pointerTo(dataField));
+		c.store(newCapacity, this.llvmIdentifierFactory.pointerTo(capacityField));
+		c.branch(storeLabel);
+
+		c.label(storeLabel);
+		LLVMIdentifier<LLVMType> element =
+		        getArrayElement(c, array, arrayType, (LLVMIdentifier<LLVMInt>) (LLVMIdentifier<?>) length, false);
+		c.store(castIfNeeded(c, resolveIfNeeded(c, value), elementType), this.llvmIdentifierFactory.pointerTo(element));
+		LLVMIdentifier<LLVMInt64> newLength =
+		        c.binaryOperation(
+		                "add",
+		                length,
+		                this.llvmIdentifierFactory.constant(int64(), 1),
+		                this.llvmIdentifierFactory.newLocal(int64(), false));
+		c.store(newLength, this.llvmIdentifierFactory.pointerTo(getArrayField(c, array, 0, (LLVMInt64) int64())));
+	}
+
+	/** @param tail
+	 *            whether the result is returned by the caller right away, see {@link CodeContext#tailCall} */
 	public LLVMIdentifier<?> call(CodeContext c, String functionName, TypeDeclaration returnType,
-	        List<LLVMIdentifier<?>> arguments, List<TypeDeclaration> parameters) {
-		LLVMType llvmReturnType = mapToLLVMType(returnType);
+	        List<LLVMIdentifier<?>> arguments, List<TypeDeclaration> parameters, boolean tail) {
+		LLVMType llvmReturnType = mapToValueType(returnType);
 		LLVMIdentifier<LLVMType> functionSignature = this.llvmIdentifierFactory.newGlobal(functionName, llvmReturnType);
-		List<LLVMIdentifier<? extends LLVMType>> resolvedArguments = resolveArgumentsIfNeeded(c, arguments, parameters);
-		return c.call(
+		List<LLVMIdentifier<? extends LLVMType>> resolvedArguments =
+		        resolveArgumentsIfNeeded(c, arguments, parameters, false);
+		return call(
+		        c,
 		        functionSignature,
 		        this.llvmIdentifierFactory.newLocal(functionSignature.getType(), false),
-		        resolvedArguments);
+		        resolvedArguments,
+		        tail);
+	}
+
+	private <T extends LLVMType> LLVMIdentifier<T> call(CodeContext c, LLVMIdentifier<LLVMType> signature,
+	        LLVMIdentifier<T> identifier, List<LLVMIdentifier<? extends LLVMType>> arguments, boolean tail) {
+		if (tail) {
+			return c.tailCall(signature, identifier, arguments);
+		}
+		return c.call(signature, identifier, arguments);
+	}
+
+	/** Jumps back to the start of the calling procedure instead of calling it in tail position. The arguments are
+	 * assigned to the parameters, which are local variables in a procedure that does so.
+	 *
+	 * @param parameters
+	 *            the parameters to assign, self is not among them as it does not change
+	 * @param label
+	 *            the label after the entry block where the procedure starts over */
+	public void tailRecurse(CodeContext c, List<LocalVariable<LLVMType>> parameters,
+	        List<LLVMIdentifier<LLVMType>> arguments, String label) {
+		List<LLVMIdentifier<LLVMType>> values = new ArrayList<>(arguments.size());
+		for (int i = 0; i < arguments.size(); i++) {
+			values.add(resolveAndCastIfNeeded(c, arguments.get(i), parameters.get(i).getType()));
+		}
+		for (int i = 0; i < values.size(); i++) {
+			c.writeVariable(parameters.get(i), values.get(i));
+		}
+		c.branch(label);
 	}
 
 	public void callVoid(CodeContext c, String functionName, List<LLVMIdentifier<?>> arguments,
 	        List<TypeDeclaration> parameters) {
-		List<LLVMIdentifier<?>> resolvedArguments = resolveArgumentsIfNeeded(c, arguments, parameters);
+		List<LLVMIdentifier<?>> resolvedArguments = resolveArgumentsIfNeeded(c, arguments, parameters, false);
 		c.callVoid(this.llvmIdentifierFactory.newGlobal(functionName, (LLVMType) voidType()), resolvedArguments);
 	}
 
 	public LLVMIdentifier<?> callMethod(CodeContext c, FunctionDeclaration declaration,
-	        List<LLVMIdentifier<?>> arguments, List<TypeDeclaration> parameters) {
-		List<LLVMIdentifier<?>> resolvedArguments = resolveArgumentsIfNeeded(c, arguments, parameters);
+	        List<LLVMIdentifier<?>> arguments, List<TypeDeclaration> parameters, boolean tail) {
+		List<LLVMIdentifier<?>> resolvedArguments = resolveArgumentsIfNeeded(c, arguments, parameters, true);
 
 		LLVMIdentifier<LLVMPointer<LLVMFunctionType>> functionPointer =
 		        getFunctionPointer(c, (LLVMIdentifier<LLVMPointer<LLVMType>>) resolvedArguments.get(0), declaration);
 
 		final TypeDeclaration returnType = declaration.getTypeDeclaration();
-		return c.call(
+		return call(
+		        c,
 		        (LLVMIdentifier<LLVMType>) (LLVMIdentifier<?>) resolveIfNeeded(c, functionPointer),
 		        this.llvmIdentifierFactory.newLocal(mapToLLVMType(returnType), false),
+		        resolvedArguments,
+		        tail);
+	}
+
+	/** Calls the given implementation of a method directly instead of looking it up in the VMT of the receiver. */
+	public LLVMIdentifier<?> callMethodDirect(CodeContext c, FunctionDeclaration implementation,
+	        List<LLVMIdentifier<?>> arguments, boolean tail) {
+		List<LLVMIdentifier<?>> resolvedArguments =
+		        resolveArgumentsIfNeeded(c, arguments, getSignatureTypes(implementation), true);
+		LLVMType llvmReturnType = mapToLLVMType(implementation.getTypeDeclaration());
+		LLVMIdentifier<LLVMType> functionSignature =
+		        this.llvmIdentifierFactory.newGlobal(implementation.getMangledIdentifier().getSymbol(), llvmReturnType);
+		return call(
+		        c,
+		        functionSignature,
+		        this.llvmIdentifierFactory.newLocal(llvmReturnType, false),
+		        resolvedArguments,
+		        tail);
+	}
+
+	/** Calls the given implementation of a method directly instead of looking it up in the VMT of the receiver. */
+	public void callVoidMethodDirect(CodeContext c, ProcedureDeclaration implementation,
+	        List<LLVMIdentifier<?>> arguments) {
+		List<LLVMIdentifier<?>> resolvedArguments =
+		        resolveArgumentsIfNeeded(c, arguments, getSignatureTypes(implementation), true);
+		c.callVoid(
+		        this.llvmIdentifierFactory.newGlobal(
+		                implementation.getMangledIdentifier().getSymbol(),
+		                (LLVMType) voidType()),
+		        resolvedArguments);
+	}
+
+	private List<TypeDeclaration> getSignatureTypes(ProcedureDeclaration method) {
+		List<TypeDeclaration> types = new ArrayList<>();
+		types.add(method.getDefiningClass());
+		for (VariableDeclaration parameter : method.getParameter()) {
+			types.add(parameter.getTypeDeclaration());
+		}
+		return types;
+	}
+
+	/** Emits the native implementation of a method of a core class at the call site. The arguments including self are
+	 * passed unboxed.
+	 *
+	 * @return the unboxed result or null if the method has no result */
+	public LLVMIdentifier<?> inlineNativeMethod(CodeContext c, ProcedureDeclaration declaration,
+	        List<LLVMIdentifier<?>> arguments, List<TypeDeclaration> parameters) {
+		List<LLVMIdentifier<?>> resolvedArguments = resolveArgumentsIfNeeded(c, arguments, parameters, false);
+		return this.blackMagic.generateNativeFunction(
+		        c,
+		        declaration.getMangledIdentifier().getSymbol(),
 		        resolvedArguments);
 	}
 
 	public void callVoidMethod(CodeContext c, ProcedureDeclaration declaration, List<LLVMIdentifier<?>> arguments,
 	        List<TypeDeclaration> parameters) {
-		List<LLVMIdentifier<?>> resolvedArguments = resolveArgumentsIfNeeded(c, arguments, parameters);
+		List<LLVMIdentifier<?>> resolvedArguments = resolveArgumentsIfNeeded(c, arguments, parameters, true);
 
 		LLVMIdentifier<LLVMPointer<LLVMFunctionType>> functionPointer =
 		        getFunctionPointer(c, (LLVMIdentifier<LLVMPointer<LLVMType>>) resolvedArguments.get(0), declaration);
@@ -520,8 +1084,9 @@ public class CodeGenerator {
 	}
 
 	public void branch(CodeContext c, LLVMIdentifier<LLVMType> expression, String trueLabel, String falseLabel) {
-		LLVMIdentifier<LLVMType> boxedValue = resolveIfNeeded(c, expression);
-		LLVMIdentifier<LLVMBool> value = unboxType(c, boxedValue, int1());
+		LLVMIdentifier<LLVMType> resolved = resolveIfNeeded(c, expression);
+		LLVMIdentifier<LLVMBool> value =
+		        (LLVMIdentifier<LLVMBool>) (LLVMIdentifier<?>) castIfNeeded(c, resolved, (LLVMType) int1());
 		c.branch(value, trueLabel, falseLabel);
 	}
 
@@ -537,50 +1102,63 @@ public class CodeGenerator {
 		return this.llvmIdentifierFactory.constant(int1(), value);
 	}
 
+	/** Load the value of an expression computed by the
+	 * {@link de.uni.bremen.monty.moco.visitor.ConstantFoldingVisitor}.
+	 *
+	 * @param value
+	 *            a Long, Double or Boolean, see
+	 *            {@link de.uni.bremen.monty.moco.ast.expression.Expression#getConstantValue()} */
+	public LLVMIdentifier<? extends LLVMType> loadConstant(Object value) {
+		if (value instanceof Long) {
+			return this.llvmIdentifierFactory.constant(int64(), ((Long) value).longValue());
+		} else if (value instanceof Double) {
+			return this.llvmIdentifierFactory.constant(double64(), ((Double) value).doubleValue());
+		}
+		return loadBool((Boolean) value);
+	}
+
 	public LLVMIdentifier<LLVMInt8> loadChar(Character value) {
 		return this.llvmIdentifierFactory.constant(int8(), value.charValue());
 	}
 
+	/** Allocates an array of the given size. The header and the elements are allocated as one block, the elements
+	 * only move to a block of their own once the array grows. */
 	public LLVMIdentifier<LLVMPointer<LLVMStructType>> addArray(CodeContext c, int size, ClassDeclaration type) {
 
 		LLVMPointer<LLVMStructType> array = mapToLLVMType(type);
 		LLVMIdentifier<LLVMPointer<LLVMStructType>> var = this.llvmIdentifierFactory.newLocal(array, false);
 
-		// Temporary until object or generic
-		LLVMType arrayType = mapToLLVMType((TypeDeclaration) CoreClasses.intType());
-		List<LLVMType> mallocList = Arrays.asList(int64(), array(arrayType, size));
+		LLVMType elementType = this.typeConverter.mapToArrayElementType(type);
+		List<LLVMType> mallocList =
+		        Arrays.asList(int64(), int64(), (LLVMType) pointer(elementType), array(elementType, size));
 		malloc(c, var, pointer((LLVMType) struct(mallocList)));
 
-		LLVMIdentifier<LLVMType> arraySize =
-		        (LLVMIdentifier<LLVMType>) (LLVMIdentifier<?>) this.llvmIdentifierFactory.constant(int64(), size);
-		LLVMIdentifier<LLVMPointer<LLVMType>> sizeField = this.llvmIdentifierFactory.newLocal(pointer(arraySize.getType()));
-		c.getelementptr(
-		        sizeField,
-		        var,
-		        this.llvmIdentifierFactory.constant(int32(), 0),
-		        this.llvmIdentifierFactory.constant(int32(), 0));
-		c.store(arraySize, sizeField);
+		LLVMIdentifier<LLVMInt64> arraySize = this.llvmIdentifierFactory.constant(int64(), size);
+		c.store(arraySize, this.llvmIdentifierFactory.pointerTo(getArrayField(c, var, 0, (LLVMInt64) int64())));
+		c.store(arraySize, this.llvmIdentifierFactory.pointerTo(getArrayField(c, var, 1, (LLVMInt64) int64())));
+
+		// The elements directly follow the header
+		LLVMIdentifier<LLVMPointer<LLVMStructType>> end = this.llvmIdentifierFactory.newLocal(array, false);
+		c.getelementptr(end, var, this.llvmIdentifierFactory.constant(int32(), 1));
+		LLVMIdentifier<LLVMPointer<LLVMType>> elements = this.llvmIdentifierFactory.newLocal(pointer(elementType), false);
+		c.bitcast((LLVMIdentifier) elements, (LLVMIdentifier) end);
+		c.store(elements, this.llvmIdentifierFactory.pointerTo(getArrayField(c, var, 2, pointer(elementType))));
 
 		return var;
 	}
 
-	public void setArrayElement(CodeContext c, LLVMIdentifier<LLVMPointer<LLVMStructType>> array, int index,
-	        LLVMIdentifier<LLVMType> value) {
-
-		// Temporary until object or generic
-		LLVMType internalType = mapToLLVMType((TypeDeclaration) CoreClasses.intType());
-		LLVMIdentifier<LLVMPointer<LLVMType>> element = this.llvmIdentifierFactory.newLocal(pointer(internalType));
-
-		c.getelementptr(
-		        element,
-		        array,
-		        this.llvmIdentifierFactory.constant(int32(), 0),
-		        this.llvmIdentifierFactory.constant(int32(), 1),
-		        this.llvmIdentifierFactory.constant(int32(), index));
-		c.store(value, element);
+	public void setArrayElement(CodeContext c, LLVMIdentifier<LLVMPointer<LLVMStructType>> array,
+	        ClassDeclaration type, int index, LLVMIdentifier<LLVMType> value) {
+		LLVMIdentifier<LLVMType> element =
+		        getArrayElement(c, array, type, this.llvmIdentifierFactory.constant(int64(), index), false);
+		value = castIfNeeded(c, resolveIfNeeded(c, value), element.getType());
+		c.store(value, this.llvmIdentifierFactory.pointerTo(element));
 	}
 
 	public LLVMIdentifier<LLVMType> boxType(CodeContext c, LLVMIdentifier<LLVMType> toBox, TypeDeclaration type) {
+		if (toBox instanceof ScalarConstant) {
+			return addConstantBox(toBox, (ClassDeclaration) type);
+		}
 
 		LLVMIdentifier<LLVMType> boxedValue = callConstructor(c, (ClassDeclaration) type);
 		LLVMIdentifier<LLVMType> boxedValueField = this.llvmIdentifierFactory.newLocal(toBox.getType());
@@ -594,6 +1172,31 @@ public class CodeGenerator {
 		return boxedValue;
 	}
 
+	/** Get the boxed constant from the constant pool. Its VMT pointer is already set, so it costs nothing at runtime.
+	 * Boxes are never written to, so the same box can be shared by all uses of the value. */
+	private LLVMIdentifier<LLVMType> addConstantBox(LLVMIdentifier<LLVMType> value, ClassDeclaration type) {
+		String className = type.getMangledIdentifier().getSymbol();
+		String key = className + " " + value.getName();
+		LLVMIdentifier<LLVMType> box = this.constantBoxes.get(key);
+		if (box == null) {
+			LLVMPointer<LLVMType> boxType = mapToLLVMType(type);
+			LLVMIdentifier<LLVMType> vmtData =
+			        this.llvmIdentifierFactory.newGlobal(
+			                className + "_vmt_data",
+			                (LLVMType) pointer(struct(className + "_vmt_type")));
+			StructConstant initializer =
+			        this.llvmIdentifierFactory.constant(
+			                (LLVMStructType) boxType.getInternalType(),
+			                Arrays.asList(vmtData, value));
+			LLVMIdentifier<LLVMType> global =
+			        this.llvmIdentifierFactory.newGlobal(boxType.getInternalType(), initializer.getName());
+			this.constants.define(global.getName()).global(Linkage.priv, global, true, initializer);
+			box = (LLVMIdentifier<LLVMType>) (LLVMIdentifier<?>) this.llvmIdentifierFactory.pointerTo(global);
+			this.constantBoxes.put(key, box);
+		}
+		return box;
+	}
+
 	public <T extends LLVMType> LLVMIdentifier<T> unboxType(CodeContext c, LLVMIdentifier<LLVMType> toUnbox, T llvmtype) {
 		toUnbox = resolveIfNeeded(c, toUnbox);
 		LLVMIdentifier<T> unboxedValue = this.llvmIdentifierFactory.newLocal(llvmtype);
@@ -38,23 +38,35 @@
  */
 package de.uni.bremen.monty.moco.codegeneration;
 
+import java.io.BufferedWriter;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
 
 import de.uni.bremen.monty.moco.util.Params;
 
+/** Writes the generated code to the .ll file through a buffer. The code is written piece by piece while it is
+ * generated, the file is complete after {@link #close()}. LLVM reads the file as UTF-8, whatever the locale. */
 public class CodeWriter {
 
-	private final OutputStream llOutputStream;
+	private final Writer llWriter;
 
 	public CodeWriter(Params params) throws IOException {
-		this.llOutputStream = initLlvmOutput(params);
-		IOUtils.copy(getClass().getResourceAsStream("/std_llvm_include.ll"), this.llOutputStream);
+		this.llWriter = new BufferedWriter(new OutputStreamWriter(initLlvmOutput(params), StandardCharsets.UTF_8));
+		if (params.isTargetSpecific()) {
+			write(Target.host().getHeader());
+		}
+		try (InputStream include = getClass().getResourceAsStream("/std_llvm_include.ll")) {
+			IOUtils.copy(include, this.llWriter, StandardCharsets.UTF_8);
+		}
 	}
 
 	private OutputStream initLlvmOutput(Params params) throws FileNotFoundException {
@@ -80,7 +92,16 @@ public class CodeWriter {
 	}
 
 	public void write(String data) throws IOException {
-		this.llOutputStream.write(data.getBytes());
-		this.llOutputStream.flush();
+		this.llWriter.write(data);
+	}
+
+	/** @return the output to which the code is written */
+	public Writer getWriter() {
+		return this.llWriter;
+	}
+
+	/** Flushes the buffer and closes the .ll file. */
+	public void close() throws IOException {
+		this.llWriter.close();
 	}
 }
@@ -0,0 +1,310 @@
+/*
+ * moco, the Monty Compiler
+ * Copyright (c) 2013-2014, Monty's Coconut, All rights reserved.
+ *
+ * This file is part of moco, the Monty Compiler.
+ *
+ * moco is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ *
+ * moco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * Linking this program and/or its accompanying libraries statically or
+ * dynamically with other modules is making a combined work based on this
+ * program. Thus, the terms and conditions of the GNU General Public License
+ * cover the whole combination.
+ *
+ * As a special exception, the copyright holders of moco give
+ * you permission to link this programm and/or its accompanying libraries
+ * with independent modules to produce an executable, regardless of the
+ * license terms of these independent modules, and to copy and distribute the
+ * resulting executable under terms of your choice, provided that you also meet,
+ * for each linked independent module, the terms and conditions of the
+ * license of that module.
+ *
+ * An independent module is a module which is not
+ * derived from or based on this program and/or its accompanying libraries.
+ * If you modify this library, you may extend this exception to your version of
+ * the program or library, but you are not obliged to do so. If you do not wish
+ * to do so, delete this exception statement from your version.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library.
+ */
+package de.uni.bremen.monty.moco.codegeneration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.uni.bremen.monty.moco.ast.ASTNode;
+import de.uni.bremen.monty.moco.ast.CoreClasses;
+import de.uni.bremen.monty.moco.ast.Package;
+import de.uni.bremen.monty.moco.ast.declaration.ClassDeclaration;
+import de.uni.bremen.monty.moco.ast.declaration.Declaration;
+import de.uni.bremen.monty.moco.ast.declaration.ProcedureDeclaration;
+import de.uni.bremen.monty.moco.ast.declaration.VariableDeclaration;
+import de.uni.bremen.monty.moco.ast.expression.Expression;
+import de.uni.bremen.monty.moco.ast.expression.FunctionCall;
+import de.uni.bremen.monty.moco.ast.expression.IsExpression;
+import de.uni.bremen.monty.moco.ast.expression.MemberAccess;
+import de.uni.bremen.monty.moco.ast.expression.ParentExpression;
+import de.uni.bremen.monty.moco.ast.expression.SelfExpression;
+import de.uni.bremen.monty.moco.ast.expression.VariableAccess;
+import de.uni.bremen.monty.moco.ast.statement.Assignment;
+import de.uni.bremen.monty.moco.visitor.BaseVisitor;
+
+/** An intraprocedural escape analysis for objects created by a call of an initializer.
+ *
+ * An object may be allocated in the stack frame of a procedure if it is assigned directly to a local variable of this
+ * procedure and this variable is only used to
+ * <ul>
+ * <li>be assigned again,</li>
+ * <li>access an attribute,</li>
+ * <li>test its type with 'is' or</li>
+ * <li>call a method which does not let self escape.</li>
+ * </ul>
+ * Since the object is created right there, its class is known exactly. So the initializers and methods that run on it
+ * are known too and are checked to use self only in the same way. Every other use, e.g. passing the object as an
+ * argument, returning it or storing it in an attribute, makes it escape. */
+public class EscapeAnalysis {
+
+	/** Classes which are not represented as objects on the heap. */
+	private static final List<ClassDeclaration> UNBOXED_CLASSES = Arrays.asList(
+	        CoreClasses.intType(),
+	        CoreClasses.boolType(),
+	        CoreClasses.floatType(),
+	        CoreClasses.charType(),
+	        CoreClasses.stringType(),
+	        CoreClasses.arrayType(),
+	        CoreClasses.floatArrayType(),
+	        CoreClasses.boolArrayType(),
+	        CoreClasses.charArrayType(),
+	        CoreClasses.voidType());
+
+	private final ClassHierarchy classHierarchy;
+
+	/** Every read or write of a variable. */
+	private final Map<Declaration, List<VariableAccess>> accesses = new HashMap<>();
+
+	/** Every call of an initializer that creates a new object. */
+	private final List<FunctionCall> allocationSites = new ArrayList<>();
+
+	private final Set<FunctionCall> stackAllocated = new HashSet<>();
+
+	/** The variables to which an object allocated on the stack is assigned. */
+	private final Set<Declaration> stackVariables = new HashSet<>();
+
+	/** Caches for each class whether self escapes from a procedure running on an instance of this class. */
+	private final Map<ClassDeclaration, Map<ProcedureDeclaration, Boolean>> selfEscapes = new HashMap<>();
+
+	public EscapeAnalysis(ClassHierarchy classHierarchy) {
+		this.classHierarchy = classHierarchy;
+	}
+
+	/** Find all allocation sites of the program whose object does not escape. This has to be done after the class
+	 * hierarchy is complete. */
+	public void analyze(Package root) {
+		root.visit(new BaseVisitor() {
+			@Override
+			public void visit(VariableAccess node) {
+				List<VariableAccess> list = EscapeAnalysis.this.accesses.get(node.getDeclaration());
+				if (list == null) {
+					list = new ArrayList<>();
+					EscapeAnalysis.this.accesses.put(node.getDeclaration(), list);
+				}
+				list.add(node);
+				super.visit(node);
+			}
+
+			@Override
+			public void visit(FunctionCall node) {
+				if (isAllocationSite(node)) {
+					EscapeAnalysis.this.allocationSites.add(node);
+				}
+				super.visit(node);
+			}
+		});
+		for (FunctionCall site : this.allocationSites) {
+			if (!escapes(site)) {
+				this.stackAllocated.add(site);
+				Assignment assignment = (Assignment) site.getParentNode();
+				this.stackVariables.add(((VariableAccess) assignment.getLeft()).getDeclaration());
+			}
+		}
+	}
+
+	public boolean isStackAllocated(FunctionCall node) {
+		return this.stackAllocated.contains(node);
+	}
+
+	/** Check whether the variable may refer to an object in the stack frame of the procedure it belongs to. */
+	public boolean mayReferToStack(Declaration variable) {
+		return this.stackVariables.contains(variable);
+	}
+
+	public int getAllocationSiteCount() {
+		return this.allocationSites.size();
+	}
+
+	public int getStackAllocatedCount() {
+		return this.stackAllocated.size();
+	}
+
+	private boolean isAllocationSite(FunctionCall node) {
+		ProcedureDeclaration declaration = node.getDeclaration();
+		return declaration != null && declaration.isInitializer() && !(node.getParentNode() instanceof MemberAccess)
+		        && !UNBOXED_CLASSES.contains(declaration.getDefiningClass());
+	}
+
+	private boolean escapes(FunctionCall site) {
+		if (!(site.getParentNode() instanceof Assignment)) {
+			return true;
+		}
+		Assignment assignment = (Assignment) site.getParentNode();
+		if (assignment.getRight() != site || !(assignment.getLeft() instanceof VariableAccess)) {
+			return true;
+		}
+		Declaration target = ((VariableAccess) assignment.getLeft()).getDeclaration();
+		if (!(target instanceof VariableDeclaration)) {
+			return true;
+		}
+		VariableDeclaration variable = (VariableDeclaration) target;
+		ProcedureDeclaration procedure = getEnclosingProcedure(site);
+		if (!variable.isVariable() || variable.getIsGlobal() || procedure == null
+		        || getEnclosingProcedure(variable) != procedure) {
+			return true;
+		}
+
+		ClassDeclaration classDeclaration = site.getDeclaration().getDefiningClass();
+		List<ProcedureDeclaration> calledOnSelf = new ArrayList<>();
+		calledOnSelf.add(site.getDeclaration());
+		if (classDeclaration.getDefaultInitializer() != null) {
+			calledOnSelf.add(classDeclaration.getDefaultInitializer());
+		}
+		for (VariableAccess access : this.accesses.get(variable)) {
+			if (getEnclosingProcedure(access) != procedure
+			        || !isHarmlessUse(access, classDeclaration, calledOnSelf)) {
+				return true;
+			}
+		}
+		for (ProcedureDeclaration called : calledOnSelf) {
+			if (selfEscapes(classDeclaration, called)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** Check whether the given use of a reference to an instance of the class can not let it escape. If a procedure is
+	 * called on the instance, it is added to the list and must be checked as well.
+	 *
+	 * @return false if the use makes the instance escape or the called procedure is unknown */
+	private boolean isHarmlessUse(Expression use, ClassDeclaration classDeclaration,
+	        List<ProcedureDeclaration> calledOnSelf) {
+		ASTNode parent = use.getParentNode();
+		if (parent instanceof Assignment) {
+			return ((Assignment) parent).getLeft() == use;
+		}
+		if (parent instanceof IsExpression) {
+			return true;
+		}
+		if (!(parent instanceof MemberAccess) || ((MemberAccess) parent).getLeft() != use) {
+			return false;
+		}
+		Expression member = ((MemberAccess) parent).getRight();
+		if (member instanceof VariableAccess) {
+			return true;
+		}
+		if (!(member instanceof FunctionCall)) {
+			return false;
+		}
+		ProcedureDeclaration declaration = ((FunctionCall) member).getDeclaration();
+		ProcedureDeclaration called;
+		if (declaration.isInitializer()) {
+			called = declaration;
+		} else if (use instanceof ParentExpression) {
+			called =
+			        this.classHierarchy.getImplementation((ClassDeclaration) use.getTypeDeclaration(), declaration);
+		} else {
+			called = this.classHierarchy.getImplementation(classDeclaration, declaration);
+		}
+		if (called == null || (!called.isInitializer() && isNative(called))) {
+			return false;
+		}
+		calledOnSelf.add(called);
+		return true;
+	}
+
+	/** Check whether self escapes from the procedure or from any procedure it calls on self, when it runs on an
+	 * instance of exactly the given class. */
+	private boolean selfEscapes(ClassDeclaration classDeclaration, ProcedureDeclaration procedure) {
+		Map<ProcedureDeclaration, Boolean> cache = this.selfEscapes.get(classDeclaration);
+		if (cache == null) {
+			cache = new HashMap<>();
+			this.selfEscapes.put(classDeclaration, cache);
+		}
+		Boolean result = cache.get(procedure);
+		if (result == null) {
+			result = false;
+			List<ProcedureDeclaration> worklist = new ArrayList<>();
+			Set<ProcedureDeclaration> visited = new HashSet<>();
+			worklist.add(procedure);
+			while (!worklist.isEmpty() && !result) {
+				ProcedureDeclaration current = worklist.remove(worklist.size() - 1);
+				if (visited.add(current)) {
+					for (Expression self : getSelfExpressions(current)) {
+						if (!isHarmlessUse(self, classDeclaration, worklist)) {
+							result = true;
+						}
+					}
+				}
+			}
+			cache.put(procedure, result);
+		}
+		return result;
+	}
+
+	private List<Expression> getSelfExpressions(ProcedureDeclaration procedure) {
+		final List<Expression> result = new ArrayList<>();
+		procedure.getBody().visit(new BaseVisitor() {
+			@Override
+			public void visit(SelfExpression node) {
+				result.add(node);
+			}
+
+			@Override
+			public void visit(ParentExpression node) {
+				result.add(node);
+			}
+		});
+		return result;
+	}
+
+	private ProcedureDeclaration getEnclosingProcedure(ASTNode node) {
+		ASTNode parent = node.getParentNode();
+		while (parent != null && !(parent instanceof ProcedureDeclaration)) {
+			parent = parent.getParentNode();
+		}
+		return (ProcedureDeclaration) parent;
+	}
+
+	private boolean isNative(ASTNode node) {
+		while (node.getParentNode() != null) {
+			node = node.getParentNode();
+			if (node instanceof Package && ((Package) node).isNativePackage()) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
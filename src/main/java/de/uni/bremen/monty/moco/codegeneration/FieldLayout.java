@@ -0,0 +1,181 @@
+/*
+ * moco, the Monty Compiler
+ * Copyright (c) 2013-2014, Monty's Coconut, All rights reserved.
+ *
+ * This file is part of moco, the Monty Compiler.
+ *
+ * moco is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ *
+ * moco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * Linking this program and/or its accompanying libraries statically or
+ * dynamically with other modules is making a combined work based on this
+ * program. Thus, the terms and conditions of the GNU General Public License
+ * cover the whole combination.
+ *
+ * As a special exception, the copyright holders of moco give
+ * you permission to link this programm and/or its accompanying libraries
+ * with independent modules to produce an executable, regardless of the
+ * license terms of these independent modules, and to copy and distribute the
+ * resulting executable under terms of your choice, provided that you also meet,
+ * for each linked independent module, the terms and conditions of the
+ * license of that module.
+ *
+ * An independent module is a module which is not
+ * derived from or based on this program and/or its accompanying libraries.
+ * If you modify this library, you may extend this exception to your version of
+ * the program or library, but you are not obliged to do so. If you do not wish
+ * to do so, delete this exception statement from your version.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library.
+ */
+package de.uni.bremen.monty.moco.codegeneration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import de.uni.bremen.monty.moco.ast.CoreClasses;
+import de.uni.bremen.monty.moco.ast.declaration.ClassDeclaration;
+import de.uni.bremen.monty.moco.ast.declaration.Declaration;
+import de.uni.bremen.monty.moco.ast.declaration.TypeDeclaration;
+import de.uni.bremen.monty.moco.ast.declaration.VariableDeclaration;
+
+/** Orders the attributes of each class in its struct, so that as little space as possible is wasted on padding.
+ *
+ * Attributes of the core value classes Bool and Char are stored as single bytes, all others take a word. The struct of
+ * a class starts with the pointer to its VMT and the attributes of its superclass in the order of the superclass, so
+ * that an object can be accessed through a pointer to any of its superclasses. The own attributes of the class follow:
+ * first small ones filling the padding at the end of the superclass, then the words and then the remaining small
+ * attributes.
+ *
+ * The attribute indices set by the type resolution in declaration order are replaced by the index in the struct. */
+public class FieldLayout {
+
+	private static final int WORD_SIZE = 8;
+
+	private static class Layout {
+		private final List<VariableDeclaration> attributes = new ArrayList<>();
+
+		/** The end of the last attribute in the struct laid out in declaration order and in the chosen order. */
+		private int declarationOrderEnd = WORD_SIZE;
+		private int end = WORD_SIZE;
+	}
+
+	private final Map<ClassDeclaration, Layout> layouts = new HashMap<>();
+
+	/** Lays out the given class and its superclasses, if this has not been done yet. */
+	public void layout(ClassDeclaration classDeclaration) {
+		getLayout(classDeclaration);
+	}
+
+	/** Get all attributes of the class including the inherited ones in the order of its struct. The VMT pointer comes
+	 * before the first of them. */
+	public List<VariableDeclaration> getAttributes(ClassDeclaration classDeclaration) {
+		return getLayout(classDeclaration).attributes;
+	}
+
+	/** Get the size of the struct of the given class in bytes. */
+	public int getSize(ClassDeclaration classDeclaration) {
+		return align(getLayout(classDeclaration).end, WORD_SIZE);
+	}
+
+	/** Get the number of bytes which objects of the given class take less than with the attributes in declaration
+	 * order. */
+	public int getSavedBytes(ClassDeclaration classDeclaration) {
+		return align(getLayout(classDeclaration).declarationOrderEnd, WORD_SIZE) - getSize(classDeclaration);
+	}
+
+	/** Get the number of classes laid out so far whose objects got smaller. */
+	public int getImprovedClassCount() {
+		int count = 0;
+		for (ClassDeclaration classDeclaration : this.layouts.keySet()) {
+			if (getSavedBytes(classDeclaration) > 0) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private Layout getLayout(ClassDeclaration classDeclaration) {
+		Layout layout = this.layouts.get(classDeclaration);
+		if (layout != null) {
+			return layout;
+		}
+		layout = new Layout();
+		for (TypeDeclaration superClass : classDeclaration.getSuperClassDeclarations()) {
+			if (superClass instanceof ClassDeclaration) {
+				Layout parent = getLayout((ClassDeclaration) superClass);
+				layout.attributes.addAll(parent.attributes);
+				layout.declarationOrderEnd = parent.declarationOrderEnd;
+				layout.end = parent.end;
+				break;
+			}
+		}
+
+		List<VariableDeclaration> attributes = new ArrayList<>();
+		for (Declaration declaration : classDeclaration.getBlock().getDeclarations()) {
+			if (declaration instanceof VariableDeclaration) {
+				VariableDeclaration attribute = (VariableDeclaration) declaration;
+				attributes.add(attribute);
+				layout.declarationOrderEnd = place(layout.declarationOrderEnd, attribute);
+			}
+		}
+		Collections.sort(attributes, new Comparator<VariableDeclaration>() {
+			@Override
+			public int compare(VariableDeclaration a, VariableDeclaration b) {
+				return getSize(b) - getSize(a);
+			}
+		});
+		Iterator<VariableDeclaration> small = attributes.iterator();
+		while (layout.end % WORD_SIZE != 0 && small.hasNext()) {
+			VariableDeclaration attribute = small.next();
+			if (getSize(attribute) < WORD_SIZE) {
+				layout.end = place(layout.end, attribute);
+				layout.attributes.add(attribute);
+				small.remove();
+			}
+		}
+		for (VariableDeclaration attribute : attributes) {
+			layout.end = place(layout.end, attribute);
+			layout.attributes.add(attribute);
+		}
+
+		// the VMT pointer has index 0
+		for (int i = 0; i < layout.attributes.size(); i++) {
+			layout.attributes.get(i).setAttributeIndex(i + 1);
+		}
+		this.layouts.put(classDeclaration, layout);
+		return layout;
+	}
+
+	/** Get the end of the given attribute placed after the given offset. The alignment of every attribute is its
+	 * size. */
+	private static int place(int offset, VariableDeclaration attribute) {
+		int size = getSize(attribute);
+		return align(offset, size) + size;
+	}
+
+	private static int align(int offset, int alignment) {
+		return (offset + alignment - 1) / alignment * alignment;
+	}
+
+	private static int getSize(VariableDeclaration attribute) {
+		TypeDeclaration type = attribute.getTypeDeclaration();
+		if (type == CoreClasses.boolType() || type == CoreClasses.charType()) {
+			return 1;
+		}
+		return WORD_SIZE;
+	}
+}
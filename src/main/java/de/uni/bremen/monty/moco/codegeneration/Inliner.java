@@ -0,0 +1,131 @@
+/*
+ * moco, the Monty Compiler
+ * Copyright (c) 2013-2014, Monty's Coconut, All rights reserved.
+ *
+ * This file is part of moco, the Monty Compiler.
+ *
+ * moco is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ *
+ * moco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * Linking this program and/or its accompanying libraries statically or
+ * dynamically with other modules is making a combined work based on this
+ * program. Thus, the terms and conditions of the GNU General Public License
+ * cover the whole combination.
+ *
+ * As a special exception, the copyright holders of moco give
+ * you permission to link this programm and/or its accompanying libraries
+ * with independent modules to produce an executable, regardless of the
+ * license terms of these independent modules, and to copy and distribute the
+ * resulting executable under terms of your choice, provided that you also meet,
+ * for each linked independent module, the terms and conditions of the
+ * license of that module.
+ *
+ * An independent module is a module which is not
+ * derived from or based on this program and/or its accompanying libraries.
+ * If you modify this library, you may extend this exception to your version of
+ * the program or library, but you are not obliged to do so. If you do not wish
+ * to do so, delete this exception statement from your version.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library.
+ */
+package de.uni.bremen.monty.moco.codegeneration;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import de.uni.bremen.monty.moco.ast.ASTNode;
+import de.uni.bremen.monty.moco.ast.Package;
+import de.uni.bremen.monty.moco.ast.declaration.Declaration;
+import de.uni.bremen.monty.moco.ast.declaration.ProcedureDeclaration;
+import de.uni.bremen.monty.moco.ast.declaration.VariableDeclaration;
+import de.uni.bremen.monty.moco.visitor.BaseVisitor;
+
+/** Decides which procedures are small enough to be generated in place of their calls instead of being called.
+ *
+ * The cost of a procedure is the number of AST nodes in its body. A procedure is inlined at every call which is bound
+ * statically, i.e. a call of a function or procedure or a call of a method with a unique implementation, if its cost
+ * is at most the threshold and
+ * <ul>
+ * <li>it is neither an initializer nor native nor generic,</li>
+ * <li>it declares nothing but local variables, because nested procedures and classes are generated only once, and</li>
+ * <li>it does not contain a tail call of itself, which is generated as a loop of its own function.</li>
+ * </ul>
+ * Recursive procedures are inlined into themselves at most once, since a procedure is not inlined into a copy of
+ * itself. */
+public class Inliner {
+
+	private final TailCalls tailCalls;
+
+	/** The maximum cost of an inlined procedure, 0 if nothing is inlined. */
+	private final int threshold;
+
+	private final Set<ProcedureDeclaration> inlinable = new HashSet<>();
+
+	public Inliner(TailCalls tailCalls, int threshold) {
+		this.tailCalls = tailCalls;
+		this.threshold = threshold;
+	}
+
+	/** Find the procedures of the program which are inlined. This has to be done after the tail calls are found. */
+	public void analyze(Package root) {
+		if (this.threshold <= 0) {
+			return;
+		}
+		root.visit(new BaseVisitor() {
+			@Override
+			protected void onEnterEachNode(ASTNode node) {
+				if (node instanceof ProcedureDeclaration && isInlinable((ProcedureDeclaration) node)) {
+					Inliner.this.inlinable.add((ProcedureDeclaration) node);
+				}
+			}
+		});
+	}
+
+	/** @return whether the body of the procedure is generated in place of its statically bound calls */
+	public boolean isInlined(ProcedureDeclaration procedure) {
+		return this.inlinable.contains(procedure);
+	}
+
+	public int getInlinedProcedureCount() {
+		return this.inlinable.size();
+	}
+
+	private boolean isInlinable(ProcedureDeclaration procedure) {
+		return !procedure.isInitializer() && procedure.getBody() != null && procedure.getTypeParameters().isEmpty()
+		        && !isNative(procedure) && !this.tailCalls.isTailRecursive(procedure)
+		        && getCost(procedure) <= this.threshold;
+	}
+
+	/** Get the number of nodes in the body of the procedure or Integer.MAX_VALUE, if it declares more than local
+	 * variables. */
+	private static int getCost(ProcedureDeclaration procedure) {
+		final int[] cost = new int[1];
+		final boolean[] declares = new boolean[1];
+		procedure.getBody().visit(new BaseVisitor() {
+			@Override
+			protected void onEnterEachNode(ASTNode node) {
+				cost[0]++;
+				declares[0] |= node instanceof Declaration && !(node instanceof VariableDeclaration);
+			}
+		});
+		return declares[0] ? Integer.MAX_VALUE : cost[0];
+	}
+
+	private static boolean isNative(ASTNode node) {
+		while (node.getParentNode() != null) {
+			node = node.getParentNode();
+			if (node instanceof Package && ((Package) node).isNativePackage()) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,409 @@
+/*
+ * moco, the Monty Compiler
+ * Copyright (c) 2013-2014, Monty's Coconut, All rights reserved.
+ *
+ * This file is part of moco, the Monty Compiler.
+ *
+ * moco is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ *
+ * moco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * Linking this program and/or its accompanying libraries statically or
+ * dynamically with other modules is making a combined work based on this
+ * program. Thus, the terms and conditions of the GNU General Public License
+ * cover the whole combination.
+ *
+ * As a special exception, the copyright holders of moco give
+ * you permission to link this programm and/or its accompanying libraries
+ * with independent modules to produce an executable, regardless of the
+ * license terms of these independent modules, and to copy and distribute the
+ * resulting executable under terms of your choice, provided that you also meet,
+ * for each linked independent module, the terms and conditions of the
+ * license of that module.
+ *
+ * An independent module is a module which is not
+ * derived from or based on this program and/or its accompanying libraries.
+ * If you modify this library, you may extend this exception to your version of
+ * the program or library, but you are not obliged to do so. If you do not wish
+ * to do so, delete this exception statement from your version.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library.
+ */
+package de.uni.bremen.monty.moco.codegeneration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+import de.uni.bremen.monty.moco.ast.ASTNode;
+import de.uni.bremen.monty.moco.ast.CoreClasses;
+import de.uni.bremen.monty.moco.ast.Package;
+import de.uni.bremen.monty.moco.ast.declaration.ClassDeclaration;
+import de.uni.bremen.monty.moco.ast.declaration.Declaration;
+import de.uni.bremen.monty.moco.ast.declaration.FunctionDeclaration;
+import de.uni.bremen.monty.moco.ast.declaration.ProcedureDeclaration;
+import de.uni.bremen.monty.moco.ast.declaration.TypeDeclaration;
+import de.uni.bremen.monty.moco.ast.declaration.TypeVariableDeclaration;
+import de.uni.bremen.monty.moco.ast.declaration.VariableDeclaration;
+import de.uni.bremen.monty.moco.ast.declaration.typeinf.Type;
+import de.uni.bremen.monty.moco.ast.declaration.typeinf.Typed;
+import de.uni.bremen.monty.moco.ast.expression.CastExpression;
+import de.uni.bremen.monty.moco.ast.expression.FunctionCall;
+import de.uni.bremen.monty.moco.ast.expression.IsExpression;
+import de.uni.bremen.monty.moco.visitor.BaseVisitor;
+
+/** Specializes generic procedures and classes for the value types Int, Float, Bool and Char.
+ *
+ * Generics are erased to Object, so a generic procedure called with an Int boxes its argument and unboxes its result.
+ * For every call of a generic procedure which binds one of its type parameters to a value type, a copy of the
+ * procedure is generated with the type variable replaced by this type, so that the value is passed around unboxed and
+ * the procedure is called directly. Type parameters bound to other classes stay erased, since their values are
+ * pointers either way. Each combination of bindings is generated only once. Methods are not specialized this way,
+ * since they are called through the VMT, whose signatures keep values boxed.
+ *
+ * A generic class is not copied, because erased code like a procedure taking a 'Box<T>' may get objects of any
+ * binding and relies on a single layout. Instead, if every instantiation of the class binds a type parameter to the
+ * same value type, every object of the class has this binding, and the type variable is replaced by the value type in
+ * the whole class. Its attributes are then stored unboxed and its initializers take their arguments unboxed. This is
+ * only done for classes without subclasses, without generic superclasses and without methods overriding a method of
+ * a superclass, so that no other class or VMT signature depends on the erased types, and without casts or type
+ * tests, which could refer to the type variable.
+ *
+ * The specialized copies are not cloned from the AST. Instead the types of the nodes of the procedure which were typed
+ * with one of its type variables are replaced while the copy is generated and restored afterwards. To bound the growth
+ * of the code, specializations are only created as long as the number of AST nodes in all copies stays within a
+ * budget. Calls beyond the budget use the erased procedure. */
+public class Monomorphization {
+
+	/** The maximal number of AST nodes of all specialized procedures together. */
+	private static final int NODE_BUDGET = 4000;
+
+	private final List<ClassDeclaration> valueTypes = Arrays.asList(
+	        CoreClasses.intType(),
+	        CoreClasses.floatType(),
+	        CoreClasses.boolType(),
+	        CoreClasses.charType());
+
+	/** A copy of a generic procedure for one binding of its type parameters. */
+	public static class Specialization {
+		private final ProcedureDeclaration procedure;
+		private final Map<TypeVariableDeclaration, ClassDeclaration> binding;
+		private final String name;
+		private final Map<Typed, TypeDeclaration> erasedTypes = new HashMap<>();
+
+		Specialization(ProcedureDeclaration procedure, Map<TypeVariableDeclaration, ClassDeclaration> binding,
+		        String name) {
+			this.procedure = procedure;
+			this.binding = binding;
+			this.name = name;
+		}
+
+		public ProcedureDeclaration getProcedure() {
+			return this.procedure;
+		}
+
+		/** @return the name of the generated function */
+		public String getName() {
+			return this.name;
+		}
+
+		/** @return the type of the node in this specialization */
+		public TypeDeclaration getTypeDeclaration(Typed node) {
+			ClassDeclaration bound = this.binding.get(node.getErasedTypeVariable());
+			return bound != null ? bound : node.getTypeDeclaration();
+		}
+
+		/** @return the types of the parameters of the procedure in this specialization */
+		public List<TypeDeclaration> getParameterTypes() {
+			List<TypeDeclaration> types = new ArrayList<>();
+			for (VariableDeclaration parameter : this.procedure.getParameter()) {
+				types.add(getTypeDeclaration(parameter));
+			}
+			return types;
+		}
+
+		/** Replace the types of all nodes of the procedure typed with a bound type variable. */
+		public void apply() {
+			this.procedure.visit(new BaseVisitor() {
+				@Override
+				protected void onEnterChildrenEachNode(ASTNode node) {
+					if (node instanceof Typed && ((Typed) node).isTypeDeclarationResolved()) {
+						Typed typed = (Typed) node;
+						ClassDeclaration bound = Specialization.this.binding.get(typed.getErasedTypeVariable());
+						if (bound != null) {
+							Specialization.this.erasedTypes.put(typed, typed.getTypeDeclaration());
+							typed.setTypeDeclaration(bound);
+						}
+					}
+				}
+			});
+		}
+
+		/** Restore the erased types replaced by {@link #apply()}. */
+		public void restore() {
+			for (Map.Entry<Typed, TypeDeclaration> entry : this.erasedTypes.entrySet()) {
+				entry.getKey().setTypeDeclaration(entry.getValue());
+			}
+			this.erasedTypes.clear();
+		}
+	}
+
+	private final Map<String, Specialization> specializations = new HashMap<>();
+
+	private int specializedClassCount = 0;
+
+	private final Queue<Specialization> pending = new LinkedList<>();
+
+	private int nodeCount = 0;
+
+	/** Get the specialization called by the given call and schedule it for generation if it is new.
+	 *
+	 * @return the specialization or null if the erased procedure is called */
+	public Specialization getSpecialization(FunctionCall call) {
+		ProcedureDeclaration procedure = call.getDeclaration();
+		if (procedure == null || procedure.getTypeParameters().isEmpty() || procedure.isMethod()
+		        || procedure.isInitializer() || isNative(procedure)) {
+			return null;
+		}
+
+		Map<TypeVariableDeclaration, ClassDeclaration> binding = new HashMap<>();
+		for (int i = 0; i < procedure.getParameter().size(); i++) {
+			bind(binding, procedure.getParameter().get(i), call.getArguments().get(i).getTypeDeclaration());
+		}
+		if (procedure instanceof FunctionDeclaration) {
+			// the type of the call may be erased where the arguments are not, so it only binds unbound variables
+			TypeVariableDeclaration returnType = procedure.getErasedTypeVariable();
+			if (returnType != null && !binding.containsKey(returnType)) {
+				bind(binding, procedure, call.getTypeDeclaration());
+			}
+		}
+
+		StringBuilder name = new StringBuilder(procedure.getMangledIdentifier().getSymbol()).append("$S");
+		boolean specialized = false;
+		for (TypeVariableDeclaration typeParameter : procedure.getTypeParameters()) {
+			ClassDeclaration bound = binding.get(typeParameter);
+			if (bound == null || !this.valueTypes.contains(bound)) {
+				binding.remove(typeParameter);
+				bound = CoreClasses.objectType();
+			} else {
+				specialized = true;
+			}
+			name.append('$').append(bound.getMangledIdentifier().getSymbol());
+		}
+		if (!specialized) {
+			return null;
+		}
+
+		Specialization specialization = this.specializations.get(name.toString());
+		if (specialization == null) {
+			int size = countNodes(procedure);
+			if (size < 0 || this.nodeCount + size > NODE_BUDGET) {
+				return null;
+			}
+			this.nodeCount += size;
+			specialization = new Specialization(procedure, binding, name.toString());
+			this.specializations.put(name.toString(), specialization);
+			this.pending.add(specialization);
+		}
+		return specialization;
+	}
+
+	/** Replace the type parameters of generic classes which every instantiation binds to the same value type. This has
+	 * to be done before the classes are laid out. */
+	public void specializeClasses(Package root) {
+		final List<ClassDeclaration> classes = new ArrayList<>();
+		final List<FunctionCall> instantiations = new ArrayList<>();
+		root.visit(new BaseVisitor() {
+			@Override
+			public void visit(ClassDeclaration node) {
+				classes.add(node);
+				super.visit(node);
+			}
+
+			@Override
+			public void visit(FunctionCall node) {
+				if (node.getDeclaration() != null && node.getDeclaration().isInitializer()) {
+					instantiations.add(node);
+				}
+				super.visit(node);
+			}
+		});
+
+		Map<ClassDeclaration, ClassDeclaration[]> bindings = new HashMap<>();
+		for (ClassDeclaration classDeclaration : classes) {
+			if (isSpecializable(classDeclaration, classes)) {
+				bindings.put(classDeclaration, new ClassDeclaration[classDeclaration.getTypeParameters().size()]);
+			}
+		}
+		for (FunctionCall instantiation : instantiations) {
+			ClassDeclaration[] bound = bindings.get(instantiation.getDeclaration().getDefiningClass());
+			if (bound != null) {
+				bindClass(bound, instantiation);
+			}
+		}
+
+		for (Map.Entry<ClassDeclaration, ClassDeclaration[]> entry : bindings.entrySet()) {
+			final Map<TypeVariableDeclaration, ClassDeclaration> binding = new HashMap<>();
+			List<TypeVariableDeclaration> typeParameters = entry.getKey().getTypeParameters();
+			for (int i = 0; i < typeParameters.size(); i++) {
+				ClassDeclaration bound = entry.getValue()[i];
+				if (bound != null && this.valueTypes.contains(bound)) {
+					binding.put(typeParameters.get(i), bound);
+				}
+			}
+			if (binding.isEmpty()) {
+				continue;
+			}
+			entry.getKey().visit(new BaseVisitor() {
+				@Override
+				protected void onEnterChildrenEachNode(ASTNode node) {
+					if (node instanceof Typed && ((Typed) node).isTypeDeclarationResolved()) {
+						ClassDeclaration bound = binding.get(((Typed) node).getErasedTypeVariable());
+						if (bound != null) {
+							((Typed) node).setTypeDeclaration(bound);
+						}
+					}
+				}
+			});
+			this.specializedClassCount++;
+		}
+	}
+
+	public int getSpecializedClassCount() {
+		return this.specializedClassCount;
+	}
+
+	/** Check whether the types of the class can be replaced without changing any other class. */
+	private boolean isSpecializable(ClassDeclaration classDeclaration, List<ClassDeclaration> classes) {
+		if (classDeclaration.getTypeParameters().isEmpty() || isNative(classDeclaration)) {
+			return false;
+		}
+		for (ClassDeclaration other : classes) {
+			if (other.getSuperClassDeclarations().contains(classDeclaration)) {
+				return false;
+			}
+		}
+		List<ClassDeclaration> superClasses = classDeclaration.getSuperClassDeclarationsRecursive();
+		superClasses.remove(classDeclaration);
+		for (ClassDeclaration superClass : superClasses) {
+			if (!superClass.getTypeParameters().isEmpty()) {
+				return false;
+			}
+			for (Declaration declaration : superClass.getBlock().getDeclarations()) {
+				for (Declaration own : classDeclaration.getBlock().getDeclarations()) {
+					if (declaration instanceof ProcedureDeclaration && own instanceof ProcedureDeclaration
+					        && ((ProcedureDeclaration) own).isMethod()
+					        && own.getIdentifier().getSymbol().equals(declaration.getIdentifier().getSymbol())) {
+						return false;
+					}
+				}
+			}
+		}
+		final boolean[] typeTests = new boolean[1];
+		classDeclaration.visit(new BaseVisitor() {
+			@Override
+			public void visit(CastExpression node) {
+				typeTests[0] = true;
+			}
+
+			@Override
+			public void visit(IsExpression node) {
+				typeTests[0] = true;
+			}
+		});
+		return !typeTests[0];
+	}
+
+	/** Binds the type parameters of a class to the type arguments of an instantiation. A parameter bound to different
+	 * types or to anything but a class without type arguments is bound to Object, which means it stays erased. */
+	private void bindClass(ClassDeclaration[] bound, FunctionCall instantiation) {
+		List<Type> arguments = null;
+		if (instantiation.isTypeResolved() && instantiation.getType().isClass()) {
+			arguments = instantiation.getType().asClass().getTypeParameters();
+		}
+		for (int i = 0; i < bound.length; i++) {
+			ClassDeclaration type = CoreClasses.objectType();
+			if (arguments != null && arguments.size() == bound.length) {
+				type = getValueType(arguments.get(i));
+			}
+			if (bound[i] == null) {
+				bound[i] = type;
+			} else if (bound[i] != type) {
+				bound[i] = CoreClasses.objectType();
+			}
+		}
+	}
+
+	/** @return the value type the type stands for or Object if it is none */
+	private ClassDeclaration getValueType(Type type) {
+		if (type.isClass() && type.asClass().getTypeParameters().isEmpty()) {
+			for (ClassDeclaration valueType : this.valueTypes) {
+				if (valueType.getIdentifier().getSymbol().equals(type.getName().getSymbol())) {
+					return valueType;
+				}
+			}
+		}
+		return CoreClasses.objectType();
+	}
+
+	/** @return the next specialization to generate or null if all are generated */
+	public Specialization nextPending() {
+		return this.pending.poll();
+	}
+
+	public int getSpecializationCount() {
+		return this.specializations.size();
+	}
+
+	/** Binds the type variable of the node to the given type. If it is already bound to a different type, it is bound
+	 * to Object, which means it stays erased. */
+	private void bind(Map<TypeVariableDeclaration, ClassDeclaration> binding, Typed node, TypeDeclaration type) {
+		TypeVariableDeclaration typeVariable = node.getErasedTypeVariable();
+		if (typeVariable == null || !(type instanceof ClassDeclaration)) {
+			return;
+		}
+		ClassDeclaration bound = binding.get(typeVariable);
+		if (bound == null) {
+			binding.put(typeVariable, (ClassDeclaration) type);
+		} else if (bound != type) {
+			binding.put(typeVariable, CoreClasses.objectType());
+		}
+	}
+
+	/** @return the number of AST nodes of the procedure or -1 if it contains nested declarations of procedures or
+	 *         classes, which would be generated once for each specialization */
+	private int countNodes(final ProcedureDeclaration procedure) {
+		final int[] count = new int[1];
+		procedure.visit(new BaseVisitor() {
+			@Override
+			protected void onEnterChildrenEachNode(ASTNode node) {
+				if (node != procedure && (node instanceof ProcedureDeclaration || node instanceof ClassDeclaration)) {
+					count[0] = Integer.MIN_VALUE;
+				}
+				count[0]++;
+			}
+		});
+		return count[0] < 0 ? -1 : count[0];
+	}
+
+	private static boolean isNative(ASTNode node) {
+		while (node.getParentNode() != null) {
+			node = node.getParentNode();
+			if (node instanceof Package && ((Package) node).isNativePackage()) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,281 @@
+/*
+ * moco, the Monty Compiler
+ * Copyright (c) 2013-2014, Monty's Coconut, All rights reserved.
+ *
+ * This file is part of moco, the Monty Compiler.
+ *
+ * moco is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ *
+ * moco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * Linking this program and/or its accompanying libraries statically or
+ * dynamically with other modules is making a combined work based on this
+ * program. Thus, the terms and conditions of the GNU General Public License
+ * cover the whole combination.
+ *
+ * As a special exception, the copyright holders of moco give
+ * you permission to link this programm and/or its accompanying libraries
+ * with independent modules to produce an executable, regardless of the
+ * license terms of these independent modules, and to copy and distribute the
+ * resulting executable under terms of your choice, provided that you also meet,
+ * for each linked independent module, the terms and conditions of the
+ * license of that module.
+ *
+ * An independent module is a module which is not
+ * derived from or based on this program and/or its accompanying libraries.
+ * If you modify this library, you may extend this exception to your version of
+ * the program or library, but you are not obliged to do so. If you do not wish
+ * to do so, delete this exception statement from your version.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library.
+ */
+package de.uni.bremen.monty.moco.codegeneration;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import de.uni.bremen.monty.moco.ast.ASTNode;
+import de.uni.bremen.monty.moco.ast.CoreClasses;
+import de.uni.bremen.monty.moco.ast.Package;
+import de.uni.bremen.monty.moco.ast.declaration.ClassDeclaration;
+import de.uni.bremen.monty.moco.ast.declaration.FunctionDeclaration;
+import de.uni.bremen.monty.moco.ast.declaration.ProcedureDeclaration;
+import de.uni.bremen.monty.moco.ast.expression.ConditionalExpression;
+import de.uni.bremen.monty.moco.ast.expression.FunctionCall;
+import de.uni.bremen.monty.moco.ast.expression.MemberAccess;
+import de.uni.bremen.monty.moco.ast.statement.ConditionalStatement;
+import de.uni.bremen.monty.moco.visitor.BaseVisitor;
+
+/** Finds the procedures and classes which are used by the program, so that only these are generated.
+ *
+ * The analysis starts at the statements of the modules, which make up the main function, and follows
+ * <ul>
+ * <li>calls of functions and initializers,</li>
+ * <li>method calls which are bound statically, see {@link ClassHierarchy#getStaticImplementation(FunctionCall)},</li>
+ * <li>the creation of objects, which makes their class instantiated, and</li>
+ * <li>method calls through the VMT, which may reach the implementation of every instantiated subclass of the class
+ * declaring the method.</li>
+ * </ul>
+ * The core value classes always count as instantiated, because their values are boxed wherever an object is expected.
+ * Their native operators and the natives of the arrays are emitted inline and need no procedure. Branches which are
+ * never taken according to the ConstantFoldingVisitor are skipped like in the code generation.
+ *
+ * The VMT entries of methods which are never called through the VMT are null. */
+public class Reachability {
+
+	private final ClassHierarchy classHierarchy;
+
+	private final Set<ProcedureDeclaration> live = new HashSet<>();
+	private final Set<ClassDeclaration> instantiated = new HashSet<>();
+
+	/** The methods which are called through the VMT. */
+	private final Set<ProcedureDeclaration> virtualCalls = new HashSet<>();
+
+	private List<ClassDeclaration> boxedClasses;
+
+	/** The live procedures whose bodies have not been searched for uses yet. */
+	private final Deque<ProcedureDeclaration> pending = new ArrayDeque<>();
+
+	private int procedureCount = 0;
+	private int classCount = 0;
+
+	public Reachability(ClassHierarchy classHierarchy) {
+		this.classHierarchy = classHierarchy;
+	}
+
+	/** Find all live procedures and instantiated classes of the program. This has to be done after the class hierarchy
+	 * is complete. */
+	public void analyze(Package root) {
+		root.visit(new BaseVisitor() {
+			@Override
+			public void visit(ClassDeclaration node) {
+				Reachability.this.classCount++;
+				super.visit(node);
+			}
+
+			@Override
+			public void visit(FunctionDeclaration node) {
+				Reachability.this.procedureCount++;
+				super.visit(node);
+			}
+
+			@Override
+			public void visit(ProcedureDeclaration node) {
+				Reachability.this.procedureCount++;
+				super.visit(node);
+			}
+		});
+
+		this.boxedClasses =
+		        Arrays.asList(
+		                CoreClasses.intType(),
+		                CoreClasses.boolType(),
+		                CoreClasses.floatType(),
+		                CoreClasses.charType());
+		for (ClassDeclaration classDeclaration : this.boxedClasses) {
+			instantiate(classDeclaration);
+		}
+		root.visit(new UseFinder());
+		while (!this.pending.isEmpty()) {
+			this.pending.poll().getBody().visit(new UseFinder());
+		}
+	}
+
+	/** @return whether the procedure may be called and has to be generated */
+	public boolean isLive(ProcedureDeclaration procedure) {
+		return this.live.contains(procedure);
+	}
+
+	/** @return whether objects of exactly this class may be created, so that it needs a constructor */
+	public boolean isInstantiated(ClassDeclaration classDeclaration) {
+		return this.instantiated.contains(classDeclaration);
+	}
+
+	public int getProcedureCount() {
+		return this.procedureCount;
+	}
+
+	public int getLiveProcedureCount() {
+		return this.live.size();
+	}
+
+	public int getClassCount() {
+		return this.classCount;
+	}
+
+	public int getInstantiatedClassCount() {
+		return this.instantiated.size();
+	}
+
+	private void markLive(ProcedureDeclaration procedure) {
+		if (this.live.add(procedure)) {
+			this.pending.add(procedure);
+		}
+	}
+
+	private void instantiate(ClassDeclaration classDeclaration) {
+		if (this.instantiated.add(classDeclaration)) {
+			if (classDeclaration.getDefaultInitializer() != null) {
+				markLive(classDeclaration.getDefaultInitializer());
+			}
+			for (ProcedureDeclaration method : this.virtualCalls) {
+				markImplementationLive(classDeclaration, method);
+			}
+		}
+	}
+
+	private void callVirtual(ProcedureDeclaration method) {
+		if (this.virtualCalls.add(method)) {
+			for (ClassDeclaration classDeclaration : this.instantiated) {
+				markImplementationLive(classDeclaration, method);
+			}
+		}
+	}
+
+	private void markImplementationLive(ClassDeclaration classDeclaration, ProcedureDeclaration method) {
+		if (this.classHierarchy.isSubClass(classDeclaration, method.getDefiningClass())) {
+			ProcedureDeclaration implementation = this.classHierarchy.getImplementation(classDeclaration, method);
+			if (implementation != null) {
+				markLive(implementation);
+			}
+		}
+	}
+
+	/** Whether the code generation emits the procedure inline instead of calling it. */
+	private boolean isInlined(ProcedureDeclaration declaration) {
+		if (BoundsCheckElimination.isArrayAccess(declaration) || BoundsCheckElimination.isArrayLength(declaration)) {
+			return true;
+		}
+		return declaration.isMethod() && this.boxedClasses.contains(declaration.getDefiningClass())
+		        && isNative(declaration);
+	}
+
+	private boolean isNative(ASTNode node) {
+		for (ASTNode parent = node.getParentNode(); parent != null; parent = parent.getParentNode()) {
+			if (parent instanceof Package && ((Package) parent).isNativePackage()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** Marks everything used by the code it visits, without entering the procedures and classes declared in it. */
+	private class UseFinder extends BaseVisitor {
+
+		@Override
+		public void visit(ClassDeclaration node) {
+		}
+
+		@Override
+		public void visit(FunctionDeclaration node) {
+		}
+
+		@Override
+		public void visit(ProcedureDeclaration node) {
+		}
+
+		@Override
+		public void visit(MemberAccess node) {
+			if (node.getConstantValue() == null) {
+				super.visit(node);
+			}
+		}
+
+		@Override
+		public void visit(ConditionalStatement node) {
+			Object condition = node.getCondition().getConstantValue();
+			if (condition == null) {
+				super.visit(node);
+			} else {
+				visitDoubleDispatched((Boolean) condition ? node.getThenBlock() : node.getElseBlock());
+			}
+		}
+
+		@Override
+		public void visit(ConditionalExpression node) {
+			Object condition = node.getCondition().getConstantValue();
+			if (node.getConstantValue() != null) {
+				return;
+			} else if (condition == null) {
+				super.visit(node);
+			} else {
+				visitDoubleDispatched((Boolean) condition ? node.getThenExpression() : node.getElseExpression());
+			}
+		}
+
+		@Override
+		public void visit(FunctionCall node) {
+			ProcedureDeclaration declaration = node.getDeclaration();
+			if (declaration != null && !isInlined(declaration)) {
+				if (declaration.isInitializer()) {
+					markLive(declaration);
+					if (!(node.getParentNode() instanceof MemberAccess)) {
+						instantiate(declaration.getDefiningClass());
+					}
+				} else if (declaration.isMethod()) {
+					ProcedureDeclaration implementation =
+					        Reachability.this.classHierarchy.getStaticImplementation(node);
+					if (implementation != null) {
+						markLive(implementation);
+					} else {
+						callVirtual(declaration);
+					}
+				} else {
+					markLive(declaration);
+				}
+			}
+			super.visit(node);
+		}
+	}
+}
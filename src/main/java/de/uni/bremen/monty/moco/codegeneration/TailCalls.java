@@ -0,0 +1,185 @@
+/*
+ * moco, the Monty Compiler
+ * Copyright (c) 2013-2014, Monty's Coconut, All rights reserved.
+ *
+ * This file is part of moco, the Monty Compiler.
+ *
+ * moco is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ *
+ * moco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * Linking this program and/or its accompanying libraries statically or
+ * dynamically with other modules is making a combined work based on this
+ * program. Thus, the terms and conditions of the GNU General Public License
+ * cover the whole combination.
+ *
+ * As a special exception, the copyright holders of moco give
+ * you permission to link this programm and/or its accompanying libraries
+ * with independent modules to produce an executable, regardless of the
+ * license terms of these independent modules, and to copy and distribute the
+ * resulting executable under terms of your choice, provided that you also meet,
+ * for each linked independent module, the terms and conditions of the
+ * license of that module.
+ *
+ * An independent module is a module which is not
+ * derived from or based on this program and/or its accompanying libraries.
+ * If you modify this library, you may extend this exception to your version of
+ * the program or library, but you are not obliged to do so. If you do not wish
+ * to do so, delete this exception statement from your version.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library.
+ */
+package de.uni.bremen.monty.moco.codegeneration;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import de.uni.bremen.monty.moco.ast.ASTNode;
+import de.uni.bremen.monty.moco.ast.Package;
+import de.uni.bremen.monty.moco.ast.declaration.ProcedureDeclaration;
+import de.uni.bremen.monty.moco.ast.expression.Expression;
+import de.uni.bremen.monty.moco.ast.expression.FunctionCall;
+import de.uni.bremen.monty.moco.ast.expression.MemberAccess;
+import de.uni.bremen.monty.moco.ast.expression.SelfExpression;
+import de.uni.bremen.monty.moco.ast.expression.VariableAccess;
+import de.uni.bremen.monty.moco.ast.statement.ReturnStatement;
+import de.uni.bremen.monty.moco.ast.statement.TryStatement;
+import de.uni.bremen.monty.moco.visitor.BaseVisitor;
+
+/** Finds the calls whose result is returned directly by 'return f(...)'. The frame of the caller is not needed any
+ * more when such a call is made, so it is emitted as a tail call, unless
+ * <ul>
+ * <li>it is inside a try block, because then it has to return to its landing pad, or</li>
+ * <li>it calls a method on an object that is allocated on the stack of the caller.</li>
+ * </ul>
+ * A tail call of the calling procedure itself, either a function or a method called on self which no subclass
+ * overrides, does not need a call at all. The procedure assigns the arguments to its parameters and jumps back to its
+ * start instead, so deep recursion runs in constant stack space. */
+public class TailCalls {
+
+	private final ClassHierarchy classHierarchy;
+	private final EscapeAnalysis escapeAnalysis;
+
+	private final Set<FunctionCall> tailCalls = new HashSet<>();
+
+	private final Set<FunctionCall> selfTailCalls = new HashSet<>();
+
+	/** The procedures which contain a tail call of themselves. */
+	private final Set<ProcedureDeclaration> tailRecursive = new HashSet<>();
+
+	public TailCalls(ClassHierarchy classHierarchy, EscapeAnalysis escapeAnalysis) {
+		this.classHierarchy = classHierarchy;
+		this.escapeAnalysis = escapeAnalysis;
+	}
+
+	/** Find all tail calls of the program. This has to be done after the escape analysis. */
+	public void analyze(Package root) {
+		root.visit(new BaseVisitor() {
+			@Override
+			public void visit(ReturnStatement node) {
+				FunctionCall call = getCall(node.getParameter());
+				if (call != null) {
+					ProcedureDeclaration procedure = getEnclosingProcedure(node);
+					if (procedure != null && isTailCall(call, procedure)) {
+						TailCalls.this.tailCalls.add(call);
+						if (isSelfCall(call, procedure)) {
+							TailCalls.this.selfTailCalls.add(call);
+							TailCalls.this.tailRecursive.add(procedure);
+						}
+					}
+				}
+				super.visit(node);
+			}
+		});
+	}
+
+	/** @return whether the call can be emitted as a tail call */
+	public boolean isTailCall(FunctionCall node) {
+		return this.tailCalls.contains(node);
+	}
+
+	/** @return whether the call is a tail call of the procedure containing it */
+	public boolean isSelfTailCall(FunctionCall node) {
+		return this.selfTailCalls.contains(node);
+	}
+
+	/** @return whether the procedure contains a tail call of itself and has to be generated as a loop */
+	public boolean isTailRecursive(ProcedureDeclaration procedure) {
+		return this.tailRecursive.contains(procedure);
+	}
+
+	public int getTailCallCount() {
+		return this.tailCalls.size();
+	}
+
+	public int getSelfTailCallCount() {
+		return this.selfTailCalls.size();
+	}
+
+	/** Get the call whose result is the value of the expression, which is either the call itself or a member access
+	 * with the call on its right side.
+	 *
+	 * @return the call or null if the value is not the result of a call */
+	public static FunctionCall getCall(Expression expression) {
+		if (expression != null && expression.getConstantValue() != null) {
+			// the value is emitted as a constant, see ConstantFoldingVisitor
+			return null;
+		}
+		if (expression instanceof MemberAccess) {
+			expression = ((MemberAccess) expression).getRight();
+		}
+		if (expression instanceof FunctionCall) {
+			return (FunctionCall) expression;
+		}
+		return null;
+	}
+
+	private boolean isTailCall(FunctionCall call, ProcedureDeclaration procedure) {
+		ProcedureDeclaration declaration = call.getDeclaration();
+		if (declaration == null || declaration.isInitializer()) {
+			return false;
+		}
+		ASTNode child = call;
+		ASTNode parent = call.getParentNode();
+		while (parent != procedure) {
+			if (parent instanceof TryStatement && ((TryStatement) parent).getTryBlock() == child) {
+				return false;
+			}
+			child = parent;
+			parent = parent.getParentNode();
+		}
+		if (call.getParentNode() instanceof MemberAccess) {
+			Expression receiver = ((MemberAccess) call.getParentNode()).getLeft();
+			return !(receiver instanceof VariableAccess)
+			        || !this.escapeAnalysis.mayReferToStack(((VariableAccess) receiver).getDeclaration());
+		}
+		return true;
+	}
+
+	private boolean isSelfCall(FunctionCall call, ProcedureDeclaration procedure) {
+		ProcedureDeclaration declaration = call.getDeclaration();
+		if (!declaration.isMethod()) {
+			return declaration == procedure;
+		}
+		if (!procedure.isMethod() || !(call.getParentNode() instanceof MemberAccess)
+		        || !(((MemberAccess) call.getParentNode()).getLeft() instanceof SelfExpression)) {
+			return false;
+		}
+		return this.classHierarchy.getUniqueImplementation(procedure.getDefiningClass(), declaration) == procedure;
+	}
+
+	private ProcedureDeclaration getEnclosingProcedure(ASTNode node) {
+		ASTNode parent = node.getParentNode();
+		while (parent != null && !(parent instanceof ProcedureDeclaration)) {
+			parent = parent.getParentNode();
+		}
+		return (ProcedureDeclaration) parent;
+	}
+}
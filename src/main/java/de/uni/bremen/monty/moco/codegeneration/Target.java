@@ -0,0 +1,107 @@
+/*
+ * moco, the Monty Compiler
+ * Copyright (c) 2013-2014, Monty's Coconut, All rights reserved.
+ *
+ * This file is part of moco, the Monty Compiler.
+ *
+ * moco is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ *
+ * moco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * Linking this program and/or its accompanying libraries statically or
+ * dynamically with other modules is making a combined work based on this
+ * program. Thus, the terms and conditions of the GNU General Public License
+ * cover the whole combination.
+ *
+ * As a special exception, the copyright holders of moco give
+ * you permission to link this programm and/or its accompanying libraries
+ * with independent modules to produce an executable, regardless of the
+ * license terms of these independent modules, and to copy and distribute the
+ * resulting executable under terms of your choice, provided that you also meet,
+ * for each linked independent module, the terms and conditions of the
+ * license of that module.
+ *
+ * An independent module is a module which is not
+ * derived from or based on this program and/or its accompanying libraries.
+ * If you modify this library, you may extend this exception to your version of
+ * the program or library, but you are not obliged to do so. If you do not wish
+ * to do so, delete this exception statement from your version.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library.
+ */
+package de.uni.bremen.monty.moco.codegeneration;
+
+/** The machine the generated code is compiled for. The native pipeline always targets the host, so the triple and the
+ * data layout are derived from the running JVM. The data layouts are spelled out in full because LLVM 3.4 does not
+ * understand the abbreviated form of newer releases. */
+public class Target {
+
+	private static final String LAYOUT_X86_64 =
+	        "e-p:64:64:64-i1:8:8-i8:8:8-i16:16:16-i32:32:32-i64:64:64-f32:32:32-f64:64:64-v64:64:64-v128:128:128-a0:0:64-s0:64:64-f80:128:128-n8:16:32:64-S128";
+
+	private static final String LAYOUT_X86 =
+	        "e-p:32:32:32-i1:8:8-i8:8:8-i16:16:16-i32:32:32-i64:32:64-f32:32:32-f64:32:64-v64:64:64-v128:128:128-a0:0:64-f80:32:32-n8:16:32-S128";
+
+	private final String triple;
+	private final String dataLayout;
+
+	public Target(String triple, String dataLayout) {
+		this.triple = triple;
+		this.dataLayout = dataLayout;
+	}
+
+	/** @return the target of the machine this compiler runs on */
+	public static Target host() {
+		String arch = System.getProperty("os.arch").toLowerCase();
+		String os = System.getProperty("os.name").toLowerCase();
+
+		String layout = null;
+		if (arch.equals("amd64") || arch.equals("x86_64")) {
+			arch = "x86_64";
+			layout = LAYOUT_X86_64;
+		} else if (arch.equals("x86") || arch.matches("i[3-6]86")) {
+			arch = "i686";
+			layout = LAYOUT_X86;
+		} else if (arch.equals("aarch64")) {
+			arch = "aarch64";
+		}
+
+		String system;
+		if (os.startsWith("mac") || os.startsWith("darwin")) {
+			system = "apple-darwin";
+		} else if (os.startsWith("windows")) {
+			system = "pc-mingw32";
+			// COFF lays out some types differently, so leave the data layout to llc
+			layout = null;
+		} else {
+			system = "unknown-linux-gnu";
+		}
+		return new Target(arch + "-" + system, layout);
+	}
+
+	public String getTriple() {
+		return this.triple;
+	}
+
+	/** @return the data layout or null if it is not known for this target */
+	public String getDataLayout() {
+		return this.dataLayout;
+	}
+
+	/** @return the module header declaring this target */
+	public String getHeader() {
+		StringBuilder header = new StringBuilder();
+		if (this.dataLayout != null) {
+			header.append("target datalayout = \"").append(this.dataLayout).append("\"\n");
+		}
+		header.append("target triple = \"").append(this.triple).append("\"\n");
+		return header.toString();
+	}
+}
@@ -46,6 +46,7 @@ import org.apache.commons.lang3.StringUtils;
 
 import de.uni.bremen.monty.moco.codegeneration.identifier.FunctionSignature;
 import de.uni.bremen.monty.moco.codegeneration.identifier.LLVMIdentifier;
+import de.uni.bremen.monty.moco.codegeneration.identifier.LocalVariable;
 import de.uni.bremen.monty.moco.codegeneration.types.LLVMPointer;
 import de.uni.bremen.monty.moco.codegeneration.types.LLVMStructType;
 import de.uni.bremen.monty.moco.codegeneration.types.LLVMType;
@@ -60,12 +61,52 @@ import de.uni.bremen.monty.moco.codegeneration.types.LLVMTypeFactory.LLVMIntType
  * knowing where to write (Context) and how/what to write (CodeContext). */
 public class CodeContext extends Context {
 
+	/** The label of the basic block to which instructions are currently appended. */
+	private String currentLabel;
+
+	/** Instructions which are hoisted to the start of the entry block of the current function. It is created by the
+	 * first label after {@link #define(List, FunctionSignature)}. */
+	private CodeContext entryBlock;
+
+	/** Whether the next label starts the entry block of a function. */
+	private boolean expectEntryBlock;
+
+	/** The SSA form of the local variables of the current function. */
+	private SSABuilder ssaBuilder;
+
+	/** Whether the current basic block already ends with a terminator instruction. */
+	private boolean terminated;
+
+	/** The number of blocks started for unreachable code after a terminator in the current function. */
+	private int unreachableBlocks;
+
+	/** The landing pad of the innermost try block around the current position or null if there is none. Calls which
+	 * may raise an exception are emitted as invokes which unwind to it. */
+	private String unwindLabel;
+
+	/** The number of blocks started for the normal continuation of invokes in the current function. */
+	private int invokeBlocks;
+
 	/** @param commentAppender
 	 *            the comment appender to be used */
 	public CodeContext(CommentAppender commentAppender) {
 		super(commentAppender);
 	}
 
+	/** Appends an instruction. If the current basic block is already terminated, the instruction is unreachable and
+	 * a new block is started for it. */
+	@Override
+	public void append(String data) {
+		startUnreachableBlockIfTerminated();
+		super.append(data);
+	}
+
+	private void startUnreachableBlockIfTerminated() {
+		if (this.terminated) {
+			label("unreachable." + this.unreachableBlocks++);
+		}
+	}
+
 	// --------------Memory Access and Addressing Operations--------------------
 
 	/** Allocates space for a variable
@@ -80,6 +121,22 @@ public class CodeContext extends Context {
 		return identifierOfLocalVar;
 	}
 
+	/** Allocates space in the entry block of the current function, no matter in which block the code is currently
+	 * emitted. Such an alloca is executed once per call and not each time a loop runs through the current block.
+	 * 
+	 * @param identifierOfLocalVar
+	 *            identifier of the local variable
+	 * @param llvmType
+	 *            type of the local variable
+	 * @return identifier of the local variable */
+	public <T extends LLVMType> LLVMIdentifier<T> allocaInEntryBlock(LLVMIdentifier<T> identifierOfLocalVar,
+	        LLVMType llvmType) {
+		if (this.entryBlock == null) {
+			return alloca(identifierOfLocalVar, llvmType);
+		}
+		return this.entryBlock.alloca(identifierOfLocalVar, llvmType);
+	}
+
 	/** Dereferences a pointer
 	 * 
 	 * @param sourcePointer
@@ -227,8 +284,34 @@ public class CodeContext extends Context {
 	 * @return Identifier for result */
 	public <T extends LLVMType> LLVMIdentifier<T> call(LLVMIdentifier<LLVMType> signature,
 	        LLVMIdentifier<T> identifier, List<LLVMIdentifier<? extends LLVMType>> arguments, String overloadArgs) {
-		append(identifier.getName() + " = call " + signature.getType() + " " + overloadArgs + " " + signature.getName()
-		        + "(" + StringUtils.join(arguments, ',') + ")");
+		String call =
+		        signature.getType() + " " + overloadArgs + " " + signature.getName() + "("
+		                + StringUtils.join(arguments, ',') + ")";
+		if (mayUnwind(signature)) {
+			invoke(identifier.getName() + " = invoke " + call);
+		} else {
+			append(identifier.getName() + " = call " + call);
+		}
+		return identifier;
+	}
+
+	/** Calls a function as the last action of the calling function. The callee must not access the allocas of the
+	 * caller, so that its stack frame can be reused for the callee.
+	 * 
+	 * @param signature
+	 *            Name and return type of the function
+	 * @param arguments
+	 *            List of Arguments
+	 * @param <T>
+	 *            Return Type
+	 * @return Identifier for result */
+	public <T extends LLVMType> LLVMIdentifier<T> tailCall(LLVMIdentifier<LLVMType> signature,
+	        LLVMIdentifier<T> identifier, List<LLVMIdentifier<? extends LLVMType>> arguments) {
+		if (mayUnwind(signature)) {
+			return call(signature, identifier, arguments);
+		}
+		append(identifier.getName() + " = tail call " + signature.getType() + " " + signature.getName() + "("
+		        + StringUtils.join(arguments, ',') + ")");
 		return identifier;
 	}
 
@@ -249,7 +332,63 @@ public class CodeContext extends Context {
 	 * @param arguments
 	 *            List of Arguments */
 	public void callVoid(LLVMIdentifier<LLVMType> signature, List<LLVMIdentifier<?>> arguments) {
-		append("call " + signature + "(" + StringUtils.join(arguments, ',') + ")");
+		String call = signature + "(" + StringUtils.join(arguments, ',') + ")";
+		if (mayUnwind(signature)) {
+			invoke("invoke " + call);
+		} else {
+			append("call " + call);
+		}
+	}
+
+	/** Whether a call of the given function has to be an invoke. This is the case inside a try block for all calls of
+	 * Monty procedures, which are either called by their mangled name or through a function pointer. The functions of
+	 * the runtime and the intrinsics never raise an exception. */
+	private boolean mayUnwind(LLVMIdentifier<LLVMType> signature) {
+		if (this.unwindLabel == null) {
+			return false;
+		}
+		String name = signature.getName();
+		return name.startsWith("%") || name.startsWith("@M.");
+	}
+
+	/** Appends an invoke, which ends the current basic block, and starts the block where execution continues if the
+	 * callee returns normally. */
+	private void invoke(String invoke) {
+		String normalLabel = "invoke." + this.invokeBlocks++;
+		append(invoke + " to label %" + normalLabel + " unwind label %" + this.unwindLabel);
+		this.ssaBuilder.addSuccessor(normalLabel);
+		this.ssaBuilder.addSuccessor(this.unwindLabel);
+		this.terminated = true;
+		label(normalLabel);
+	}
+
+	/** Sets the landing pad to which calls unwind from now on.
+	 * 
+	 * @param label
+	 *            the label of the landing pad or null if calls should not be invokes */
+	public void setUnwindLabel(String label) {
+		this.unwindLabel = label;
+	}
+
+	public String getUnwindLabel() {
+		return this.unwindLabel;
+	}
+
+	/** Starts a landing pad which catches every Monty exception, see @monty_personality in std_llvm_include.ll.
+	 * 
+	 * @param personality
+	 *            the personality function
+	 * @param landingPad
+	 *            identifier for the result of the landing pad
+	 * @param exception
+	 *            identifier for the pointer to the _Unwind_Exception
+	 * @return the exception */
+	public <T extends LLVMType> LLVMIdentifier<T> landingpad(LLVMIdentifier<LLVMType> personality,
+	        LLVMIdentifier<LLVMType> landingPad, LLVMIdentifier<T> exception) {
+		append(landingPad.getName() + " = landingpad " + landingPad.getType() + " personality " + personality
+		        + " catch i8* null");
+		append(exception.getName() + " = extractvalue " + landingPad + ", 0");
+		return exception;
 	}
 
 	/** Defines a function. Appends the function signature and opens a new scope. Instructions called after this will be
@@ -261,8 +400,16 @@ public class CodeContext extends Context {
 	 *            function Signature: name, return type and parameter */
 	public void define(List<LLVMFunctionAttribute> fNAttr, FunctionSignature<?> functionSignature) {
 		emptyLine();
+		getCommentAppender().enterFunction(functionSignature);
 		append("define " + functionSignature + " " + StringUtils.join(fNAttr, ' ') + " {");
 		indent();
+		this.entryBlock = null;
+		this.expectEntryBlock = true;
+		this.ssaBuilder = new SSABuilder();
+		this.terminated = false;
+		this.unreachableBlocks = 0;
+		this.unwindLabel = null;
+		this.invokeBlocks = 0;
 	}
 
 	public enum LLVMFunctionAttribute {
@@ -277,7 +424,74 @@ public class CodeContext extends Context {
 	 * @param label
 	 *            name of the label */
 	public void label(String label) {
+		label(label, true);
+	}
+
+	/** Appends a label
+	 * 
+	 * @param label
+	 *            name of the label
+	 * @param sealed
+	 *            false if branches to this label are appended after it, like the branch back to the condition of a
+	 *            loop. The label must be sealed with {@link #sealLabel(String)} once all of them are appended. */
+	public void label(String label, boolean sealed) {
+		this.terminated = false;
 		append(label + ":");
+		this.currentLabel = label;
+		if (this.expectEntryBlock) {
+			this.expectEntryBlock = false;
+			this.entryBlock = new CodeContext(getCommentAppender());
+			appendNested(this.entryBlock);
+		}
+		if (this.ssaBuilder != null) {
+			CodeContext phis = new CodeContext(getCommentAppender());
+			appendNested(phis);
+			this.ssaBuilder.startBlock(label, phis, sealed);
+		}
+	}
+
+	/** Whether a branch to the label has been appended. */
+	public boolean hasBranchesTo(String label) {
+		return this.ssaBuilder.hasPredecessors(label);
+	}
+
+	/** @return whether the current basic block already ends with a terminator instruction, so that the code appended
+	 *         next is unreachable. */
+	public boolean isTerminated() {
+		return this.terminated;
+	}
+
+	/** Marks that all branches to the label are appended, see {@link #label(String, boolean)}. */
+	public void sealLabel(String label) {
+		this.ssaBuilder.sealBlock(label);
+	}
+
+	/** Get the value of a local variable at the current position.
+	 * 
+	 * @param variable
+	 *            the local variable
+	 * @return the value of the last assignment to the variable on the way to this position. If there are several
+	 *         ways with different values a phi is inserted. */
+	public <T extends LLVMType> LLVMIdentifier<T> readVariable(LocalVariable<T> variable) {
+		return this.ssaBuilder.readVariable(variable);
+	}
+
+	/** Assigns a value to a local variable. An assignment after a terminator belongs to a new unreachable block, so it
+	 * does not change the value the variable has at the end of the terminated block.
+	 * 
+	 * @param variable
+	 *            the local variable
+	 * @param value
+	 *            the new value */
+	public <T extends LLVMType> void writeVariable(LocalVariable<T> variable, LLVMIdentifier<T> value) {
+		startUnreachableBlockIfTerminated();
+		this.ssaBuilder.writeVariable(variable, value);
+	}
+
+	/** @return the label of the basic block to which instructions are currently appended. Branches within an
+	 *         expression may have started a new block since the expression's own label. */
+	public String getCurrentLabel() {
+		return this.currentLabel;
 	}
 
 	/** Append a global variable.
@@ -333,6 +547,13 @@ public class CodeContext extends Context {
 	 *            Value to return */
 	public void ret(LLVMIdentifier<?> llvmIdentifier) {
 		append("ret " + llvmIdentifier);
+		this.terminated = true;
+	}
+
+	/** Marks the current position as unreachable, like after a call which never returns. */
+	public void unreachable() {
+		append("unreachable");
+		this.terminated = true;
 	}
 
 	/** Declares a function. Declare means the implementation of the function is somewhere else.
@@ -346,19 +567,27 @@ public class CodeContext extends Context {
 	/** Closes the scope opened from a {@link #define(List, FunctionSignature)}. Last instruction for a function
 	 * definition */
 	public void close() {
+		this.ssaBuilder = null;
+		this.terminated = false;
 		dedent();
 		append("}");
+		getCommentAppender().exitFunction();
 		emptyLine();
 	}
 
 	/** Unconditional branch. */
 	public void branch(String label) {
 		append("br label %" + label);
+		this.ssaBuilder.addSuccessor(label);
+		this.terminated = true;
 	}
 
 	/** Conditional branch. */
 	public void branch(LLVMIdentifier<LLVMBool> value, String trueLabel, String falseLabel) {
 		append("br " + value + ", label %" + trueLabel + ", label %" + falseLabel);
+		this.ssaBuilder.addSuccessor(trueLabel);
+		this.ssaBuilder.addSuccessor(falseLabel);
+		this.terminated = true;
 	}
 
 	/** Adds a type declaration Compares two Integers
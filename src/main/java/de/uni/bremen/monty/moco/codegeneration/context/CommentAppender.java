@@ -40,10 +40,13 @@ package de.uni.bremen.monty.moco.codegeneration.context;
 
 import de.uni.bremen.monty.moco.ast.ASTNode;
 import de.uni.bremen.monty.moco.ast.Position;
+import de.uni.bremen.monty.moco.codegeneration.identifier.FunctionSignature;
 import org.apache.commons.lang3.StringUtils;
 
 /** Adds a comment after each line in llvm. That comment contains the Class of the ASTNode and the line in the monty File
- * that is responsible for the llvm instruction. */
+ * that is responsible for the llvm instruction.
+ * 
+ * Subclasses may annotate the instructions differently, see {@link DebugInfoAppender} and {@link NoCommentAppender}. */
 public class CommentAppender {
 
 	private ASTNode currentNode;
@@ -75,4 +78,28 @@ public class CommentAppender {
 	public void setNode(ASTNode currentNode) {
 		this.currentNode = currentNode;
 	}
+
+	/** @return the Node that is currently processed */
+	protected ASTNode getNode() {
+		return currentNode;
+	}
+
+	/** Called when the definition of a function starts. The following instructions belong to it until
+	 * {@link #exitFunction()} is called. Functions may be nested.
+	 * 
+	 * @param function
+	 *            the function being defined */
+	public void enterFunction(FunctionSignature<?> function) {
+	}
+
+	/** Called when the definition of the innermost function ends. */
+	public void exitFunction() {
+	}
+
+	/** Appends the data the annotations refer to at the end of the .ll file.
+	 * 
+	 * @param context
+	 *            the context of the whole .ll file */
+	public void appendMetadata(Context context) {
+	}
 }
@@ -0,0 +1,122 @@
+/*
+ * moco, the Monty Compiler
+ * Copyright (c) 2013-2014, Monty's Coconut, All rights reserved.
+ *
+ * This file is part of moco, the Monty Compiler.
+ *
+ * moco is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ *
+ * moco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * Linking this program and/or its accompanying libraries statically or
+ * dynamically with other modules is making a combined work based on this
+ * program. Thus, the terms and conditions of the GNU General Public License
+ * cover the whole combination.
+ *
+ * As a special exception, the copyright holders of moco give
+ * you permission to link this programm and/or its accompanying libraries
+ * with independent modules to produce an executable, regardless of the
+ * license terms of these independent modules, and to copy and distribute the
+ * resulting executable under terms of your choice, provided that you also meet,
+ * for each linked independent module, the terms and conditions of the
+ * license of that module.
+ *
+ * An independent module is a module which is not
+ * derived from or based on this program and/or its accompanying libraries.
+ * If you modify this library, you may extend this exception to your version of
+ * the program or library, but you are not obliged to do so. If you do not wish
+ * to do so, delete this exception statement from your version.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library.
+ */
+package de.uni.bremen.monty.moco.codegeneration.context;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/** The constants of a .ll file, like the types, the VMTs and the string literals.
+ * 
+ * Each constant is defined in a {@link CodeContext} of its own under a key, e.g. its type declaration or its name. Only
+ * the first constant with a key is written, so a constant may be defined again without any harm. This allows to merge
+ * pools which were filled independently of each other, see {@link #add(ConstantPool)}. */
+public class ConstantPool implements ContextData {
+
+	private final CommentAppender commentAppender;
+
+	/** The key of each constant or null for a pool which was added. */
+	private final List<Object> keys = new ArrayList<>();
+
+	/** The constants and the pools which were added, in the order in which they were defined. */
+	private final List<ContextData> constants = new ArrayList<>();
+
+	public ConstantPool(CommentAppender commentAppender) {
+		this.commentAppender = commentAppender;
+	}
+
+	/** Defines a constant after those defined so far.
+	 * 
+	 * @param key
+	 *            identifies the constant
+	 * @return the context to which the constant is appended */
+	public CodeContext define(Object key) {
+		CodeContext constant = new CodeContext(commentAppender);
+		keys.add(key);
+		constants.add(constant);
+		return constant;
+	}
+
+	/** Adds the constants of another pool after those defined so far. The other pool may still be filled afterwards,
+	 * it is read when this pool is written.
+	 * 
+	 * @param pool
+	 *            the constants of another part of the .ll file */
+	public void add(ConstantPool pool) {
+		keys.add(null);
+		constants.add(pool);
+	}
+
+	/** Collects the constants of this pool and the added ones, which were not written yet. */
+	private void collect(Set<Object> written, List<ContextData> result) {
+		for (int i = 0; i < constants.size(); i++) {
+			ContextData constant = constants.get(i);
+			if (constant instanceof ConstantPool) {
+				((ConstantPool) constant).collect(written, result);
+			} else if (written.add(keys.get(i))) {
+				result.add(constant);
+			}
+		}
+	}
+
+	private List<ContextData> collect() {
+		List<ContextData> result = new ArrayList<>();
+		collect(new HashSet<>(), result);
+		return result;
+	}
+
+	@Override
+	public String getData() {
+		StringBuilder s = new StringBuilder();
+		for (ContextData constant : collect()) {
+			s.append(constant.getData());
+		}
+		return s.toString();
+	}
+
+	@Override
+	public void write(Writer out) throws IOException {
+		for (ContextData constant : collect()) {
+			constant.write(out);
+		}
+	}
+}
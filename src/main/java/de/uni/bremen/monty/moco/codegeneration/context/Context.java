@@ -38,6 +38,8 @@
  */
 package de.uni.bremen.monty.moco.codegeneration.context;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -78,6 +80,25 @@ public class Context implements ContextData {
 		innerContexts.add(c);
 	}
 
+	/** Appends data which is converted on its own, like a {@link ConstantPool} or code generated elsewhere.
+	 * 
+	 * @param data */
+	void append(ContextData data) {
+		innerContexts.add(data);
+	}
+
+	/** Appends a Context which continues at the current indentation, so it can be filled later on.
+	 * 
+	 * @param c */
+	protected void appendNested(Context c) {
+		c.indentation = indentation;
+		innerContexts.add(c);
+	}
+
+	protected CommentAppender getCommentAppender() {
+		return commentAppender;
+	}
+
 	/** Converts this into a List of instruction as a String. Each Instruction is a new Line in the String. This is done
 	 * by flattening the Tree by concatenating.
 	 * 
@@ -90,6 +111,16 @@ public class Context implements ContextData {
 		return s.toString();
 	}
 
+	/** Writes all the children to the output like {@link #getData()}, but without building one String of them.
+	 * 
+	 * @param out
+	 *            the output */
+	public void write(Writer out) throws IOException {
+		for (ContextData contextData : innerContexts) {
+			contextData.write(out);
+		}
+	}
+
 	protected void indent() {
 		indentation++;
 	}
@@ -38,6 +38,11 @@
  */
 package de.uni.bremen.monty.moco.codegeneration.context;
 
+import java.io.IOException;
+import java.io.Writer;
+
 interface ContextData {
 	public String getData();
+
+	public void write(Writer out) throws IOException;
 }
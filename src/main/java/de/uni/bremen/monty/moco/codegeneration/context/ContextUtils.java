@@ -40,11 +40,18 @@ package de.uni.bremen.monty.moco.codegeneration.context;
 
 import de.uni.bremen.monty.moco.ast.ASTNode;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.Stack;
 
 /** Utility class for accessing different {@link Context}
  * 
- * Holds the {@link #baseContext} which is the Context that represent a whole .ll file. */
+ * Holds the {@link #baseContext} which is the Context that represent a whole .ll file.
+ * 
+ * If an output is given, each function is written to it as soon as its Context is closed and dropped afterwards, so
+ * only the functions being generated are kept in memory. The constants are written after all functions by
+ * {@link #write()}. */
 public class ContextUtils {
 
 	private final CommentAppender commentAppender;
@@ -53,7 +60,7 @@ public class ContextUtils {
 	private final CodeContext baseContext;
 
 	/** on top of each .ll file there is an area where all constant declaration should be located. */
-	private final CodeContext constantsContext;
+	private final ConstantPool constants;
 
 	/** each function should have it's own CodeContext. This is where those are stored. The first Context in the Stack is
 	 * the container of all functions in the .ll file and not the container for all statements in a function.
@@ -63,17 +70,38 @@ public class ContextUtils {
 	 * You start processing the new one, while saving the state of the old one in the stack */
 	private Stack<CodeContext> activeContexts;
 
-	/** Creates a {@link #baseContext} and a {@link #constantsContext} and makes the constantContext part of the
-	 * baseContext. */
+	/** where closed functions are written to or null if the whole .ll file is kept in the {@link #baseContext} */
+	private final Writer output;
+
+	/** Creates a {@link #baseContext} and the {@link #constants} and makes the constants part of the baseContext. */
 	public ContextUtils() {
-		commentAppender = new CommentAppender();
+		this(null);
+	}
+
+	/** Like {@link #ContextUtils()}, but each function is written to the given output as soon as it is closed.
+	 * 
+	 * @param output
+	 *            the .ll file */
+	public ContextUtils(Writer output) {
+		this(output, new CommentAppender());
+	}
+
+	/** Like {@link #ContextUtils(Writer)}, but the instructions are annotated by the given {@link CommentAppender}.
+	 * 
+	 * @param output
+	 *            the .ll file
+	 * @param commentAppender
+	 *            annotates each instruction */
+	public ContextUtils(Writer output, CommentAppender commentAppender) {
+		this.output = output;
+		this.commentAppender = commentAppender;
 
 		baseContext = new CodeContext(commentAppender);
 		activeContexts = new Stack<>();
 		activeContexts.push(baseContext);
 
-		constantsContext = new CodeContext(commentAppender);
-		baseContext.append(constantsContext);
+		constants = new ConstantPool(commentAppender);
+		baseContext.append(constants);
 	}
 
 	/** Sets the current Node to the {@link #commentAppender}
@@ -92,32 +120,73 @@ public class ContextUtils {
 		return activeContexts.peek();
 	}
 
-	/** Returns the constant Context. That is the Context in which the constant LLVM-declarations should be located. Like
-	 * string literals.
+	/** Returns the constants. That is where the constant LLVM-declarations should be located. Like string literals.
 	 * 
-	 * @return the constant Context. */
-	public CodeContext constant() {
-		return constantsContext;
+	 * @return the constants. */
+	public ConstantPool constant() {
+		return constants;
 	}
 
 	/** Converts the {@link #baseContext} into a string. The baseContext represents a whole .ll File. So the data is the
-	 * content of a .ll file.
+	 * content of a .ll file, without the functions already written if there is an output.
 	 * 
 	 * @return the converted {@link #baseContext} */
 	public String getData() {
 		return baseContext.getData();
 	}
 
+	/** Writes the {@link #baseContext} and the metadata of the {@link #commentAppender} to the output after the
+	 * functions. This should be done at the end of the processing. Without an output, only the metadata is added to
+	 * the {@link #baseContext}. */
+	public void write() throws IOException {
+		commentAppender.appendMetadata(baseContext);
+		if (output == null) {
+			return;
+		}
+		baseContext.write(output);
+	}
+
 	/** Adds a new Context to the {@link #activeContexts}. This should be used in the beginning of the processing of a
 	 * monty function. So that the llvm instructions of the monty statements stored into this new Context */
 	public void addNewContext() {
 		CodeContext context = new CodeContext(commentAppender);
 		activeContexts.push(context);
-		baseContext.append(context);
+		if (output == null) {
+			baseContext.append(context);
+		}
 	}
 
-	/** Closes a Context opened with {@link #addNewContext()}. This should be done at the end of processing a function. */
+	/** Adds functions which were generated by another ContextUtils, as if they were closed now. Their constants are
+	 * added by {@link ConstantPool#add(ConstantPool)}.
+	 * 
+	 * @param functions
+	 *            the code of the functions
+	 * @throws UncheckedIOException
+	 *             if the functions can not be written to the output */
+	public void addFunctions(String functions) {
+		if (output == null) {
+			baseContext.append(new StringData(functions));
+			return;
+		}
+		try {
+			output.write(functions);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/** Closes a Context opened with {@link #addNewContext()}. This should be done at the end of processing a function.
+	 * 
+	 * @throws UncheckedIOException
+	 *             if the function can not be written to the output */
 	public void closeContext() {
-		activeContexts.pop();
+		CodeContext context = activeContexts.pop();
+		if (output != null) {
+			try {
+				context.write(output);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
 	}
 }
@@ -0,0 +1,242 @@
+/*
+ * moco, the Monty Compiler
+ * Copyright (c) 2013-2014, Monty's Coconut, All rights reserved.
+ *
+ * This file is part of moco, the Monty Compiler.
+ *
+ * moco is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ *
+ * moco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * Linking this program and/or its accompanying libraries statically or
+ * dynamically with other modules is making a combined work based on this
+ * program. Thus, the terms and conditions of the GNU General Public License
+ * cover the whole combination.
+ *
+ * As a special exception, the copyright holders of moco give
+ * you permission to link this programm and/or its accompanying libraries
+ * with independent modules to produce an executable, regardless of the
+ * license terms of these independent modules, and to copy and distribute the
+ * resulting executable under terms of your choice, provided that you also meet,
+ * for each linked independent module, the terms and conditions of the
+ * license of that module.
+ *
+ * An independent module is a module which is not
+ * derived from or based on this program and/or its accompanying libraries.
+ * If you modify this library, you may extend this exception to your version of
+ * the program or library, but you are not obliged to do so. If you do not wish
+ * to do so, delete this exception statement from your version.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library.
+ */
+package de.uni.bremen.monty.moco.codegeneration.context;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+
+import org.apache.commons.lang3.StringUtils;
+
+import de.uni.bremen.monty.moco.ast.ASTNode;
+import de.uni.bremen.monty.moco.ast.Position;
+import de.uni.bremen.monty.moco.ast.declaration.Declaration;
+import de.uni.bremen.monty.moco.codegeneration.identifier.FunctionSignature;
+
+/** Attaches a debug location to each llvm instruction instead of a comment, so debuggers and profilers like gdb and
+ * perf can map the native code back to the lines of the monty files.
+ * 
+ * Every function gets a subprogram and every instruction a location with the line of the ASTNode that is responsible
+ * for it. The metadata is in the format of LLVM 3.4 and is appended at the end of the .ll file by
+ * {@link #appendMetadata(Context)}. */
+public class DebugInfoAppender extends CommentAppender {
+
+	/** The DWARF tags are combined with the version of the debug information. */
+	private static final int LLVM_DEBUG_VERSION = 12 << 16;
+	private static final int DW_TAG_COMPILE_UNIT = LLVM_DEBUG_VERSION | 0x11;
+	private static final int DW_TAG_SUBROUTINE_TYPE = LLVM_DEBUG_VERSION | 0x15;
+	private static final int DW_TAG_FILE_TYPE = LLVM_DEBUG_VERSION | 0x29;
+	private static final int DW_TAG_SUBPROGRAM = LLVM_DEBUG_VERSION | 0x2e;
+
+	/** There is no DWARF language for monty, but every debugger understands C. */
+	private static final int DW_LANG_C99 = 0x0c;
+
+	/** the file of the compile unit and of the nodes without a file */
+	private final File mainFile;
+
+	/** The positions only hold the names of the files, which are looked up in this folder. */
+	private final File sourceFolder;
+
+	/** all metadata nodes in the order of their ids */
+	private final List<String> metadata = new ArrayList<>();
+
+	/** the file descriptions and the file types referring to them by file name */
+	private final Map<String, Integer> files = new HashMap<>();
+	private final Map<Integer, Integer> fileTypes = new HashMap<>();
+
+	/** the locations by line, column and subprogram */
+	private final Map<String, Integer> locations = new HashMap<>();
+
+	private final List<Integer> subprograms = new ArrayList<>();
+
+	/** the subprograms of the functions being defined, innermost on top */
+	private final Stack<Integer> functions = new Stack<>();
+
+	private final int emptyList;
+	private final int subroutineType;
+
+	/** @param mainFile
+	 *            the monty file or folder that is compiled, null if the code is not read from a file */
+	public DebugInfoAppender(String mainFile) {
+		this.mainFile = new File(mainFile == null ? "unknown" : mainFile).getAbsoluteFile();
+		sourceFolder = this.mainFile.isDirectory() ? this.mainFile : this.mainFile.getParentFile();
+		emptyList = node("metadata !{i32 0}");
+		int types = node("metadata !{null}");
+		subroutineType =
+		        node(String.format(
+		                "metadata !{i32 %d, i32 0, null, metadata !\"\", i32 0, i64 0, i64 0, i64 0, i32 0, null, "
+		                        + "metadata !%d, i32 0, null, null, null}",
+		                DW_TAG_SUBROUTINE_TYPE,
+		                types));
+	}
+
+	/** Appends a reference to the location of the current node to instructions inside of a function. Labels,
+	 * declarations and constants are left as they are. */
+	@Override
+	public String addComment(String string) {
+		if (functions.isEmpty() || !isInstruction(string)) {
+			return string;
+		}
+		return string + ", !dbg !" + location(getNode().getPosition());
+	}
+
+	/** Instructions are indented inside of a function, unlike the definitions outside of them. */
+	private boolean isInstruction(String string) {
+		String trimmed = string.trim();
+		return string.startsWith(" ") && !trimmed.isEmpty() && !trimmed.endsWith(":") && !trimmed.startsWith(";");
+	}
+
+	@Override
+	public void enterFunction(FunctionSignature<?> function) {
+		ASTNode node = getNode();
+		int line = node.getPosition().getLineNumber();
+		int file = file(node.getPosition().getFileName());
+		String linkageName = function.getName().substring(1);
+		String name = linkageName;
+		if (node instanceof Declaration) {
+			name = ((Declaration) node).getIdentifier().getSymbol();
+		}
+
+		int subprogram =
+		        node(String.format(
+		                "metadata !{i32 %d, metadata !%d, metadata !%d, metadata !\"%s\", metadata !\"%s\", "
+		                        + "metadata !\"%s\", i32 %d, metadata !%d, i1 false, i1 true, i32 0, i32 0, null, "
+		                        + "i32 0, i1 false, %s, null, null, metadata !%d, i32 %d}",
+		                DW_TAG_SUBPROGRAM,
+		                file,
+		                fileTypes.get(file),
+		                escape(name),
+		                escape(name),
+		                linkageName,
+		                line,
+		                subroutineType,
+		                function.toPointer(),
+		                emptyList,
+		                line));
+		subprograms.add(subprogram);
+		functions.push(subprogram);
+	}
+
+	@Override
+	public void exitFunction() {
+		functions.pop();
+	}
+
+	@Override
+	public void appendMetadata(Context context) {
+		List<String> subprogramNodes = new ArrayList<>();
+		for (int subprogram : subprograms) {
+			subprogramNodes.add("metadata !" + subprogram);
+		}
+		int subprogramList = node("metadata !{" + StringUtils.join(subprogramNodes, ", ") + "}");
+		int compileUnit =
+		        node(String.format(
+		                "metadata !{i32 %d, metadata !%d, i32 %d, metadata !\"moco\", i1 false, metadata !\"\", "
+		                        + "i32 0, metadata !%d, metadata !%d, metadata !%d, metadata !%d, metadata !%d, "
+		                        + "metadata !\"\"}",
+		                DW_TAG_COMPILE_UNIT,
+		                file(""),
+		                DW_LANG_C99,
+		                emptyList,
+		                emptyList,
+		                subprograms.isEmpty() ? emptyList : subprogramList,
+		                emptyList,
+		                emptyList));
+		int dwarfVersion = node("metadata !{i32 2, metadata !\"Dwarf Version\", i32 4}");
+		int debugInfoVersion = node("metadata !{i32 1, metadata !\"Debug Info Version\", i32 1}");
+
+		context.append("!llvm.dbg.cu = !{!" + compileUnit + "}");
+		context.append("!llvm.module.flags = !{!" + dwarfVersion + ", !" + debugInfoVersion + "}");
+		for (String node : metadata) {
+			context.append(node);
+		}
+	}
+
+	private int location(Position position) {
+		int subprogram = functions.peek();
+		String key = position.getLineNumber() + ":" + position.getCharNumber() + ":" + subprogram;
+		Integer location = locations.get(key);
+		if (location == null) {
+			// LLVM counts the columns from 1, 0 means no column.
+			location =
+			        node(String.format(
+			                "metadata !{i32 %d, i32 %d, metadata !%d, null}",
+			                position.getLineNumber(),
+			                position.getCharNumber() + 1,
+			                subprogram));
+			locations.put(key, location);
+		}
+		return location;
+	}
+
+	/** Returns the description of the file with the given name and creates it and its file type if needed. */
+	private int file(String fileName) {
+		File path = fileName.isEmpty() ? mainFile : new File(fileName);
+		if (!path.isAbsolute()) {
+			path = new File(sourceFolder, fileName);
+		}
+		Integer file = files.get(path.getPath());
+		if (file == null) {
+			// Files in other folders, like the ones of the core library, are left without a folder.
+			String folder = path.exists() ? path.getParent() : "";
+			file =
+			        node(String.format(
+			                "metadata !{metadata !\"%s\", metadata !\"%s\"}",
+			                escape(path.getName()),
+			                escape(folder)));
+			files.put(path.getPath(), file);
+			fileTypes.put(file, node(String.format("metadata !{i32 %d, metadata !%d}", DW_TAG_FILE_TYPE, file)));
+		}
+		return file;
+	}
+
+	private int node(String content) {
+		int id = metadata.size();
+		metadata.add("!" + id + " = " + content);
+		return id;
+	}
+
+	/** Escapes the characters that would end a metadata string. */
+	private String escape(String string) {
+		return string.replace("\\", "\\5C").replace("\"", "\\22");
+	}
+}
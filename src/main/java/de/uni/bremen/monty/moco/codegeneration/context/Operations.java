@@ -46,7 +46,6 @@ import static de.uni.bremen.monty.moco.codegeneration.types.LLVMTypeFactory.int6
 import static de.uni.bremen.monty.moco.codegeneration.types.LLVMTypeFactory.int8;
 import static de.uni.bremen.monty.moco.codegeneration.types.LLVMTypeFactory.pointer;
 
-import java.util.Arrays;
 
 import de.uni.bremen.monty.moco.ast.CoreClasses;
 import de.uni.bremen.monty.moco.codegeneration.Native;
@@ -65,11 +64,6 @@ public class Operations {
 	private CodeGenerator codeGenerator;
 	private LLVMIdentifierFactory llvmIdentifierFactory;
 
-	private LLVMIdentifier<LLVMPointer<LLVMInt8>> stringFormat;
-	private LLVMIdentifier<LLVMPointer<LLVMInt8>> intFormat;
-	private LLVMIdentifier<LLVMPointer<LLVMInt8>> floatFormat;
-	private LLVMIdentifier<LLVMPointer<LLVMInt8>> charFormat;
-
 	public Operations(CodeGenerator codeGenerator, LLVMIdentifierFactory llvmIdentifierFactory) {
 		this.codeGenerator = codeGenerator;
 		this.llvmIdentifierFactory = llvmIdentifierFactory;
@@ -77,57 +71,32 @@ public class Operations {
 
 	@Native("M.Print.P.print$M.Char.C.Char")
 	public void printChar(CodeContext c, LLVMIdentifier<LLVMType> addr) {
-		LLVMType type = addr.getType();
-		LLVMIdentifier<LLVMTypeFactory.LLVMInt32> signature = llvmIdentifierFactory.newGlobal("printf", int32());
-		c.call(
-		        (LLVMIdentifier<LLVMType>) (LLVMIdentifier<?>) signature,
-		        llvmIdentifierFactory.newLocal(signature.getType(), false),
-		        Arrays.<LLVMIdentifier<?>> asList(charFormat, addr),
-		        "(i8*, ...)*");
+		print(c, "out_char", addr);
 	}
 
 	@Native("M.Print.P.print$M.std.C.String")
 	public void printString(CodeContext c, LLVMIdentifier<LLVMType> addr) {
-		LLVMType type = addr.getType();
-		LLVMIdentifier<LLVMTypeFactory.LLVMInt32> signature = llvmIdentifierFactory.newGlobal("printf", int32());
-		c.call(
-		        (LLVMIdentifier<LLVMType>) (LLVMIdentifier<?>) signature,
-		        llvmIdentifierFactory.newLocal(signature.getType(), false),
-		        Arrays.<LLVMIdentifier<?>> asList(stringFormat, addr),
-		        "(i8*, ...)*");
+		print(c, "out_string", addr);
 	}
 
 	@Native("M.Print.P.print$M.Int.C.Int")
 	public void printInt(CodeContext c, LLVMIdentifier<LLVMType> addr) {
-		LLVMType type = addr.getType();
-		LLVMIdentifier<LLVMTypeFactory.LLVMInt32> signature = llvmIdentifierFactory.newGlobal("printf", int32());
-		c.call(
-		        (LLVMIdentifier<LLVMType>) (LLVMIdentifier<?>) signature,
-		        llvmIdentifierFactory.newLocal(signature.getType(), false),
-		        Arrays.<LLVMIdentifier<?>> asList(intFormat, addr),
-		        "(i8*, ...)*");
+		print(c, "out_int", addr);
 	}
 
 	@Native("M.Print.P.print$M.Bool.C.Bool")
 	public void printBool(CodeContext c, LLVMIdentifier<LLVMType> addr) {
-		LLVMType type = addr.getType();
-		LLVMIdentifier<LLVMTypeFactory.LLVMInt32> signature = llvmIdentifierFactory.newGlobal("printf", int32());
-		c.call(
-		        (LLVMIdentifier<LLVMType>) (LLVMIdentifier<?>) signature,
-		        llvmIdentifierFactory.newLocal(signature.getType(), false),
-		        Arrays.<LLVMIdentifier<?>> asList(intFormat, addr),
-		        "(i8*, ...)*");
+		print(c, "out_bool", addr);
 	}
 
 	@Native("M.Print.P.print$M.Float.C.Float")
 	public void printFloat(CodeContext c, LLVMIdentifier<LLVMType> addr) {
-		LLVMType type = addr.getType();
-		LLVMIdentifier<LLVMTypeFactory.LLVMInt32> signature = llvmIdentifierFactory.newGlobal("printf", int32());
-		c.call(
-		        (LLVMIdentifier<LLVMType>) (LLVMIdentifier<?>) signature,
-		        llvmIdentifierFactory.newLocal(signature.getType(), false),
-		        Arrays.<LLVMIdentifier<?>> asList(floatFormat, addr),
-		        "(i8*, ...)*");
+		print(c, "out_float", addr);
+	}
+
+	/** Appends the value to the output buffer with the given function of the runtime in std_llvm_include.ll. */
+	private void print(CodeContext c, String function, LLVMIdentifier<LLVMType> value) {
+		c.callVoid(llvmIdentifierFactory.newGlobal(function, (LLVMType) voidType()), value);
 	}
 
 	@Native("M.Int.C.Int.F.operator_plus$M.Int.C.Int$M.Int.C.Int")
@@ -300,35 +269,72 @@ public class Operations {
 	@Native("M.Array.F.operator_array_access$M.Int.C.Int$M.std.C.Array$M.Int.C.Int")
 	public LLVMIdentifier<LLVMType> arrayAccess(CodeContext c, LLVMIdentifier<LLVMPointer> arrayPointer,
 	        LLVMIdentifier<LLVMInt> index) {
+		return codeGenerator.getArrayElement(c, asArray(arrayPointer), CoreClasses.arrayType(), index, true);
+	}
+
+	@Native("M.Array.F.operator_array_access$M.Float.C.Float$M.std.C.FloatArray$M.Int.C.Int")
+	public LLVMIdentifier<LLVMType> floatArrayAccess(CodeContext c, LLVMIdentifier<LLVMPointer> arrayPointer,
+	        LLVMIdentifier<LLVMInt> index) {
+		return codeGenerator.getArrayElement(c, asArray(arrayPointer), CoreClasses.floatArrayType(), index, true);
+	}
+
+	@Native("M.Array.F.operator_array_access$M.Bool.C.Bool$M.std.C.BoolArray$M.Int.C.Int")
+	public LLVMIdentifier<LLVMType> boolArrayAccess(CodeContext c, LLVMIdentifier<LLVMPointer> arrayPointer,
+	        LLVMIdentifier<LLVMInt> index) {
+		return codeGenerator.getArrayElement(c, asArray(arrayPointer), CoreClasses.boolArrayType(), index, true);
+	}
+
+	@Native("M.Array.F.operator_array_access$M.Char.C.Char$M.std.C.CharArray$M.Int.C.Int")
+	public LLVMIdentifier<LLVMType> charArrayAccess(CodeContext c, LLVMIdentifier<LLVMPointer> arrayPointer,
+	        LLVMIdentifier<LLVMInt> index) {
+		return codeGenerator.getArrayElement(c, asArray(arrayPointer), CoreClasses.charArrayType(), index, true);
+	}
+
+	@Native("M.Array.F.len$M.Int.C.Int$M.std.C.Array")
+	public LLVMIdentifier<LLVMInt64> arrayLength(CodeContext c, LLVMIdentifier<LLVMPointer> arrayPointer) {
+		return codeGenerator.getArrayLength(c, asArray(arrayPointer));
+	}
 
-		LLVMIdentifier<LLVMPointer<LLVMStructType>> arrayStructPointer =
-		        (LLVMIdentifier<LLVMPointer<LLVMStructType>>) (LLVMIdentifier<?>) arrayPointer;
+	@Native("M.Array.F.len$M.Int.C.Int$M.std.C.FloatArray")
+	public LLVMIdentifier<LLVMInt64> floatArrayLength(CodeContext c, LLVMIdentifier<LLVMPointer> arrayPointer) {
+		return codeGenerator.getArrayLength(c, asArray(arrayPointer));
+	}
+
+	@Native("M.Array.F.len$M.Int.C.Int$M.std.C.BoolArray")
+	public LLVMIdentifier<LLVMInt64> boolArrayLength(CodeContext c, LLVMIdentifier<LLVMPointer> arrayPointer) {
+		return codeGenerator.getArrayLength(c, asArray(arrayPointer));
+	}
+
+	@Native("M.Array.F.len$M.Int.C.Int$M.std.C.CharArray")
+	public LLVMIdentifier<LLVMInt64> charArrayLength(CodeContext c, LLVMIdentifier<LLVMPointer> arrayPointer) {
+		return codeGenerator.getArrayLength(c, asArray(arrayPointer));
+	}
 
-		codeGenerator.checkArrayBounds(c, arrayStructPointer, index);
-		LLVMIdentifier<LLVMType> result =
-		        llvmIdentifierFactory.newLocal(codeGenerator.mapToLLVMType(CoreClasses.intType()));
-		c.getelementptr(
-		        result,
-		        arrayStructPointer,
-		        llvmIdentifierFactory.constant(int32(), 0),
-		        llvmIdentifierFactory.constant(int32(), 1),
-		        index);
-		return result;
+	@Native("M.Array.P.append$M.std.C.Array$M.Int.C.Int")
+	public void arrayAppend(CodeContext c, LLVMIdentifier<LLVMPointer> arrayPointer,
+	        LLVMIdentifier<LLVMType> value) {
+		codeGenerator.appendArrayElement(c, asArray(arrayPointer), CoreClasses.arrayType(), value);
 	}
 
-	public void setStringFormat(LLVMIdentifier<LLVMPointer<LLVMInt8>> stringFormat) {
-		this.stringFormat = stringFormat;
+	@Native("M.Array.P.append$M.std.C.FloatArray$M.Float.C.Float")
+	public void floatArrayAppend(CodeContext c, LLVMIdentifier<LLVMPointer> arrayPointer,
+	        LLVMIdentifier<LLVMType> value) {
+		codeGenerator.appendArrayElement(c, asArray(arrayPointer), CoreClasses.floatArrayType(), value);
 	}
 
-	public void setIntFormat(LLVMIdentifier<LLVMPointer<LLVMInt8>> intFormat) {
-		this.intFormat = intFormat;
+	@Native("M.Array.P.append$M.std.C.BoolArray$M.Bool.C.Bool")
+	public void boolArrayAppend(CodeContext c, LLVMIdentifier<LLVMPointer> arrayPointer,
+	        LLVMIdentifier<LLVMType> value) {
+		codeGenerator.appendArrayElement(c, asArray(arrayPointer), CoreClasses.boolArrayType(), value);
 	}
 
-	public void setFloatFormat(LLVMIdentifier<LLVMPointer<LLVMInt8>> floatFormat) {
-		this.floatFormat = floatFormat;
+	@Native("M.Array.P.append$M.std.C.CharArray$M.Char.C.Char")
+	public void charArrayAppend(CodeContext c, LLVMIdentifier<LLVMPointer> arrayPointer,
+	        LLVMIdentifier<LLVMType> value) {
+		codeGenerator.appendArrayElement(c, asArray(arrayPointer), CoreClasses.charArrayType(), value);
 	}
 
-	public void setCharFormat(LLVMIdentifier<LLVMPointer<LLVMInt8>> charformat) {
-		this.charFormat = charformat;
+	private LLVMIdentifier<LLVMPointer<LLVMStructType>> asArray(LLVMIdentifier<LLVMPointer> arrayPointer) {
+		return (LLVMIdentifier<LLVMPointer<LLVMStructType>>) (LLVMIdentifier<?>) arrayPointer;
 	}
 }
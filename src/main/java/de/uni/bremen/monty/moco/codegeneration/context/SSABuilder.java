@@ -0,0 +1,210 @@
+/*
+ * moco, the Monty Compiler
+ * Copyright (c) 2013-2014, Monty's Coconut, All rights reserved.
+ *
+ * This file is part of moco, the Monty Compiler.
+ *
+ * moco is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ *
+ * moco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * Linking this program and/or its accompanying libraries statically or
+ * dynamically with other modules is making a combined work based on this
+ * program. Thus, the terms and conditions of the GNU General Public License
+ * cover the whole combination.
+ *
+ * As a special exception, the copyright holders of moco give
+ * you permission to link this programm and/or its accompanying libraries
+ * with independent modules to produce an executable, regardless of the
+ * license terms of these independent modules, and to copy and distribute the
+ * resulting executable under terms of your choice, provided that you also meet,
+ * for each linked independent module, the terms and conditions of the
+ * license of that module.
+ *
+ * An independent module is a module which is not
+ * derived from or based on this program and/or its accompanying libraries.
+ * If you modify this library, you may extend this exception to your version of
+ * the program or library, but you are not obliged to do so. If you do not wish
+ * to do so, delete this exception statement from your version.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library.
+ */
+package de.uni.bremen.monty.moco.codegeneration.context;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.uni.bremen.monty.moco.codegeneration.identifier.LLVMIdentifier;
+import de.uni.bremen.monty.moco.codegeneration.identifier.LocalVariable;
+import de.uni.bremen.monty.moco.codegeneration.types.LLVMType;
+
+/** Builds the SSA form of the local variables of one function while its code is emitted, following "Simple and
+ * Efficient Construction of Static Single Assignment Form" by Braun et al.
+ *
+ * The builder knows the control flow graph emitted so far and the last value assigned to each variable in each basic
+ * block. Reading a variable looks up the value in the current block or, if there is none, in its predecessors and
+ * merges different values with a phi at the start of the block.
+ *
+ * A block is sealed once all its predecessors are known. This is the case when its label is emitted, except for the
+ * condition of a loop, which is jumped to again from the end of the loop body. Reading a variable in an unsealed block
+ * creates a phi whose operands are added when the block is sealed. */
+class SSABuilder {
+
+	private static class Block {
+		private final String label;
+		private final List<Block> predecessors = new ArrayList<>();
+		private final Map<String, LLVMIdentifier<?>> definitions = new HashMap<>();
+
+		/** The phis which were created while the block was not sealed and the variables they belong to. */
+		private final Map<String, LLVMIdentifier<?>> incompletePhis = new HashMap<>();
+		private final Map<String, LocalVariable<?>> incompleteVariables = new HashMap<>();
+
+		/** The phis which were created for a loop in the control flow graph while their operands are collected. */
+		private final Map<String, LLVMIdentifier<?>> pendingPhis = new HashMap<>();
+		private boolean sealed = false;
+
+		/** The context right after the label of the block where its phis are appended. */
+		private CodeContext phis;
+
+		private Block(String label) {
+			this.label = label;
+		}
+	}
+
+	private final Map<String, Block> blocks = new HashMap<>();
+
+	private Block currentBlock;
+
+	/** The variables for which a value is being looked up in the predecessors of each block. */
+	private final Set<String> lookups = new HashSet<>();
+
+	private Block getBlock(String label) {
+		Block block = this.blocks.get(label);
+		if (block == null) {
+			block = new Block(label);
+			this.blocks.put(label, block);
+		}
+		return block;
+	}
+
+	/** Starts a new basic block. The given context is right after its label and will hold its phis. */
+	void startBlock(String label, CodeContext phis, boolean sealed) {
+		this.currentBlock = getBlock(label);
+		this.currentBlock.phis = phis;
+		if (sealed) {
+			sealBlock(label);
+		}
+	}
+
+	/** Adds an edge from the current block to the block with the given label. */
+	void addSuccessor(String label) {
+		getBlock(label).predecessors.add(this.currentBlock);
+	}
+
+	/** Whether an edge to the block with the given label has been added. */
+	boolean hasPredecessors(String label) {
+		return !getBlock(label).predecessors.isEmpty();
+	}
+
+	/** Marks that all predecessors of the block are known and completes the phis created in the meantime. */
+	void sealBlock(String label) {
+		Block block = getBlock(label);
+		for (Map.Entry<String, LLVMIdentifier<?>> phi : block.incompletePhis.entrySet()) {
+			addPhiOperands(block.incompleteVariables.get(phi.getKey()), block, phi.getValue());
+		}
+		block.incompletePhis.clear();
+		block.incompleteVariables.clear();
+		block.sealed = true;
+	}
+
+	<T extends LLVMType> void writeVariable(LocalVariable<T> variable, LLVMIdentifier<T> value) {
+		this.currentBlock.definitions.put(variable.getName(), value);
+	}
+
+	<T extends LLVMType> LLVMIdentifier<T> readVariable(LocalVariable<T> variable) {
+		return readVariable(variable, this.currentBlock);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T extends LLVMType> LLVMIdentifier<T> readVariable(LocalVariable<T> variable, Block block) {
+		LLVMIdentifier<T> value = (LLVMIdentifier<T>) block.definitions.get(variable.getName());
+		if (value == null) {
+			value = readVariableRecursive(variable, block);
+			block.definitions.put(variable.getName(), value);
+		}
+		return value;
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T extends LLVMType> LLVMIdentifier<T> readVariableRecursive(LocalVariable<T> variable, Block block) {
+		String name = variable.getName();
+		if (!block.sealed) {
+			LLVMIdentifier<T> phi = variable.phi(block.label);
+			block.incompletePhis.put(name, phi);
+			block.incompleteVariables.put(name, variable);
+			return phi;
+		}
+		if (block.predecessors.isEmpty()) {
+			return variable.undef();
+		}
+		if (block.predecessors.size() == 1) {
+			return readVariable(variable, block.predecessors.get(0));
+		}
+
+		String lookup = block.label + " " + name;
+		if (!this.lookups.add(lookup)) {
+			// The lookup went round a loop, so the value depends on itself and needs a phi.
+			LLVMIdentifier<T> phi = variable.phi(block.label);
+			block.pendingPhis.put(name, phi);
+			return phi;
+		}
+		List<LLVMIdentifier<T>> values = new ArrayList<>();
+		for (Block predecessor : block.predecessors) {
+			values.add(readVariable(variable, predecessor));
+		}
+		this.lookups.remove(lookup);
+
+		LLVMIdentifier<T> phi = (LLVMIdentifier<T>) block.pendingPhis.remove(name);
+		if (phi == null) {
+			boolean allEqual = true;
+			for (LLVMIdentifier<T> value : values) {
+				allEqual &= value.getName().equals(values.get(0).getName());
+			}
+			if (allEqual) {
+				return values.get(0);
+			}
+			phi = variable.phi(block.label);
+		}
+		appendPhi(variable, block, phi, values);
+		return phi;
+	}
+
+	private <T extends LLVMType> void addPhiOperands(LocalVariable<T> variable, Block block, LLVMIdentifier<?> phi) {
+		List<LLVMIdentifier<T>> values = new ArrayList<>();
+		for (Block predecessor : block.predecessors) {
+			values.add(readVariable(variable, predecessor));
+		}
+		appendPhi(variable, block, phi, values);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T extends LLVMType> void appendPhi(LocalVariable<T> variable, Block block, LLVMIdentifier<?> phi,
+	        List<LLVMIdentifier<T>> values) {
+		List<String> labels = new ArrayList<>();
+		for (Block predecessor : block.predecessors) {
+			labels.add(predecessor.label);
+		}
+		block.phis.phi(variable.getType(), false, values, (LLVMIdentifier<T>) phi, labels);
+	}
+}
@@ -38,6 +38,9 @@
  */
 package de.uni.bremen.monty.moco.codegeneration.context;
 
+import java.io.IOException;
+import java.io.Writer;
+
 class StringData implements ContextData {
 	private String data;
 
@@ -49,4 +52,9 @@ class StringData implements ContextData {
 	public String getData() {
 		return data;
 	}
+
+	@Override
+	public void write(Writer out) throws IOException {
+		out.write(data);
+	}
 }
@@ -41,6 +41,7 @@ package de.uni.bremen.monty.moco.codegeneration.identifier;
 import de.uni.bremen.monty.moco.codegeneration.types.LLVMType;
 import org.apache.commons.lang3.StringUtils;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class FunctionSignature<T extends LLVMType> extends LLVMIdentifier<T> {
@@ -56,4 +57,13 @@ public class FunctionSignature<T extends LLVMType> extends LLVMIdentifier<T> {
 	public String toString() {
 		return type + " " + name + "(" + StringUtils.join(parameter, ", ") + ")";
 	}
+
+	/** @return the function as a typed pointer, e.g. 'i32 (i64)* @f' */
+	public String toPointer() {
+		List<LLVMType> types = new ArrayList<>();
+		for (LLVMIdentifier<? extends LLVMType> identifier : parameter) {
+			types.add(identifier.getType());
+		}
+		return type + " (" + StringUtils.join(types, ", ") + ")* " + name;
+	}
 }
@@ -0,0 +1,88 @@
+/*
+ * moco, the Monty Compiler
+ * Copyright (c) 2013-2014, Monty's Coconut, All rights reserved.
+ *
+ * This file is part of moco, the Monty Compiler.
+ *
+ * moco is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ *
+ * moco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * Linking this program and/or its accompanying libraries statically or
+ * dynamically with other modules is making a combined work based on this
+ * program. Thus, the terms and conditions of the GNU General Public License
+ * cover the whole combination.
+ *
+ * As a special exception, the copyright holders of moco give
+ * you permission to link this programm and/or its accompanying libraries
+ * with independent modules to produce an executable, regardless of the
+ * license terms of these independent modules, and to copy and distribute the
+ * resulting executable under terms of your choice, provided that you also meet,
+ * for each linked independent module, the terms and conditions of the
+ * license of that module.
+ *
+ * An independent module is a module which is not
+ * derived from or based on this program and/or its accompanying libraries.
+ * If you modify this library, you may extend this exception to your version of
+ * the program or library, but you are not obliged to do so. If you do not wish
+ * to do so, delete this exception statement from your version.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library.
+ */
+package de.uni.bremen.monty.moco.codegeneration.identifier;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import de.uni.bremen.monty.moco.codegeneration.types.LLVMType;
+
+/** Allocates the names of the unnamed global constants, like string literals and boxed literals. The name is derived
+ * from the type and the initializer of the constant instead of being counted. So every function gets the same name for
+ * the same constant, no matter on which thread and in which order the functions are generated, and equal constants
+ * share one global.
+ * 
+ * One allocator is shared by all {@link LLVMIdentifierFactory}s of a module and may be used from several threads. */
+public class GlobalNameAllocator {
+
+	/** The number of bytes of the digest of a constant used for its name. */
+	private static final int NAME_BYTES = 8;
+
+	/** The constant of each allocated name, to detect two constants with the same name. */
+	private final ConcurrentMap<String, String> constants = new ConcurrentHashMap<>();
+
+	/** @return the name of the global constant with the given type and initializer, without the '@' */
+	public String allocate(LLVMType type, String initializer) {
+		String constant = type + " " + initializer;
+		String name = "." + digest(constant);
+		String previous = this.constants.putIfAbsent(name, constant);
+		if (previous != null && !previous.equals(constant)) {
+			throw new IllegalStateException("The constants " + previous + " and " + constant + " have the same name "
+			        + name);
+		}
+		return name;
+	}
+
+	private static String digest(String constant) {
+		byte[] digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1").digest(constant.getBytes(StandardCharsets.UTF_8));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		StringBuilder name = new StringBuilder();
+		for (int i = 0; i < NAME_BYTES; i++) {
+			name.append(String.format("%02x", digest[i]));
+		}
+		return name.toString();
+	}
+}
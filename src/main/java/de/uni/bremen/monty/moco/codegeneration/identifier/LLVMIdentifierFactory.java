@@ -43,7 +43,9 @@ import de.uni.bremen.monty.moco.codegeneration.types.LLVMPointer;
 import de.uni.bremen.monty.moco.codegeneration.types.LLVMStructType;
 import de.uni.bremen.monty.moco.codegeneration.types.LLVMType;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Stack;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -61,36 +63,58 @@ import static de.uni.bremen.monty.moco.codegeneration.types.LLVMTypeFactory.*;
  * This is where the {@link #scope} comes into play. */
 public class LLVMIdentifierFactory {
 
-	/** Global counter for global values. */
-	private int strIndex = 0;
+	/** Names the unnamed globals, see {@link #newGlobal(LLVMType, String)}. */
+	private final GlobalNameAllocator globalNames;
 
-	/**
-     *
-     */
-	private Stack<AtomicInteger> scope = new Stack<>();
+	/** The counters of one function. Besides its unnamed values, the labels of each kind are numbered per function,
+	 * see {@link #newLabelPrefix(String)}. */
+	private static class Scope {
+		private final AtomicInteger unnamed = new AtomicInteger();
+		private final Map<String, Integer> labels = new HashMap<>();
+	}
+
+	private Stack<Scope> scope = new Stack<>();
 
 	public LLVMIdentifierFactory() {
-		scope.push(new AtomicInteger());
+		this(new GlobalNameAllocator());
+	}
+
+	/** Creates a factory whose unnamed globals are named by the given allocator, which may be shared with other
+	 * factories generating functions of the same module. */
+	public LLVMIdentifierFactory(GlobalNameAllocator globalNames) {
+		this.globalNames = globalNames;
+		scope.push(new Scope());
 	}
 
 	public <T extends LLVMType> LLVMIdentifier<T> newLocal(String symbol, T type, boolean resolvable) {
 		return new LLVMIdentifier<>(type, "%" + symbol, resolvable);
 	}
 
+	public <T extends LLVMType> LocalVariable<T> newLocalVariable(String symbol, T type) {
+		return new LocalVariable<>(type, "%" + symbol);
+	}
+
 	public <T extends LLVMType> LLVMIdentifier<T> newLocal(T type) {
 		return newLocal(type, true);
 	}
 
 	private String newName() {
-		return "_unnamed_" + scope.peek().getAndIncrement();
+		return "_unnamed_" + scope.peek().unnamed.getAndIncrement();
 	}
 
-	private String newGlobalName() {
-		return "." + strIndex++;
+	/** Creates a prefix for the labels of one statement, which is unique in the current function, e.g. if0, if1... */
+	public String newLabelPrefix(String name) {
+		Map<String, Integer> labels = scope.peek().labels;
+		Integer id = labels.get(name);
+		if (id == null) {
+			id = 0;
+		}
+		labels.put(name, id + 1);
+		return name + id;
 	}
 
 	public void openScope() {
-		scope.push(new AtomicInteger());
+		scope.push(new Scope());
 	}
 
 	public void closeScope() {
@@ -101,8 +125,10 @@ public class LLVMIdentifierFactory {
 		return new LLVMIdentifier<>(type, "@" + symbol, true);
 	}
 
-	public <T extends LLVMType> LLVMIdentifier<T> newGlobal(T type) {
-		return new LLVMIdentifier<>(type, "@" + newGlobalName(), true);
+	/** Creates an unnamed global constant. Its name is derived from its type and initializer, see
+	 * {@link GlobalNameAllocator}. */
+	public <T extends LLVMType> LLVMIdentifier<T> newGlobal(T type, String initializer) {
+		return new LLVMIdentifier<>(type, "@" + this.globalNames.allocate(type, initializer), true);
 	}
 
 	public <T extends LLVMType> LLVMIdentifier<LLVMPointer<T>> pointerTo(LLVMIdentifier<T> right) {
@@ -110,21 +136,34 @@ public class LLVMIdentifierFactory {
 	}
 
 	public <T extends LLVMType> LLVMIdentifier<T> constant(T llvmType, int value) {
-		return new LLVMIdentifier<>(llvmType, value + "", false);
+		return new ScalarConstant<>(llvmType, value + "");
 	}
 
 	public <T extends LLVMType> LLVMIdentifier<T> constant(T llvmType, float value) {
-		return new LLVMIdentifier<>(llvmType, value + "", false);
+		return new ScalarConstant<>(llvmType, value + "");
+	}
+
+	public <T extends LLVMType> LLVMIdentifier<T> constant(T llvmType, long value) {
+		return new ScalarConstant<>(llvmType, value + "");
+	}
+
+	/** The double is written as the hexadecimal form of its bits, which represents every value exactly. */
+	public <T extends LLVMType> LLVMIdentifier<T> constant(T llvmType, double value) {
+		return new ScalarConstant<>(llvmType, String.format("0x%016X", Double.doubleToRawLongBits(value)));
 	}
 
 	public <T extends LLVMType> LLVMIdentifier<T> constant(T llvmType, boolean value) {
-		return new LLVMIdentifier<>(llvmType, value + "", false);
+		return new ScalarConstant<>(llvmType, value + "");
 	}
 
 	public <T extends LLVMType> LLVMIdentifier<LLVMPointer<T>> constantNull(LLVMPointer<T> llvmType) {
 		return new LLVMIdentifier<>(llvmType, "null", false);
 	}
 
+	public <T extends LLVMType> LLVMIdentifier<T> constantZero(T llvmType) {
+		return new LLVMIdentifier<>(llvmType, "zeroinitializer", false);
+	}
+
 	public StructConstant constant(LLVMStructType llvmType, List<LLVMIdentifier<LLVMType>> arguments) {
 		return new StructConstant(llvmType, arguments);
 	}
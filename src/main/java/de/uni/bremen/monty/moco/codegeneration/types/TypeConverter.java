@@ -40,7 +40,9 @@
 package de.uni.bremen.monty.moco.codegeneration.types;
 
 import static de.uni.bremen.monty.moco.codegeneration.types.LLVMTypeFactory.array;
+import static de.uni.bremen.monty.moco.codegeneration.types.LLVMTypeFactory.double64;
 import static de.uni.bremen.monty.moco.codegeneration.types.LLVMTypeFactory.function;
+import static de.uni.bremen.monty.moco.codegeneration.types.LLVMTypeFactory.int1;
 import static de.uni.bremen.monty.moco.codegeneration.types.LLVMTypeFactory.int64;
 import static de.uni.bremen.monty.moco.codegeneration.types.LLVMTypeFactory.int8;
 import static de.uni.bremen.monty.moco.codegeneration.types.LLVMTypeFactory.pointer;
@@ -56,28 +58,38 @@ import java.util.Map;
 import de.uni.bremen.monty.moco.ast.ASTNode;
 import de.uni.bremen.monty.moco.ast.CoreClasses;
 import de.uni.bremen.monty.moco.ast.declaration.ClassDeclaration;
-import de.uni.bremen.monty.moco.ast.declaration.Declaration;
 import de.uni.bremen.monty.moco.ast.declaration.FunctionDeclaration;
 import de.uni.bremen.monty.moco.ast.declaration.ProcedureDeclaration;
 import de.uni.bremen.monty.moco.ast.declaration.TypeDeclaration;
 import de.uni.bremen.monty.moco.ast.declaration.VariableDeclaration;
+import de.uni.bremen.monty.moco.codegeneration.ClassHierarchy;
+import de.uni.bremen.monty.moco.codegeneration.FieldLayout;
+import de.uni.bremen.monty.moco.codegeneration.Reachability;
 import de.uni.bremen.monty.moco.codegeneration.context.CodeContext;
 import de.uni.bremen.monty.moco.codegeneration.context.CodeContext.Linkage;
+import de.uni.bremen.monty.moco.codegeneration.context.ConstantPool;
 import de.uni.bremen.monty.moco.codegeneration.identifier.LLVMIdentifier;
 import de.uni.bremen.monty.moco.codegeneration.identifier.LLVMIdentifierFactory;
 import de.uni.bremen.monty.moco.codegeneration.types.LLVMTypeFactory.LLVMBool;
 import de.uni.bremen.monty.moco.codegeneration.types.LLVMTypeFactory.LLVMDouble;
-import de.uni.bremen.monty.moco.codegeneration.types.LLVMTypeFactory.LLVMInt;
+import de.uni.bremen.monty.moco.codegeneration.types.LLVMTypeFactory.LLVMInt64;
 import de.uni.bremen.monty.moco.codegeneration.types.LLVMTypeFactory.LLVMInt8;
 
 public class TypeConverter {
 	private final Map<TypeDeclaration, LLVMType> typeMap = new HashMap<>();
 	private final LLVMIdentifierFactory llvmIdentifierFactory;
-	private final CodeContext constantContext;
+	private final ConstantPool constants;
+	private final ClassHierarchy classHierarchy;
+	private final Reachability reachability;
+	private final FieldLayout fieldLayout;
 
-	public TypeConverter(LLVMIdentifierFactory llvmIdentifierFactory, CodeContext constantContext) {
+	public TypeConverter(LLVMIdentifierFactory llvmIdentifierFactory, ConstantPool constants,
+	        ClassHierarchy classHierarchy, Reachability reachability, FieldLayout fieldLayout) {
 		this.llvmIdentifierFactory = llvmIdentifierFactory;
-		this.constantContext = constantContext;
+		this.constants = constants;
+		this.classHierarchy = classHierarchy;
+		this.reachability = reachability;
+		this.fieldLayout = fieldLayout;
 		initPreDefinedTypes();
 	}
 
@@ -94,12 +106,12 @@ public class TypeConverter {
 			parameter.add(mapToLLVMType(typeDeclaration));
 		}
 		for (VariableDeclaration varDecl : type.getParameter()) {
-			parameter.add(mapToLLVMType(varDecl.getTypeDeclaration()));
+			parameter.add(mapToSignatureType(type, varDecl.getTypeDeclaration()));
 		}
 		if (type instanceof FunctionDeclaration) {
 			FunctionDeclaration func = (FunctionDeclaration) type;
 			final TypeDeclaration returnType = func.getTypeDeclaration();
-			return pointer(function(mapToLLVMType(returnType), parameter));
+			return pointer(function(mapToSignatureType(type, returnType), parameter));
 		}
 		return pointer(function(voidType(), parameter));
 	}
@@ -111,12 +123,12 @@ public class TypeConverter {
 	public TypeDeclaration mapToBoxedType(LLVMType type) {
 		if (type instanceof LLVMBool) {
 			return CoreClasses.boolType();
-		} else if (type instanceof LLVMInt) {
+		} else if (type instanceof LLVMInt8) {
+			return CoreClasses.charType();
+		} else if (type instanceof LLVMInt64) {
 			return CoreClasses.intType();
 		} else if (type instanceof LLVMDouble) {
 			return CoreClasses.floatType();
-		} else if (type instanceof LLVMInt8) {
-			return CoreClasses.charType();
 		}
 		return null;
 	}
@@ -129,7 +141,7 @@ public class TypeConverter {
 	}
 
 	private void addType(TypeDeclaration typeDecl) {
-		if (typeDecl == CoreClasses.arrayType()) {
+		if (CoreClasses.isArrayType(typeDecl)) {
 			addArray(typeDecl);
 		} else if (typeDecl instanceof ClassDeclaration) {
 			addClass((ClassDeclaration) typeDecl);
@@ -150,7 +162,7 @@ public class TypeConverter {
 		List<LLVMIdentifier<LLVMType>> llvmVMTDataInitializer = new ArrayList<>();
 
 		List<ClassDeclaration> recursiveSuperClassDeclarations = classDecl.getSuperClassDeclarationsRecursive();
-		LLVMArrayType llvmCTDataType = array(pointer(int8()), recursiveSuperClassDeclarations.size() + 1);
+		LLVMArrayType<LLVMPointer<LLVMInt8>> llvmCTDataType = mapToDisplayType();
 		LLVMIdentifier<LLVMType> llvmCTDataIdentifier =
 		        this.llvmIdentifierFactory.newGlobal(mangledNodeName + "_ct_data", (LLVMType) llvmCTDataType);
 		List<LLVMIdentifier<LLVMType>> llvmCTDataInitializer = new ArrayList<>();
@@ -167,7 +179,13 @@ public class TypeConverter {
 			                (LLVMType) pointer(struct(classDeclaration.getMangledIdentifier().getSymbol() + "_vmt_type")));
 			llvmCTDataInitializer.add(this.llvmIdentifierFactory.bitcast(vmtDataIdent, pointer(int8())));
 		}
-		llvmCTDataInitializer.add((LLVMIdentifier<LLVMType>) (LLVMIdentifier<?>) this.llvmIdentifierFactory.constantNull(pointer(int8())));
+		if (recursiveSuperClassDeclarations.size() > this.classHierarchy.getDisplaySize()) {
+			throw new IllegalStateException("Class " + mangledNodeName + " is not part of the class hierarchy");
+		}
+		// Pad the display so that every class can be looked up in it without a bounds check.
+		while (llvmCTDataInitializer.size() < this.classHierarchy.getDisplaySize()) {
+			llvmCTDataInitializer.add((LLVMIdentifier<LLVMType>) (LLVMIdentifier<?>) this.llvmIdentifierFactory.constantNull(pointer(int8())));
+		}
 
 		if (classDecl == CoreClasses.intType()) {
 			llvmClassTypeDeclarations.add(LLVMTypeFactory.int64());
@@ -179,42 +197,58 @@ public class TypeConverter {
 			llvmClassTypeDeclarations.add(LLVMTypeFactory.int8());
 		}
 
-		for (ClassDeclaration classDeclaration : recursiveSuperClassDeclarations) {
-			for (Declaration decl : classDeclaration.getBlock().getDeclarations()) {
-				if (decl instanceof VariableDeclaration) {
-					llvmClassTypeDeclarations.add(mapToLLVMType(((VariableDeclaration) decl).getTypeDeclaration()));
-				}
-			}
+		for (VariableDeclaration attribute : this.fieldLayout.getAttributes(classDecl)) {
+			llvmClassTypeDeclarations.add(mapToVariableType(attribute));
 		}
 		for (ProcedureDeclaration procedure : classDecl.getVirtualMethodTable()) {
 			if (!procedure.isInitializer()) {
-				LLVMType signature = mapToLLVMType(procedure);
+				LLVMPointer<LLVMFunctionType> signature = mapToLLVMType(procedure);
 				llvmVMTTypeDeclarations.add(signature);
-				llvmVMTDataInitializer.add(this.llvmIdentifierFactory.newGlobal(
-				        procedure.getMangledIdentifier().getSymbol(),
-				        signature));
+				if (this.reachability.isLive(procedure)) {
+					llvmVMTDataInitializer.add(this.llvmIdentifierFactory.newGlobal(
+					        procedure.getMangledIdentifier().getSymbol(),
+					        (LLVMType) signature));
+				} else {
+					// the procedure is not generated, see Reachability
+					LLVMIdentifier<?> nullPointer = this.llvmIdentifierFactory.constantNull(signature);
+					llvmVMTDataInitializer.add((LLVMIdentifier<LLVMType>) nullPointer);
+				}
 			}
 		}
-		this.constantContext.type(llvmVMTType, llvmVMTTypeDeclarations);
-		this.constantContext.type(llvmClassType, llvmClassTypeDeclarations);
-		this.constantContext.global(
+		// The types this class depends on were added above, so they are defined before it.
+		CodeContext constantContext = this.constants.define(classDecl);
+		constantContext.type(llvmVMTType, llvmVMTTypeDeclarations);
+		int savedBytes = this.fieldLayout.getSavedBytes(classDecl);
+		if (savedBytes > 0) {
+			constantContext.append(String.format(
+			        "; Field layout: %d bytes instead of %d",
+			        this.fieldLayout.getSize(classDecl),
+			        this.fieldLayout.getSize(classDecl) + savedBytes));
+		}
+		constantContext.type(llvmClassType, llvmClassTypeDeclarations);
+		constantContext.global(
 		        Linkage.priv,
 		        llvmCTDataIdentifier,
 		        true,
 		        this.llvmIdentifierFactory.constant(llvmCTDataType, llvmCTDataInitializer));
-		this.constantContext.global(
+		constantContext.global(
 		        Linkage.priv,
 		        llvmVMTDataIdentifier,
 		        true,
 		        this.llvmIdentifierFactory.constant(llvmVMTType, llvmVMTDataInitializer));
 	}
 
+	/** Arrays are a header of their length, their capacity and a pointer to their unboxed elements, which lie one
+	 * after another. */
 	private void addArray(TypeDeclaration typeDecl) {
-		// Temporary until object or generic
-		LLVMType llvmType = mapToLLVMType((TypeDeclaration) CoreClasses.intType());
-		List<LLVMType> list = Arrays.asList(int64(), array(llvmType, 0));
+		List<LLVMType> list = Arrays.asList(int64(), int64(), (LLVMType) pointer(mapToArrayElementType(typeDecl)));
 		LLVMStructType type = struct(typeDecl.getMangledIdentifier().getSymbol());
-		this.constantContext.type(type, list);
+		this.constants.define(typeDecl).type(type, list);
+	}
+
+	/** Maps an array class to the LLVM type of its elements. */
+	public <T extends LLVMType> T mapToArrayElementType(TypeDeclaration arrayType) {
+		return mapToValueType(CoreClasses.arrayElementType(arrayType));
 	}
 
 	public LLVMPointer<LLVMStructType> mapToLLVMType(ClassDeclaration type) {
@@ -225,6 +259,46 @@ public class TypeConverter {
 		return (LLVMPointer<LLVMFunctionType>) mapToLLVMType((TypeDeclaration) type);
 	}
 
+	/** Maps a type to the LLVM type of a plain value of this type. For the core value classes Int, Float, Bool and Char
+	 * this is the unboxed primitive, for all other types it is the same as {@link #mapToLLVMType(TypeDeclaration)}. */
+	public <T extends LLVMType> T mapToValueType(TypeDeclaration type) {
+		if (type == CoreClasses.intType()) {
+			return (T) int64();
+		} else if (type == CoreClasses.floatType()) {
+			return (T) double64();
+		} else if (type == CoreClasses.boolType()) {
+			return (T) int1();
+		} else if (type == CoreClasses.charType()) {
+			return (T) int8();
+		}
+		return mapToLLVMType(type);
+	}
+
+	/** Maps a parameter or return type of the given procedure. Methods are called through the VMT, so their signature
+	 * must be the same for every override and keeps values boxed. All other procedures are called directly and pass
+	 * values unboxed. */
+	public <T extends LLVMType> T mapToSignatureType(ProcedureDeclaration procedure, TypeDeclaration type) {
+		if (procedure.isMethod()) {
+			return mapToLLVMType(type);
+		}
+		return mapToValueType(type);
+	}
+
+	/** Maps the type of the storage of the given variable. Parameters follow the signature of their procedure,
+	 * attributes and local or global variables are stored unboxed. */
+	public <T extends LLVMType> T mapToVariableType(VariableDeclaration variable) {
+		if (variable.isParameter() && (variable.getParentNode() instanceof ProcedureDeclaration)) {
+			return mapToSignatureType((ProcedureDeclaration) variable.getParentNode(), variable.getTypeDeclaration());
+		}
+		return mapToValueType(variable.getTypeDeclaration());
+	}
+
+	/** The type of the CT of every class: a display of the superclass VMTs indexed by their depth in the class
+	 * hierarchy. */
+	public LLVMArrayType<LLVMPointer<LLVMInt8>> mapToDisplayType() {
+		return array(pointer(int8()), this.classHierarchy.getDisplaySize());
+	}
+
 	public <T extends LLVMType> T mapToLLVMType(TypeDeclaration type) {
 		T llvmType = (T) this.typeMap.get(type);
 		if (llvmType == null) {
@@ -41,7 +41,9 @@ package de.uni.bremen.monty.moco.codegeneration.voodoo;
 
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 import de.uni.bremen.monty.moco.codegeneration.Native;
@@ -53,22 +55,30 @@ import de.uni.bremen.monty.moco.exception.NotYetImplementedException;
 public class BlackMagic {
 	private final Operations operations;
 
+	/** The methods of {@link Operations} by the value of their {@link Native} annotation. Natives of the core classes
+	 * are generated at every call site, so they are looked up once here. */
+	private final Map<String, Method> natives = new HashMap<>();
+
 	public BlackMagic(Operations operations) {
 		this.operations = operations;
+		for (Method method : Operations.class.getMethods()) {
+			Native nativeAnnotation = method.getAnnotation(Native.class);
+			if (nativeAnnotation != null) {
+				this.natives.put(nativeAnnotation.value(), method);
+			}
+		}
 	}
 
 	public LLVMIdentifier<?> generateNativeFunction(CodeContext c, String symbol, List<LLVMIdentifier<?>> arguments) {
-		Method[] methods = Operations.class.getMethods();
-		for (Method method : methods) {
-			if (correctMethod(method, symbol)) {
-				try {
-					return (LLVMIdentifier<?>) method.invoke(this.operations, mergeArguments(c, arguments));
-				} catch (Exception e) {
-					throw new RuntimeException(e);
-				}
-			}
+		Method method = this.natives.get(symbol);
+		if (method == null) {
+			throw new NotYetImplementedException("\"" + symbol + "\" is not defined yet");
+		}
+		try {
+			return (LLVMIdentifier<?>) method.invoke(this.operations, mergeArguments(c, arguments));
+		} catch (Exception e) {
+			throw new RuntimeException(e);
 		}
-		throw new NotYetImplementedException("\"" + symbol + "\" is not defined yet");
 	}
 
 	private Object[] mergeArguments(CodeContext c, List<LLVMIdentifier<?>> arguments) {
@@ -77,15 +87,4 @@ public class BlackMagic {
 		mergedArgs.addAll(arguments);
 		return mergedArgs.toArray();
 	}
-
-	private boolean correctMethod(Method method, String symbol) {
-		Native nativeAnnotation = method.getAnnotation(Native.class);
-		if (nativeAnnotation != null) {
-			boolean isOperation = nativeAnnotation.value().equals(symbol);
-			boolean otherNativeFunction = nativeAnnotation.value().equals(symbol);
-
-			return otherNativeFunction || isOperation;
-		}
-		return false;
-	}
 }
@@ -41,6 +41,12 @@ package de.uni.bremen.monty.moco.util;
 import java.io.File;
 
 public class Params {
+	/** The default size of the garbage collected heap of generated programs in MiB. */
+	public static final int DEFAULT_HEAP_SIZE = 256;
+
+	/** The default maximum number of AST nodes in the body of an inlined procedure. */
+	public static final int DEFAULT_INLINE_THRESHOLD = 16;
+
 	private String inputFolder;
 	private String mainModule;
 
@@ -53,6 +59,16 @@ public class Params {
 	private boolean keepLLVMCode;
 	private boolean stopOnFirstError;
 	private String llFile;
+	private int heapSize = DEFAULT_HEAP_SIZE;
+	private boolean useArena;
+	private int optimizationLevel = -1;
+	private boolean compileNative;
+	private boolean specializeGenerics;
+	private int inlineThreshold = DEFAULT_INLINE_THRESHOLD;
+	private boolean debugInfo;
+	private boolean release;
+	private boolean printStatistics;
+	private int threads = Runtime.getRuntime().availableProcessors();
 
 	public Params(String[] args) {
 		if (args.length == 0 || args[0].equals("-h") || args[0].equals("--help")) {
@@ -73,6 +89,26 @@ public class Params {
 				this.debugParseTree = true;
 			} else if (arg.equals("-e")) {
 				this.stopOnFirstError = true;
+			} else if (arg.equals("-heap")) {
+				this.heapSize = Integer.parseInt(args[++i]);
+			} else if (arg.equals("-arena")) {
+				this.useArena = true;
+			} else if (arg.matches("-O[0-3]")) {
+				this.optimizationLevel = arg.charAt(2) - '0';
+			} else if (arg.equals("-native")) {
+				this.compileNative = true;
+			} else if (arg.equals("-specialize")) {
+				this.specializeGenerics = true;
+			} else if (arg.equals("-inline")) {
+				this.inlineThreshold = Integer.parseInt(args[++i]);
+			} else if (arg.equals("-g")) {
+				this.debugInfo = true;
+			} else if (arg.equals("-release")) {
+				this.release = true;
+			} else if (arg.equals("-stats")) {
+				this.printStatistics = true;
+			} else if (arg.equals("-j")) {
+				this.threads = Integer.parseInt(args[++i]);
 			} else {
 				if (new File(args[i]).isDirectory()) {
 					this.inputFolder = args[i];
@@ -140,6 +176,103 @@ public class Params {
 		return this.stopOnFirstError;
 	}
 
+	/** @return the size of the garbage collected heap of the generated program in MiB */
+	public int getHeapSize() {
+		return this.heapSize;
+	}
+
+	public void setHeapSize(int heapSize) {
+		this.heapSize = heapSize;
+	}
+
+	/** @return whether objects are allocated from an arena which is never freed instead of the garbage collected
+	 *         heap */
+	public boolean isUseArena() {
+		return this.useArena;
+	}
+
+	public void setUseArena(boolean useArena) {
+		this.useArena = useArena;
+	}
+
+	/** @return the level passed to opt and llc or -1 if the generated code should not be optimized */
+	public int getOptimizationLevel() {
+		return this.optimizationLevel;
+	}
+
+	public void setOptimizationLevel(int optimizationLevel) {
+		this.optimizationLevel = optimizationLevel;
+	}
+
+	/** @return whether the generated code is compiled to an executable for the host instead of being run by lli */
+	public boolean isCompileNative() {
+		return this.compileNative;
+	}
+
+	public void setCompileNative(boolean compileNative) {
+		this.compileNative = compileNative;
+	}
+
+	/** @return whether generic procedures and classes are specialized for the value types they are used with */
+	public boolean isSpecializeGenerics() {
+		return this.specializeGenerics;
+	}
+
+	public void setSpecializeGenerics(boolean specializeGenerics) {
+		this.specializeGenerics = specializeGenerics;
+	}
+
+	/** @return the maximum number of AST nodes in the body of a procedure which is inlined at its calls, 0 if no
+	 *         procedure is inlined */
+	public int getInlineThreshold() {
+		return this.inlineThreshold;
+	}
+
+	public void setInlineThreshold(int inlineThreshold) {
+		this.inlineThreshold = inlineThreshold;
+	}
+
+	/** @return whether the instructions are annotated with LLVM debug information instead of source comments */
+	public boolean isDebugInfo() {
+		return this.debugInfo;
+	}
+
+	public void setDebugInfo(boolean debugInfo) {
+		this.debugInfo = debugInfo;
+	}
+
+	/** @return whether the instructions are generated without source comments */
+	public boolean isRelease() {
+		return this.release;
+	}
+
+	public void setRelease(boolean release) {
+		this.release = release;
+	}
+
+	/** @return whether the statistics of the optimizations are appended as comments to the LLVM code */
+	public boolean isPrintStatistics() {
+		return this.printStatistics;
+	}
+
+	public void setPrintStatistics(boolean printStatistics) {
+		this.printStatistics = printStatistics;
+	}
+
+	/** @return the number of threads on which the functions are generated, 1 to generate them one after another */
+	public int getThreads() {
+		return this.threads;
+	}
+
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	/** @return whether the generated code is passed through the native toolchain and needs a target header */
+	public boolean isTargetSpecific() {
+		return this.optimizationLevel >= 0 || this.compileNative;
+	}
+
 	public boolean isDebugParseTree() {
 		return this.debugParseTree;
 	}
@@ -151,8 +284,20 @@ public class Params {
 		System.out.println("-s\tdebug ANTLR parse Tree");
 		System.out.println("-p\tprint AST without code generation");
 		System.out.println("-ll\tgenerate only LLVM code");
-		System.out.println("-k\tkeep LLVM Code");
+		System.out.println("-k\tkeep LLVM Code and the executable built with -native");
 		System.out.println("-e\tstop on first error");
+		System.out.println("-heap <MiB>\tsize of the garbage collected heap (default " + DEFAULT_HEAP_SIZE + ")");
+		System.out.println("-arena\tallocate from an arena which is never freed instead of the garbage collected heap");
+		System.out.println("-O<0-3>\toptimize the generated code with opt before running it");
+		System.out.println("-native\tcompile to an executable with llc and clang instead of running lli");
+		System.out.println(
+		        "-specialize\tspecialize generic procedures and classes for Int, Float, Bool and Char arguments");
+		System.out.println("-inline <nodes>\tinline procedures of up to this size at their calls, 0 to disable (default "
+		        + DEFAULT_INLINE_THRESHOLD + ")");
+		System.out.println("-g\temit debug information for gdb and perf instead of source comments in the LLVM code");
+		System.out.println("-release\tgenerate the LLVM code without source comments");
+		System.out.println("-stats\tappend statistics of the optimizations as comments to the LLVM code");
+		System.out.println("-j <threads>\tgenerate the functions on this many threads (default: number of processors)");
 		System.exit(0);
 	}
 
@@ -36,6 +36,7 @@ import de.uni.bremen.monty.moco.ast.statement.Assignment;
 import de.uni.bremen.monty.moco.ast.statement.BreakStatement;
 import de.uni.bremen.monty.moco.ast.statement.ConditionalStatement;
 import de.uni.bremen.monty.moco.ast.statement.ContinueStatement;
+import de.uni.bremen.monty.moco.ast.statement.RaiseStatement;
 import de.uni.bremen.monty.moco.ast.statement.ReturnStatement;
 import de.uni.bremen.monty.moco.ast.statement.SkipStatement;
 import de.uni.bremen.monty.moco.ast.statement.TryStatement;
@@ -240,6 +241,11 @@ class SteppingVisitor extends BaseVisitor implements Iterator<ASTNode> {
         addNode(node);
     }
 
+    @Override
+    public void visit(RaiseStatement node) {
+        addNode(node);
+    }
+
     // Other
 
     @Override
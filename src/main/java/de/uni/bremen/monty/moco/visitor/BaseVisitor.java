@@ -69,6 +69,7 @@ import de.uni.bremen.monty.moco.ast.statement.Assignment;
 import de.uni.bremen.monty.moco.ast.statement.BreakStatement;
 import de.uni.bremen.monty.moco.ast.statement.ConditionalStatement;
 import de.uni.bremen.monty.moco.ast.statement.ContinueStatement;
+import de.uni.bremen.monty.moco.ast.statement.RaiseStatement;
 import de.uni.bremen.monty.moco.ast.statement.ReturnStatement;
 import de.uni.bremen.monty.moco.ast.statement.SkipStatement;
 import de.uni.bremen.monty.moco.ast.statement.TryStatement;
@@ -434,6 +435,16 @@ public class BaseVisitor {
 		onExitChildrenEachNode(node);
 	}
 
+	/** Visitor method to visit a RaiseStatement.
+	 * 
+	 * @param node
+	 *            the node to visit */
+	public void visit(RaiseStatement node) {
+		onEnterChildrenEachNode(node);
+		node.visitChildren(this);
+		onExitChildrenEachNode(node);
+	}
+
 	/** Visitor method to visit a TryStatement.
 	 * 
 	 * @param node
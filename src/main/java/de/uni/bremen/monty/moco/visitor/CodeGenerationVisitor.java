@@ -41,11 +41,19 @@ package de.uni.bremen.monty.moco.visitor;
 import static de.uni.bremen.monty.moco.codegeneration.types.LLVMTypeFactory.pointer;
 
 import java.io.IOException;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
 
 import de.uni.bremen.monty.moco.ast.ASTNode;
 import de.uni.bremen.monty.moco.ast.Block;
@@ -61,6 +69,7 @@ import de.uni.bremen.monty.moco.ast.declaration.TypeVariableDeclaration;
 import de.uni.bremen.monty.moco.ast.declaration.VariableDeclaration;
 import de.uni.bremen.monty.moco.ast.expression.CastExpression;
 import de.uni.bremen.monty.moco.ast.expression.ConditionalExpression;
+import de.uni.bremen.monty.moco.ast.expression.Expression;
 import de.uni.bremen.monty.moco.ast.expression.FunctionCall;
 import de.uni.bremen.monty.moco.ast.expression.IsExpression;
 import de.uni.bremen.monty.moco.ast.expression.MemberAccess;
@@ -76,19 +85,35 @@ import de.uni.bremen.monty.moco.ast.expression.literal.StringLiteral;
 import de.uni.bremen.monty.moco.ast.statement.Assignment;
 import de.uni.bremen.monty.moco.ast.statement.BreakStatement;
 import de.uni.bremen.monty.moco.ast.statement.ConditionalStatement;
+import de.uni.bremen.monty.moco.ast.statement.RaiseStatement;
 import de.uni.bremen.monty.moco.ast.statement.ReturnStatement;
 import de.uni.bremen.monty.moco.ast.statement.SkipStatement;
 import de.uni.bremen.monty.moco.ast.statement.Statement;
+import de.uni.bremen.monty.moco.ast.statement.TryStatement;
 import de.uni.bremen.monty.moco.ast.statement.WhileLoop;
+import de.uni.bremen.monty.moco.codegeneration.BoundsCheckElimination;
+import de.uni.bremen.monty.moco.codegeneration.ClassHierarchy;
+import de.uni.bremen.monty.moco.codegeneration.EscapeAnalysis;
+import de.uni.bremen.monty.moco.codegeneration.FieldLayout;
+import de.uni.bremen.monty.moco.codegeneration.Inliner;
+import de.uni.bremen.monty.moco.codegeneration.Monomorphization;
 import de.uni.bremen.monty.moco.codegeneration.CodeGenerator;
 import de.uni.bremen.monty.moco.codegeneration.CodeWriter;
+import de.uni.bremen.monty.moco.codegeneration.Reachability;
+import de.uni.bremen.monty.moco.codegeneration.TailCalls;
 import de.uni.bremen.monty.moco.codegeneration.context.CodeContext;
+import de.uni.bremen.monty.moco.codegeneration.context.CommentAppender;
 import de.uni.bremen.monty.moco.codegeneration.context.ContextUtils;
+import de.uni.bremen.monty.moco.codegeneration.context.DebugInfoAppender;
+import de.uni.bremen.monty.moco.codegeneration.context.NoCommentAppender;
+import de.uni.bremen.monty.moco.codegeneration.identifier.GlobalNameAllocator;
 import de.uni.bremen.monty.moco.codegeneration.identifier.LLVMIdentifier;
 import de.uni.bremen.monty.moco.codegeneration.identifier.LLVMIdentifierFactory;
+import de.uni.bremen.monty.moco.codegeneration.identifier.LocalVariable;
 import de.uni.bremen.monty.moco.codegeneration.types.LLVMPointer;
 import de.uni.bremen.monty.moco.codegeneration.types.LLVMStructType;
 import de.uni.bremen.monty.moco.codegeneration.types.LLVMType;
+import de.uni.bremen.monty.moco.codegeneration.types.LLVMTypeFactory.LLVMBool;
 import de.uni.bremen.monty.moco.codegeneration.types.TypeConverter;
 import de.uni.bremen.monty.moco.util.Params;
 
@@ -104,10 +129,41 @@ import de.uni.bremen.monty.moco.util.Params;
  * </p> */
 public class CodeGenerationVisitor extends BaseVisitor {
 
-	private final LLVMIdentifierFactory llvmIdentifierFactory = new LLVMIdentifierFactory();
-	private final ContextUtils contextUtils = new ContextUtils();
+	private final Params params;
+	private final GlobalNameAllocator globalNames;
+	private final LLVMIdentifierFactory llvmIdentifierFactory;
+	private final ContextUtils contextUtils;
 	private final CodeGenerator codeGenerator;
+	/** Only set for the visitor of the whole module, see {@link #functions}. */
 	private final CodeWriter codeWriter;
+	private final ClassHierarchy classHierarchy;
+	private final EscapeAnalysis escapeAnalysis;
+	private final BoundsCheckElimination boundsCheckElimination;
+	/** The array accesses whose indices were checked before the version of a loop being generated. */
+	private final Set<FunctionCall> rangeCheckedAccesses = new HashSet<>();
+	private final TailCalls tailCalls;
+	private final Reachability reachability;
+	private final FieldLayout fieldLayout;
+	private final Inliner inliner;
+	/** Only set if generic procedures are specialized for value types. */
+	private final Monomorphization monomorphization;
+	private final boolean printStatistics;
+
+	/** The threads on which the functions of the module are generated or null if this visitor generates them one after
+	 * another. Each function declared in the module, together with its nested procedures, is generated by a visitor of
+	 * its own with its own contexts, counters and constants, see {@link #units}.
+	 *
+	 * Debug information is numbered across the whole module and the specializations of generic procedures are created
+	 * on demand while the calls are generated, so both are only generated on one thread. */
+	private final ForkJoinPool pool;
+
+	/** The visitors generating the functions on the {@link #pool}, in the order in which the functions are declared.
+	 * Their code is written in this order as well, so it does not depend on the number of threads. */
+	private final List<ForkJoinTask<CodeGenerationVisitor>> units = new ArrayList<>();
+
+	/** Where a visitor generating functions on the {@link #pool} writes them to, until they are written after the
+	 * functions declared before them. Null for the visitor of the whole module, which writes to the .ll file. */
+	private final StringWriter functions;
 
 	/** Each Expression pushes it's evaluated value onto the Stack. The value is represented by a LLVMIdentifier where
 	 * the evaluated value is stored at runtime.
@@ -128,21 +184,189 @@ public class CodeGenerationVisitor extends BaseVisitor {
 	 * e.g. the FunctionCall as a statement would leave behind a non-empty stack. */
 	private final Stack<Stack<LLVMIdentifier<LLVMType>>> stackOfStacks = new Stack<>();
 
+	/** The try statements of one function which enclose the statement being generated, by their label prefix. */
+	private static class TryScope {
+		/** The try statements whose try block is being generated, innermost on top. A raise inside one of them
+		 * branches directly to its handlers. */
+		private final Stack<String> tryBlocks = new Stack<>();
+
+		/** The try statements whose handler is being generated, innermost on top. A raise without an object raises the
+		 * object handled by the innermost one again. */
+		private final Stack<String> handlers = new Stack<>();
+	}
+
+	/** Each function has its own TryScope, since exceptions leave a function only by unwinding. */
+	private final Stack<TryScope> tryScopes = new Stack<>();
+
+	/** A function whose tail calls of itself jump back to its start, see {@link TailCalls}. */
+	private static class TailRecursion {
+		/** The label of the block after the entry block, where the function starts over. */
+		private static final String LABEL = "tailrecurse";
+
+		/** The name of the function. A specialization of a generic function only jumps back for calls of itself. */
+		private final String name;
+
+		/** The parameters except self, which are local variables instead of plain values in such a function. */
+		private final List<LocalVariable<LLVMType>> parameters = new ArrayList<>();
+		private final Map<VariableDeclaration, LocalVariable<LLVMType>> variables = new HashMap<>();
+
+		private TailRecursion(String name) {
+			this.name = name;
+		}
+	}
+
+	/** The TailRecursion of each function being generated, or null if the function does not call itself in tail
+	 * position. */
+	private final Stack<TailRecursion> tailRecursions = new Stack<>();
+
+	/** A call whose procedure is generated in place, see {@link Inliner}. */
+	private static class InlinedCall {
+		private final ProcedureDeclaration procedure;
+
+		/** Appended to the names of the local variables of the procedure, so that they differ from those of the
+		 * calling function and of other inlined calls of the same procedure. */
+		private final String suffix;
+
+		/** The label after the inlined body, where each return jumps to. */
+		private final String end;
+
+		/** The object the method is called on or null if the procedure is no method. */
+		private LLVMIdentifier<LLVMType> self;
+
+		/** The parameters are local variables holding the arguments. */
+		private final Map<VariableDeclaration, LocalVariable<LLVMType>> parameters = new HashMap<>();
+
+		/** The variable holding the returned value or null if the procedure is no function. */
+		private LocalVariable<LLVMType> result;
+
+		private InlinedCall(ProcedureDeclaration procedure, String labelPrefix) {
+			this.procedure = procedure;
+			this.suffix = "." + labelPrefix;
+			this.end = labelPrefix + ".end";
+		}
+	}
+
+	/** The calls being inlined into the function being generated, innermost on top. */
+	private final Stack<InlinedCall> inlinedCalls = new Stack<>();
+
+	private int inlinedCallCount = 0;
+
 	public CodeGenerationVisitor(Params params) throws IOException {
-		TypeConverter typeConverter = new TypeConverter(this.llvmIdentifierFactory, this.contextUtils.constant());
+		this.params = params;
 		this.codeWriter = new CodeWriter(params);
-		this.codeGenerator = new CodeGenerator(typeConverter, this.llvmIdentifierFactory);
+		this.functions = null;
+		this.globalNames = new GlobalNameAllocator();
+		this.llvmIdentifierFactory = new LLVMIdentifierFactory(this.globalNames);
+		this.contextUtils = new ContextUtils(this.codeWriter.getWriter(), createCommentAppender(params));
+		this.classHierarchy = new ClassHierarchy();
+		this.escapeAnalysis = new EscapeAnalysis(this.classHierarchy);
+		this.boundsCheckElimination = new BoundsCheckElimination();
+		this.tailCalls = new TailCalls(this.classHierarchy, this.escapeAnalysis);
+		this.reachability = new Reachability(this.classHierarchy);
+		this.fieldLayout = new FieldLayout();
+		this.codeGenerator = createCodeGenerator();
+		this.monomorphization = params.isSpecializeGenerics() ? new Monomorphization() : null;
+		this.inliner = new Inliner(this.tailCalls, params.getInlineThreshold());
+		this.printStatistics = params.isPrintStatistics();
+		if (params.getThreads() > 1 && !params.isDebugInfo() && !params.isSpecializeGenerics()) {
+			this.pool = new ForkJoinPool(params.getThreads());
+		} else {
+			this.pool = null;
+		}
+	}
+
+	/** Creates a visitor which generates functions of the given module on its {@link #pool}. It shares the analyses
+	 * and the global names with the module, everything else is its own. */
+	private CodeGenerationVisitor(CodeGenerationVisitor module) {
+		this.params = module.params;
+		this.codeWriter = null;
+		this.functions = new StringWriter();
+		this.globalNames = module.globalNames;
+		this.llvmIdentifierFactory = new LLVMIdentifierFactory(this.globalNames);
+		this.contextUtils = new ContextUtils(this.functions, createCommentAppender(this.params));
+		this.classHierarchy = module.classHierarchy;
+		this.escapeAnalysis = module.escapeAnalysis;
+		this.boundsCheckElimination = module.boundsCheckElimination;
+		this.tailCalls = module.tailCalls;
+		this.reachability = module.reachability;
+		this.fieldLayout = module.fieldLayout;
+		this.codeGenerator = createCodeGenerator();
+		this.monomorphization = null;
+		this.inliner = module.inliner;
+		this.printStatistics = false;
+		this.pool = null;
+		// errors are reported by the module when it waits for this visitor
+		setStopOnFirstError(true);
+	}
+
+	private CodeGenerator createCodeGenerator() {
+		TypeConverter typeConverter =
+		        new TypeConverter(this.llvmIdentifierFactory, this.contextUtils.constant(), this.classHierarchy,
+		                this.reachability, this.fieldLayout);
+		return new CodeGenerator(typeConverter, this.contextUtils.constant(), this.classHierarchy,
+		        this.llvmIdentifierFactory, this.params);
+	}
+
+	/** Debug information takes precedence over the comments, which are left out of release builds. */
+	private static CommentAppender createCommentAppender(Params params) {
+		if (params.isDebugInfo()) {
+			String mainFile = params.getInputFile() != null ? params.getInputFile() : params.getInputFolder();
+			return new DebugInfoAppender(mainFile);
+		}
+		if (params.isRelease()) {
+			return new NoCommentAppender();
+		}
+		return new CommentAppender();
 	}
 
 	private void openNewFunctionScope() {
 		this.contextUtils.addNewContext();
 		this.llvmIdentifierFactory.openScope();
+		this.tryScopes.push(new TryScope());
+		this.tailRecursions.push(null);
 	}
 
 	private void closeFunctionContext() {
+		if (this.tailRecursions.pop() != null) {
+			this.contextUtils.active().sealLabel(TailRecursion.LABEL);
+		}
 		this.contextUtils.active().close();
 		this.contextUtils.closeContext();
 		this.llvmIdentifierFactory.closeScope();
+		this.tryScopes.pop();
+	}
+
+	/** Generates a function of the module by the given generator. With a {@link #pool}, the function is generated by a
+	 * visitor of its own on the pool, whose constants are added at this point and whose code is written by
+	 * {@link #addUnits()}.
+	 *
+	 * @param node
+	 *            the declaration of the function
+	 * @param generator
+	 *            generates the function by the given visitor */
+	private void generateFunction(ASTNode node, Consumer<CodeGenerationVisitor> generator) {
+		if (this.pool == null) {
+			generator.accept(this);
+			return;
+		}
+		CodeGenerationVisitor unit = new CodeGenerationVisitor(this);
+		this.contextUtils.constant().add(unit.contextUtils.constant());
+		this.units.add(this.pool.submit(() -> {
+			unit.contextUtils.setNode(node);
+			generator.accept(unit);
+			return unit;
+		}));
+	}
+
+	/** Waits for the functions generated on the {@link #pool} and adds them in the order in which they were declared,
+	 * as if they were generated one after another. */
+	private void addUnits() {
+		for (ForkJoinTask<CodeGenerationVisitor> task : this.units) {
+			CodeGenerationVisitor unit = task.join();
+			this.contextUtils.addFunctions(unit.functions.toString());
+			this.inlinedCallCount += unit.inlinedCallCount;
+		}
+		this.units.clear();
 	}
 
 	private List<LLVMIdentifier<? extends LLVMType>> buildLLVMParameter(ProcedureDeclaration node) {
@@ -155,7 +379,7 @@ public class CodeGenerationVisitor extends BaseVisitor {
 		}
 
 		for (VariableDeclaration param : node.getParameter()) {
-			LLVMType llvmType = this.codeGenerator.mapToLLVMType(param.getTypeDeclaration());
+			LLVMType llvmType = this.codeGenerator.mapToVariableType(param);
 			llvmType = llvmType instanceof LLVMStructType ? pointer(llvmType) : llvmType;
 			boolean resolvable = llvmType instanceof LLVMStructType;
 			LLVMIdentifier<LLVMType> e =
@@ -167,15 +391,45 @@ public class CodeGenerationVisitor extends BaseVisitor {
 	}
 
 	private void addFunction(ProcedureDeclaration node, TypeDeclaration returnType) {
+		addFunction(node, returnType, node.getMangledIdentifier().getSymbol());
+	}
+
+	private void addFunction(ProcedureDeclaration node, TypeDeclaration returnType, String name) {
 		List<LLVMIdentifier<? extends LLVMType>> llvmParameter = buildLLVMParameter(node);
-		String name = node.getMangledIdentifier().getSymbol();
-		this.codeGenerator.addFunction(this.contextUtils.active(), returnType, llvmParameter, name);
+		LLVMType llvmReturnType = this.codeGenerator.mapToSignatureType(node, returnType);
+		this.codeGenerator.addFunction(this.contextUtils.active(), llvmReturnType, llvmParameter, name);
+		if (this.tailCalls.isTailRecursive(node)) {
+			addTailRecursion(node, llvmParameter, name);
+		}
+	}
+
+	/** Turns the parameters into local variables and starts the block to which tail calls of the function jump. */
+	@SuppressWarnings("unchecked")
+	private void addTailRecursion(ProcedureDeclaration node, List<LLVMIdentifier<? extends LLVMType>> llvmParameter,
+	        String name) {
+		CodeContext c = this.contextUtils.active();
+		TailRecursion tailRecursion = new TailRecursion(name);
+		int offset = llvmParameter.size() - node.getParameter().size();
+		for (int i = 0; i < node.getParameter().size(); i++) {
+			LLVMIdentifier<LLVMType> value = (LLVMIdentifier<LLVMType>) llvmParameter.get(offset + i);
+			LocalVariable<LLVMType> variable =
+			        this.llvmIdentifierFactory.newLocalVariable(
+			                node.getParameter().get(i).getMangledIdentifier().getSymbol(),
+			                value.getType());
+			c.writeVariable(variable, value);
+			tailRecursion.parameters.add(variable);
+			tailRecursion.variables.put(node.getParameter().get(i), variable);
+		}
+		c.branch(TailRecursion.LABEL);
+		c.label(TailRecursion.LABEL, false);
+		this.tailRecursions.set(this.tailRecursions.size() - 1, tailRecursion);
 	}
 
 	private void addNativeFunction(ProcedureDeclaration node, TypeDeclaration returnType) {
 		List<LLVMIdentifier<? extends LLVMType>> llvmParameter = buildLLVMParameter(node);
 		String name = node.getMangledIdentifier().getSymbol();
-		this.codeGenerator.addNativeFunction(this.contextUtils.active(), returnType, llvmParameter, name);
+		LLVMType llvmReturnType = this.codeGenerator.mapToSignatureType(node, returnType);
+		this.codeGenerator.addNativeFunction(this.contextUtils.active(), llvmReturnType, llvmParameter, name);
 	}
 
 	private boolean isNative(ASTNode node) {
@@ -190,8 +444,55 @@ public class CodeGenerationVisitor extends BaseVisitor {
 		return false;
 	}
 
+	private boolean isAssignmentTarget(Expression node) {
+		return (node.getParentNode() instanceof Assignment) && ((Assignment) node.getParentNode()).getLeft() == node;
+	}
+
+	/** Appends what each optimization achieved as comments at the end of the .ll file. */
+	private void appendStatistics() {
+		List<String> statistics = new ArrayList<>();
+		statistics.add(String.format(
+		        "Escape analysis: %d of %d allocation sites allocated on the stack",
+		        this.escapeAnalysis.getStackAllocatedCount(),
+		        this.escapeAnalysis.getAllocationSiteCount()));
+		statistics.add(String.format(
+		        "Bounds check elimination: %d of %d array accesses unchecked, %d checks hoisted out of loops",
+		        this.boundsCheckElimination.getUncheckedCount(),
+		        this.boundsCheckElimination.getArrayAccessCount(),
+		        this.boundsCheckElimination.getHoistedCheckCount()));
+		statistics.add(String.format(
+		        "Tail calls: %d, %d of them turned into loops",
+		        this.tailCalls.getTailCallCount(),
+		        this.tailCalls.getSelfTailCallCount()));
+		statistics.add(String.format(
+		        "Inlining: %d calls inlined, %d procedures small enough to be inlined",
+		        this.inlinedCallCount,
+		        this.inliner.getInlinedProcedureCount()));
+		statistics.add(String.format(
+		        "Reachability: %d of %d procedures and %d of %d classes used",
+		        this.reachability.getLiveProcedureCount(),
+		        this.reachability.getProcedureCount(),
+		        this.reachability.getInstantiatedClassCount(),
+		        this.reachability.getClassCount()));
+		statistics.add(String.format(
+		        "Field layout: %d classes made smaller by reordering their attributes",
+		        this.fieldLayout.getImprovedClassCount()));
+		if (this.monomorphization != null) {
+			statistics.add(String.format(
+			        "Monomorphization: %d specializations of generic procedures, %d generic classes specialized",
+			        this.monomorphization.getSpecializationCount(),
+			        this.monomorphization.getSpecializedClassCount()));
+		}
+		for (String statistic : statistics) {
+			this.contextUtils.active().append("; " + statistic);
+		}
+	}
+
+	/** Writes the constants after the functions, which were written as soon as they were generated, and closes the
+	 * .ll file. */
 	protected void writeData() throws IOException {
-		this.codeWriter.write(this.contextUtils.getData());
+		this.contextUtils.write();
+		this.codeWriter.close();
 	}
 
 	@Override
@@ -218,14 +519,52 @@ public class CodeGenerationVisitor extends BaseVisitor {
 	public void visit(Package node) {
 		this.contextUtils.setNode(node);
 		if (node.getParentNode() == null) {
+			if (this.monomorphization != null) {
+				this.monomorphization.specializeClasses(node);
+			}
+			node.visit(new BaseVisitor() {
+				@Override
+				public void visit(ClassDeclaration node) {
+					CodeGenerationVisitor.this.classHierarchy.addClass(node);
+					CodeGenerationVisitor.this.fieldLayout.layout(node);
+					super.visit(node);
+				}
+			});
+			this.escapeAnalysis.analyze(node);
+			this.boundsCheckElimination.analyze(node);
+			this.tailCalls.analyze(node);
+			this.inliner.analyze(node);
+			this.reachability.analyze(node);
 			openNewFunctionScope();
 			this.codeGenerator.addMain(this.contextUtils.active());
 
-			super.visit(node);
+			try {
+				super.visit(node);
+				addUnits();
+			} finally {
+				if (this.pool != null) {
+					this.pool.shutdownNow();
+				}
+			}
 
 			this.codeGenerator.returnMain(this.contextUtils.active());
 			closeFunctionContext();
 
+			if (this.monomorphization != null) {
+				Monomorphization.Specialization specialization;
+				while ((specialization = this.monomorphization.nextPending()) != null) {
+					addSpecialization(specialization);
+				}
+			}
+
+			openNewFunctionScope();
+			this.codeGenerator.addGlobalRoots(this.contextUtils.active());
+			closeFunctionContext();
+
+			if (this.printStatistics) {
+				appendStatistics();
+			}
+
 			try {
 				writeData();
 			} catch (IOException e) {
@@ -251,9 +590,20 @@ public class CodeGenerationVisitor extends BaseVisitor {
 
 	@Override
 	public void visit(Assignment node) {
-		super.visit(node);
-		LLVMIdentifier<LLVMType> source = this.stack.pop();
-		LLVMIdentifier<LLVMType> target = this.stack.pop();
+		LLVMIdentifier<LLVMType> source;
+		LLVMIdentifier<LLVMType> target;
+		if (node.getLeft() instanceof FunctionCall) {
+			// An array element. The right side is evaluated first, since it may append to the array and move its
+			// elements.
+			visitDoubleDispatched(node.getRight());
+			visitDoubleDispatched(node.getLeft());
+			target = this.stack.pop();
+			source = this.stack.pop();
+		} else {
+			super.visit(node);
+			source = this.stack.pop();
+			target = this.stack.pop();
+		}
 		this.codeGenerator.assign(this.contextUtils.active(), target, source);
 	}
 
@@ -261,15 +611,19 @@ public class CodeGenerationVisitor extends BaseVisitor {
 	public void visit(ClassDeclaration node) {
 		// These are not boxed yet. So they cant inherit from object and cant have initializers.
 		List<ClassDeclaration> treatSpecial =
-		        Arrays.asList(CoreClasses.stringType(), CoreClasses.arrayType(), CoreClasses.voidType());
-		if (!treatSpecial.contains(node)) {
-			openNewFunctionScope();
-			this.codeGenerator.buildConstructor(this.contextUtils.active(), node);
-			closeFunctionContext();
+		        Arrays.asList(CoreClasses.stringType(), CoreClasses.voidType());
+		if (!treatSpecial.contains(node) && !CoreClasses.isArrayType(node) && this.reachability.isInstantiated(node)) {
+			generateFunction(node, visitor -> visitor.addConstructor(node));
 		}
 		super.visit(node);
 	}
 
+	private void addConstructor(ClassDeclaration node) {
+		openNewFunctionScope();
+		this.codeGenerator.buildConstructor(this.contextUtils.active(), node);
+		closeFunctionContext();
+	}
+
 	@Override
 	public void visit(VariableDeclaration node) {
 		super.visit(node);
@@ -282,7 +636,7 @@ public class CodeGenerationVisitor extends BaseVisitor {
 			} else {
 				this.codeGenerator.declareLocalVariable(
 				        this.contextUtils.active(),
-				        node.getMangledIdentifier().getSymbol(),
+				        getLocalName(node.getMangledIdentifier().getSymbol()),
 				        node.getTypeDeclaration());
 			}
 		}
@@ -290,6 +644,10 @@ public class CodeGenerationVisitor extends BaseVisitor {
 
 	@Override
 	public void visit(VariableAccess node) {
+		if (node.getConstantValue() != null) {
+			pushConstant(node);
+			return;
+		}
 		super.visit(node);
 
 		VariableDeclaration varDeclaration = (VariableDeclaration) node.getDeclaration();
@@ -298,7 +656,7 @@ public class CodeGenerationVisitor extends BaseVisitor {
 		LLVMIdentifier<LLVMType> llvmIdentifier;
 		if (varDeclaration.getIsGlobal()) {
 			llvmIdentifier =
-			        this.codeGenerator.resolveGlobalVarName(node.getMangledIdentifier().getSymbol(), node.getTypeDeclaration());
+			        this.codeGenerator.resolveGlobalVarName(node.getMangledIdentifier().getSymbol(), varDeclaration);
 		} else if (varDeclaration.isAttribute()) {
 			LLVMIdentifier<?> leftIdentifier = this.stack.pop();
 			llvmIdentifier =
@@ -308,15 +666,21 @@ public class CodeGenerationVisitor extends BaseVisitor {
 			                varDeclaration.getAttributeIndex(),
 			                declaredType,
 			                !node.getLValue());
+		} else if (varDeclaration.isParameter() && !this.inlinedCalls.isEmpty()
+		        && this.inlinedCalls.peek().parameters.containsKey(varDeclaration)) {
+			llvmIdentifier = this.inlinedCalls.peek().parameters.get(varDeclaration);
+		} else if (varDeclaration.isParameter() && this.tailRecursions.peek() != null
+		        && this.tailRecursions.peek().variables.containsKey(varDeclaration)) {
+			llvmIdentifier = this.tailRecursions.peek().variables.get(varDeclaration);
 		} else {
 			llvmIdentifier =
 			        this.codeGenerator.resolveLocalVarName(
-			                node.getMangledIdentifier().getSymbol(),
-			                declaredType,
+			                getLocalName(node.getMangledIdentifier().getSymbol()),
+			                varDeclaration,
 			                !varDeclaration.isParameter());
 		}
 		if (node.getTypeDeclaration() != declaredType) {
-		    final LLVMType target = codeGenerator.mapToLLVMType(declaredType);
+		    final LLVMType target = codeGenerator.mapToVariableType(varDeclaration);
 		    llvmIdentifier = codeGenerator.castIfNeeded(contextUtils.active(), 
 		            llvmIdentifier, target);
 		}
@@ -326,13 +690,13 @@ public class CodeGenerationVisitor extends BaseVisitor {
 	@SuppressWarnings("unchecked")
 	@Override
 	public void visit(SelfExpression node) {
-		this.stack.push(this.codeGenerator.resolveLocalVarName("self", node.getTypeDeclaration(), false));
+		this.stack.push(getSelf(node.getTypeDeclaration()));
 	}
 
 	@SuppressWarnings("unchecked")
 	@Override
 	public void visit(ParentExpression node) {
-		LLVMIdentifier<?> self = this.codeGenerator.resolveLocalVarName("self", node.getSelfTypeDeclaration(), false);
+		LLVMIdentifier<?> self = getSelf(node.getSelfTypeDeclaration());
 		LLVMIdentifier<?> result =
 		        this.codeGenerator.castClass(
 		                this.contextUtils.active(),
@@ -369,13 +733,15 @@ public class CodeGenerationVisitor extends BaseVisitor {
 		                (LLVMIdentifier<LLVMPointer<LLVMType>>) object,
 		                (ClassDeclaration) node.getExpression().getTypeDeclaration(),
 		                (ClassDeclaration) node.getToType());
-		LLVMIdentifier<LLVMType> boxedResult =
-		        this.codeGenerator.boxType(this.contextUtils.active(), (LLVMIdentifier<LLVMType>) result, CoreClasses.boolType());
-		this.stack.push(boxedResult);
+		this.stack.push((LLVMIdentifier<LLVMType>) result);
 	}
 
 	@Override
 	public void visit(MemberAccess node) {
+		if (node.getConstantValue() != null) {
+			pushConstant(node);
+			return;
+		}
 		super.visit(node);
 		// If right is VariableAccess, everything is done in visit(VariableAccess)
 		// If right is FunctionCall, everything is done in visit(FunctionCall)
@@ -396,10 +762,7 @@ public class CodeGenerationVisitor extends BaseVisitor {
 	public void visit(CharacterLiteral node) {
 		super.visit(node);
 		LLVMIdentifier<? extends LLVMType> addr = this.codeGenerator.loadChar(node.getValue());
-		// Boxing
-		CodeContext c = this.contextUtils.active();
-		LLVMIdentifier<LLVMType> box = this.codeGenerator.boxType(c, (LLVMIdentifier<LLVMType>) addr, node.getTypeDeclaration());
-		this.stack.push(box);
+		this.stack.push((LLVMIdentifier<LLVMType>) addr);
 	}
 
 	@SuppressWarnings("unchecked")
@@ -408,10 +771,7 @@ public class CodeGenerationVisitor extends BaseVisitor {
 		super.visit(node);
 
 		LLVMIdentifier<? extends LLVMType> addr = this.codeGenerator.loadInt(node.getValue());
-		// Boxing
-		CodeContext c = this.contextUtils.active();
-		LLVMIdentifier<LLVMType> box = this.codeGenerator.boxType(c, (LLVMIdentifier<LLVMType>) addr, node.getTypeDeclaration());
-		this.stack.push(box);
+		this.stack.push((LLVMIdentifier<LLVMType>) addr);
 	}
 
 	@SuppressWarnings("unchecked")
@@ -420,10 +780,7 @@ public class CodeGenerationVisitor extends BaseVisitor {
 		super.visit(node);
 
 		LLVMIdentifier<? extends LLVMType> addr = this.codeGenerator.loadBool(node.getValue());
-		// Boxing
-		CodeContext c = this.contextUtils.active();
-		LLVMIdentifier<LLVMType> box = this.codeGenerator.boxType(c, (LLVMIdentifier<LLVMType>) addr, node.getTypeDeclaration());
-		this.stack.push(box);
+		this.stack.push((LLVMIdentifier<LLVMType>) addr);
 	}
 
 	@SuppressWarnings("unchecked")
@@ -432,10 +789,7 @@ public class CodeGenerationVisitor extends BaseVisitor {
 		super.visit(node);
 
 		LLVMIdentifier<? extends LLVMType> addr = this.codeGenerator.loadFloat(node.getValue());
-		// Boxing
-		CodeContext c = this.contextUtils.active();
-		LLVMIdentifier<LLVMType> box = this.codeGenerator.boxType(c, (LLVMIdentifier<LLVMType>) addr, node.getTypeDeclaration());
-		this.stack.push(box);
+		this.stack.push((LLVMIdentifier<LLVMType>) addr);
 	}
 
 	@Override
@@ -446,14 +800,35 @@ public class CodeGenerationVisitor extends BaseVisitor {
 		LLVMIdentifier<LLVMPointer<LLVMStructType>> array =
 		        this.codeGenerator.addArray(this.contextUtils.active(), node.getEntries().size(), type);
 		for (int i = node.getEntries().size() - 1; i >= 0; i--) {
-			this.codeGenerator.setArrayElement(this.contextUtils.active(), array, i, this.stack.pop());
+			this.codeGenerator.setArrayElement(this.contextUtils.active(), array, type, i, this.stack.pop());
 		}
 
 		this.stack.push((LLVMIdentifier) array);
 	}
 
+	@SuppressWarnings("unchecked")
+	private void pushConstant(Expression node) {
+		LLVMIdentifier<? extends LLVMType> value = this.codeGenerator.loadConstant(node.getConstantValue());
+		this.stack.push((LLVMIdentifier<LLVMType>) value);
+	}
+
 	@Override
 	public void visit(ConditionalExpression node) {
+		if (node.getConstantValue() != null) {
+			pushConstant(node);
+			return;
+		}
+		LLVMType resultType = this.codeGenerator.mapToValueType(node.getTypeDeclaration());
+		Object constantCondition = node.getCondition().getConstantValue();
+		if (constantCondition != null) {
+			// only the taken branch is evaluated
+			visitDoubleDispatched((Boolean) constantCondition ? node.getThenExpression() : node.getElseExpression());
+			this.stack.push(this.codeGenerator.resolveAndCastIfNeeded(
+			        this.contextUtils.active(),
+			        this.stack.pop(),
+			        resultType));
+			return;
+		}
 
 		String ifPre = this.codeGenerator.createLabelPrefix("ifexpr", node);
 		String ifTrue = ifPre + ".true";
@@ -467,12 +842,16 @@ public class CodeGenerationVisitor extends BaseVisitor {
 
 		this.contextUtils.active().label(ifTrue);
 		visitDoubleDispatched(node.getThenExpression());
-		LLVMIdentifier<LLVMType> thenExpr = this.stack.pop();
+		LLVMIdentifier<LLVMType> thenExpr =
+		        this.codeGenerator.resolveAndCastIfNeeded(this.contextUtils.active(), this.stack.pop(), resultType);
+		String thenLabel = this.contextUtils.active().getCurrentLabel();
 		this.contextUtils.active().branch(ifEnd);
 
 		this.contextUtils.active().label(ifFalse);
 		visitDoubleDispatched(node.getElseExpression());
-		LLVMIdentifier<LLVMType> elseExpr = this.stack.pop();
+		LLVMIdentifier<LLVMType> elseExpr =
+		        this.codeGenerator.resolveAndCastIfNeeded(this.contextUtils.active(), this.stack.pop(), resultType);
+		String elseLabel = this.contextUtils.active().getCurrentLabel();
 		this.contextUtils.active().branch(ifEnd);
 
 		this.contextUtils.active().label(ifEnd);
@@ -480,13 +859,13 @@ public class CodeGenerationVisitor extends BaseVisitor {
 		identifiers.add(thenExpr);
 		identifiers.add(elseExpr);
 		List<String> labels = new ArrayList<>();
-		labels.add(ifTrue);
-		labels.add(ifFalse);
+		labels.add(thenLabel);
+		labels.add(elseLabel);
 		this.stack.push(this.contextUtils.active().phi(
-		        thenExpr.getType(),
-		        thenExpr.needToBeResolved(),
+		        resultType,
+		        false,
 		        identifiers,
-		        this.llvmIdentifierFactory.newLocal(thenExpr.getType(), thenExpr.needToBeResolved()),
+		        this.llvmIdentifierFactory.newLocal(resultType, false),
 		        labels));
 	}
 
@@ -527,8 +906,12 @@ public class CodeGenerationVisitor extends BaseVisitor {
 			        || (declaration.isInitializer() && (node.getParentNode() instanceof MemberAccess))) {
 				arguments.add(0, this.stack.pop());
 			} else if (declaration.isInitializer()) {
-				LLVMIdentifier<LLVMType> selfReference =
-				        this.codeGenerator.callConstructor(this.contextUtils.active(), definingClass);
+				LLVMIdentifier<LLVMType> selfReference;
+				if (this.escapeAnalysis.isStackAllocated(node)) {
+					selfReference = this.codeGenerator.allocateOnStack(this.contextUtils.active(), definingClass);
+				} else {
+					selfReference = this.codeGenerator.callConstructor(this.contextUtils.active(), definingClass);
+				}
 				this.codeGenerator.callVoid(
 				        this.contextUtils.active(),
 				        definingClass.getDefaultInitializer().getMangledIdentifier().getSymbol(),
@@ -538,32 +921,112 @@ public class CodeGenerationVisitor extends BaseVisitor {
 			}
 		}
 
+		if (declaration.isMethod() && treatSpecial.contains(definingClass) && isNative(declaration)) {
+			// The core classes are lowered to plain values, so their operators are bound statically and the native
+			// implementation is emitted right here instead of calling it through the VMT.
+			LLVMIdentifier<LLVMType> result =
+			        (LLVMIdentifier<LLVMType>) this.codeGenerator.inlineNativeMethod(
+			                this.contextUtils.active(),
+			                declaration,
+			                arguments,
+			                expectedParameters);
+			if (result != null) {
+				final LLVMType target = codeGenerator.mapToValueType(node.getTypeDeclaration());
+				this.stack.push(codeGenerator.castIfNeeded(contextUtils.active(), result, target));
+			}
+			return;
+		}
+
+		if (isLoopedTailCall(node)) {
+			if (declaration.isMethod()) {
+				// self does not change
+				arguments.remove(0);
+			}
+			this.codeGenerator.tailRecurse(
+			        this.contextUtils.active(),
+			        this.tailRecursions.peek().parameters,
+			        (List<LLVMIdentifier<LLVMType>>) (List<?>) arguments,
+			        TailRecursion.LABEL);
+			return;
+		}
+
+		if (BoundsCheckElimination.isArrayAccess(declaration)) {
+			this.stack.push(this.codeGenerator.arrayAccess(
+			        this.contextUtils.active(),
+			        arguments,
+			        expectedParameters,
+			        !this.boundsCheckElimination.isUnchecked(node) && !this.rangeCheckedAccesses.contains(node),
+			        isAssignmentTarget(node)));
+			return;
+		}
+
+		if (BoundsCheckElimination.isArrayLength(declaration)) {
+			this.stack.push((LLVMIdentifier) this.codeGenerator.arrayLength(
+			        this.contextUtils.active(),
+			        arguments,
+			        expectedParameters));
+			return;
+		}
+
+		ProcedureDeclaration inlined = getInlinedProcedure(node);
+		if (inlined != null) {
+			inline(node, inlined, arguments);
+			return;
+		}
+
 		if (declaration.isMethod() && !declaration.isInitializer()) {
+			ProcedureDeclaration implementation = this.classHierarchy.getStaticImplementation(node);
 			if (CoreClasses.voidType().equals(declaration.getTypeDeclaration())) {
-			    this.codeGenerator.callVoidMethod(this.contextUtils.active(), 
-			            declaration, arguments, expectedParameters);
+				if (implementation != null) {
+					this.codeGenerator.callVoidMethodDirect(this.contextUtils.active(), implementation, arguments);
+				} else {
+					this.codeGenerator.callVoidMethod(
+					        this.contextUtils.active(),
+					        declaration,
+					        arguments,
+					        expectedParameters);
+				}
 			} else {
-			    final LLVMType target = codeGenerator.mapToLLVMType(node.getTypeDeclaration());
-			    final LLVMIdentifier<LLVMType> callResult = (LLVMIdentifier<LLVMType>) this.codeGenerator.callMethod(
-			            this.contextUtils.active(),
-			            (FunctionDeclaration) declaration,
-			            arguments,
-			            expectedParameters);
+			    final LLVMType target = codeGenerator.mapToValueType(node.getTypeDeclaration());
+			    final LLVMIdentifier<LLVMType> callResult;
+			    if (implementation != null) {
+			        callResult = (LLVMIdentifier<LLVMType>) this.codeGenerator.callMethodDirect(
+			                this.contextUtils.active(),
+			                (FunctionDeclaration) implementation,
+			                arguments,
+			                isTailCall(node));
+			    } else {
+			        callResult = (LLVMIdentifier<LLVMType>) this.codeGenerator.callMethod(
+			                this.contextUtils.active(),
+			                (FunctionDeclaration) declaration,
+			                arguments,
+			                expectedParameters,
+			                isTailCall(node));
+			    }
 			    
 			    final LLVMIdentifier<LLVMType> realResult = codeGenerator.castIfNeeded(
 			            contextUtils.active(), callResult, target);
 			    stack.push(realResult);
 			}
 		} else {
+			String name = declaration.getMangledIdentifier().getSymbol();
+			TypeDeclaration returnType = declaration.getTypeDeclaration();
+			Monomorphization.Specialization specialization = getSpecialization(node);
+			if (specialization != null) {
+				name = specialization.getName();
+				returnType = specialization.getTypeDeclaration(declaration);
+				expectedParameters = specialization.getParameterTypes();
+			}
 			if (declaration instanceof FunctionDeclaration && 
 			        !CoreClasses.voidType().equals(node.getTypeDeclaration())) {
-			    final LLVMType target = codeGenerator.mapToLLVMType(node.getTypeDeclaration());
+			    final LLVMType target = codeGenerator.mapToValueType(node.getTypeDeclaration());
 			    final LLVMIdentifier<LLVMType> callResult = (LLVMIdentifier<LLVMType>) this.codeGenerator.call(
 				        this.contextUtils.active(),
-				        declaration.getMangledIdentifier().getSymbol(),
-				        declaration.getTypeDeclaration(),
+				        name,
+				        returnType,
 				        arguments,
-				        expectedParameters);
+				        expectedParameters,
+				        isTailCall(node));
 			    
 	             final LLVMIdentifier<LLVMType> realResult = codeGenerator.castIfNeeded(
 	                        contextUtils.active(), callResult, target);
@@ -574,15 +1037,145 @@ public class CodeGenerationVisitor extends BaseVisitor {
 				}
 				this.codeGenerator.callVoid(
 				        this.contextUtils.active(),
-				        declaration.getMangledIdentifier().getSymbol(),
+				        name,
 				        arguments,
 				        expectedParameters);
 			}
 		}
 	}
 
+	/** Get the procedure whose body is generated in place of the call or null if the call is generated. */
+	private ProcedureDeclaration getInlinedProcedure(FunctionCall node) {
+		ProcedureDeclaration declaration = node.getDeclaration();
+		if (declaration.isInitializer() || getSpecialization(node) != null) {
+			return null;
+		}
+		ProcedureDeclaration procedure =
+		        declaration.isMethod() ? this.classHierarchy.getStaticImplementation(node) : declaration;
+		if (procedure == null || !this.inliner.isInlined(procedure)) {
+			return null;
+		}
+		for (InlinedCall inlinedCall : this.inlinedCalls) {
+			if (inlinedCall.procedure == procedure) {
+				return null;
+			}
+		}
+		return procedure;
+	}
+
+	/** Generates the body of the procedure in place of the call. The arguments are assigned to local variables for
+	 * the parameters and each return assigns the result and jumps behind the body. */
+	@SuppressWarnings("unchecked")
+	private void inline(FunctionCall node, ProcedureDeclaration procedure, List<LLVMIdentifier<?>> arguments) {
+		CodeContext c = this.contextUtils.active();
+		String inlinePre = this.codeGenerator.createLabelPrefix("inline", node);
+		InlinedCall inlinedCall = new InlinedCall(procedure, inlinePre);
+		int offset = 0;
+		if (procedure.isMethod()) {
+			inlinedCall.self =
+			        this.codeGenerator.resolveAndCastIfNeeded(
+			                c,
+			                (LLVMIdentifier<LLVMType>) arguments.get(0),
+			                (LLVMType) this.codeGenerator.mapToLLVMType(procedure.getDefiningClass()));
+			offset = 1;
+		}
+		for (int i = 0; i < procedure.getParameter().size(); i++) {
+			VariableDeclaration parameter = procedure.getParameter().get(i);
+			LLVMType type = this.codeGenerator.mapToValueType(parameter.getTypeDeclaration());
+			LocalVariable<LLVMType> variable =
+			        this.llvmIdentifierFactory.newLocalVariable(
+			                parameter.getMangledIdentifier().getSymbol() + inlinedCall.suffix,
+			                type);
+			c.writeVariable(
+			        variable,
+			        this.codeGenerator.resolveAndCastIfNeeded(
+			                c,
+			                (LLVMIdentifier<LLVMType>) arguments.get(offset + i),
+			                type));
+			inlinedCall.parameters.put(parameter, variable);
+		}
+		if (procedure instanceof FunctionDeclaration) {
+			inlinedCall.result =
+			        this.llvmIdentifierFactory.newLocalVariable(
+			                inlinePre + ".result",
+			                (LLVMType) this.codeGenerator.mapToValueType(procedure.getTypeDeclaration()));
+		}
+
+		this.inlinedCalls.push(inlinedCall);
+		visitDoubleDispatched(procedure.getBody());
+		this.inlinedCalls.pop();
+		branchIfReachable(c, inlinedCall.end);
+		c.label(inlinedCall.end);
+		this.inlinedCallCount++;
+
+		if (inlinedCall.result != null && !CoreClasses.voidType().equals(node.getTypeDeclaration())) {
+			LLVMType target = this.codeGenerator.mapToValueType(node.getTypeDeclaration());
+			this.stack.push(this.codeGenerator.castIfNeeded(c, c.readVariable(inlinedCall.result), target));
+		}
+	}
+
+	/** Whether the call is emitted as a tail call. Calls in an inlined procedure are not in tail position of the
+	 * function being generated. */
+	private boolean isTailCall(FunctionCall node) {
+		return this.inlinedCalls.isEmpty() && this.tailCalls.isTailCall(node);
+	}
+
+	/** The name of a local variable or parameter in the function being generated. The variables of an inlined
+	 * procedure get the suffix of the call. */
+	private String getLocalName(String name) {
+		return this.inlinedCalls.isEmpty() ? name : name + this.inlinedCalls.peek().suffix;
+	}
+
+	/** The object on which the method being generated or inlined is called. */
+	private LLVMIdentifier<LLVMType> getSelf(TypeDeclaration type) {
+		if (!this.inlinedCalls.isEmpty()) {
+			return this.inlinedCalls.peek().self;
+		}
+		return this.codeGenerator.resolveLocalVarName("self", type, false);
+	}
+
+	private Monomorphization.Specialization getSpecialization(FunctionCall node) {
+		return this.monomorphization != null ? this.monomorphization.getSpecialization(node) : null;
+	}
+
+	/** Whether the call is a tail call of the function being generated, which jumps back to its start instead. This is
+	 * not the case if a generic function calls another specialization of itself. */
+	private boolean isLoopedTailCall(FunctionCall node) {
+		TailRecursion tailRecursion = this.tailRecursions.peek();
+		if (tailRecursion == null || !this.tailCalls.isSelfTailCall(node)) {
+			return false;
+		}
+		Monomorphization.Specialization specialization = getSpecialization(node);
+		if (specialization != null) {
+			return specialization.getName().equals(tailRecursion.name);
+		}
+		return node.getDeclaration().getMangledIdentifier().getSymbol().equals(tailRecursion.name);
+	}
+
+	/** Generate a copy of a generic procedure with its type variables bound to the types of the specialization. */
+	private void addSpecialization(Monomorphization.Specialization specialization) {
+		ProcedureDeclaration node = specialization.getProcedure();
+		specialization.apply();
+		openNewFunctionScope();
+		this.contextUtils.setNode(node);
+		if (node instanceof FunctionDeclaration) {
+			addFunction(node, node.getTypeDeclaration(), specialization.getName());
+		} else {
+			addFunction(node, CoreClasses.voidType(), specialization.getName());
+		}
+		visitDoubleDispatched(node.getBody());
+		closeFunctionContext();
+		specialization.restore();
+	}
+
 	@Override
 	public void visit(FunctionDeclaration node) {
+		if (this.reachability.isLive(node)) {
+			generateFunction(node, visitor -> visitor.addFunctionDeclaration(node));
+		}
+	}
+
+	private void addFunctionDeclaration(FunctionDeclaration node) {
 		openNewFunctionScope();
 		if (isNative(node)) {
 			addNativeFunction(node, node.getTypeDeclaration());
@@ -595,6 +1188,12 @@ public class CodeGenerationVisitor extends BaseVisitor {
 
 	@Override
 	public void visit(ProcedureDeclaration node) {
+		if (this.reachability.isLive(node)) {
+			generateFunction(node, visitor -> visitor.addProcedureDeclaration(node));
+		}
+	}
+
+	private void addProcedureDeclaration(ProcedureDeclaration node) {
 		openNewFunctionScope();
 
 		if (isNative(node) && !node.isInitializer()) {
@@ -616,16 +1215,35 @@ public class CodeGenerationVisitor extends BaseVisitor {
 	@Override
 	public void visit(ReturnStatement node) {
 		super.visit(node);
+		FunctionCall call = TailCalls.getCall(node.getParameter());
+		if (call != null && this.tailCalls.isSelfTailCall(call) && this.contextUtils.active().isTerminated()) {
+			// the call already jumped back to the start of the function
+			return;
+		}
+		if (!this.inlinedCalls.isEmpty()) {
+			InlinedCall inlinedCall = this.inlinedCalls.peek();
+			if (node.getParameter() != null) {
+				this.contextUtils.active().writeVariable(
+				        inlinedCall.result,
+				        this.codeGenerator.resolveAndCastIfNeeded(
+				                this.contextUtils.active(),
+				                this.stack.pop(),
+				                inlinedCall.result.getType()));
+			}
+			this.contextUtils.active().branch(inlinedCall.end);
+			return;
+		}
 		if (node.getParameter() != null) {
 			ASTNode parent = node;
 			while (!(parent instanceof FunctionDeclaration)) {
 				parent = parent.getParentNode();
 			}
 			LLVMIdentifier<LLVMType> returnValue = this.stack.pop();
+			FunctionDeclaration function = (FunctionDeclaration) parent;
 			this.codeGenerator.returnValue(
 			        this.contextUtils.active(),
 			        returnValue,
-			        ((FunctionDeclaration) parent).getTypeDeclaration());
+			        (LLVMType) this.codeGenerator.mapToSignatureType(function, function.getTypeDeclaration()));
 		} else {
 			this.codeGenerator.returnValue(
 			        this.contextUtils.active(),
@@ -636,6 +1254,12 @@ public class CodeGenerationVisitor extends BaseVisitor {
 
 	@Override
 	public void visit(ConditionalStatement node) {
+		Object constantCondition = node.getCondition().getConstantValue();
+		if (constantCondition != null) {
+			// only the taken block is generated
+			visitDoubleDispatched((Boolean) constantCondition ? node.getThenBlock() : node.getElseBlock());
+			return;
+		}
 		visitDoubleDispatched(node.getCondition());
 
 		String ifPre = this.codeGenerator.createLabelPrefix("if", node);
@@ -658,16 +1282,170 @@ public class CodeGenerationVisitor extends BaseVisitor {
 		this.contextUtils.active().label(ifEnd);
 	}
 
+	@Override
+	public void visit(TryStatement node) {
+		CodeContext c = this.contextUtils.active();
+		TryScope scope = this.tryScopes.peek();
+
+		String tryPre = this.codeGenerator.createLabelPrefix("try", node);
+		String tryLanding = tryPre + ".landing";
+		String tryDispatch = tryPre + ".dispatch";
+		String tryEnd = tryPre + ".end";
+		LocalVariable<LLVMType> exception = getExceptionVariable(tryPre);
+
+		String outerUnwindLabel = c.getUnwindLabel();
+		c.setUnwindLabel(tryLanding);
+		scope.tryBlocks.push(tryPre);
+		visitDoubleDispatched(node.getTryBlock());
+		scope.tryBlocks.pop();
+		c.setUnwindLabel(outerUnwindLabel);
+		branchIfReachable(c, tryEnd);
+
+		// Only needed if a call in the try block became an invoke, a raise in the try block jumps to the dispatch.
+		if (c.hasBranchesTo(tryLanding)) {
+			c.label(tryLanding);
+			c.writeVariable(exception, this.codeGenerator.catchException(c));
+			c.branch(tryDispatch);
+		}
+
+		c.label(tryDispatch);
+		scope.handlers.push(tryPre);
+		for (int i = 0; i < node.getHandleBlocks().size(); i++) {
+			VariableDeclaration variable = node.getHandleVariables().get(i);
+			String tryHandle = tryPre + ".handle" + i;
+			String tryNext = tryPre + ".dispatch" + (i + 1);
+			if (variable == null) {
+				c.branch(tryHandle);
+			} else {
+				LLVMIdentifier<LLVMBool> isInstance =
+				        this.codeGenerator.isClass(
+				                c,
+				                (LLVMIdentifier<LLVMPointer<LLVMType>>) (LLVMIdentifier<?>) c.readVariable(exception),
+				                CoreClasses.objectType(),
+				                (ClassDeclaration) variable.getTypeDeclaration());
+				c.branch(isInstance, tryHandle, tryNext);
+			}
+
+			c.label(tryHandle);
+			if (variable != null) {
+				this.codeGenerator.assign(
+				        c,
+				        this.codeGenerator.<LLVMType> resolveLocalVarName(
+				                getLocalName(variable.getMangledIdentifier().getSymbol()),
+				                variable,
+				                true),
+				        c.readVariable(exception));
+			}
+			visitDoubleDispatched(node.getHandleBlocks().get(i));
+			branchIfReachable(c, tryEnd);
+
+			if (variable != null) {
+				c.label(tryNext);
+			}
+		}
+		scope.handlers.pop();
+		// No handler matched, so the object is raised further.
+		if (!c.isTerminated()) {
+			raise(c.readVariable(exception));
+		}
+
+		if (c.hasBranchesTo(tryEnd)) {
+			c.label(tryEnd);
+		}
+	}
+
+	@Override
+	public void visit(RaiseStatement node) {
+		LLVMIdentifier<LLVMType> object;
+		if (node.getParameter() == null) {
+			String tryPre = this.tryScopes.peek().handlers.peek();
+			object = this.contextUtils.active().readVariable(getExceptionVariable(tryPre));
+		} else {
+			super.visit(node);
+			object = this.stack.pop();
+		}
+		raise(object);
+	}
+
+	/** Raises the object. Inside a try block of the current function this is a branch to its handlers, otherwise the
+	 * exception is unwound to the calling functions. */
+	private void raise(LLVMIdentifier<LLVMType> object) {
+		CodeContext c = this.contextUtils.active();
+		TryScope scope = this.tryScopes.peek();
+		if (scope.tryBlocks.isEmpty()) {
+			this.codeGenerator.raise(c, object);
+		} else {
+			String tryPre = scope.tryBlocks.peek();
+			this.codeGenerator.assign(c, getExceptionVariable(tryPre), object);
+			c.branch(tryPre + ".dispatch");
+		}
+	}
+
+	/** The variable holding the object raised in the try block with the given label prefix. */
+	private LocalVariable<LLVMType> getExceptionVariable(String tryPre) {
+		return this.llvmIdentifierFactory.newLocalVariable(
+		        tryPre + ".exception",
+		        (LLVMType) this.codeGenerator.mapToLLVMType(CoreClasses.objectType()));
+	}
+
+	private void branchIfReachable(CodeContext c, String label) {
+		if (!c.isTerminated()) {
+			c.branch(label);
+		}
+	}
+
 	@Override
 	public void visit(WhileLoop node) {
+		BoundsCheckElimination.HoistedCheck boundsCheck = this.boundsCheckElimination.getHoistedCheck(node);
+		if (boundsCheck == null) {
+			generateLoop(node);
+			return;
+		}
+
+		String rangePre = this.codeGenerator.createLabelPrefix("range", node);
+		String uncheckedLabel = rangePre + ".unchecked";
+		String checkedLabel = rangePre + ".checked";
+		String rangeEnd = rangePre + ".end";
+
+		visitDoubleDispatched(boundsCheck.getIndex());
+		visitDoubleDispatched(boundsCheck.getBound());
+		LLVMIdentifier<LLVMType> bound = this.stack.pop();
+		LLVMIdentifier<LLVMType> first = this.stack.pop();
+		List<LLVMIdentifier<?>> arrays = new ArrayList<>();
+		for (VariableAccess array : boundsCheck.getArrays()) {
+			visitDoubleDispatched(array);
+			arrays.add(this.stack.pop());
+		}
+		this.codeGenerator.branchOnArrayRange(
+		        this.contextUtils.active(),
+		        arrays,
+		        first,
+		        bound,
+		        boundsCheck.isInclusive(),
+		        boundsCheck.isIndexNonNegative(),
+		        uncheckedLabel,
+		        checkedLabel);
+
+		this.contextUtils.active().label(uncheckedLabel);
+		this.rangeCheckedAccesses.addAll(boundsCheck.getAccesses());
+		generateLoop(node);
+		this.rangeCheckedAccesses.removeAll(boundsCheck.getAccesses());
+		this.contextUtils.active().branch(rangeEnd);
+
+		this.contextUtils.active().label(checkedLabel);
+		generateLoop(node);
+		this.contextUtils.active().branch(rangeEnd);
+		this.contextUtils.active().label(rangeEnd);
+	}
 
+	private void generateLoop(WhileLoop node) {
 		String whlPre = this.codeGenerator.createLabelPrefix("while", node);
 		String whileCond = whlPre + ".condition";
 		String whileBlk = whlPre + ".block";
 		String whileEnd = whlPre + ".end";
 
 		this.contextUtils.active().branch(whileCond);
-		this.contextUtils.active().label(whileCond);
+		this.contextUtils.active().label(whileCond, false);
 		visitDoubleDispatched(node.getCondition());
 
 		LLVMIdentifier<LLVMType> condition = this.stack.pop();
@@ -676,6 +1454,7 @@ public class CodeGenerationVisitor extends BaseVisitor {
 		this.contextUtils.active().label(whileBlk);
 		visitDoubleDispatched(node.getBody());
 		this.contextUtils.active().branch(whileCond);
+		this.contextUtils.active().sealLabel(whileCond);
 		this.contextUtils.active().label(whileEnd);
 	}
 
@@ -0,0 +1,419 @@
+/*
+ * moco, the Monty Compiler
+ * Copyright (c) 2013-2014, Monty's Coconut, All rights reserved.
+ *
+ * This file is part of moco, the Monty Compiler.
+ *
+ * moco is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ *
+ * moco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * Linking this program and/or its accompanying libraries statically or
+ * dynamically with other modules is making a combined work based on this
+ * program. Thus, the terms and conditions of the GNU General Public License
+ * cover the whole combination.
+ *
+ * As a special exception, the copyright holders of moco give
+ * you permission to link this programm and/or its accompanying libraries
+ * with independent modules to produce an executable, regardless of the
+ * license terms of these independent modules, and to copy and distribute the
+ * resulting executable under terms of your choice, provided that you also meet,
+ * for each linked independent module, the terms and conditions of the
+ * license of that module.
+ *
+ * An independent module is a module which is not
+ * derived from or based on this program and/or its accompanying libraries.
+ * If you modify this library, you may extend this exception to your version of
+ * the program or library, but you are not obliged to do so. If you do not wish
+ * to do so, delete this exception statement from your version.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library.
+ */
+package de.uni.bremen.monty.moco.visitor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.uni.bremen.monty.moco.ast.ASTNode;
+import de.uni.bremen.monty.moco.ast.Block;
+import de.uni.bremen.monty.moco.ast.CoreClasses;
+import de.uni.bremen.monty.moco.ast.Package;
+import de.uni.bremen.monty.moco.ast.declaration.ClassDeclaration;
+import de.uni.bremen.monty.moco.ast.declaration.ModuleDeclaration;
+import de.uni.bremen.monty.moco.ast.declaration.ProcedureDeclaration;
+import de.uni.bremen.monty.moco.ast.declaration.TypeDeclaration;
+import de.uni.bremen.monty.moco.ast.declaration.VariableDeclaration;
+import de.uni.bremen.monty.moco.ast.expression.ConditionalExpression;
+import de.uni.bremen.monty.moco.ast.expression.Expression;
+import de.uni.bremen.monty.moco.ast.expression.FunctionCall;
+import de.uni.bremen.monty.moco.ast.expression.MemberAccess;
+import de.uni.bremen.monty.moco.ast.expression.VariableAccess;
+import de.uni.bremen.monty.moco.ast.expression.literal.BooleanLiteral;
+import de.uni.bremen.monty.moco.ast.expression.literal.FloatLiteral;
+import de.uni.bremen.monty.moco.ast.expression.literal.IntegerLiteral;
+import de.uni.bremen.monty.moco.ast.statement.Assignment;
+
+/** Computes the value of expressions which are known at compile time and stores it with
+ * {@link Expression#setConstantValue(Object)}. The code generation emits the value instead of the expression and
+ * generates only the taken branch of a conditional whose condition is constant.
+ *
+ * <p>
+ * An expression is constant if it is
+ * <ul>
+ * <li>an Int, Float or Bool literal,</li>
+ * <li>an operator of Int, Float or Bool whose operands are constant,</li>
+ * <li>an access of a variable which is assigned exactly once with a constant value before it is read or</li>
+ * <li>a conditional expression whose condition and taken branch are constant.</li>
+ * </ul>
+ * </p>
+ *
+ * The operators are evaluated like the native code of the core classes does at runtime. An Int division by zero is not
+ * folded, so that it still fails when the program runs.
+ *
+ * This visitor has to run after the types are resolved. */
+public class ConstantFoldingVisitor extends BaseVisitor {
+
+	/** Marks a variable whose value is not constant. */
+	private static final Object NOT_CONSTANT = new Object();
+
+	private final Map<VariableDeclaration, List<Assignment>> assignments = new HashMap<>();
+	private final Map<VariableDeclaration, List<VariableAccess>> reads = new HashMap<>();
+
+	/** The value of each variable computed so far. */
+	private final Map<VariableDeclaration, Object> variableValues = new HashMap<>();
+
+	/** The variables whose value is being computed, to stop at assignments which depend on the variable itself. */
+	private final Set<VariableDeclaration> inProgress = new HashSet<>();
+
+	private boolean collected = false;
+
+	@Override
+	public void visit(Package node) {
+		if (!this.collected) {
+			collectVariableUses(node);
+			this.collected = true;
+		}
+		super.visit(node);
+	}
+
+	@Override
+	public void visit(IntegerLiteral node) {
+		super.visit(node);
+		fold(node);
+	}
+
+	@Override
+	public void visit(FloatLiteral node) {
+		super.visit(node);
+		fold(node);
+	}
+
+	@Override
+	public void visit(BooleanLiteral node) {
+		super.visit(node);
+		fold(node);
+	}
+
+	@Override
+	public void visit(VariableAccess node) {
+		super.visit(node);
+		fold(node);
+	}
+
+	@Override
+	public void visit(MemberAccess node) {
+		super.visit(node);
+		fold(node);
+	}
+
+	@Override
+	public void visit(ConditionalExpression node) {
+		super.visit(node);
+		fold(node);
+	}
+
+	private void fold(Expression node) {
+		Object value = evaluate(node);
+		if (value != null) {
+			node.setConstantValue(value);
+		}
+	}
+
+	private void collectVariableUses(Package root) {
+		root.visit(new BaseVisitor() {
+			@Override
+			public void visit(Assignment node) {
+				if (node.getLeft() instanceof VariableAccess) {
+					addUse(ConstantFoldingVisitor.this.assignments, (VariableAccess) node.getLeft(), node);
+				}
+				super.visit(node);
+			}
+
+			@Override
+			public void visit(VariableAccess node) {
+				if (!node.getLValue()) {
+					addUse(ConstantFoldingVisitor.this.reads, node, node);
+				}
+				super.visit(node);
+			}
+		});
+	}
+
+	private <T> void addUse(Map<VariableDeclaration, List<T>> uses, VariableAccess access, T use) {
+		if (access.getDeclaration() instanceof VariableDeclaration) {
+			VariableDeclaration variable = (VariableDeclaration) access.getDeclaration();
+			List<T> list = uses.get(variable);
+			if (list == null) {
+				list = new ArrayList<>();
+				uses.put(variable, list);
+			}
+			list.add(use);
+		}
+	}
+
+	/** @return the value of the expression or null if it is not constant */
+	private Object evaluate(Expression expression) {
+		if (expression.getConstantValue() != null) {
+			return expression.getConstantValue();
+		}
+		if (expression instanceof IntegerLiteral) {
+			return Long.valueOf(((IntegerLiteral) expression).getValue());
+		} else if (expression instanceof FloatLiteral) {
+			// the code generation emits the decimal representation of the float, which is read as a double
+			return Double.valueOf(((FloatLiteral) expression).getValue().toString());
+		} else if (expression instanceof BooleanLiteral) {
+			return ((BooleanLiteral) expression).getValue();
+		} else if (expression instanceof VariableAccess) {
+			return evaluate((VariableAccess) expression);
+		} else if (expression instanceof MemberAccess) {
+			return evaluate((MemberAccess) expression);
+		} else if (expression instanceof ConditionalExpression) {
+			ConditionalExpression conditional = (ConditionalExpression) expression;
+			Object condition = evaluate(conditional.getCondition());
+			if (condition == null) {
+				return null;
+			}
+			Expression taken =
+			        (Boolean) condition ? conditional.getThenExpression() : conditional.getElseExpression();
+			Object value = evaluate(taken);
+			return value != null && conditional.getTypeDeclaration() == taken.getTypeDeclaration() ? value : null;
+		}
+		return null;
+	}
+
+	private Object evaluate(VariableAccess access) {
+		if (access.getLValue() || !(access.getDeclaration() instanceof VariableDeclaration)) {
+			return null;
+		}
+		VariableDeclaration variable = (VariableDeclaration) access.getDeclaration();
+		if (access.getTypeDeclaration() != variable.getTypeDeclaration() || !isValueType(variable.getTypeDeclaration())) {
+			return null;
+		}
+		Object value = this.variableValues.get(variable);
+		if (value == null) {
+			if (!this.inProgress.add(variable)) {
+				return null;
+			}
+			value = evaluateVariable(variable);
+			this.inProgress.remove(variable);
+			if (value == null) {
+				value = NOT_CONSTANT;
+			}
+			this.variableValues.put(variable, value);
+		}
+		return value == NOT_CONSTANT ? null : value;
+	}
+
+	/** A variable is constant if it is assigned exactly once with a constant value and every read happens after the
+	 * assignment. For a local variable it is enough that all reads are in the same procedure, since a read before the
+	 * assignment would read an undefined value anyway. A global variable is initialized with zero, so its assignment
+	 * has to be a statement of the module and all reads have to be in later statements of the module. */
+	private Object evaluateVariable(VariableDeclaration variable) {
+		List<Assignment> assigned = this.assignments.get(variable);
+		if (!variable.isVariable() || assigned == null || assigned.size() != 1) {
+			return null;
+		}
+		Assignment assignment = assigned.get(0);
+		List<VariableAccess> accesses = this.reads.get(variable);
+		if (accesses == null) {
+			return null;
+		}
+		if (variable.getIsGlobal()) {
+			Block module = (Block) variable.getParentNode();
+			if (assignment.getParentNode() != module) {
+				return null;
+			}
+			int assignmentIndex = module.getStatements().indexOf(assignment);
+			for (VariableAccess access : accesses) {
+				ASTNode statement = getStatementOf(access, module);
+				if (statement == null || module.getStatements().indexOf(statement) <= assignmentIndex) {
+					return null;
+				}
+			}
+		} else {
+			ProcedureDeclaration procedure = getEnclosingProcedure(assignment);
+			for (VariableAccess access : accesses) {
+				if (getEnclosingProcedure(access) != procedure) {
+					return null;
+				}
+			}
+		}
+		Object value = evaluate(assignment.getRight());
+		if (value == null || assignment.getRight().getTypeDeclaration() != variable.getTypeDeclaration()) {
+			return null;
+		}
+		return value;
+	}
+
+	/** @return the statement of the module which contains the node or null if the node is in a procedure or class */
+	private ASTNode getStatementOf(ASTNode node, Block module) {
+		ASTNode child = node;
+		ASTNode parent = node.getParentNode();
+		while (parent != null && parent != module) {
+			if (parent instanceof ProcedureDeclaration || parent instanceof ClassDeclaration
+			        || parent instanceof ModuleDeclaration) {
+				return null;
+			}
+			child = parent;
+			parent = parent.getParentNode();
+		}
+		return parent == module ? child : null;
+	}
+
+	private ProcedureDeclaration getEnclosingProcedure(ASTNode node) {
+		ASTNode parent = node.getParentNode();
+		while (parent != null && !(parent instanceof ProcedureDeclaration)) {
+			parent = parent.getParentNode();
+		}
+		return (ProcedureDeclaration) parent;
+	}
+
+	private boolean isValueType(TypeDeclaration type) {
+		return type == CoreClasses.intType() || type == CoreClasses.floatType() || type == CoreClasses.boolType();
+	}
+
+	/** Evaluates an operator call of a core class. */
+	private Object evaluate(MemberAccess access) {
+		if (!(access.getRight() instanceof FunctionCall)) {
+			return null;
+		}
+		FunctionCall call = (FunctionCall) access.getRight();
+		ProcedureDeclaration declaration = call.getDeclaration();
+		if (declaration == null || !declaration.isMethod() || call.getArguments().size() > 1
+		        || !isValueType(declaration.getDefiningClass())
+		        || access.getLeft().getTypeDeclaration() != declaration.getDefiningClass()) {
+			return null;
+		}
+		Object self = evaluate(access.getLeft());
+		Object other = null;
+		if (call.getArguments().size() == 1) {
+			other = evaluate(call.getArguments().get(0));
+			if (other == null || self == null || other.getClass() != self.getClass()) {
+				return null;
+			}
+		}
+		String operator = call.getIdentifier().getSymbol();
+		if (self instanceof Long) {
+			return evaluateInt(operator, (Long) self, (Long) other);
+		} else if (self instanceof Double) {
+			return evaluateFloat(operator, (Double) self, (Double) other);
+		} else if (self instanceof Boolean) {
+			return evaluateBool(operator, (Boolean) self, (Boolean) other);
+		}
+		return null;
+	}
+
+	private Object evaluateInt(String operator, long self, Long other) {
+		if (other == null) {
+			return operator.equals("operator-") ? 0 - self : null;
+		}
+		switch (operator) {
+		case "operator+":
+			return self + other;
+		case "operator-":
+			return self - other;
+		case "operator*":
+			return self * other;
+		case "operator/":
+			return other == 0 || (self == Long.MIN_VALUE && other == -1) ? null : self / other;
+		case "operator%":
+			return other == 0 || (self == Long.MIN_VALUE && other == -1) ? null : self % other;
+		case "operator=":
+			return self == other;
+		case "operator!=":
+			return self != other;
+		case "operator<":
+			return self < other;
+		case "operator<=":
+			return self <= other;
+		case "operator>":
+			return self > other;
+		case "operator>=":
+			return self >= other;
+		default:
+			return null;
+		}
+	}
+
+	private Object evaluateFloat(String operator, double self, Double other) {
+		if (other == null) {
+			return operator.equals("operator-") ? 0.0 - self : null;
+		}
+		switch (operator) {
+		case "operator+":
+			return self + other;
+		case "operator-":
+			return self - other;
+		case "operator*":
+			return self * other;
+		case "operator/":
+			return self / other;
+		case "operator=":
+			return self == other;
+		case "operator!=":
+			// an ordered comparison like the native code, which is false if one of the operands is NaN
+			return self < other || self > other;
+		case "operator<":
+			return self < other;
+		case "operator<=":
+			return self <= other;
+		case "operator>":
+			return self > other;
+		case "operator>=":
+			return self >= other;
+		default:
+			return null;
+		}
+	}
+
+	private Object evaluateBool(String operator, boolean self, Boolean other) {
+		if (other == null) {
+			return operator.equals("operator_not") ? !self : null;
+		}
+		switch (operator) {
+		case "operator_and":
+			return self && other;
+		case "operator_or":
+			return self || other;
+		case "operator_xor":
+			return self ^ other;
+		case "operator=":
+			return self == other;
+		case "operator!=":
+			return self != other;
+		default:
+			return null;
+		}
+	}
+}
@@ -47,9 +47,11 @@ import de.uni.bremen.monty.moco.ast.declaration.ProcedureDeclaration;
 import de.uni.bremen.monty.moco.ast.statement.BreakStatement;
 import de.uni.bremen.monty.moco.ast.statement.ConditionalStatement;
 import de.uni.bremen.monty.moco.ast.statement.ContinueStatement;
+import de.uni.bremen.monty.moco.ast.statement.RaiseStatement;
 import de.uni.bremen.monty.moco.ast.statement.ReturnStatement;
 import de.uni.bremen.monty.moco.ast.statement.SkipStatement;
 import de.uni.bremen.monty.moco.ast.statement.Statement;
+import de.uni.bremen.monty.moco.ast.statement.TryStatement;
 import de.uni.bremen.monty.moco.ast.statement.WhileLoop;
 import de.uni.bremen.monty.moco.exception.InvalidControlFlowException;
 
@@ -107,6 +109,25 @@ public class ControlFlowVisitor extends BaseVisitor {
 		}
 	}
 
+	/** {@inheritDoc} */
+	@Override
+	public void visit(TryStatement node) {
+		boolean needsReturnStatementCopy = needsReturnStatement;
+		visitDoubleDispatched(node.getTryBlock());
+		boolean allReturn = !needsReturnStatement;
+		for (Block handleBlock : node.getHandleBlocks()) {
+			needsReturnStatement = needsReturnStatementCopy;
+			visitDoubleDispatched(handleBlock);
+			allReturn = allReturn && !needsReturnStatement;
+		}
+
+		if (needsReturnStatementCopy && allReturn) {
+			needsReturnStatement = false;
+		} else {
+			needsReturnStatement = needsReturnStatementCopy;
+		}
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public void visit(WhileLoop node) {
@@ -153,6 +174,13 @@ public class ControlFlowVisitor extends BaseVisitor {
 		throw new InvalidControlFlowException(node, "Unable to find enclosing While-Loop for SkipStatement.");
 	}
 
+	/** {@inheritDoc} */
+	@Override
+	public void visit(RaiseStatement node) {
+		super.visit(node);
+		needsReturnStatement = false;
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public void visit(ReturnStatement node) {
@@ -110,9 +110,9 @@ public class DeclarationVisitor extends BaseVisitor {
 
 		// These are not boxed yet. So they cant inherit from object and cant have initializers.
 		final List<ClassDeclaration> treatSpecial =
-		        Arrays.asList(CoreClasses.stringType(), CoreClasses.arrayType(), CoreClasses.voidType());
+		        Arrays.asList(CoreClasses.stringType(), CoreClasses.voidType());
 
-		if (!treatSpecial.contains(node)) {
+		if (!treatSpecial.contains(node) && !CoreClasses.isArrayType(node)) {
 			if (node != CoreClasses.objectType() && node.getSuperClassIdentifiers().isEmpty()) {
                 final TypeInstantiation obj = TypeInstantiation.forTypeName("Object").create();
                 node.getSuperClassIdentifiers().add(obj);
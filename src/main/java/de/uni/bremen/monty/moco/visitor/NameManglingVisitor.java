@@ -128,7 +128,9 @@ public class NameManglingVisitor extends BaseVisitor {
 		        this.nameManglingPrefixes.get(Mangled.MODULE) + "std" + this.nameManglingPrefixes.get(Mangled.CLASS);
 
 		CoreClasses.stringType().setMangledIdentifier(new Identifier(prefix + "String"));
-		CoreClasses.arrayType().setMangledIdentifier(new Identifier(prefix + "Array"));
+		for (ClassDeclaration arrayType : CoreClasses.arrayTypes()) {
+			arrayType.setMangledIdentifier(new Identifier(prefix + arrayType.getIdentifier().getSymbol()));
+		}
 	}
 
 	@Override
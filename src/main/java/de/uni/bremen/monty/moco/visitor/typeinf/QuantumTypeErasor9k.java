@@ -36,6 +36,9 @@ public class QuantumTypeErasor9k extends BaseVisitor {
         if (!node.isTypeDeclarationResolved()) {
             return;
         }
+        if (node.getTypeDeclaration() instanceof TypeVariableDeclaration) {
+            node.setErasedTypeVariable((TypeVariableDeclaration) node.getTypeDeclaration());
+        }
         final TypeDeclaration erasure = getErasure(node);
         node.setTypeDeclaration(erasure);
     }
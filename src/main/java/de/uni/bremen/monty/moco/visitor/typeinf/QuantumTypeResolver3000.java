@@ -23,6 +23,7 @@ import de.uni.bremen.monty.moco.ast.declaration.VariableDeclaration;
 import de.uni.bremen.monty.moco.ast.declaration.typeinf.ClassType;
 import de.uni.bremen.monty.moco.ast.declaration.typeinf.ClassType.ClassNamed;
 import de.uni.bremen.monty.moco.ast.declaration.typeinf.Type;
+import de.uni.bremen.monty.moco.ast.declaration.typeinf.Typed;
 import de.uni.bremen.monty.moco.ast.declaration.typeinf.TypeVariable;
 import de.uni.bremen.monty.moco.ast.declaration.typeinf.Unification;
 import de.uni.bremen.monty.moco.ast.expression.CastExpression;
@@ -34,6 +35,7 @@ import de.uni.bremen.monty.moco.ast.expression.MemberAccess;
 import de.uni.bremen.monty.moco.ast.expression.ParentExpression;
 import de.uni.bremen.monty.moco.ast.expression.SelfExpression;
 import de.uni.bremen.monty.moco.ast.expression.VariableAccess;
+import de.uni.bremen.monty.moco.ast.expression.literal.ArrayLiteral;
 import de.uni.bremen.monty.moco.ast.expression.literal.BooleanLiteral;
 import de.uni.bremen.monty.moco.ast.expression.literal.CharacterLiteral;
 import de.uni.bremen.monty.moco.ast.expression.literal.FloatLiteral;
@@ -41,6 +43,8 @@ import de.uni.bremen.monty.moco.ast.expression.literal.IntegerLiteral;
 import de.uni.bremen.monty.moco.ast.expression.literal.StringLiteral;
 import de.uni.bremen.monty.moco.ast.statement.Assignment;
 import de.uni.bremen.monty.moco.ast.statement.ConditionalStatement;
+import de.uni.bremen.monty.moco.ast.statement.RaiseStatement;
+import de.uni.bremen.monty.moco.ast.statement.TryStatement;
 import de.uni.bremen.monty.moco.ast.statement.WhileLoop;
 import de.uni.bremen.monty.moco.util.astsearch.SearchAST;
 import de.uni.bremen.monty.moco.visitor.BaseVisitor;
@@ -407,12 +411,23 @@ public class QuantumTypeResolver3000 extends BaseVisitor implements TypeResolver
                 maRight.setLValue();
                 ((VariableDeclaration) maRight.getDeclaration()).setInitialized(true);
             }
-        } else {
+        } else if (!isArrayElement(node.getLeft())) {
             reportError(node, "Left side is no variable");
         }
         PushDown.unification(unification).into(node);
     }
 
+    private boolean isArrayElement(Expression expression) {
+        if (!(expression instanceof FunctionCall)) {
+            return false;
+        }
+        final FunctionCall call = (FunctionCall) expression;
+        return call.getIdentifier().getSymbol().equals("operator[]")
+                && call.getDeclaration() != null
+                && !call.getDeclaration().getParameter().isEmpty()
+                && CoreClasses.isArrayType(call.getDeclaration().getParameter().get(0).getTypeDeclaration());
+    }
+
     @Override
     public void visit(SelfExpression node) {
         final Optional<ClassDeclaration> parent = SearchAST
@@ -466,6 +481,61 @@ public class QuantumTypeResolver3000 extends BaseVisitor implements TypeResolver
         resolveTypeOf(node.getBody());
     }
 
+    @Override
+    public void visit(TryStatement node) {
+        resolveTypeOf(node.getTryBlock());
+        for (int i = 0; i < node.getHandleBlocks().size(); ++i) {
+            final VariableDeclaration variable = node.getHandleVariables().get(i);
+            if (variable != null) {
+                resolveTypeOf(variable);
+                checkRaisable(variable, variable);
+            }
+            resolveTypeOf(node.getHandleBlocks().get(i));
+        }
+    }
+
+    @Override
+    public void visit(RaiseStatement node) {
+        if (node.getParameter() == null) {
+            if (!isInHandler(node)) {
+                reportError(node, "Raise without an object outside of a handler");
+            }
+            return;
+        }
+        resolveTypeOf(node.getParameter());
+        checkRaisable(node, node.getParameter());
+    }
+
+    /**
+     * Only objects of classes can be raised and handled, because the handler is
+     * selected by the class of the object at runtime. Values of the core
+     * classes Int, Float, Bool and Char are boxed.
+     */
+    private void checkRaisable(Location location, Typed typed) {
+        final TypeDeclaration decl = typed.getTypeDeclaration();
+        if (!(decl instanceof ClassDeclaration)
+                || typed.getType().isVariable()
+                || decl == CoreClasses.stringType()
+                || decl == CoreClasses.voidType()
+                || CoreClasses.isArrayType(decl)) {
+            reportError(location, "Can not raise <%s>", typed.getType());
+        }
+    }
+
+    private boolean isInHandler(ASTNode node) {
+        ASTNode child = node;
+        ASTNode parent = node.getParentNode();
+        while (parent != null && !(parent instanceof ProcedureDeclaration)) {
+            if (parent instanceof TryStatement
+                    && ((TryStatement) parent).getHandleBlocks().contains(child)) {
+                return true;
+            }
+            child = parent;
+            parent = parent.getParentNode();
+        }
+        return false;
+    }
+
     @Override
     public void visit(ConditionalExpression node) {
         handleCondition(node.getCondition());
@@ -561,6 +631,25 @@ public class QuantumTypeResolver3000 extends BaseVisitor implements TypeResolver
         node.setTypeDeclaration(core);
     }
 
+    @Override
+    public void visit(ArrayLiteral node) {
+        super.visit(node);
+        // The array class is chosen by the type of the entries, an empty literal is an Array of Int
+        ClassDeclaration core = CoreClasses.arrayType();
+        if (!node.getEntries().isEmpty()) {
+            core = CoreClasses.arrayTypeOf(node.getEntries().get(0).getTypeDeclaration());
+            for (final Expression entry : node.getEntries()) {
+                if (core == null || entry.getTypeDeclaration() != CoreClasses.arrayElementType(core)) {
+                    reportError(entry, "Array entries must be all Int, all Float, all Bool or all Char, found <%s>",
+                            entry.getType());
+                }
+            }
+        }
+        resolveTypeOf(core);
+        node.setType(core.getType());
+        node.setTypeDeclaration(core);
+    }
+
     @Override
     public void visit(IntegerLiteral node) {
         final ClassDeclaration core = CoreClasses.intType();
@@ -1,57 +1,1162 @@
 ; Begin of the standard declarations and definitions every Monty program needs.
 declare void @exit(i32 %status) noreturn
 declare i8* @malloc(i32 %size) nounwind
-declare i32 @printf(i8* %format, ... ) nounwind
-
-@.stringFormat = private constant [3 x i8] c"%s\00";
-@.floatFormat = private constant [3 x i8] c"%g\00";
-@.intFormat = private constant [3 x i8] c"%i\00";
-@.charFormat = private constant [3 x i8] c"%c\00";
-
-; Search the sourceCTData array of pointers to vmtData for the toVMTPtr
-; pointer for class inheritance-test.
-define i1 @vmt_isa_class([0 x i8*]* %sourceCTData, i8* %toVMTPtr) {
-    %cnt = alloca i32
-    store i32 0, i32* %cnt
-    br label %loop.start
-
-    loop.start:
-        %cnt_val = load i32* %cnt
-        %index = getelementptr [0 x i8*]* %sourceCTData, i32 0, i32 %cnt_val
-        %ptr = load i8** %index
-        ; If the end of the array is reached (null terminated) fail..
-        %cmp_null = icmp eq i8* %ptr, null
-        br i1 %cmp_null, label %loop.failure, label %loop.next
-
-    loop.next:
-        %cnt_inr = add i32 %cnt_val, 1
-        store i32 %cnt_inr, i32* %cnt
-        ; If the pointers are equal the class equals or inherits.
-        %cmp = icmp eq i8* %toVMTPtr, %ptr
-        br i1 %cmp, label %loop.success, label %loop.start
-
-    loop.failure:
-        ret i1 0
-    loop.success:
-        ret i1 1
-}
-
-; Check if the given index is within bounds (0 <= index < array.size). If not exit(3)
-define void @array_bounds_check({ i64, [0 x i8*] }* %array, i64 %index) {
-    %gt_zero = icmp sge i64 %index, 0
-    br i1 %gt_zero, label %bounds.next, label %bounds.error
-
-    bounds.next:
-        %size_field = getelementptr inbounds {i64, [0 x i8*]}* %array, i32 0, i32 0
-        %size = load i64* %size_field
-        %lt_size = icmp slt i64 %index, %size
-        br i1 %lt_size, label %bounds.success, label %bounds.error
-
-    bounds.error:
-        call void @exit(i32 3)
-        ret void
-    bounds.success:
+declare i64 @write(i32 %fd, i8* %buffer, i64 %count)
+declare i64 @strlen(i8* %string) nounwind readonly
+declare i8* @calloc(i64 %count, i64 %size) nounwind
+declare i8* @realloc(i8* %pointer, i64 %size) nounwind
+declare void @llvm.memset.p0i8.i64(i8* %dest, i8 %value, i64 %length, i32 %align, i1 %volatile)
+declare void @llvm.memcpy.p0i8.p0i8.i64(i8* %dest, i8* %source, i64 %length, i32 %align, i1 %volatile)
+declare i8* @llvm.frameaddress(i32 %level) nounwind readnone
+declare void @llvm.eh.unwind.init() nounwind
+declare i8* @mmap(i8* %address, i64 %length, i32 %protection, i32 %flags, i32 %fd, i64 %offset) nounwind
+
+; The garbage collector. It is a conservative mark-sweep collector on a single heap of fixed size, which is allocated
+; by gc_init at the start of main. The heap is divided into blocks of a multiple of 16 bytes. Each block starts with
+; a header holding its size in bytes, the lowest bit of the header is the mark bit. The block map holds one byte for
+; each 16 bytes of the heap: 1 if an allocated block starts there, 2 if a free block starts there and 0 otherwise.
+; Free blocks hold the next free block of their list after the header. Free blocks of up to 32 * 16 bytes are kept
+; in a list per size, larger ones in the first list.
+;
+; The roots are all words on the stack between the current frame and the frame of main and all global variables
+; holding objects, which are marked by gc_mark_globals generated with the program. Every word which points into an
+; allocated block keeps it alive.
+@gc_heap_start = private global i8* null
+@gc_heap_end = private global i8* null
+@gc_heap_top = private global i8* null
+@gc_block_map = private global i8* null
+@gc_stack_bottom = private global i8* null
+@gc_free_lists = private global [33 x i8*] zeroinitializer
+@gc_mark_stack = private global i8** null
+@gc_mark_stack_capacity = private global i64 0
+@gc_mark_stack_size = private global i64 0
+@.gc_oom_message = private constant [15 x i8] c"Out of memory\0A\00"
+
+; Allocate the heap of the given size in MiB. Must be called at the start of main with the frame of main.
+define void @gc_init(i8* %stackBottom, i64 %heapSize) {
+    store i8* %stackBottom, i8** @gc_stack_bottom
+    %size = shl i64 %heapSize, 20
+    %granules = lshr i64 %size, 4
+    %start = call i8* @calloc(i64 %size, i64 1)
+    %map = call i8* @calloc(i64 %granules, i64 1)
+    %start_null = icmp eq i8* %start, null
+    %map_null = icmp eq i8* %map, null
+    %failed = or i1 %start_null, %map_null
+    br i1 %failed, label %init.error, label %init.success
+
+    init.error:
+        call void @gc_out_of_memory()
+        ret void
+    init.success:
+        %end = getelementptr i8* %start, i64 %size
+        store i8* %start, i8** @gc_heap_start
+        store i8* %end, i8** @gc_heap_end
+        store i8* %start, i8** @gc_heap_top
+        store i8* %map, i8** @gc_block_map
+        ret void
+}
+
+define void @gc_out_of_memory() {
+    %message = getelementptr [15 x i8]* @.gc_oom_message, i64 0, i64 0
+    call void @out_string(i8* %message)
+    call void @out_flush()
+    call void @exit(i32 2)
+    ret void
+}
+
+; Get the entry of the block map for the given address in the heap.
+define i8* @gc_map_entry(i8* %address) {
+    %start = load i8** @gc_heap_start
+    %map = load i8** @gc_block_map
+    %start_int = ptrtoint i8* %start to i64
+    %address_int = ptrtoint i8* %address to i64
+    %offset = sub i64 %address_int, %start_int
+    %granule = lshr i64 %offset, 4
+    %entry = getelementptr i8* %map, i64 %granule
+    ret i8* %entry
+}
+
+; Allocate zeroed memory of the given size. If the heap is full a collection is triggered, if it is still full
+; afterwards the program exits with status 2.
+define i8* @gc_alloc(i64 %size) {
+    entry:
+    %with_header = add i64 %size, 23
+    %block_size = and i64 %with_header, -16
+    %first_try = call i8* @gc_alloc_block(i64 %block_size)
+    %first_failed = icmp eq i8* %first_try, null
+    br i1 %first_failed, label %alloc.collect, label %alloc.success
+
+    alloc.collect:
+        call void @gc_collect()
+        %second_try = call i8* @gc_alloc_block(i64 %block_size)
+        %second_failed = icmp eq i8* %second_try, null
+        br i1 %second_failed, label %alloc.error, label %alloc.success
+
+    alloc.error:
+        call void @gc_out_of_memory()
+        ret i8* null
+    alloc.success:
+        %block = phi i8* [ %first_try, %entry ], [ %second_try, %alloc.collect ]
+        %header = bitcast i8* %block to i64*
+        store i64 %block_size, i64* %header
+        %map_entry = call i8* @gc_map_entry(i8* %block)
+        store i8 1, i8* %map_entry
+        %object = getelementptr i8* %block, i64 8
+        %object_size = sub i64 %block_size, 8
+        call void @llvm.memset.p0i8.i64(i8* %object, i8 0, i64 %object_size, i32 8, i1 false)
+        ret i8* %object
+}
+
+; Find a block of exactly the given size, either from the free list of this size, from the unused end of the heap or
+; by splitting a large free block. Returns null if there is none.
+define i8* @gc_alloc_block(i64 %blockSize) {
+    %previous = alloca i8**
+    %granules = lshr i64 %blockSize, 4
+    %small = icmp ule i64 %granules, 32
+    br i1 %small, label %block.list, label %block.bump
+
+    block.list:
+        %list = getelementptr [33 x i8*]* @gc_free_lists, i64 0, i64 %granules
+        %head = load i8** %list
+        %list_empty = icmp eq i8* %head, null
+        br i1 %list_empty, label %block.bump, label %block.pop
+
+    block.pop:
+        %head_next_field = getelementptr i8* %head, i64 8
+        %head_next_pointer = bitcast i8* %head_next_field to i8**
+        %head_next = load i8** %head_next_pointer
+        store i8* %head_next, i8** %list
+        ret i8* %head
+
+    block.bump:
+        %top = load i8** @gc_heap_top
+        %end = load i8** @gc_heap_end
+        %top_int = ptrtoint i8* %top to i64
+        %end_int = ptrtoint i8* %end to i64
+        %free = sub i64 %end_int, %top_int
+        %fits = icmp ule i64 %blockSize, %free
+        br i1 %fits, label %block.bump.success, label %block.large
+
+    block.bump.success:
+        %new_top = getelementptr i8* %top, i64 %blockSize
+        store i8* %new_top, i8** @gc_heap_top
+        ret i8* %top
+
+    block.large:
+        store i8** getelementptr ([33 x i8*]* @gc_free_lists, i64 0, i64 0), i8*** %previous
+        br label %large.loop
+
+    large.loop:
+        %previous_val = load i8*** %previous
+        %current = load i8** %previous_val
+        %at_end = icmp eq i8* %current, null
+        br i1 %at_end, label %large.failure, label %large.check
+
+    large.check:
+        %current_header = bitcast i8* %current to i64*
+        %current_size = load i64* %current_header
+        %next_field = getelementptr i8* %current, i64 8
+        %next_pointer = bitcast i8* %next_field to i8**
+        %large_enough = icmp uge i64 %current_size, %blockSize
+        br i1 %large_enough, label %large.take, label %large.next
+
+    large.next:
+        store i8** %next_pointer, i8*** %previous
+        br label %large.loop
+
+    large.take:
+        %next = load i8** %next_pointer
+        store i8* %next, i8** %previous_val
+        %rest = sub i64 %current_size, %blockSize
+        %has_rest = icmp ne i64 %rest, 0
+        br i1 %has_rest, label %large.split, label %large.success
+
+    large.split:
+        %rest_block = getelementptr i8* %current, i64 %blockSize
+        call void @gc_free_block(i8* %rest_block, i64 %rest)
+        br label %large.success
+
+    large.success:
+        ret i8* %current
+    large.failure:
+        ret i8* null
+}
+
+; Turn the given memory into a free block and add it to the free list for its size.
+define void @gc_free_block(i8* %block, i64 %blockSize) {
+    %header = bitcast i8* %block to i64*
+    store i64 %blockSize, i64* %header
+    %map_entry = call i8* @gc_map_entry(i8* %block)
+    store i8 2, i8* %map_entry
+    %granules = lshr i64 %blockSize, 4
+    %small = icmp ule i64 %granules, 32
+    %index = select i1 %small, i64 %granules, i64 0
+    %list = getelementptr [33 x i8*]* @gc_free_lists, i64 0, i64 %index
+    %head = load i8** %list
+    %next_field = getelementptr i8* %block, i64 8
+    %next_pointer = bitcast i8* %next_field to i8**
+    store i8* %head, i8** %next_pointer
+    store i8* %block, i8** %list
+    ret void
+}
+
+define void @gc_collect() {
+    ; Spill the callee-saved registers, so that gc_scan_stack finds the roots held in registers.
+    call void @llvm.eh.unwind.init()
+    call void @gc_scan_stack()
+    call void @gc_mark_globals()
+    call void @gc_drain_mark_stack()
+    call void @gc_sweep()
+    ret void
+}
+
+define void @gc_scan_stack() noinline {
+    %current = alloca i8*
+    %current_int = ptrtoint i8** %current to i64
+    %low = and i64 %current_int, -8
+    %bottom = load i8** @gc_stack_bottom
+    %high = ptrtoint i8* %bottom to i64
+    %address = alloca i64
+    store i64 %low, i64* %address
+    br label %stack.loop
+
+    stack.loop:
+        %address_val = load i64* %address
+        %done = icmp ugt i64 %address_val, %high
+        br i1 %done, label %stack.end, label %stack.next
+
+    stack.next:
+        %word_pointer = inttoptr i64 %address_val to i8**
+        %word = load i8** %word_pointer
+        call void @gc_mark(i8* %word)
+        %next_address = add i64 %address_val, 8
+        store i64 %next_address, i64* %address
+        br label %stack.loop
+
+    stack.end:
+        ret void
+}
+
+; Mark the allocated block the given word points into, if there is one, and push it on the mark stack.
+define void @gc_mark(i8* %word) {
+    %cursor = alloca i8*
+    %start = load i8** @gc_heap_start
+    %top = load i8** @gc_heap_top
+    %below = icmp ult i8* %word, %start
+    %above = icmp uge i8* %word, %top
+    %outside = or i1 %below, %above
+    br i1 %outside, label %mark.end, label %mark.find
+
+    mark.find:
+        %map_entry = call i8* @gc_map_entry(i8* %word)
+        store i8* %map_entry, i8** %cursor
+        br label %find.loop
+
+    ; Search backwards for the start of the block, the first granule of the heap is always a block start.
+    find.loop:
+        %cursor_val = load i8** %cursor
+        %kind = load i8* %cursor_val
+        %no_start = icmp eq i8 %kind, 0
+        br i1 %no_start, label %find.next, label %find.end
+
+    find.next:
+        %previous_cursor = getelementptr i8* %cursor_val, i64 -1
+        store i8* %previous_cursor, i8** %cursor
+        br label %find.loop
+
+    find.end:
+        %allocated = icmp eq i8 %kind, 1
+        br i1 %allocated, label %mark.check, label %mark.end
+
+    mark.check:
+        %map = load i8** @gc_block_map
+        %map_int = ptrtoint i8* %map to i64
+        %cursor_int = ptrtoint i8* %cursor_val to i64
+        %granule = sub i64 %cursor_int, %map_int
+        %offset = shl i64 %granule, 4
+        %block = getelementptr i8* %start, i64 %offset
+        %header = bitcast i8* %block to i64*
+        %header_val = load i64* %header
+        %mark_bit = and i64 %header_val, 1
+        %marked = icmp ne i64 %mark_bit, 0
+        br i1 %marked, label %mark.end, label %mark.set
+
+    mark.set:
+        %marked_header = or i64 %header_val, 1
+        store i64 %marked_header, i64* %header
+        call void @gc_push(i8* %block)
+        br label %mark.end
+
+    mark.end:
+        ret void
+}
+
+define void @gc_push(i8* %block) {
+    entry:
+    %stack = load i8*** @gc_mark_stack
+    %size = load i64* @gc_mark_stack_size
+    %capacity = load i64* @gc_mark_stack_capacity
+    %full = icmp eq i64 %size, %capacity
+    br i1 %full, label %push.grow, label %push.store
+
+    push.grow:
+        %doubled = shl i64 %capacity, 1
+        %too_small = icmp ult i64 %doubled, 1024
+        %new_capacity = select i1 %too_small, i64 1024, i64 %doubled
+        %new_bytes = shl i64 %new_capacity, 3
+        %old_memory = bitcast i8** %stack to i8*
+        %new_memory = call i8* @realloc(i8* %old_memory, i64 %new_bytes)
+        %grow_failed = icmp eq i8* %new_memory, null
+        br i1 %grow_failed, label %push.error, label %push.grown
+
+    push.error:
+        call void @gc_out_of_memory()
+        ret void
+    push.grown:
+        %new_stack = bitcast i8* %new_memory to i8**
+        store i8** %new_stack, i8*** @gc_mark_stack
+        store i64 %new_capacity, i64* @gc_mark_stack_capacity
+        br label %push.store
+
+    push.store:
+        %target_stack = phi i8** [ %stack, %entry ], [ %new_stack, %push.grown ]
+        %slot = getelementptr i8** %target_stack, i64 %size
+        store i8* %block, i8** %slot
+        %new_size = add i64 %size, 1
+        store i64 %new_size, i64* @gc_mark_stack_size
+        ret void
+}
+
+; Mark everything reachable from the blocks on the mark stack by scanning each of their words.
+define void @gc_drain_mark_stack() {
+    %address = alloca i8**
+    br label %drain.loop
+
+    drain.loop:
+        %size = load i64* @gc_mark_stack_size
+        %empty = icmp eq i64 %size, 0
+        br i1 %empty, label %drain.end, label %drain.pop
+
+    drain.pop:
+        %new_size = sub i64 %size, 1
+        store i64 %new_size, i64* @gc_mark_stack_size
+        %stack = load i8*** @gc_mark_stack
+        %slot = getelementptr i8** %stack, i64 %new_size
+        %block = load i8** %slot
+        %header = bitcast i8* %block to i64*
+        %header_val = load i64* %header
+        %block_size = and i64 %header_val, -2
+        %end = getelementptr i8* %block, i64 %block_size
+        %first = getelementptr i8* %block, i64 8
+        %first_word = bitcast i8* %first to i8**
+        store i8** %first_word, i8*** %address
+        br label %scan.loop
+
+    scan.loop:
+        %address_val = load i8*** %address
+        %address_bytes = bitcast i8** %address_val to i8*
+        %done = icmp uge i8* %address_bytes, %end
+        br i1 %done, label %drain.loop, label %scan.next
+
+    scan.next:
+        %word = load i8** %address_val
+        call void @gc_mark(i8* %word)
+        %next_address = getelementptr i8** %address_val, i64 1
+        store i8** %next_address, i8*** %address
+        br label %scan.loop
+
+    drain.end:
+        ret void
+}
+
+; Clear the mark bits of all live blocks and rebuild the free lists from the dead ones, merging neighbouring free
+; blocks. A free run at the end of the heap is given back to the unused end.
+define void @gc_sweep() {
+    %lists = bitcast [33 x i8*]* @gc_free_lists to i8*
+    call void @llvm.memset.p0i8.i64(i8* %lists, i8 0, i64 264, i32 8, i1 false)
+    %start = load i8** @gc_heap_start
+    %top = load i8** @gc_heap_top
+    %current = alloca i8*
+    %run_start = alloca i8*
+    %run_size = alloca i64
+    store i8* %start, i8** %current
+    store i8* null, i8** %run_start
+    store i64 0, i64* %run_size
+    br label %sweep.loop
+
+    sweep.loop:
+        %block = load i8** %current
+        %done = icmp uge i8* %block, %top
+        br i1 %done, label %sweep.end, label %sweep.block
+
+    sweep.block:
+        %header = bitcast i8* %block to i64*
+        %header_val = load i64* %header
+        %block_size = and i64 %header_val, -2
+        %next_block = getelementptr i8* %block, i64 %block_size
+        store i8* %next_block, i8** %current
+        %map_entry = call i8* @gc_map_entry(i8* %block)
+        %kind = load i8* %map_entry
+        %allocated = icmp eq i8 %kind, 1
+        %mark_bit = and i64 %header_val, 1
+        %marked = icmp ne i64 %mark_bit, 0
+        %live = and i1 %allocated, %marked
+        br i1 %live, label %sweep.live, label %sweep.dead
+
+    sweep.live:
+        store i64 %block_size, i64* %header
+        %live_run = load i8** %run_start
+        %live_has_run = icmp ne i8* %live_run, null
+        br i1 %live_has_run, label %sweep.flush, label %sweep.loop
+
+    sweep.flush:
+        %flush_size = load i64* %run_size
+        call void @gc_free_block(i8* %live_run, i64 %flush_size)
+        store i8* null, i8** %run_start
+        br label %sweep.loop
+
+    sweep.dead:
+        %dead_run = load i8** %run_start
+        %dead_has_run = icmp ne i8* %dead_run, null
+        br i1 %dead_has_run, label %sweep.merge, label %sweep.begin
+
+    sweep.begin:
+        store i8* %block, i8** %run_start
+        store i64 %block_size, i64* %run_size
+        br label %sweep.loop
+
+    sweep.merge:
+        %merge_size = load i64* %run_size
+        %merged_size = add i64 %merge_size, %block_size
+        store i64 %merged_size, i64* %run_size
+        store i8 0, i8* %map_entry
+        br label %sweep.loop
+
+    sweep.end:
+        %last_run = load i8** %run_start
+        %has_last_run = icmp ne i8* %last_run, null
+        br i1 %has_last_run, label %sweep.shrink, label %sweep.return
+
+    sweep.shrink:
+        store i8* %last_run, i8** @gc_heap_top
+        %last_entry = call i8* @gc_map_entry(i8* %last_run)
+        store i8 0, i8* %last_entry
+        br label %sweep.return
+
+    sweep.return:
+        ret void
+}
+; The arena used instead of the garbage collector if the program is compiled with -arena. Allocation is inlined into
+; the generated code and only increments @arena_top, memory is never freed. If the current chunk is full
+; arena_alloc_chunk maps a new one, the rest of the old chunk is left unused.
+@arena_top = private global i8* null
+@arena_end = private global i8* null
+
+; Map a new chunk of at least 64 MiB and allocate the given number of bytes from its start.
+define i8* @arena_alloc_chunk(i64 %size) {
+    %large = icmp ugt i64 %size, 67108864
+    %chunk_size = select i1 %large, i64 %size, i64 67108864
+    ; PROT_READ | PROT_WRITE, MAP_PRIVATE | MAP_ANONYMOUS
+    %chunk = call i8* @mmap(i8* null, i64 %chunk_size, i32 3, i32 34, i32 -1, i64 0)
+    %chunk_int = ptrtoint i8* %chunk to i64
+    %failed = icmp eq i64 %chunk_int, -1
+    br i1 %failed, label %chunk.error, label %chunk.success
+
+    chunk.error:
+        call void @gc_out_of_memory()
+        ret i8* null
+    chunk.success:
+        %top = getelementptr i8* %chunk, i64 %size
+        %end = getelementptr i8* %chunk, i64 %chunk_size
+        store i8* %top, i8** @arena_top
+        store i8* %end, i8** @arena_end
+        ret i8* %chunk
+}
+; The output runtime used by print. Output is collected in @out_buffer and written to stdout with write(2) whenever the
+; buffer is full, so printing does not go through printf and its format strings. The buffer must be flushed with
+; @out_flush before the program ends, both when main returns and before every call of @exit.
+@out_buffer = private global [8192 x i8] zeroinitializer
+@out_length = private global i64 0
+@.out_nan = private constant [3 x i8] c"nan"
+@.out_inf = private constant [3 x i8] c"inf"
+
+; Write the content of the buffer to stdout and empty it.
+define void @out_flush() {
+    %written = alloca i64
+    store i64 0, i64* %written
+    br label %flush.loop
+
+    flush.loop:
+        %done = load i64* %written
+        %length = load i64* @out_length
+        %finished = icmp uge i64 %done, %length
+        br i1 %finished, label %flush.end, label %flush.write
+
+    flush.write:
+        %start = getelementptr [8192 x i8]* @out_buffer, i64 0, i64 %done
+        %remaining = sub i64 %length, %done
+        %result = call i64 @write(i32 1, i8* %start, i64 %remaining)
+        %failed = icmp sle i64 %result, 0
+        br i1 %failed, label %flush.end, label %flush.next
+
+    flush.next:
+        %new_done = add i64 %done, %result
+        store i64 %new_done, i64* %written
+        br label %flush.loop
+
+    flush.end:
+        store i64 0, i64* @out_length
+        ret void
+}
+
+; Append the given number of bytes, at most the size of the buffer, to the buffer and return where to write them.
+define i8* @out_reserve(i64 %count) {
+    %length = load i64* @out_length
+    %new_length = add i64 %length, %count
+    %full = icmp ugt i64 %new_length, 8192
+    br i1 %full, label %reserve.flush, label %reserve.end
+
+    reserve.flush:
+        call void @out_flush()
+        br label %reserve.end
+
+    reserve.end:
+        %start = load i64* @out_length
+        %end = add i64 %start, %count
+        store i64 %end, i64* @out_length
+        %pointer = getelementptr [8192 x i8]* @out_buffer, i64 0, i64 %start
+        ret i8* %pointer
+}
+
+define void @out_char(i8 %char) {
+    %pointer = call i8* @out_reserve(i64 1)
+    store i8 %char, i8* %pointer
+    ret void
+}
+
+; Append any number of bytes, in pieces of at most the size of the buffer.
+define void @out_bytes(i8* %bytes, i64 %count) {
+    %current = alloca i8*
+    %remaining = alloca i64
+    store i8* %bytes, i8** %current
+    store i64 %count, i64* %remaining
+    br label %bytes.loop
+
+    bytes.loop:
+        %left = load i64* %remaining
+        %done = icmp eq i64 %left, 0
+        br i1 %done, label %bytes.end, label %bytes.copy
+
+    bytes.copy:
+        %large = icmp ugt i64 %left, 8192
+        %chunk = select i1 %large, i64 8192, i64 %left
+        %source = load i8** %current
+        %target = call i8* @out_reserve(i64 %chunk)
+        call void @llvm.memcpy.p0i8.p0i8.i64(i8* %target, i8* %source, i64 %chunk, i32 1, i1 false)
+        %next = getelementptr i8* %source, i64 %chunk
+        store i8* %next, i8** %current
+        %new_left = sub i64 %left, %chunk
+        store i64 %new_left, i64* %remaining
+        br label %bytes.loop
+
+    bytes.end:
+        ret void
+}
+
+define void @out_string(i8* %string) {
+    %length = call i64 @strlen(i8* %string)
+    call void @out_bytes(i8* %string, i64 %length)
+    ret void
+}
+
+define void @out_zeros(i64 %count) {
+    %remaining = alloca i64
+    store i64 %count, i64* %remaining
+    br label %zeros.loop
+
+    zeros.loop:
+        %left = load i64* %remaining
+        %done = icmp sle i64 %left, 0
+        br i1 %done, label %zeros.end, label %zeros.next
+
+    zeros.next:
+        call void @out_char(i8 48)
+        %new_left = sub i64 %left, 1
+        store i64 %new_left, i64* %remaining
+        br label %zeros.loop
+
+    zeros.end:
         ret void
 }
+
+; Append a Bool as 1 or 0, like the %i format of printf.
+define void @out_bool(i1 %value) {
+    %char = select i1 %value, i8 49, i8 48
+    call void @out_char(i8 %char)
+    ret void
+}
+
+; Append an Int in decimal. The digits are written backwards into a local buffer, the magnitude is treated as unsigned
+; so that the smallest Int is printed correctly.
+define void @out_int(i64 %value) {
+    %digits = alloca [20 x i8]
+    %position = alloca i64
+    %rest = alloca i64
+    %negative = icmp slt i64 %value, 0
+    %negated = sub i64 0, %value
+    %magnitude = select i1 %negative, i64 %negated, i64 %value
+    store i64 %magnitude, i64* %rest
+    store i64 20, i64* %position
+    br label %int.loop
+
+    int.loop:
+        %rest_val = load i64* %rest
+        %digit = urem i64 %rest_val, 10
+        %quotient = udiv i64 %rest_val, 10
+        store i64 %quotient, i64* %rest
+        %digit_char = trunc i64 %digit to i8
+        %char = add i8 %digit_char, 48
+        %old_position = load i64* %position
+        %new_position = sub i64 %old_position, 1
+        store i64 %new_position, i64* %position
+        %slot = getelementptr [20 x i8]* %digits, i64 0, i64 %new_position
+        store i8 %char, i8* %slot
+        %more = icmp ne i64 %quotient, 0
+        br i1 %more, label %int.loop, label %int.sign
+
+    int.sign:
+        br i1 %negative, label %int.minus, label %int.write
+
+    int.minus:
+        call void @out_char(i8 45)
+        br label %int.write
+
+    int.write:
+        %start = load i64* %position
+        %first = getelementptr [20 x i8]* %digits, i64 0, i64 %start
+        %count = sub i64 20, %start
+        call void @out_bytes(i8* %first, i64 %count)
+        ret void
+}
+
+; Multiply the value by 10 to the power of the given exponent, which may be negative. Powers of 10 up to 10^22 are
+; exact, so the result is correctly rounded unless the exponent is larger than that.
+define double @out_scale(double %value, i64 %exponent) {
+    %result = alloca double
+    %remaining = alloca i64
+    %power = alloca double
+    store double %value, double* %result
+    %negative = icmp slt i64 %exponent, 0
+    %negated = sub i64 0, %exponent
+    %magnitude = select i1 %negative, i64 %negated, i64 %exponent
+    store i64 %magnitude, i64* %remaining
+    br label %scale.large
+
+    scale.large:
+        %large_left = load i64* %remaining
+        %large = icmp sgt i64 %large_left, 22
+        br i1 %large, label %scale.step, label %scale.power
+
+    scale.step:
+        %step_result = load double* %result
+        %step_divided = fdiv double %step_result, 1.0e22
+        %step_multiplied = fmul double %step_result, 1.0e22
+        %step_scaled = select i1 %negative, double %step_divided, double %step_multiplied
+        store double %step_scaled, double* %result
+        %step_left = sub i64 %large_left, 22
+        store i64 %step_left, i64* %remaining
+        br label %scale.large
+
+    scale.power:
+        store double 1.0, double* %power
+        br label %power.loop
+
+    power.loop:
+        %power_left = load i64* %remaining
+        %power_done = icmp eq i64 %power_left, 0
+        br i1 %power_done, label %scale.end, label %power.next
+
+    power.next:
+        %power_val = load double* %power
+        %new_power = fmul double %power_val, 10.0
+        store double %new_power, double* %power
+        %new_power_left = sub i64 %power_left, 1
+        store i64 %new_power_left, i64* %remaining
+        br label %power.loop
+
+    scale.end:
+        %end_result = load double* %result
+        %end_power = load double* %power
+        %divided = fdiv double %end_result, %end_power
+        %multiplied = fmul double %end_result, %end_power
+        %scaled = select i1 %negative, double %divided, double %multiplied
+        ret double %scaled
+}
+
+; Get the rounding error a * b - product of the product of a and b exactly, by splitting both factors into halves
+; whose products are exact (Dekker's algorithm).
+define double @out_product_error(double %a, double %b, double %product) {
+    %a_split = fmul double %a, 134217729.0
+    %a_diff = fsub double %a_split, %a
+    %a_high = fsub double %a_split, %a_diff
+    %a_low = fsub double %a, %a_high
+    %b_split = fmul double %b, 134217729.0
+    %b_diff = fsub double %b_split, %b
+    %b_high = fsub double %b_split, %b_diff
+    %b_low = fsub double %b, %b_high
+    %high_high = fmul double %a_high, %b_high
+    %error_high = fsub double %high_high, %product
+    %high_low = fmul double %a_high, %b_low
+    %error_high_low = fadd double %error_high, %high_low
+    %low_high = fmul double %a_low, %b_high
+    %error_low_high = fadd double %error_high_low, %low_high
+    %low_low = fmul double %a_low, %b_low
+    %error = fadd double %error_low_high, %low_low
+    ret double %error
+}
+
+; Append a Float like the %g format of printf: six significant digits without trailing zeros, in exponential notation
+; if the exponent is less than -4 or at least 6. The six digits are found by scaling the value into [100000, 1000000)
+; and rounding to the nearest integer, where a result exactly in the middle is decided by the unscaled value. This is
+; exact unless the value is below 1e-17 or above 1e27, where the scaling itself is inexact and a value very close to
+; the middle of two outputs may differ from printf in the last digit.
+define void @out_float(double %value) {
+    %exponent = alloca i64
+    %mantissa = alloca i64
+    %digit_count = alloca i64
+    %digits = alloca [6 x i8]
+    %bits = bitcast double %value to i64
+    %negative = icmp slt i64 %bits, 0
+    %is_nan = fcmp uno double %value, %value
+    br i1 %negative, label %float.minus, label %float.nan
+
+    float.minus:
+        call void @out_char(i8 45)
+        br label %float.nan
+
+    float.nan:
+        br i1 %is_nan, label %float.write_nan, label %float.abs
+
+    float.write_nan:
+        %nan = getelementptr [3 x i8]* @.out_nan, i64 0, i64 0
+        call void @out_bytes(i8* %nan, i64 3)
+        ret void
+
+    float.abs:
+        %negated = fsub double -0.0, %value
+        %magnitude = select i1 %negative, double %negated, double %value
+        %is_inf = fcmp oeq double %magnitude, 0x7FF0000000000000
+        br i1 %is_inf, label %float.write_inf, label %float.zero
+
+    float.write_inf:
+        %inf = getelementptr [3 x i8]* @.out_inf, i64 0, i64 0
+        call void @out_bytes(i8* %inf, i64 3)
+        ret void
+
+    float.zero:
+        %is_zero = fcmp oeq double %magnitude, 0.0
+        br i1 %is_zero, label %float.write_zero, label %float.estimate
+
+    float.write_zero:
+        call void @out_char(i8 48)
+        ret void
+
+    ; estimate the decimal exponent, then correct it if the estimate was off by one
+    float.estimate:
+        %log2 = lshr i64 %bits, 52
+        %biased = and i64 %log2, 2047
+        %unbiased = sub i64 %biased, 1023
+        ; log10(2) is about 78913 / 2^18
+        %log10_scaled = mul i64 %unbiased, 78913
+        %log10 = ashr i64 %log10_scaled, 18
+        store i64 %log10, i64* %exponent
+        br label %float.scale
+
+    float.scale:
+        %scale_exponent = load i64* %exponent
+        %shift = sub i64 5, %scale_exponent
+        %scaled = call double @out_scale(double %magnitude, i64 %shift)
+        %too_small = fcmp olt double %scaled, 99999.5
+        br i1 %too_small, label %float.lower, label %float.check_large
+
+    float.lower:
+        %lower_exponent = sub i64 %scale_exponent, 1
+        store i64 %lower_exponent, i64* %exponent
+        br label %float.scale
+
+    float.check_large:
+        %too_large = fcmp oge double %scaled, 999999.5
+        br i1 %too_large, label %float.raise, label %float.round
+
+    float.raise:
+        %raised_exponent = add i64 %scale_exponent, 1
+        store i64 %raised_exponent, i64* %exponent
+        br label %float.scale
+
+    float.round:
+        %truncated = fptoui double %scaled to i64
+        %truncated_float = uitofp i64 %truncated to double
+        %fraction = fsub double %scaled, %truncated_float
+        %parity = and i64 %truncated, 1
+        store i64 6, i64* %digit_count
+        %is_half = fcmp oeq double %fraction, 0.5
+        br i1 %is_half, label %round.tie, label %round.nearest
+
+    round.nearest:
+        %above_half = fcmp ogt double %fraction, 0.5
+        %increment = zext i1 %above_half to i64
+        %rounded = add i64 %truncated, %increment
+        store i64 %rounded, i64* %mantissa
+        br label %strip.loop
+
+    ; the scaled value may have been rounded to the half, decide by the exact error of the scaling where possible
+    round.tie:
+        %small_shift = icmp sle i64 %shift, 22
+        %large_shift = icmp sge i64 %shift, -22
+        %exact = and i1 %small_shift, %large_shift
+        br i1 %exact, label %round.exact, label %round.even
+
+    round.exact:
+        %shift_negative = icmp slt i64 %shift, 0
+        %shift_negated = sub i64 0, %shift
+        %shift_magnitude = select i1 %shift_negative, i64 %shift_negated, i64 %shift
+        %power = call double @out_scale(double 1.0, i64 %shift_magnitude)
+        %product_error = call double @out_product_error(double %magnitude, double %power, double %scaled)
+        %quotient_error = call double @out_product_error(double %scaled, double %power, double %magnitude)
+        %negated_quotient_error = fsub double -0.0, %quotient_error
+        %error = select i1 %shift_negative, double %negated_quotient_error, double %product_error
+        %tie_above = fcmp ogt double %error, 0.0
+        %tie_below = fcmp olt double %error, 0.0
+        %tie_inexact = or i1 %tie_above, %tie_below
+        br i1 %tie_inexact, label %round.inexact, label %round.even
+
+    round.inexact:
+        %inexact_increment = zext i1 %tie_above to i64
+        %inexact_rounded = add i64 %truncated, %inexact_increment
+        store i64 %inexact_rounded, i64* %mantissa
+        br label %strip.loop
+
+    round.even:
+        %even_rounded = add i64 %truncated, %parity
+        store i64 %even_rounded, i64* %mantissa
+        br label %strip.loop
+
+    ; drop the trailing zeros of the six digits
+    strip.loop:
+        %strip_mantissa = load i64* %mantissa
+        %strip_digit = urem i64 %strip_mantissa, 10
+        %strip_zero = icmp eq i64 %strip_digit, 0
+        br i1 %strip_zero, label %strip.next, label %digits.init
+
+    strip.next:
+        %stripped = udiv i64 %strip_mantissa, 10
+        store i64 %stripped, i64* %mantissa
+        %strip_count = load i64* %digit_count
+        %new_strip_count = sub i64 %strip_count, 1
+        store i64 %new_strip_count, i64* %digit_count
+        br label %strip.loop
+
+    digits.init:
+        %count = load i64* %digit_count
+        br label %digits.loop
+
+    digits.loop:
+        %position = phi i64 [ %count, %digits.init ], [ %next_position, %digits.loop ]
+        %digits_mantissa = load i64* %mantissa
+        %digit = urem i64 %digits_mantissa, 10
+        %quotient = udiv i64 %digits_mantissa, 10
+        store i64 %quotient, i64* %mantissa
+        %digit_char = trunc i64 %digit to i8
+        %char = add i8 %digit_char, 48
+        %next_position = sub i64 %position, 1
+        %slot = getelementptr [6 x i8]* %digits, i64 0, i64 %next_position
+        store i8 %char, i8* %slot
+        %more = icmp ne i64 %next_position, 0
+        br i1 %more, label %digits.loop, label %float.notation
+
+    float.notation:
+        %first = getelementptr [6 x i8]* %digits, i64 0, i64 0
+        %exp = load i64* %exponent
+        %tiny = icmp slt i64 %exp, -4
+        %huge = icmp sge i64 %exp, 6
+        %exponential = or i1 %tiny, %huge
+        br i1 %exponential, label %float.exponential, label %float.fixed
+
+    float.exponential:
+        %leading = load i8* %first
+        call void @out_char(i8 %leading)
+        %has_fraction = icmp ugt i64 %count, 1
+        br i1 %has_fraction, label %exponential.fraction, label %exponential.exponent
+
+    exponential.fraction:
+        call void @out_char(i8 46)
+        %fraction_digits = getelementptr [6 x i8]* %digits, i64 0, i64 1
+        %fraction_count = sub i64 %count, 1
+        call void @out_bytes(i8* %fraction_digits, i64 %fraction_count)
+        br label %exponential.exponent
+
+    exponential.exponent:
+        call void @out_char(i8 101)
+        %exp_negative = icmp slt i64 %exp, 0
+        %exp_sign = select i1 %exp_negative, i8 45, i8 43
+        call void @out_char(i8 %exp_sign)
+        %exp_negated = sub i64 0, %exp
+        %exp_magnitude = select i1 %exp_negative, i64 %exp_negated, i64 %exp
+        %one_digit = icmp slt i64 %exp_magnitude, 10
+        br i1 %one_digit, label %exponential.pad, label %exponential.digits
+
+    exponential.pad:
+        call void @out_char(i8 48)
+        br label %exponential.digits
+
+    exponential.digits:
+        call void @out_int(i64 %exp_magnitude)
+        ret void
+
+    float.fixed:
+        %below_one = icmp slt i64 %exp, 0
+        br i1 %below_one, label %fixed.small, label %fixed.large
+
+    fixed.small:
+        call void @out_char(i8 48)
+        call void @out_char(i8 46)
+        %leading_zeros = sub i64 -1, %exp
+        call void @out_zeros(i64 %leading_zeros)
+        call void @out_bytes(i8* %first, i64 %count)
+        ret void
+
+    fixed.large:
+        %integer_count = add i64 %exp, 1
+        %integer_only = icmp ule i64 %count, %integer_count
+        br i1 %integer_only, label %fixed.integer, label %fixed.fraction
+
+    fixed.integer:
+        call void @out_bytes(i8* %first, i64 %count)
+        %trailing_zeros = sub i64 %integer_count, %count
+        call void @out_zeros(i64 %trailing_zeros)
+        ret void
+
+    fixed.fraction:
+        call void @out_bytes(i8* %first, i64 %integer_count)
+        call void @out_char(i8 46)
+        %fraction_start = getelementptr [6 x i8]* %digits, i64 0, i64 %integer_count
+        %rest_count = sub i64 %count, %integer_count
+        call void @out_bytes(i8* %fraction_start, i64 %rest_count)
+        ret void
+}
+
+; The exception runtime used by try and raise. Exceptions follow the Itanium C++ ABI, so they are unwound by the
+; unwinder of the system and code which does not raise has no extra cost: calls inside a try block are invokes whose
+; landing pads are only entered when an exception passes through. A raised object is wrapped in the _Unwind_Exception
+; @monty_exception, the class of the object is tested in the landing pad to find the handler. There is only one
+; _Unwind_Exception, because a new object is raised only after the previous exception reached its landing pad.
+%monty_exception = type { i64, i8*, i64, i64, i8* }
+@monty_exception = private global %monty_exception zeroinitializer, align 16
+@.monty_uncaught_message = private constant [20 x i8] c"Uncaught exception\0A\00"
+declare i32 @_Unwind_RaiseException(i8* %exception)
+declare i8* @_Unwind_GetLanguageSpecificData(i8* %context) nounwind readonly
+declare i64 @_Unwind_GetRegionStart(i8* %context) nounwind readonly
+declare i64 @_Unwind_GetIP(i8* %context) nounwind readonly
+declare void @_Unwind_SetGR(i8* %context, i32 %index, i64 %value) nounwind
+declare void @_Unwind_SetIP(i8* %context, i64 %value) nounwind
+
+; Raise the given object. If no function on the stack handles it the program exits with status 4.
+define void @monty_raise(i8* %object) noreturn {
+    ; The exception class is "MONTY\00\00\00", so that exceptions of other languages can be told apart.
+    %class = getelementptr %monty_exception* @monty_exception, i64 0, i32 0
+    store i64 5570757388257984512, i64* %class
+    %cleanup = getelementptr %monty_exception* @monty_exception, i64 0, i32 1
+    store i8* null, i8** %cleanup
+    %payload = getelementptr %monty_exception* @monty_exception, i64 0, i32 4
+    store i8* %object, i8** %payload
+    %exception = bitcast %monty_exception* @monty_exception to i8*
+    %reason = call i32 @_Unwind_RaiseException(i8* %exception)
+    call void @out_flush()
+    %message = getelementptr [20 x i8]* @.monty_uncaught_message, i64 0, i64 0
+    %written = call i64 @write(i32 2, i8* %message, i64 19)
+    call void @exit(i32 4)
+    unreachable
+}
+
+; Get the object raised with the given _Unwind_Exception.
+define i8* @monty_caught(i8* %exception) nounwind readonly {
+    %wrapper = bitcast i8* %exception to %monty_exception*
+    %payload = getelementptr %monty_exception* %wrapper, i64 0, i32 4
+    %object = load i8** %payload
+    ret i8* %object
+}
+
+; Read an unsigned LEB128 number, store it in the result and return the position after it.
+define i8* @monty_read_uleb128(i8* %start, i64* %result) nounwind {
+    %position = alloca i8*
+    %value = alloca i64
+    %shift = alloca i64
+    store i8* %start, i8** %position
+    store i64 0, i64* %value
+    store i64 0, i64* %shift
+    br label %read.loop
+
+    read.loop:
+        %current = load i8** %position
+        %byte = load i8* %current
+        %next = getelementptr i8* %current, i64 1
+        store i8* %next, i8** %position
+        %bits = and i8 %byte, 127
+        %bits64 = zext i8 %bits to i64
+        %shift_value = load i64* %shift
+        %shifted = shl i64 %bits64, %shift_value
+        %old_value = load i64* %value
+        %new_value = or i64 %old_value, %shifted
+        store i64 %new_value, i64* %value
+        %new_shift = add i64 %shift_value, 7
+        store i64 %new_shift, i64* %shift
+        %more = icmp slt i8 %byte, 0
+        br i1 %more, label %read.loop, label %read.end
+
+    read.end:
+        store i64 %new_value, i64* %result
+        ret i8* %next
+}
+
+; Read a value of the call site table in the given DWARF pointer encoding, store it in the result and return the
+; position after it. Only the formats of the lower four bits are supported, the call site table is never relative.
+define i8* @monty_read_encoded(i8* %start, i8 %encoding, i64* %result) nounwind {
+    %format = and i8 %encoding, 15
+    switch i8 %format, label %read.uleb128 [ i8 3, label %read.udata4
+                                              i8 11, label %read.sdata4
+                                              i8 4, label %read.data8
+                                              i8 12, label %read.data8 ]
+
+    read.uleb128:
+        %uleb128_end = call i8* @monty_read_uleb128(i8* %start, i64* %result)
+        ret i8* %uleb128_end
+
+    read.udata4:
+        %udata4_pointer = bitcast i8* %start to i32*
+        %udata4 = load i32* %udata4_pointer, align 1
+        %udata4_value = zext i32 %udata4 to i64
+        store i64 %udata4_value, i64* %result
+        %udata4_end = getelementptr i8* %start, i64 4
+        ret i8* %udata4_end
+
+    read.sdata4:
+        %sdata4_pointer = bitcast i8* %start to i32*
+        %sdata4 = load i32* %sdata4_pointer, align 1
+        %sdata4_value = sext i32 %sdata4 to i64
+        store i64 %sdata4_value, i64* %result
+        %sdata4_end = getelementptr i8* %start, i64 4
+        ret i8* %sdata4_end
+
+    read.data8:
+        %data8_pointer = bitcast i8* %start to i64*
+        %data8 = load i64* %data8_pointer, align 1
+        store i64 %data8, i64* %result
+        %data8_end = getelementptr i8* %start, i64 8
+        ret i8* %data8_end
+}
+
+; The personality routine of all landing pads generated for try blocks. The unwinder calls it for each frame, first
+; to search a handler and then to unwind to it. It looks up the return address of the frame in the call site table
+; of the LSDA which LLVM emits for the function. A call site with a landing pad and an action is inside a try block,
+; because every landing pad catches all Monty exceptions, and the handlers are chosen there. Exceptions of other
+; languages and forced unwinding pass through. The registers for the landing pad are those of x86-64 and AArch64.
+define i32 @monty_personality(i32 %version, i32 %actions, i64 %class, i8* %exception, i8* %context) {
+    %value = alloca i64
+    %position = alloca i8*
+    %is_monty = icmp eq i64 %class, 5570757388257984512
+    %force_unwind = and i32 %actions, 8
+    %not_forced = icmp eq i32 %force_unwind, 0
+    %may_catch = and i1 %is_monty, %not_forced
+    br i1 %may_catch, label %personality.lsda, label %personality.continue
+
+    personality.lsda:
+        %lsda = call i8* @_Unwind_GetLanguageSpecificData(i8* %context)
+        %no_lsda = icmp eq i8* %lsda, null
+        br i1 %no_lsda, label %personality.continue, label %personality.header
+
+    personality.header:
+        %region_start = call i64 @_Unwind_GetRegionStart(i8* %context)
+        %return_address = call i64 @_Unwind_GetIP(i8* %context)
+        ; The return address may already belong to the next call site.
+        %ip = sub i64 %return_address, 1
+        ; LLVM omits the landing pad base, so landing pads are relative to the start of the function.
+        %lpstart_encoding = load i8* %lsda
+        %has_lpstart = icmp ne i8 %lpstart_encoding, -1
+        %ttype_encoding_pointer = getelementptr i8* %lsda, i64 1
+        store i8* %ttype_encoding_pointer, i8** %position
+        br i1 %has_lpstart, label %personality.continue, label %personality.ttype
+
+    personality.ttype:
+        %ttype_encoding = load i8* %ttype_encoding_pointer
+        %after_ttype_encoding = getelementptr i8* %lsda, i64 2
+        store i8* %after_ttype_encoding, i8** %position
+        %has_ttype = icmp ne i8 %ttype_encoding, -1
+        br i1 %has_ttype, label %personality.skip_ttype, label %personality.call_sites
+
+    personality.skip_ttype:
+        %after_ttype = call i8* @monty_read_uleb128(i8* %after_ttype_encoding, i64* %value)
+        store i8* %after_ttype, i8** %position
+        br label %personality.call_sites
+
+    personality.call_sites:
+        %call_site_encoding_pointer = load i8** %position
+        %call_site_encoding = load i8* %call_site_encoding_pointer
+        %table_length_pointer = getelementptr i8* %call_site_encoding_pointer, i64 1
+        %table_start = call i8* @monty_read_uleb128(i8* %table_length_pointer, i64* %value)
+        %table_length = load i64* %value
+        %table_end = getelementptr i8* %table_start, i64 %table_length
+        store i8* %table_start, i8** %position
+        br label %personality.loop
+
+    personality.loop:
+        %entry = load i8** %position
+        %done = icmp uge i8* %entry, %table_end
+        br i1 %done, label %personality.continue, label %personality.entry
+
+    personality.entry:
+        %start_end = call i8* @monty_read_encoded(i8* %entry, i8 %call_site_encoding, i64* %value)
+        %start = load i64* %value
+        %length_end = call i8* @monty_read_encoded(i8* %start_end, i8 %call_site_encoding, i64* %value)
+        %length = load i64* %value
+        %landing_pad_end = call i8* @monty_read_encoded(i8* %length_end, i8 %call_site_encoding, i64* %value)
+        %landing_pad = load i64* %value
+        %action_end = call i8* @monty_read_uleb128(i8* %landing_pad_end, i64* %value)
+        %action = load i64* %value
+        store i8* %action_end, i8** %position
+        ; The call sites are sorted, so there is none for the return address if this one starts behind it.
+        %call_site_start = add i64 %region_start, %start
+        %before = icmp ult i64 %ip, %call_site_start
+        br i1 %before, label %personality.continue, label %personality.entry_end
+
+    personality.entry_end:
+        %call_site_end = add i64 %call_site_start, %length
+        %inside = icmp ult i64 %ip, %call_site_end
+        br i1 %inside, label %personality.found, label %personality.loop
+
+    personality.found:
+        %no_landing_pad = icmp eq i64 %landing_pad, 0
+        %no_action = icmp eq i64 %action, 0
+        %no_handler = or i1 %no_landing_pad, %no_action
+        br i1 %no_handler, label %personality.continue, label %personality.handler
+
+    personality.handler:
+        %search_phase = and i32 %actions, 1
+        %is_search_phase = icmp ne i32 %search_phase, 0
+        br i1 %is_search_phase, label %personality.handler_found, label %personality.install
+
+    personality.handler_found:
+        ret i32 6
+
+    personality.install:
+        %exception_value = ptrtoint i8* %exception to i64
+        call void @_Unwind_SetGR(i8* %context, i32 0, i64 %exception_value)
+        call void @_Unwind_SetGR(i8* %context, i32 1, i64 1)
+        %landing_pad_address = add i64 %region_start, %landing_pad
+        call void @_Unwind_SetIP(i8* %context, i64 %landing_pad_address)
+        ret i32 7
+
+    personality.continue:
+        ret i32 8
+}
 ; End of the standard declarations and definitions every Monty program needs.
 
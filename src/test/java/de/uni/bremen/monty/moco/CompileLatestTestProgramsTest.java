@@ -37,6 +37,7 @@
 
 package de.uni.bremen.monty.moco;
 
+import static de.uni.bremen.monty.moco.IntegrationTestUtils.errorFileExists;
 import static de.uni.bremen.monty.moco.IntegrationTestUtils.expectedErrorFromFile;
 import static de.uni.bremen.monty.moco.IntegrationTestUtils.expectedResultFromFile;
 import static de.uni.bremen.monty.moco.IntegrationTestUtils.getOutput;
@@ -85,7 +86,11 @@ public class CompileLatestTestProgramsTest extends CompileFilesBaseTest {
 
         Main.main(new String[] { "-k", this.file.getAbsolutePath(), "-e" });
 
-        if (outputFileExists(this.file)) {
+        if (outputFileExists(this.file) && errorFileExists(this.file)) {
+            // a program which prints before it stops with an error
+            assertThat(getOutput(errorStream), is(expectedErrorFromFile(this.file)));
+            assertThat(getOutput(outStream), is(expectedResultFromFile(this.file)));
+        } else if (outputFileExists(this.file)) {
             assertThat(getOutput(errorStream), is(isEmptyString()));
             assertThat(getOutput(outStream), is(expectedResultFromFile(this.file)));
         } else {
@@ -38,6 +38,7 @@
  */
 package de.uni.bremen.monty.moco;
 
+import static de.uni.bremen.monty.moco.IntegrationTestUtils.errorFileExists;
 import static de.uni.bremen.monty.moco.IntegrationTestUtils.expectedErrorFromFile;
 import static de.uni.bremen.monty.moco.IntegrationTestUtils.expectedResultFromFile;
 import static de.uni.bremen.monty.moco.IntegrationTestUtils.getOutput;
@@ -86,7 +87,11 @@ public class CompileTestProgramsTest extends CompileFilesBaseTest {
 
 		Main.main(new String[] { "-k", this.file.getAbsolutePath(), "-e" });
 
-		if (outputFileExists(this.file)) {
+		if (outputFileExists(this.file) && errorFileExists(this.file)) {
+			// a program which prints before it stops with an error
+			assertThat(StringUtils.chop(getOutput(errorStream)), containsString(expectedErrorFromFile(this.file)));
+			assertThat(getOutput(outStream), containsString(expectedResultFromFile(this.file)));
+		} else if (outputFileExists(this.file)) {
 			assertThat(getOutput(errorStream), is(isEmptyString()));
 			assertThat(getOutput(outStream), containsString(expectedResultFromFile(this.file)));
 		} else {
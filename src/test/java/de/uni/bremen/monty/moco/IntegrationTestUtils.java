@@ -103,4 +103,9 @@ public class IntegrationTestUtils {
 		String outputFile = changeFileExtension(file, ".output");
 		return new File(outputFile).exists();
 	}
+
+	protected static boolean errorFileExists(File file) {
+		String errorFile = changeFileExtension(file, ".error");
+		return new File(errorFile).exists();
+	}
 }
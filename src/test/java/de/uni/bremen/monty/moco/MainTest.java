@@ -0,0 +1,177 @@
+/*
+ * moco, the Monty Compiler
+ * Copyright (c) 2013-2014, Monty's Coconut, All rights reserved.
+ *
+ * This file is part of moco, the Monty Compiler.
+ *
+ * moco is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ *
+ * moco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * Linking this program and/or its accompanying libraries statically or
+ * dynamically with other modules is making a combined work based on this
+ * program. Thus, the terms and conditions of the GNU General Public License
+ * cover the whole combination.
+ *
+ * As a special exception, the copyright holders of moco give
+ * you permission to link this programm and/or its accompanying libraries
+ * with independent modules to produce an executable, regardless of the
+ * license terms of these independent modules, and to copy and distribute the
+ * resulting executable under terms of your choice, provided that you also meet,
+ * for each linked independent module, the terms and conditions of the
+ * license of that module.
+ *
+ * An independent module is a module which is not
+ * derived from or based on this program and/or its accompanying libraries.
+ * If you modify this library, you may extend this exception to your version of
+ * the program or library, but you are not obliged to do so. If you do not wish
+ * to do so, delete this exception statement from your version.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library.
+ */
+package de.uni.bremen.monty.moco;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.uni.bremen.monty.moco.util.Params;
+
+public class MainTest {
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	/** Records the commands instead of running them. Each tool creates the file given after -o. */
+	private static class RecordingMain extends Main {
+		private final List<List<String>> commands = new ArrayList<>();
+
+		@Override
+		void runTool(String... command) throws IOException {
+			this.commands.add(Arrays.asList(command));
+			new File(command[Arrays.asList(command).indexOf("-o") + 1]).createNewFile();
+		}
+
+		@Override
+		void execute(PrintStream resultStream, String... command) {
+			this.commands.add(Arrays.asList(command));
+		}
+	}
+
+	/** Fails like llc does after it has written part of the object file. */
+	private static class FailingLlcMain extends RecordingMain {
+		@Override
+		void runTool(String... command) throws IOException {
+			super.runTool(command);
+			if (command[0].equals("llc")) {
+				throw new IOException("llc failed with exit code 1");
+			}
+		}
+	}
+
+	private RecordingMain generateCode(String... options) throws IOException {
+		return generateCode(new RecordingMain(), options);
+	}
+
+	private RecordingMain generateCode(RecordingMain main, String... options) throws IOException {
+		File llFile = this.folder.newFile("test.ll");
+		List<String> args = new ArrayList<>(Arrays.asList(options));
+		args.add("test.monty");
+		Params params = new Params(args.toArray(new String[args.size()]));
+		params.setLlFile(llFile.getPath());
+
+		main.generateCode(params);
+		return main;
+	}
+
+	private String file(String name) {
+		return new File(this.folder.getRoot(), name).getPath();
+	}
+
+	@Test
+	public void shouldDeleteGeneratedFiles() throws Exception {
+		RecordingMain main = generateCode("-O2", "-native");
+
+		String executable = new File(file("test")).getAbsolutePath();
+		assertThat(main.commands, contains(
+		        Arrays.asList("opt", "-O2", "-S", file("test.ll"), "-o", file("test.opt.ll")),
+		        Arrays.asList("llc", "-O2", "-filetype=obj", file("test.opt.ll"), "-o", file("test.o")),
+		        Arrays.asList("clang", file("test.o"), "-o", executable),
+		        Arrays.asList(executable)));
+		assertThat(this.folder.getRoot().list(), is(new String[0]));
+	}
+
+	@Test
+	public void shouldDeleteGeneratedFilesWhenToolFails() throws Exception {
+		try {
+			generateCode(new FailingLlcMain(), "-O2", "-native");
+			fail("a failing tool must raise an IOException");
+		} catch (IOException e) {
+			assertThat(e.getMessage(), is("llc failed with exit code 1"));
+		}
+		assertThat(this.folder.getRoot().list(), is(new String[0]));
+	}
+
+	@Test
+	public void shouldKeepCodeAndExecutable() throws Exception {
+		generateCode("-k", "-O2", "-native");
+
+		String[] kept = this.folder.getRoot().list();
+		Arrays.sort(kept);
+		assertThat(kept, is(new String[] { "test", "test.ll", "test.opt.ll" }));
+	}
+
+	@Test
+	public void shouldRunSuccessfulTool() throws Exception {
+		new Main().runTool("sh", "-c", "exit 0");
+	}
+
+	@Test
+	public void shouldReportExitCodeOfFailingTool() throws Exception {
+		try {
+			new Main().runTool("sh", "-c", "echo broken; exit 3");
+			fail("a failing tool must raise an IOException");
+		} catch (IOException e) {
+			assertThat(e.getMessage(), is("sh failed with exit code 3"));
+		}
+	}
+
+	@Test
+	public void shouldForwardOutputOfProgramExitingWithError() throws Exception {
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		new Main().execute(new PrintStream(result), "sh", "-c", "printf partial; exit 3");
+		assertThat(result.toString(), is("partial"));
+	}
+
+	@Test
+	public void shouldReportCrashingProgram() throws Exception {
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		try {
+			new Main().execute(new PrintStream(result), "sh", "-c", "printf partial; kill -SEGV $$");
+			fail("a crashing program must raise an IOException");
+		} catch (IOException e) {
+			assertThat(e.getMessage(), is("sh crashed with exit code 139"));
+		}
+		assertThat(result.toString(), is("partial"));
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * moco, the Monty Compiler
+ * Copyright (c) 2013-2014, Monty's Coconut, All rights reserved.
+ *
+ * This file is part of moco, the Monty Compiler.
+ *
+ * moco is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ *
+ * moco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * Linking this program and/or its accompanying libraries statically or
+ * dynamically with other modules is making a combined work based on this
+ * program. Thus, the terms and conditions of the GNU General Public License
+ * cover the whole combination.
+ *
+ * As a special exception, the copyright holders of moco give
+ * you permission to link this programm and/or its accompanying libraries
+ * with independent modules to produce an executable, regardless of the
+ * license terms of these independent modules, and to copy and distribute the
+ * resulting executable under terms of your choice, provided that you also meet,
+ * for each linked independent module, the terms and conditions of the
+ * license of that module.
+ *
+ * An independent module is a module which is not
+ * derived from or based on this program and/or its accompanying libraries.
+ * If you modify this library, you may extend this exception to your version of
+ * the program or library, but you are not obliged to do so. If you do not wish
+ * to do so, delete this exception statement from your version.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library.
+ */
+package de.uni.bremen.monty.moco.ast;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.startsWith;
+
+import java.io.File;
+
+import org.junit.Test;
+
+import de.uni.bremen.monty.moco.ast.declaration.ModuleDeclaration;
+import de.uni.bremen.monty.moco.util.Params;
+import de.uni.bremen.monty.moco.visitor.BaseVisitor;
+
+public class PackageBuilderTest {
+
+	/** The tree of testPackageOrder as built sequentially: sub-packages in file name order before the modules of
+	 * their package, modules in file name order. */
+	private static final String SEQUENTIAL_ORDER = "(((( F) D E)( G H) A B C)";
+
+	@Test
+	public void shouldKeepSequentialPackageAndModuleOrder() throws Exception {
+		ClassLoader classLoader = getClass().getClassLoader();
+		File folder = new File(classLoader.getResource("testPackageOrder").toURI());
+		Params params = new Params();
+		params.setInputFolder(folder.getAbsolutePath());
+
+		// the modules are parsed in parallel, so build several times to give a wrong order a chance to show up
+		for (int i = 0; i < 10; i++) {
+			Package basePackage = new PackageBuilder(params).buildPackage();
+			assertThat(describe(basePackage), startsWith(SEQUENTIAL_ORDER));
+		}
+	}
+
+	/** Describes the packages as parentheses around their content and the modules by their names. */
+	private static String describe(Package basePackage) {
+		final StringBuilder description = new StringBuilder();
+		basePackage.visit(new BaseVisitor() {
+			@Override
+			public void visit(Package node) {
+				description.append("(");
+				super.visit(node);
+				description.append(")");
+			}
+
+			@Override
+			public void visit(ModuleDeclaration node) {
+				description.append(" ").append(node.getIdentifier().getSymbol());
+			}
+		});
+		return description.toString();
+	}
+}
@@ -46,6 +46,8 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.io.StringWriter;
+
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.startsWith;
@@ -110,4 +112,18 @@ public class ContextTest {
 		assertThat(context1.getData(), is("!\nHello \npretty \nWorld\n!\n"));
 	}
 
+	@Test
+	public void shouldWriteAllChildren() throws Exception {
+		Context context1 = new Context(commentAppender);
+		Context context2 = new Context(commentAppender);
+
+		context1.append("Hello");
+		context1.append(context2);
+		context2.append("World");
+
+		StringWriter out = new StringWriter();
+		context1.write(out);
+		assertThat(out.toString(), is("Hello\nWorld\n"));
+	}
+
 }
@@ -0,0 +1,143 @@
+/*
+ * moco, the Monty Compiler
+ * Copyright (c) 2013-2014, Monty's Coconut, All rights reserved.
+ *
+ * This file is part of moco, the Monty Compiler.
+ *
+ * moco is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ *
+ * moco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * Linking this program and/or its accompanying libraries statically or
+ * dynamically with other modules is making a combined work based on this
+ * program. Thus, the terms and conditions of the GNU General Public License
+ * cover the whole combination.
+ *
+ * As a special exception, the copyright holders of moco give
+ * you permission to link this programm and/or its accompanying libraries
+ * with independent modules to produce an executable, regardless of the
+ * license terms of these independent modules, and to copy and distribute the
+ * resulting executable under terms of your choice, provided that you also meet,
+ * for each linked independent module, the terms and conditions of the
+ * license of that module.
+ *
+ * An independent module is a module which is not
+ * derived from or based on this program and/or its accompanying libraries.
+ * If you modify this library, you may extend this exception to your version of
+ * the program or library, but you are not obliged to do so. If you do not wish
+ * to do so, delete this exception statement from your version.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library.
+ */
+package de.uni.bremen.monty.moco.codegeneration;
+
+import de.uni.bremen.monty.moco.codegeneration.context.ConstantPool;
+import de.uni.bremen.monty.moco.codegeneration.context.ContextUtils;
+import de.uni.bremen.monty.moco.codegeneration.context.NoCommentAppender;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class ContextUtilsTest {
+
+	private static final int FUNCTIONS = 100;
+
+	private static void addFunctions(ContextUtils contextUtils) {
+		for (int i = 0; i < FUNCTIONS; i++) {
+			contextUtils.addNewContext();
+			contextUtils.active().append("f" + i);
+			contextUtils.closeContext();
+		}
+	}
+
+	private static String getFunctions() {
+		StringBuilder functions = new StringBuilder();
+		for (int i = 0; i < FUNCTIONS; i++) {
+			functions.append("f").append(i).append("\n");
+		}
+		return functions.toString();
+	}
+
+	@Test
+	public void shouldWriteFunctionsInOrderBeforeConstants() throws Exception {
+		StringWriter out = new StringWriter();
+		ContextUtils contextUtils = new ContextUtils(out, new NoCommentAppender());
+		contextUtils.constant().define("@c").append("@c = constant i64 0");
+		addFunctions(contextUtils);
+		contextUtils.write();
+
+		assertThat(out.toString(), is(getFunctions() + "@c = constant i64 0\n"));
+	}
+
+	@Test
+	public void shouldKeepFunctionsWithoutOutput() throws Exception {
+		ContextUtils contextUtils = new ContextUtils(null, new NoCommentAppender());
+		contextUtils.constant().define("@c").append("@c = constant i64 0");
+		addFunctions(contextUtils);
+		contextUtils.write();
+
+		assertThat(contextUtils.getData(), is("@c = constant i64 0\n" + getFunctions()));
+	}
+
+	@Test
+	public void shouldWriteEachConstantOnceWhereItWasDefinedFirst() throws Exception {
+		StringWriter out = new StringWriter();
+		ContextUtils contextUtils = new ContextUtils(out, new NoCommentAppender());
+		ConstantPool function = new ConstantPool(new NoCommentAppender());
+		contextUtils.constant().define("@a").append("@a = constant i64 0");
+		contextUtils.constant().add(function);
+		contextUtils.constant().define("@b").append("@b = constant i64 1");
+		// the added pool is filled afterwards, like by a function generated on another thread
+		function.define("@b").append("@b = constant i64 1 ; function");
+		function.define("@c").append("@c = constant i64 2");
+		function.define("@a").append("@a = constant i64 0 ; function");
+		contextUtils.write();
+
+		assertThat(out.toString(), is("@a = constant i64 0\n@b = constant i64 1 ; function\n@c = constant i64 2\n"));
+	}
+
+	@Test
+	public void shouldAddFunctionsGeneratedElsewhere() throws Exception {
+		StringWriter out = new StringWriter();
+		ContextUtils contextUtils = new ContextUtils(out, new NoCommentAppender());
+		contextUtils.addFunctions("g\n");
+		addFunctions(contextUtils);
+		contextUtils.write();
+
+		assertThat(out.toString(), is("g\n" + getFunctions()));
+	}
+
+	@Test(expected = UncheckedIOException.class)
+	public void shouldReportWriteErrors() throws Exception {
+		Writer failing = new Writer() {
+			@Override
+			public void write(char[] buffer, int offset, int length) throws IOException {
+				throw new IOException("disk full");
+			}
+
+			@Override
+			public void flush() {
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+		ContextUtils contextUtils = new ContextUtils(failing, new NoCommentAppender());
+		addFunctions(contextUtils);
+		contextUtils.write();
+	}
+}
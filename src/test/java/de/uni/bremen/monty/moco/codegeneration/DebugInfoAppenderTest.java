@@ -0,0 +1,102 @@
+/*
+ * moco, the Monty Compiler
+ * Copyright (c) 2013-2014, Monty's Coconut, All rights reserved.
+ *
+ * This file is part of moco, the Monty Compiler.
+ *
+ * moco is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ *
+ * moco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * Linking this program and/or its accompanying libraries statically or
+ * dynamically with other modules is making a combined work based on this
+ * program. Thus, the terms and conditions of the GNU General Public License
+ * cover the whole combination.
+ *
+ * As a special exception, the copyright holders of moco give
+ * you permission to link this programm and/or its accompanying libraries
+ * with independent modules to produce an executable, regardless of the
+ * license terms of these independent modules, and to copy and distribute the
+ * resulting executable under terms of your choice, provided that you also meet,
+ * for each linked independent module, the terms and conditions of the
+ * license of that module.
+ *
+ * An independent module is a module which is not
+ * derived from or based on this program and/or its accompanying libraries.
+ * If you modify this library, you may extend this exception to your version of
+ * the program or library, but you are not obliged to do so. If you do not wish
+ * to do so, delete this exception statement from your version.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library.
+ */
+package de.uni.bremen.monty.moco.codegeneration;
+
+import de.uni.bremen.monty.moco.ast.Position;
+import de.uni.bremen.monty.moco.ast.expression.literal.IntegerLiteral;
+import de.uni.bremen.monty.moco.codegeneration.context.Context;
+import de.uni.bremen.monty.moco.codegeneration.context.DebugInfoAppender;
+import de.uni.bremen.monty.moco.codegeneration.identifier.LLVMIdentifier;
+import de.uni.bremen.monty.moco.codegeneration.identifier.LLVMIdentifierFactory;
+import de.uni.bremen.monty.moco.codegeneration.types.LLVMType;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static de.uni.bremen.monty.moco.codegeneration.types.LLVMTypeFactory.voidType;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.is;
+
+public class DebugInfoAppenderTest {
+
+	private DebugInfoAppender appender;
+
+	@Before
+	public void setUp() throws Exception {
+		appender = new DebugInfoAppender("test.monty");
+		appender.setNode(new IntegerLiteral(new Position("test.monty", 3, 4), 1));
+	}
+
+	private void enterFunction() {
+		appender.enterFunction(new LLVMIdentifierFactory().newFunction(
+		        voidType(),
+		        "f",
+		        Collections.<LLVMIdentifier<? extends LLVMType>> emptyList()));
+	}
+
+	@Test
+	public void shouldLeaveLinesOutsideOfFunctions() throws Exception {
+		assertThat(appender.addComment("@s = private constant i64 0"), is("@s = private constant i64 0"));
+	}
+
+	@Test
+	public void shouldAttachLocationToInstructions() throws Exception {
+		enterFunction();
+		assertThat(appender.addComment("    ret void"), endsWith(", !dbg !6"));
+		assertThat(appender.addComment("    label:"), is("    label:"));
+		appender.exitFunction();
+		assertThat(appender.addComment("}"), is("}"));
+	}
+
+	@Test
+	public void shouldAppendMetadata() throws Exception {
+		enterFunction();
+		appender.addComment("    ret void");
+		appender.exitFunction();
+
+		Context context = new Context(appender);
+		appender.appendMetadata(context);
+		assertThat(context.getData(), containsString("!6 = metadata !{i32 3, i32 5, metadata !5, null}\n"));
+		assertThat(context.getData(), containsString("void ()* @f"));
+		assertThat(context.getData(), containsString("!llvm.dbg.cu"));
+	}
+}
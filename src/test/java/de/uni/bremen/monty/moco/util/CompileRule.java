@@ -32,6 +32,7 @@ import de.uni.bremen.monty.moco.exception.MontyBaseException;
 import de.uni.bremen.monty.moco.util.astsearch.SearchAST;
 import de.uni.bremen.monty.moco.visitor.BaseVisitor;
 import de.uni.bremen.monty.moco.visitor.CodeGenerationVisitor;
+import de.uni.bremen.monty.moco.visitor.ConstantFoldingVisitor;
 import de.uni.bremen.monty.moco.visitor.ControlFlowVisitor;
 import de.uni.bremen.monty.moco.visitor.DeclarationVisitor;
 import de.uni.bremen.monty.moco.visitor.DotVisitor;
@@ -127,6 +128,7 @@ public class CompileRule implements TestRule {
         }
         final Params params = createParams();
         final List<BaseVisitor> additional = Arrays.asList(
+                new ConstantFoldingVisitor(),
                 new QuantumTypeErasor9k(),
                 new ControlFlowVisitor(),
                 new NameManglingVisitor(),
@@ -0,0 +1,97 @@
+/*
+ * moco, the Monty Compiler
+ * Copyright (c) 2013-2014, Monty's Coconut, All rights reserved.
+ *
+ * This file is part of moco, the Monty Compiler.
+ *
+ * moco is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ *
+ * moco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * Linking this program and/or its accompanying libraries statically or
+ * dynamically with other modules is making a combined work based on this
+ * program. Thus, the terms and conditions of the GNU General Public License
+ * cover the whole combination.
+ *
+ * As a special exception, the copyright holders of moco give
+ * you permission to link this programm and/or its accompanying libraries
+ * with independent modules to produce an executable, regardless of the
+ * license terms of these independent modules, and to copy and distribute the
+ * resulting executable under terms of your choice, provided that you also meet,
+ * for each linked independent module, the terms and conditions of the
+ * license of that module.
+ *
+ * An independent module is a module which is not
+ * derived from or based on this program and/or its accompanying libraries.
+ * If you modify this library, you may extend this exception to your version of
+ * the program or library, but you are not obliged to do so. If you do not wish
+ * to do so, delete this exception statement from your version.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library.
+ */
+package de.uni.bremen.monty.moco.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ParamsTest {
+
+	@Test
+	public void shouldNotOptimizeByDefault() throws Exception {
+		Params params = new Params(new String[] { "test.monty" });
+		assertEquals(-1, params.getOptimizationLevel());
+		assertFalse(params.isCompileNative());
+		assertFalse(params.isTargetSpecific());
+		assertEquals("test.monty", params.getInputFile());
+	}
+
+	@Test
+	public void shouldParseOptimizationLevels() throws Exception {
+		for (int level = 0; level <= 3; level++) {
+			Params params = new Params(new String[] { "-O" + level, "test.monty" });
+			assertEquals(level, params.getOptimizationLevel());
+			assertFalse(params.isCompileNative());
+			assertTrue(params.isTargetSpecific());
+		}
+	}
+
+	@Test
+	public void shouldTreatUnknownLevelAsInputFile() throws Exception {
+		Params params = new Params(new String[] { "-O4" });
+		assertEquals(-1, params.getOptimizationLevel());
+		assertEquals("-O4", params.getInputFile());
+	}
+
+	@Test
+	public void shouldParseNative() throws Exception {
+		Params params = new Params(new String[] { "-native", "test.monty" });
+		assertTrue(params.isCompileNative());
+		assertEquals(-1, params.getOptimizationLevel());
+		assertTrue(params.isTargetSpecific());
+	}
+
+	@Test
+	public void shouldParseNativeWithOptimization() throws Exception {
+		Params params = new Params(new String[] { "-O2", "-native", "test.monty" });
+		assertTrue(params.isCompileNative());
+		assertEquals(2, params.getOptimizationLevel());
+		assertTrue(params.isTargetSpecific());
+	}
+
+	@Test
+	public void shouldParseThreads() throws Exception {
+		Params params = new Params(new String[] { "-j", "4", "test.monty" });
+		assertEquals(4, params.getThreads());
+		assertEquals("test.monty", params.getInputFile());
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ * moco, the Monty Compiler
+ * Copyright (c) 2013-2014, Monty's Coconut, All rights reserved.
+ *
+ * This file is part of moco, the Monty Compiler.
+ *
+ * moco is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ *
+ * moco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * Linking this program and/or its accompanying libraries statically or
+ * dynamically with other modules is making a combined work based on this
+ * program. Thus, the terms and conditions of the GNU General Public License
+ * cover the whole combination.
+ *
+ * As a special exception, the copyright holders of moco give
+ * you permission to link this programm and/or its accompanying libraries
+ * with independent modules to produce an executable, regardless of the
+ * license terms of these independent modules, and to copy and distribute the
+ * resulting executable under terms of your choice, provided that you also meet,
+ * for each linked independent module, the terms and conditions of the
+ * license of that module.
+ *
+ * An independent module is a module which is not
+ * derived from or based on this program and/or its accompanying libraries.
+ * If you modify this library, you may extend this exception to your version of
+ * the program or library, but you are not obliged to do so. If you do not wish
+ * to do so, delete this exception statement from your version.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library.
+ */
+package de.uni.bremen.monty.moco.visitor;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import de.uni.bremen.monty.moco.ast.Package;
+import de.uni.bremen.monty.moco.ast.PackageBuilder;
+import de.uni.bremen.monty.moco.util.Params;
+import de.uni.bremen.monty.moco.visitor.typeinf.QuantumTypeErasor9k;
+import de.uni.bremen.monty.moco.visitor.typeinf.QuantumTypeResolver3000;
+
+@RunWith(Parameterized.class)
+public class CodeGenerationVisitorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final String program;
+
+	public CodeGenerationVisitorTest(String program) {
+		this.program = program;
+	}
+
+	/** Programs with classes, generics, nested procedures, exceptions, inlined calls and loops over arrays. */
+	@Parameters(name = "Program: {0}")
+	public static Collection<Object[]> data() {
+		return Arrays.asList(new Object[][] { { "CorePackage.monty" }, { "radix.monty" },
+		        { "array/ArrayLoopDeclaration.monty" }, { "callable/Inlining.monty" },
+		        { "exceptions/NestedTry.monty" }, { "generics/LinkedList.monty" },
+		        { "inheritance/methods/InheritanceMethods3.monty" },
+		        { "scoping/SimultaneouslyVisibleFunctions.monty" } });
+	}
+
+	private String generate(int threads) throws IOException, URISyntaxException {
+		File input = new File(getClass().getClassLoader().getResource("testPrograms/" + this.program).toURI());
+		File output = this.folder.newFile();
+		Params params = new Params();
+		params.setInputFile(input.getAbsolutePath());
+		params.setGenerateOnlyLLVM(true);
+		params.setOutputFile(output.getAbsolutePath());
+		params.setThreads(threads);
+
+		Package ast = new PackageBuilder(params).buildPackage();
+		BaseVisitor[] visitors =
+		        new BaseVisitor[] { new SetParentVisitor(), new DeclarationVisitor(), new QuantumTypeResolver3000(),
+		                new ConstantFoldingVisitor(), new QuantumTypeErasor9k(), new ControlFlowVisitor(),
+		                new NameManglingVisitor(), new CodeGenerationVisitor(params) };
+		for (BaseVisitor visitor : visitors) {
+			visitor.setStopOnFirstError(true);
+			visitor.visitDoubleDispatched(ast);
+		}
+		return FileUtils.readFileToString(output, StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void shouldGenerateTheSameCodeOnAnyNumberOfThreads() throws Exception {
+		String sequential = generate(1);
+		assertThat(generate(2), is(sequential));
+		assertThat(generate(8), is(sequential));
+	}
+}